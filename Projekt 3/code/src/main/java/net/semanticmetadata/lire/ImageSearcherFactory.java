@@ -32,7 +32,9 @@ package net.semanticmetadata.lire;
 
 import net.semanticmetadata.lire.imageanalysis.*;
 import net.semanticmetadata.lire.impl.CorrelogramImageSearcher;
+import net.semanticmetadata.lire.impl.FeatureFile;
 import net.semanticmetadata.lire.impl.GenericFastImageSearcher;
+import net.semanticmetadata.lire.impl.MappedFeatureImageSearcher;
 import net.semanticmetadata.lire.impl.SimpleImageSearcher;
 
 /**
@@ -172,6 +174,33 @@ public class ImageSearcherFactory {
         return new GenericFastImageSearcher(maximumHits, CEDD.class, DocumentBuilder.FIELD_NAME_CEDD);
     }
 
+    /**
+     * Create and return an ImageSearcher for the {@link net.semanticmetadata.lire.imageanalysis.CEDD}
+     * image feature, which keeps the features of all documents in memory (see
+     * {@link net.semanticmetadata.lire.impl.FeatureCache}). This is much faster for repeated searches
+     * with the same IndexReader, but needs memory in the size of all CEDD features of the index.
+     *
+     * @param maximumHits
+     * @return
+     */
+    public static ImageSearcher createCachedCEDDImageSearcher(int maximumHits) {
+        return new GenericFastImageSearcher(maximumHits, CEDD.class, DocumentBuilder.FIELD_NAME_CEDD, true);
+    }
+
+    /**
+     * Create and return an ImageSearcher for the {@link net.semanticmetadata.lire.imageanalysis.CEDD}
+     * image feature, which scans a memory mapped {@link net.semanticmetadata.lire.impl.FeatureFile}
+     * instead of the index. Write the file with {@link net.semanticmetadata.lire.indexing.FeatureFileBuilder}
+     * after indexing.
+     *
+     * @param maximumHits
+     * @param featureFile the feature file of the CEDD field.
+     * @return
+     */
+    public static ImageSearcher createMappedCEDDImageSearcher(int maximumHits, FeatureFile featureFile) {
+        return new MappedFeatureImageSearcher(maximumHits, CEDD.class, DocumentBuilder.FIELD_NAME_CEDD, featureFile);
+    }
+
 
     /**
      * Create and return an ImageSearcher for the {@link net.semanticmetadata.lire.imageanalysis.FCTH}
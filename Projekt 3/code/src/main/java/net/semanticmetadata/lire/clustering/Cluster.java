@@ -143,6 +143,24 @@ public class Cluster implements Comparable<Object> {
         return result;
     }
 
+    /**
+     * Computes a checksum over the means of the given clusters (64 bit FNV-1a of the float values),
+     * so data derived from a vocabulary can be checked against it without relying on files.
+     *
+     * @param clusters the clusters.
+     * @return the checksum, equal for clusters with equal means.
+     */
+    public static long checksum(Cluster[] clusters) {
+        long hash = 0xcbf29ce484222325L;
+        hash = (hash ^ clusters.length) * 0x100000001b3L;
+        for (Cluster cluster : clusters) {
+            for (float v : cluster.mean) {
+                hash = (hash ^ Float.floatToIntBits(v)) * 0x100000001b3L;
+            }
+        }
+        return hash;
+    }
+
     public double getStress() {
         return stress;
     }
@@ -0,0 +1,476 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+package net.semanticmetadata.lire.clustering;
+
+import net.semanticmetadata.lire.imageanalysis.Histogram;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * K-means for building visual vocabularies from large numbers of local features. The features are
+ * copied to one flat float[] matrix, the initial means are selected with k-means++ and the
+ * assignment uses the triangle inequality (Hamerly's algorithm) to skip most of the distance
+ * computations once the means settle down. Features, which have to be compared to all means again,
+ * skip the means too far away from their current mean. With {@link #setMiniBatchSize(int)} the
+ * means are updated from small random batches instead (Sculley, Web-scale k-means clustering,
+ * 2010), which needs only a fraction of the distance computations per step on large data sets.<br>
+ * Like {@link KMeans} the L1 distance is used, so the vocabularies can be used with
+ * {@link Cluster#getDistance(Histogram)}. Each call to {@link #clusteringStep()} returns the
+ * current stress, once the clustering has converged (no feature changed its cluster, the stress
+ * changed less than the tolerance or the maximum number of steps was reached) the stress does not
+ * change anymore.
+ * <br>Date: 18.10.2026
+ */
+public class FastKMeans extends KMeans {
+    private float[] data, centers;
+    private int numFeatures, dimensions, k;
+    private int[] assignment;
+    private double[] upper, lower;
+    private float[] centerDistances;
+    private double[] sums;
+    private int[] counts;
+    private Random random = new Random();
+    private int miniBatchSize = 0, batchesPerStep = 10, maxIterations = 100;
+    private double tolerance = 1e-4;
+    private int iteration = 0, changed = 0, noImprovement = 0;
+    private double stress = -1, smoothedStress = -1, bestStress = -1;
+    private boolean assigned = false, converged = false, clustersDirty = true;
+
+    public FastKMeans(int numClusters) {
+        super(numClusters);
+    }
+
+    public void init() {
+        initFeatures();
+        numFeatures = features.size();
+        if (numFeatures == 0) throw new UnsupportedOperationException("There are no features to cluster.");
+        dimensions = features.get(0).descriptor.length;
+        data = new float[numFeatures * dimensions];
+        for (int i = 0; i < numFeatures; i++) {
+            System.arraycopy(features.get(i).descriptor, 0, data, i * dimensions, dimensions);
+        }
+        k = Math.min(numClusters, numFeatures);
+        assignment = new int[numFeatures];
+        counts = new int[k];
+        centers = seed();
+        iteration = 0;
+        stress = -1;
+        assigned = false;
+        converged = false;
+        clustersDirty = true;
+    }
+
+    /**
+     * Selects the initial means with k-means++ from a random sample of the features.
+     *
+     * @return the initial means.
+     */
+    private float[] seed() {
+        int sampleSize = Math.min(numFeatures, Math.max(10 * k, 1000));
+        int[] sample = new int[numFeatures];
+        for (int i = 0; i < sample.length; i++) sample[i] = i;
+        for (int i = 0; i < sampleSize; i++) {
+            int j = i + random.nextInt(numFeatures - i);
+            int tmp = sample[i];
+            sample[i] = sample[j];
+            sample[j] = tmp;
+        }
+        float[] result = new float[k * dimensions];
+        double[] minDistance = new double[sampleSize];
+        Arrays.fill(minDistance, Double.MAX_VALUE);
+        int next = sample[random.nextInt(sampleSize)];
+        for (int c = 0; c < k; c++) {
+            System.arraycopy(data, next * dimensions, result, c * dimensions, dimensions);
+            double total = 0;
+            for (int i = 0; i < sampleSize; i++) {
+                double d = distance(data, sample[i] * dimensions, result, c * dimensions, dimensions, Double.MAX_VALUE);
+                d *= d;
+                if (d < minDistance[i]) minDistance[i] = d;
+                total += minDistance[i];
+            }
+            // select the next mean with a probability proportional to the squared distance:
+            if (total > 0) {
+                double r = random.nextDouble() * total;
+                int i = 0;
+                while (i < sampleSize - 1 && (r -= minDistance[i]) > 0) i++;
+                next = sample[i];
+            } else {
+                next = sample[random.nextInt(sampleSize)];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Do one step and return the overall stress (sum of L1 distances to the means).
+     *
+     * @return the stress, which is not changing anymore if the clustering has converged.
+     */
+    public double clusteringStep() {
+        if (converged) return stress;
+        iteration++;
+        clustersDirty = true;
+        double lastStress = stress;
+        if (miniBatchSize > 0) {
+            double estimate = miniBatchStep();
+            // smoothed estimate, stop if it is not improving anymore:
+            smoothedStress = (smoothedStress < 0) ? estimate : 0.7 * smoothedStress + 0.3 * estimate;
+            if (bestStress < 0 || smoothedStress < bestStress) {
+                bestStress = smoothedStress;
+                noImprovement = 0;
+            } else noImprovement++;
+            if (noImprovement >= 3 || iteration >= maxIterations) {
+                converged = true;
+                assignAll();
+                stress = computeStress();
+            } else {
+                stress = estimate;
+            }
+        } else {
+            assignmentStep();
+            updateMeans();
+            stress = computeStress();
+            if (changed == 0 || iteration >= maxIterations
+                    || (lastStress > 0 && Math.abs(lastStress - stress) / lastStress < tolerance))
+                converged = true;
+        }
+        return stress;
+    }
+
+    /**
+     * Assigns the features to the nearest mean, skipping all features whose bounds show that the
+     * assignment cannot have changed.
+     */
+    private void assignmentStep() {
+        if (!assigned) {
+            assignAll();
+            changed = numFeatures;
+            return;
+        }
+        // distances in between the means and half the distance of each mean to its nearest other mean:
+        if (centerDistances == null) centerDistances = new float[k * k];
+        double[] halfDistance = new double[k];
+        Arrays.fill(halfDistance, Double.MAX_VALUE);
+        for (int c = 0; c < k; c++) {
+            for (int o = c + 1; o < k; o++) {
+                double d = distance(centers, c * dimensions, centers, o * dimensions, dimensions, Double.MAX_VALUE);
+                centerDistances[c * k + o] = centerDistances[o * k + c] = (float) d;
+                if (d / 2 < halfDistance[c]) halfDistance[c] = d / 2;
+                if (d / 2 < halfDistance[o]) halfDistance[o] = d / 2;
+            }
+        }
+        changed = 0;
+        for (int i = 0; i < numFeatures; i++) {
+            int a = assignment[i];
+            double bound = Math.max(halfDistance[a], lower[i]);
+            if (upper[i] <= bound) continue;
+            upper[i] = distance(data, i * dimensions, centers, a * dimensions, dimensions, Double.MAX_VALUE);
+            if (upper[i] <= bound) continue;
+            int best = nearest(i, a);
+            if (best != a) {
+                move(i, a, best);
+                changed++;
+            }
+        }
+    }
+
+    /**
+     * Assigns all features to their nearest mean and initializes the bounds and sums.
+     */
+    private void assignAll() {
+        if (upper == null) {
+            upper = new double[numFeatures];
+            lower = new double[numFeatures];
+        }
+        sums = new double[k * dimensions];
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < numFeatures; i++) {
+            int best = nearest(i);
+            assignment[i] = best;
+            add(i, best, 1);
+        }
+        assigned = true;
+    }
+
+    /**
+     * Finds the nearest mean for a feature and sets its upper and lower bound.
+     *
+     * @param feature the index of the feature.
+     * @return the index of the nearest mean.
+     */
+    private int nearest(int feature) {
+        int offset = feature * dimensions;
+        int best = 0;
+        double first = Double.MAX_VALUE, second = Double.MAX_VALUE;
+        for (int c = 0; c < k; c++) {
+            double d = distance(data, offset, centers, c * dimensions, dimensions, second);
+            if (d < first) {
+                second = first;
+                first = d;
+                best = c;
+            } else if (d < second) {
+                second = d;
+            }
+        }
+        upper[feature] = first;
+        lower[feature] = second;
+        return best;
+    }
+
+    /**
+     * Finds the nearest mean for a feature, whose upper bound is the exact distance to its current
+     * mean. Means, which are too far from the current mean to be one of the two nearest ones, are
+     * skipped based on the distances in between the means.
+     *
+     * @param feature the index of the feature.
+     * @param current the index of the current mean of the feature.
+     * @return the index of the nearest mean.
+     */
+    private int nearest(int feature, int current) {
+        int offset = feature * dimensions, row = current * k;
+        double u = upper[feature];
+        int best = current;
+        double first = u, second = Double.MAX_VALUE;
+        for (int c = 0; c < k; c++) {
+            // d(x, c) >= d(current, c) - d(x, current)
+            if (c == current || centerDistances[row + c] - u >= second) continue;
+            double d = distance(data, offset, centers, c * dimensions, dimensions, second);
+            if (d < first) {
+                second = first;
+                first = d;
+                best = c;
+            } else if (d < second) {
+                second = d;
+            }
+        }
+        upper[feature] = first;
+        lower[feature] = second;
+        return best;
+    }
+
+    private void move(int feature, int from, int to) {
+        add(feature, from, -1);
+        add(feature, to, 1);
+        assignment[feature] = to;
+    }
+
+    private void add(int feature, int cluster, int sign) {
+        int offset = feature * dimensions, sumOffset = cluster * dimensions;
+        for (int j = 0; j < dimensions; j++) {
+            sums[sumOffset + j] += sign * data[offset + j];
+        }
+        counts[cluster] += sign;
+    }
+
+    /**
+     * Computes the means from the sums and loosens the bounds by the distance the means moved.
+     * Means without members stay where they are.
+     */
+    private void updateMeans() {
+        double[] moved = new double[k];
+        float[] mean = new float[dimensions];
+        int farthest = 0;
+        double maxMoved = 0, secondMoved = 0;
+        for (int c = 0; c < k; c++) {
+            if (counts[c] == 0) continue;
+            int offset = c * dimensions;
+            for (int j = 0; j < dimensions; j++) {
+                mean[j] = (float) (sums[offset + j] / counts[c]);
+            }
+            moved[c] = distance(mean, 0, centers, offset, dimensions, Double.MAX_VALUE);
+            System.arraycopy(mean, 0, centers, offset, dimensions);
+            if (moved[c] > maxMoved) {
+                secondMoved = maxMoved;
+                maxMoved = moved[c];
+                farthest = c;
+            } else if (moved[c] > secondMoved) {
+                secondMoved = moved[c];
+            }
+        }
+        for (int i = 0; i < numFeatures; i++) {
+            int a = assignment[i];
+            upper[i] += moved[a];
+            lower[i] -= (a == farthest) ? secondMoved : maxMoved;
+        }
+    }
+
+    /**
+     * Computes the stress and sets the upper bounds to the exact distances.
+     */
+    private double computeStress() {
+        double result = 0;
+        for (int i = 0; i < numFeatures; i++) {
+            double d = distance(data, i * dimensions, centers, assignment[i] * dimensions, dimensions, Double.MAX_VALUE);
+            upper[i] = d;
+            result += d;
+        }
+        return result;
+    }
+
+    /**
+     * Updates the means from a number of random mini batches with a per mean learning rate.
+     *
+     * @return the stress estimated from the features of the mini batches.
+     */
+    private double miniBatchStep() {
+        int[] batch = new int[miniBatchSize];
+        int[] nearest = new int[miniBatchSize];
+        double sum = 0;
+        for (int b = 0; b < batchesPerStep; b++) {
+            for (int i = 0; i < miniBatchSize; i++) {
+                batch[i] = random.nextInt(numFeatures);
+                int offset = batch[i] * dimensions;
+                double min = Double.MAX_VALUE;
+                for (int c = 0; c < k; c++) {
+                    double d = distance(data, offset, centers, c * dimensions, dimensions, min);
+                    if (d < min) {
+                        min = d;
+                        nearest[i] = c;
+                    }
+                }
+                sum += min;
+            }
+            for (int i = 0; i < miniBatchSize; i++) {
+                int c = nearest[i];
+                counts[c]++;
+                float eta = 1f / counts[c];
+                int offset = batch[i] * dimensions, centerOffset = c * dimensions;
+                for (int j = 0; j < dimensions; j++) {
+                    centers[centerOffset + j] += eta * (data[offset + j] - centers[centerOffset + j]);
+                }
+            }
+        }
+        assigned = false;
+        return sum / (miniBatchSize * batchesPerStep) * numFeatures;
+    }
+
+    /**
+     * L1 distance, stops summing up as soon as the limit is exceeded (checked every 8 dimensions).
+     */
+    private static double distance(float[] a, int aOffset, float[] b, int bOffset, int length, double limit) {
+        float d = 0;
+        int i = 0;
+        for (; i + 8 <= length; i += 8) {
+            int x = aOffset + i, y = bOffset + i;
+            d += Math.abs(a[x] - b[y]) + Math.abs(a[x + 1] - b[y + 1])
+                    + Math.abs(a[x + 2] - b[y + 2]) + Math.abs(a[x + 3] - b[y + 3])
+                    + Math.abs(a[x + 4] - b[y + 4]) + Math.abs(a[x + 5] - b[y + 5])
+                    + Math.abs(a[x + 6] - b[y + 6]) + Math.abs(a[x + 7] - b[y + 7]);
+            if (d > limit) return d;
+        }
+        for (; i < length; i++) {
+            d += Math.abs(a[aOffset + i] - b[bOffset + i]);
+        }
+        return d;
+    }
+
+    public Cluster[] getClusters() {
+        if (!clustersDirty) return clusters;
+        if (!assigned) assignAll();
+        clusters = new Cluster[k];
+        for (int c = 0; c < k; c++) {
+            clusters[c] = (dimensions > 4 * 4 * 8) ? new Cluster(new float[dimensions]) : new Cluster();
+            System.arraycopy(centers, c * dimensions, clusters[c].mean, 0, dimensions);
+        }
+        for (int i = 0; i < numFeatures; i++) {
+            clusters[assignment[i]].members.add(i);
+        }
+        clustersDirty = false;
+        featureIndex = null;
+        return clusters;
+    }
+
+    public int getClusterOfFeature(Histogram f) {
+        getClusters();
+        return super.getClusterOfFeature(f);
+    }
+
+    /**
+     * @return true if the clustering has converged and further steps do not change anything.
+     */
+    public boolean isConverged() {
+        return converged;
+    }
+
+    /**
+     * @return the number of steps done since {@link #init()}.
+     */
+    public int getIteration() {
+        return iteration;
+    }
+
+    /**
+     * Sets the size of the mini batches, 0 (default) means that all features are used in each step.
+     *
+     * @param miniBatchSize the number of random features per batch.
+     */
+    public void setMiniBatchSize(int miniBatchSize) {
+        this.miniBatchSize = miniBatchSize;
+    }
+
+    /**
+     * Sets the number of mini batches used in one step, default is 10.
+     *
+     * @param batchesPerStep number of mini batches per step.
+     */
+    public void setBatchesPerStep(int batchesPerStep) {
+        this.batchesPerStep = batchesPerStep;
+    }
+
+    /**
+     * Sets the maximum number of steps, default is 100.
+     *
+     * @param maxIterations the maximum number of steps.
+     */
+    public void setMaxIterations(int maxIterations) {
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * Sets the relative change of the stress in between two steps, below which the clustering is
+     * considered converged. Default is 0.0001.
+     *
+     * @param tolerance the relative tolerance.
+     */
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Sets the seed of the random numbers used for selecting the initial means and the mini batches,
+     * so the same vocabulary is created for the same features.
+     *
+     * @param seed the seed of the random number generator.
+     */
+    public void setSeed(long seed) {
+        random = new Random(seed);
+    }
+}
@@ -65,6 +65,22 @@ public class KMeans {
     }
 
     public void init() {
+        initFeatures();
+        // find first clusters:
+        clusters = new Cluster[numClusters];
+        Set<Integer> medians = selectInitialMedians(numClusters);
+        Iterator<Integer> mediansIterator = medians.iterator();
+        for (int i = 0; i < clusters.length; i++) {
+            clusters[i] = new Cluster();
+            float[] descriptor = features.get(mediansIterator.next()).descriptor;
+            System.arraycopy(descriptor, 0, clusters[i].mean, 0, descriptor.length);
+        }
+    }
+
+    /**
+     * Collects the features of all images without NaNs in the list of features to be clustered.
+     */
+    protected void initFeatures() {
         // create a set of all features:
         features = new ArrayList<Histogram>(countAllFeatures);
         for (Image image : images) {
@@ -76,15 +92,6 @@ public class KMeans {
                 System.err.println("Image with no features: " + image.identifier);
             }
         }
-        // find first clusters:
-        clusters = new Cluster[numClusters];
-        Set<Integer> medians = selectInitialMedians(numClusters);
-        Iterator<Integer> mediansIterator = medians.iterator();
-        for (int i = 0; i < clusters.length; i++) {
-            clusters[i] = new Cluster();
-            float[] descriptor = features.get(mediansIterator.next()).descriptor;
-            System.arraycopy(descriptor, 0, clusters[i].mean, 0, descriptor.length);
-        }
     }
 
     private Set<Integer> selectInitialMedians(int numClusters) {
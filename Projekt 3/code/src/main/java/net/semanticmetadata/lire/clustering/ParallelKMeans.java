@@ -2,118 +2,154 @@ package net.semanticmetadata.lire.clustering;
 
 import net.semanticmetadata.lire.imageanalysis.Histogram;
 
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
- * Created by IntelliJ IDEA.
+ * K-means with the assignment of features to clusters, the computation of the means and the stress
+ * split over ranges of features in a ForkJoinPool. Each range sums up the features per cluster on
+ * its own, the partial sums are added up when the ranges are joined, so no locking is needed. The
+ * cluster of each feature is stored in an int[], the members of the clusters are only filled in
+ * when the clusters are requested.
  * User: mlux
  * Date: 12.10.11
  * Time: 12:15
- * To change this template use File | Settings | File Templates.
  */
 public class ParallelKMeans extends KMeans {
+    private static ForkJoinPool sharedPool = null;
+    private ForkJoinPool pool;
+    private int[] assignment = null;
+    private Partial partial = null;
+    private int threshold;
+    private boolean clustersDirty = false;
 
+    /**
+     * Creates a ParallelKMeans using a ForkJoinPool shared by all instances with one thread per
+     * available processor.
+     *
+     * @param numClusters the number of clusters.
+     */
     public ParallelKMeans(int numClusters) {
+        this(numClusters, getSharedPool());
+    }
+
+    /**
+     * Creates a ParallelKMeans running in the given pool, its parallelism determines how many threads
+     * are used.
+     *
+     * @param numClusters the number of clusters.
+     * @param pool        the pool to run the tasks in.
+     */
+    public ParallelKMeans(int numClusters, ForkJoinPool pool) {
         super(numClusters);
+        this.pool = pool;
+    }
+
+    private static synchronized ForkJoinPool getSharedPool() {
+        if (sharedPool == null) sharedPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        return sharedPool;
+    }
+
+    public void init() {
+        super.init();
+        assignment = new int[features.size()];
+        // about four ranges per thread to balance the load:
+        threshold = Math.max(256, features.size() / (pool.getParallelism() * 4));
+    }
+
+    /**
+     * Do one step and return the overall stress (squared error).
+     *
+     * @return the stress after the step.
+     */
+    public double clusteringStep() {
+        reOrganizeFeatures();
+        recomputeMeans();
+        clustersDirty = true;
+        return overallStress();
     }
 
     /**
      * Re-shuffle all features.
      */
     protected void reOrganizeFeatures() {
-        int numThreads = 4;
-        int step = features.size()/numThreads;
-        LinkedList<FeatureToClass> tasks = new LinkedList<FeatureToClass>();
-        LinkedList<Thread> threads = new LinkedList<Thread>();
-        for (int i = 0; i < numThreads; i++) {
-            FeatureToClass ftc;
-            if (i+1<numThreads)
-                ftc = new FeatureToClass(i*step, (i+1)*step);
-            else
-                ftc = new FeatureToClass(i*step, features.size());
-            Thread thread = new Thread(ftc);
-            thread.start();
-            tasks.add(ftc);
-            threads.add(thread);
-        }
-        for (Iterator<Thread> iterator = threads.iterator(); iterator.hasNext(); ) {
-            Thread next = iterator.next();
-            try {
-                next.join();
-            } catch (InterruptedException e) {
-                e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
+        partial = pool.invoke(new AssignTask(0, features.size()));
+    }
+
+    /**
+     * Computes the mean per cluster (averaged vector) from the sums of the last assignment. Clusters
+     * without members keep their mean.
+     */
+    protected void recomputeMeans() {
+        pool.invoke(new MeanTask(0, clusters.length));
+    }
+
+    private double overallStress() {
+        return pool.invoke(new StressTask(0, features.size()));
+    }
+
+    public Cluster[] getClusters() {
+        if (clustersDirty) {
+            for (Cluster cluster : clusters) {
+                cluster.members.clear();
             }
-        }
-        for (Iterator<FeatureToClass> iterator = tasks.iterator(); iterator.hasNext(); ) {
-            FeatureToClass next = iterator.next();
-            HashMap<Integer, Integer> results = next.getResults();
-            for (Iterator<Integer> threadIterator = results.keySet().iterator(); threadIterator.hasNext(); ) {
-                int key = threadIterator.next();
-                clusters[results.get(key)].members.add(key);
+            for (int i = 0; i < assignment.length; i++) {
+                clusters[assignment[i]].members.add(i);
             }
+            clustersDirty = false;
+            featureIndex = null;
         }
+        return clusters;
+    }
+
+    public int getClusterOfFeature(Histogram f) {
+        getClusters();
+        return super.getClusterOfFeature(f);
     }
 
     /**
-     * Computes the mean per cluster (averaged vector)
+     * Sums and counts of the features per cluster for a range of features.
      */
-//    private void recomputeMeans() {
-//        System.out.println("Running parallel part");
-//        for (int i = 0, clustersLength = clusters.length; i < clustersLength; i++) {
-//            int clusterIndex = i;
-//            exec.execute(new MyRunnable(clusterIndex));
-//        }
-//        try {
-//            if (!exec.isTerminated()) exec.awaitTermination(10, TimeUnit.MINUTES);
-//        } catch (InterruptedException e) {
-//            e.printStackTrace();
-//        }
-//    }
-
-    private synchronized Cluster getCluster(int index) {
-        return clusters[index];
-    }
+    private class Partial {
+        double[] sums;
+        int[] counts;
+        int length;
 
-    private void recomputeMeanOfCluster(int clusterIndex) {
-        int length = features.get(0).descriptor.length;
-        Cluster cluster = getCluster(clusterIndex);
-        float[] mean = cluster.mean;
-        for (int j = 0; j < length; j++) {
-            mean[j] = 0;
-            for (Iterator<Integer> iterator = cluster.members.iterator(); iterator.hasNext(); ) {
-                Integer member = iterator.next();
-                float v = features.get(member).descriptor[j];
-                mean[j] += v;
-            }
-            if (cluster.members.size() > 1)
-                mean[j] = mean[j] / cluster.members.size();
+        Partial() {
+            length = features.get(0).descriptor.length;
+            sums = new double[clusters.length * length];
+            counts = new int[clusters.length];
         }
-        double v = 0;
-        // add up to stress ...
-        for (Integer member : cluster.members) {
-            float tmpStress = 0;
-            for (int k = 0; k < length; k++) {
-                float f = Math.abs(mean[k] - features.get(member).descriptor[k]);
-                tmpStress += f;
+
+        void add(Partial p) {
+            for (int i = 0; i < sums.length; i++) {
+                sums[i] += p.sums[i];
+            }
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += p.counts[i];
             }
-            v += tmpStress;
         }
-        cluster.setStress(v);
     }
 
-    private class FeatureToClass implements Runnable {
-        HashMap<Integer, Integer> results;
+    private class AssignTask extends RecursiveTask<Partial> {
+        private static final long serialVersionUID = 1L;
         int start, end;
 
-        private FeatureToClass(int start, int end) {
+        private AssignTask(int start, int end) {
             this.start = start;
             this.end = end;
-            results = new HashMap<Integer, Integer>(end-start);
         }
 
-        public void run() {
+        protected Partial compute() {
+            if (end - start > threshold) {
+                int middle = (start + end) >>> 1;
+                AssignTask left = new AssignTask(start, middle);
+                left.fork();
+                Partial result = new AssignTask(middle, end).compute();
+                result.add(left.join());
+                return result;
+            }
+            Partial result = new Partial();
             for (int k = start; k < end; k++) {
                 Histogram f = features.get(k);
                 int best = 0;
@@ -125,12 +161,67 @@ public class ParallelKMeans extends KMeans {
                         minDistance = v;
                     }
                 }
-                results.put(k, best);
+                assignment[k] = best;
+                result.counts[best]++;
+                int offset = best * result.length;
+                for (int j = 0; j < result.length; j++) {
+                    result.sums[offset + j] += f.descriptor[j];
+                }
             }
+            return result;
+        }
+    }
+
+    private class MeanTask extends RecursiveTask<Void> {
+        private static final long serialVersionUID = 1L;
+        int start, end;
+
+        private MeanTask(int start, int end) {
+            this.start = start;
+            this.end = end;
         }
 
-        public HashMap<Integer, Integer> getResults() {
-            return results;
+        protected Void compute() {
+            if (end - start > 64) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new MeanTask(start, middle), new MeanTask(middle, end));
+                return null;
+            }
+            for (int i = start; i < end; i++) {
+                int count = partial.counts[i];
+                if (count == 0) continue;
+                float[] mean = clusters[i].mean;
+                int offset = i * partial.length;
+                for (int j = 0; j < partial.length; j++) {
+                    mean[j] = (float) (partial.sums[offset + j] / count);
+                }
+            }
+            return null;
+        }
+    }
+
+    private class StressTask extends RecursiveTask<Double> {
+        private static final long serialVersionUID = 1L;
+        int start, end;
+
+        private StressTask(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        protected Double compute() {
+            if (end - start > threshold) {
+                int middle = (start + end) >>> 1;
+                StressTask left = new StressTask(start, middle);
+                left.fork();
+                double right = new StressTask(middle, end).compute();
+                return right + left.join();
+            }
+            double v = 0;
+            for (int k = start; k < end; k++) {
+                v += clusters[assignment[k]].getDistance(features.get(k));
+            }
+            return v;
         }
     }
 }
@@ -0,0 +1,384 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+package net.semanticmetadata.lire.clustering;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A hierarchical k-means tree (vocabulary tree) over the means of a visual vocabulary for finding
+ * the nearest visual word of a local feature without comparing it to all means. The means are
+ * clustered recursively into branching groups until at most branching means are left in a node.
+ * The search descends to the nearest child and keeps the other children in a priority queue
+ * (best bin first, as in FLANN). It stops after maxChecks means have been compared, so maxChecks
+ * trades recall for speed: with maxChecks >= the number of means the result is exact.<br>
+ * Like {@link Cluster#getDistance(net.semanticmetadata.lire.imageanalysis.Histogram)} the L1
+ * distance is used. The tree can be written next to the cluster file, so the same tree is used
+ * for all documents.
+ * <br>Date: 18.10.2026
+ */
+public class VocabularyTree {
+    private static final int MAGIC = 0x4c495632;
+    // files written before the checksum of the clusters was stored:
+    private static final int MAGIC_WITHOUT_CHECKSUM = 0x4c495654;
+    private Cluster[] clusters;
+    private Node root;
+    private int branching, leafSize;
+
+    /**
+     * Builds a tree with a branching factor of 16 and up to 64 means per leaf.
+     *
+     * @param clusters the visual vocabulary.
+     */
+    public VocabularyTree(Cluster[] clusters) {
+        this(clusters, 16, 64, 0);
+    }
+
+    /**
+     * Builds a tree over the means of the given clusters.
+     *
+     * @param clusters  the visual vocabulary.
+     * @param branching the number of children of each inner node.
+     * @param leafSize  the maximum number of means in a leaf, at least branching.
+     * @param seed      the seed for the selection of the initial means, the same seed gives the same tree.
+     */
+    public VocabularyTree(Cluster[] clusters, int branching, int leafSize, long seed) {
+        this.clusters = clusters;
+        this.branching = branching;
+        this.leafSize = Math.max(leafSize, branching);
+        int[] members = new int[clusters.length];
+        for (int i = 0; i < members.length; i++) members[i] = i;
+        root = build(members, new Random(seed));
+    }
+
+    private VocabularyTree(Cluster[] clusters, int branching, int leafSize, Node root) {
+        this.clusters = clusters;
+        this.branching = branching;
+        this.leafSize = leafSize;
+        this.root = root;
+    }
+
+    private Node build(int[] members, Random random) {
+        Node node = new Node();
+        node.center = mean(members);
+        if (members.length <= leafSize) {
+            node.members = members;
+            return node;
+        }
+        int[] assignment = kMeans(members, random);
+        int[] counts = new int[branching];
+        for (int a : assignment) counts[a]++;
+        int nonEmpty = 0;
+        for (int c : counts) if (c > 0) nonEmpty++;
+        if (nonEmpty < 2) {
+            // all means are the same, split them in equal parts:
+            for (int i = 0; i < assignment.length; i++) assignment[i] = i % branching;
+            Arrays.fill(counts, 0);
+            for (int a : assignment) counts[a]++;
+            nonEmpty = Math.min(branching, members.length);
+        }
+        node.children = new Node[nonEmpty];
+        for (int c = 0, child = 0; c < branching; c++) {
+            if (counts[c] == 0) continue;
+            int[] childMembers = new int[counts[c]];
+            for (int i = 0, j = 0; i < members.length; i++) {
+                if (assignment[i] == c) childMembers[j++] = members[i];
+            }
+            node.children[child++] = build(childMembers, random);
+        }
+        return node;
+    }
+
+    /**
+     * A few iterations of k-means on the means of the given clusters.
+     *
+     * @return the group of each member.
+     */
+    private int[] kMeans(int[] members, Random random) {
+        int length = clusters[0].mean.length;
+        float[][] centers = new float[branching][];
+        int[] order = new int[members.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        for (int i = 0; i < branching; i++) {
+            int j = i + random.nextInt(order.length - i);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+            centers[i] = clusters[members[order[i]]].mean.clone();
+        }
+        int[] assignment = new int[members.length];
+        for (int iteration = 0; iteration < 10; iteration++) {
+            boolean changed = false;
+            for (int i = 0; i < members.length; i++) {
+                float[] mean = clusters[members[i]].mean;
+                int best = 0;
+                double min = Double.MAX_VALUE;
+                for (int c = 0; c < branching; c++) {
+                    double d = distance(mean, centers[c], length, min);
+                    if (d < min) {
+                        min = d;
+                        best = c;
+                    }
+                }
+                if (assignment[i] != best || iteration == 0) changed = true;
+                assignment[i] = best;
+            }
+            if (!changed) break;
+            for (int c = 0; c < branching; c++) {
+                int count = 0;
+                float[] center = new float[length];
+                for (int i = 0; i < members.length; i++) {
+                    if (assignment[i] != c) continue;
+                    float[] mean = clusters[members[i]].mean;
+                    for (int j = 0; j < length; j++) center[j] += mean[j];
+                    count++;
+                }
+                if (count == 0) continue;
+                for (int j = 0; j < length; j++) center[j] /= count;
+                centers[c] = center;
+            }
+        }
+        return assignment;
+    }
+
+    private float[] mean(int[] members) {
+        float[] result = new float[clusters[0].mean.length];
+        for (int member : members) {
+            float[] mean = clusters[member].mean;
+            for (int j = 0; j < result.length; j++) result[j] += mean[j];
+        }
+        for (int j = 0; j < result.length; j++) result[j] /= members.length;
+        return result;
+    }
+
+    /**
+     * Finds the cluster nearest to the given feature.
+     *
+     * @param descriptor the local feature.
+     * @param maxChecks  the maximum number of means compared to the feature, the search is exact if it is
+     *                   greater or equal to the number of clusters.
+     * @return the index of the nearest cluster found.
+     */
+    public int findNearest(float[] descriptor, int maxChecks) {
+        int length = descriptor.length;
+        if (maxChecks >= clusters.length) {
+            int best = 0;
+            double min = Double.MAX_VALUE;
+            for (int i = 0; i < clusters.length; i++) {
+                double d = distance(descriptor, clusters[i].mean, length, min);
+                if (d < min) {
+                    min = d;
+                    best = i;
+                }
+            }
+            return best;
+        }
+        BranchQueue queue = new BranchQueue();
+        queue.add(root, 0);
+        int best = 0, checks = 0;
+        double min = Double.MAX_VALUE;
+        while (queue.size > 0 && checks < maxChecks) {
+            Node node = queue.poll();
+            // descend to the nearest leaf, remembering the other children:
+            while (node.children != null) {
+                Node nearest = null;
+                double nearestDistance = Double.MAX_VALUE;
+                for (Node child : node.children) {
+                    double d = distance(descriptor, child.center, length, Double.MAX_VALUE);
+                    if (d < nearestDistance) {
+                        if (nearest != null) queue.add(nearest, nearestDistance);
+                        nearest = child;
+                        nearestDistance = d;
+                    } else queue.add(child, d);
+                }
+                node = nearest;
+            }
+            for (int member : node.members) {
+                double d = distance(descriptor, clusters[member].mean, length, min);
+                if (d < min) {
+                    min = d;
+                    best = member;
+                }
+            }
+            checks += node.members.length;
+        }
+        return best;
+    }
+
+    /**
+     * L1 distance over the first length dimensions, stops summing up as soon as the limit is exceeded.
+     */
+    private static double distance(float[] a, float[] b, int length, double limit) {
+        float d = 0;
+        int i = 0;
+        for (; i + 8 <= length; i += 8) {
+            d += Math.abs(a[i] - b[i]) + Math.abs(a[i + 1] - b[i + 1])
+                    + Math.abs(a[i + 2] - b[i + 2]) + Math.abs(a[i + 3] - b[i + 3])
+                    + Math.abs(a[i + 4] - b[i + 4]) + Math.abs(a[i + 5] - b[i + 5])
+                    + Math.abs(a[i + 6] - b[i + 6]) + Math.abs(a[i + 7] - b[i + 7]);
+            if (d > limit) return d;
+        }
+        for (; i < length; i++) {
+            d += Math.abs(a[i] - b[i]);
+        }
+        return d;
+    }
+
+    public Cluster[] getClusters() {
+        return clusters;
+    }
+
+    /**
+     * Writes the tree to a file, the clusters are written with {@link Cluster#writeClusters(Cluster[], String)}.
+     * The header holds the {@link Cluster#checksum(Cluster[])} of the clusters.
+     *
+     * @param file the file to write to.
+     * @throws IOException
+     */
+    public void write(String file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(clusters.length);
+            out.writeInt(clusters[0].mean.length);
+            out.writeInt(branching);
+            out.writeInt(leafSize);
+            out.writeLong(Cluster.checksum(clusters));
+            write(root, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void write(Node node, DataOutputStream out) throws IOException {
+        for (float v : node.center) out.writeFloat(v);
+        if (node.children == null) {
+            out.writeInt(-node.members.length);
+            for (int member : node.members) out.writeInt(member);
+        } else {
+            out.writeInt(node.children.length);
+            for (Node child : node.children) write(child, out);
+        }
+    }
+
+    /**
+     * Reads a tree written with {@link #write(String)} for the given clusters.
+     *
+     * @param file     the file to read from.
+     * @param clusters the clusters the tree has been built for.
+     * @return the tree, null if it has been built for other clusters and has to be built anew.
+     * @throws IOException if the file is not a vocabulary tree.
+     */
+    public static VocabularyTree read(String file, Cluster[] clusters) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            int magic = in.readInt();
+            if (magic == MAGIC_WITHOUT_CHECKSUM) return null;
+            if (magic != MAGIC) throw new IOException("Not a vocabulary tree: " + file);
+            int numClusters = in.readInt(), length = in.readInt(), branching = in.readInt(), leafSize = in.readInt();
+            // the number of clusters is usually fixed, so the means have to be compared:
+            if (numClusters != clusters.length || length != clusters[0].mean.length || in.readLong() != Cluster.checksum(clusters))
+                return null;
+            return new VocabularyTree(clusters, branching, leafSize, read(in, length));
+        } finally {
+            in.close();
+        }
+    }
+
+    private static Node read(DataInputStream in, int length) throws IOException {
+        Node node = new Node();
+        node.center = new float[length];
+        for (int i = 0; i < length; i++) node.center[i] = in.readFloat();
+        int count = in.readInt();
+        if (count <= 0) {
+            node.members = new int[-count];
+            for (int i = 0; i < node.members.length; i++) node.members[i] = in.readInt();
+        } else {
+            node.children = new Node[count];
+            for (int i = 0; i < count; i++) node.children[i] = read(in, length);
+        }
+        return node;
+    }
+
+    private static class Node {
+        float[] center;
+        Node[] children = null;
+        int[] members = null;
+    }
+
+    /**
+     * Binary min heap of the branches not taken in the search.
+     */
+    private static class BranchQueue {
+        Node[] nodes = new Node[64];
+        double[] distances = new double[64];
+        int size = 0;
+
+        void add(Node node, double distance) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                distances = Arrays.copyOf(distances, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (distances[parent] <= distance) break;
+                nodes[i] = nodes[parent];
+                distances[i] = distances[parent];
+                i = parent;
+            }
+            nodes[i] = node;
+            distances[i] = distance;
+        }
+
+        Node poll() {
+            Node result = nodes[0];
+            Node last = nodes[--size];
+            double distance = distances[size];
+            nodes[size] = null;
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) break;
+                if (child + 1 < size && distances[child + 1] < distances[child]) child++;
+                if (distance <= distances[child]) break;
+                nodes[i] = nodes[child];
+                distances[i] = distances[child];
+                i = child;
+            }
+            if (size > 0) {
+                nodes[i] = last;
+                distances[i] = distance;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+package net.semanticmetadata.lire.filter;
+
+import net.semanticmetadata.lire.DocumentBuilder;
+import net.semanticmetadata.lire.ImageSearchHits;
+import net.semanticmetadata.lire.SearchHitsFilter;
+import net.semanticmetadata.lire.imageanalysis.sift.*;
+import net.semanticmetadata.lire.impl.SimpleImageSearchHits;
+import net.semanticmetadata.lire.impl.SimpleResult;
+import org.apache.lucene.document.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Re-ranks the first hits of a search, e.g. a bag of visual words search, by geometric verification
+ * of their SIFT features. The features of each hit are matched to the features of the query with a
+ * {@link KDTree} and Lowe's ratio test, then RANSAC estimates a {@link TRModel2D} (rotation and
+ * translation) or a {@link TModel2D} (translation only) from the matches. Hits with at least
+ * minInliers matches consistent with the model are moved to the top, ordered by their number of
+ * inliers, all other hits follow in their original order.
+ * <p/>
+ * The hits are verified in parallel in a ForkJoinPool. Each query has a time budget: hits not
+ * verified until it runs out keep their original rank, so the filter does not take much longer than
+ * the budget. The distance of a verified hit is 1 / (1 + inliers). All other hits keep the order
+ * of their original scores, which are mapped to distances above the ones of the verified hits.
+ * <br>Date: 18.10.2026
+ */
+public class GeometricVerificationFilter implements SearchHitsFilter {
+    /**
+     * Transformation between the query and the hits.
+     */
+    public enum Transformation {
+        /**
+         * Translation only, see {@link TModel2D}.
+         */
+        Translation,
+        /**
+         * Rotation and translation, see {@link TRModel2D}.
+         */
+        Rigid
+    }
+
+    private static ForkJoinPool sharedPool = null;
+    private Logger logger = Logger.getLogger(getClass().getName());
+    private ForkJoinPool pool;
+    private String fieldName = DocumentBuilder.FIELD_NAME_SIFT;
+    private Transformation transformation = Transformation.Rigid;
+    private int numVerified = 20;
+    private long timeBudget = 500;
+    private float ratio = 0.8f;
+    private int maxChecks = 200;
+    private float epsilon = 8f;
+    private int minInliers = 6;
+    private int maxIterations = 1000;
+
+    /**
+     * Creates a filter verifying the SIFT features of the first 20 hits with a rigid transformation
+     * within 500 ms per query, using a ForkJoinPool shared by all instances with one thread per
+     * available processor.
+     */
+    public GeometricVerificationFilter() {
+        this(getSharedPool());
+    }
+
+    /**
+     * @param pool the pool to run the verification in.
+     */
+    public GeometricVerificationFilter(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    private static synchronized ForkJoinPool getSharedPool() {
+        if (sharedPool == null) sharedPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        return sharedPool;
+    }
+
+    /**
+     * @param numVerified the number of hits from the top of the list to be verified, default is 20.
+     */
+    public void setNumVerified(int numVerified) {
+        this.numVerified = numVerified;
+    }
+
+    /**
+     * @param timeBudget the time in ms for verifying the hits of one query, default is 500.
+     */
+    public void setTimeBudget(long timeBudget) {
+        this.timeBudget = timeBudget;
+    }
+
+    /**
+     * @param transformation the transformation estimated with RANSAC, default is {@link Transformation#Rigid}.
+     */
+    public void setTransformation(Transformation transformation) {
+        this.transformation = transformation;
+    }
+
+    /**
+     * @param ratio a feature matches its nearest neighbour if it is nearer than ratio times the
+     *              distance to the second nearest neighbour, default is 0.8.
+     */
+    public void setRatio(float ratio) {
+        this.ratio = ratio;
+    }
+
+    /**
+     * @param maxChecks the number of query features compared per feature of a hit, default is 200.
+     */
+    public void setMaxChecks(int maxChecks) {
+        this.maxChecks = maxChecks;
+    }
+
+    /**
+     * @param epsilon the maximum distance in pixels of an inlier from its position given by the model, default is 8.
+     */
+    public void setEpsilon(float epsilon) {
+        this.epsilon = epsilon;
+    }
+
+    /**
+     * @param minInliers the number of inliers needed to move a hit to the top, default is 6.
+     */
+    public void setMinInliers(int minInliers) {
+        this.minInliers = minInliers;
+    }
+
+    public ImageSearchHits filter(ImageSearchHits results, Document query) {
+        long deadline = System.nanoTime() + timeBudget * 1000000L;
+        List<Feature> queryFeatures = getFeatures(query);
+        if (queryFeatures.isEmpty()) {
+            logger.warning("The query document has no features in field " + fieldName + ", the results are not re-ranked.");
+            return results;
+        }
+        KDTree tree = new KDTree(queryFeatures);
+        int n = Math.min(numVerified, results.length());
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>(n);
+        for (int i = 0; i < n; i++) {
+            tasks.add(new Verification(queryFeatures, tree, results.doc(i), deadline, i));
+        }
+        int[] inliers = new int[n];
+        List<Future<Integer>> futures = pool.invokeAll(tasks);
+        for (int i = 0; i < n; i++) {
+            try {
+                inliers[i] = futures.get(i).get();
+            } catch (InterruptedException e) {
+                // stop verifying, the remaining hits keep their original rank:
+                Thread.currentThread().interrupt();
+                for (int j = i; j < n; j++) {
+                    futures.get(j).cancel(true);
+                    inliers[j] = -1;
+                }
+                break;
+            } catch (ExecutionException e) {
+                logger.warning("Could not verify hit " + i + ": " + e.getCause());
+                inliers[i] = -1;
+            }
+        }
+        // verified hits by descending number of inliers, stable for equal numbers:
+        ArrayList<SimpleResult> reranked = new ArrayList<SimpleResult>(results.length());
+        boolean[] taken = new boolean[n];
+        while (true) {
+            int best = -1;
+            for (int i = 0; i < n; i++) {
+                if (!taken[i] && inliers[i] >= minInliers && (best < 0 || inliers[i] > inliers[best])) best = i;
+            }
+            if (best < 0) break;
+            taken[best] = true;
+            reranked.add(new SimpleResult(1f / (1 + inliers[best]), results.doc(best)));
+        }
+        if (reranked.isEmpty()) return results;
+        // the other hits keep their scores, mapped to distances in (1 / (1 + minInliers), 1]:
+        float minScore = Float.MAX_VALUE, maxScore = -Float.MAX_VALUE;
+        for (int i = 0; i < results.length(); i++) {
+            if (i < n && taken[i]) continue;
+            minScore = Math.min(minScore, results.score(i));
+            maxScore = Math.max(maxScore, results.score(i));
+        }
+        float maxVerifiedDistance = 1f / (1 + Math.max(minInliers, 0));
+        for (int i = 0; i < results.length(); i++) {
+            if (i < n && taken[i]) continue;
+            float d = (1f + maxScore - results.score(i)) / (1f + maxScore - minScore);
+            reranked.add(new SimpleResult(maxVerifiedDistance + (1f - maxVerifiedDistance) * d, results.doc(i)));
+        }
+        return new SimpleImageSearchHits(reranked, 1f);
+    }
+
+    private List<Feature> getFeatures(Document doc) {
+        byte[][] values = doc.getBinaryValues(fieldName);
+        ArrayList<Feature> features = new ArrayList<Feature>(values.length);
+        for (byte[] value : values) {
+            Feature f = new Feature();
+            f.setByteArrayRepresentation(value);
+            features.add(f);
+        }
+        return features;
+    }
+
+    private Model createModel() {
+        return transformation == Transformation.Rigid ? new TRModel2D() : new TModel2D();
+    }
+
+    private int getMinSetSize() {
+        return transformation == Transformation.Rigid ? TRModel2D.MIN_SET_SIZE : TModel2D.MIN_SET_SIZE;
+    }
+
+    /**
+     * Matches the features of one hit and counts the inliers, -1 if the time budget ran out before.
+     */
+    private class Verification implements Callable<Integer> {
+        private List<Feature> queryFeatures;
+        private KDTree tree;
+        private Document hit;
+        private long deadline;
+        private int rank;
+
+        Verification(List<Feature> queryFeatures, KDTree tree, Document hit, long deadline, int rank) {
+            this.queryFeatures = queryFeatures;
+            this.tree = tree;
+            this.hit = hit;
+            this.deadline = deadline;
+            this.rank = rank;
+        }
+
+        public Integer call() {
+            if (System.nanoTime() > deadline) return -1;
+            List<Feature> features = getFeatures(hit);
+            // the best match per query feature passing the ratio test:
+            Feature[] matches = new Feature[queryFeatures.size()];
+            float[] matchDistances = new float[queryFeatures.size()];
+            int[] nearest = new int[2];
+            float[] distances = new float[2];
+            float squaredRatio = ratio * ratio;
+            for (Feature f : features) {
+                tree.findTwoNearest(f.descriptor, maxChecks, nearest, distances);
+                if (nearest[0] < 0 || distances[0] >= squaredRatio * distances[1]) continue;
+                if (matches[nearest[0]] == null || distances[0] < matchDistances[nearest[0]]) {
+                    matches[nearest[0]] = f;
+                    matchDistances[nearest[0]] = distances[0];
+                }
+            }
+            ArrayList<PointMatch> candidates = new ArrayList<PointMatch>();
+            for (int i = 0; i < matches.length; i++) {
+                if (matches[i] == null) continue;
+                candidates.add(new PointMatch(new Point(queryFeatures.get(i).location.clone()), new Point(matches[i].location.clone())));
+            }
+            if (candidates.size() < Math.max(minInliers, getMinSetSize())) return 0;
+            return ransac(candidates, new Random(rank));
+        }
+
+        /**
+         * @return the highest number of inliers found.
+         */
+        private int ransac(ArrayList<PointMatch> candidates, Random random) {
+            int minSetSize = getMinSetSize();
+            PointMatch[] sample = new PointMatch[minSetSize];
+            ArrayList<PointMatch> inliers = new ArrayList<PointMatch>(candidates.size());
+            int best = 0;
+            int iterations = maxIterations;
+            for (int i = 0; i < iterations; i++) {
+                if (System.nanoTime() > deadline) break;
+                for (int j = 0; j < minSetSize; j++) {
+                    boolean duplicate;
+                    do {
+                        sample[j] = candidates.get(random.nextInt(candidates.size()));
+                        duplicate = false;
+                        for (int k = 0; k < j; k++) {
+                            if (sample[k] == sample[j]) duplicate = true;
+                        }
+                    } while (duplicate);
+                }
+                Model model = createModel();
+                if (!model.fit(sample)) continue;
+                model.test(candidates, inliers, epsilon, 0);
+                if (inliers.size() > best) {
+                    best = inliers.size();
+                    if (best == candidates.size()) break;
+                    // enough iterations to draw a sample of inliers only with a probability of 99%:
+                    double p = Math.pow((double) best / candidates.size(), minSetSize);
+                    iterations = (int) Math.min(maxIterations, Math.ceil(Math.log(0.01) / Math.log(1 - p)));
+                }
+            }
+            return best;
+        }
+    }
+}
@@ -31,6 +31,8 @@
 package net.semanticmetadata.lire.imageanalysis;
 
 import net.semanticmetadata.lire.imageanalysis.cedd.*;
+import net.semanticmetadata.lire.imageanalysis.utils.PixelSource;
+import net.semanticmetadata.lire.utils.MetricsUtils;
 
 import java.awt.image.BufferedImage;
 import java.util.StringTokenizer;
@@ -44,7 +46,7 @@ import java.util.StringTokenizer;
  *
  * @author: Savvas A. Chatzichristofis, savvash@gmail.com
  */
-public class CEDD implements LireFeature {
+public class CEDD implements CompactFeature, ByteArrayDistance, PixelSourceFeature {
     public double T0;
     public double T1;
     public double T2;
@@ -70,6 +72,10 @@ public class CEDD implements LireFeature {
     // Apply filter
     // signature changed by mlux
     public void extract(BufferedImage image) {
+        extract(new PixelSource(image));
+    }
+
+    public void extract(PixelSource source) {
         Fuzzy10Bin Fuzzy10 = new Fuzzy10Bin(false);
         Fuzzy24Bin Fuzzy24 = new Fuzzy24Bin(false);
         RGB2HSV HSVConverter = new RGB2HSV();
@@ -79,8 +85,8 @@ public class CEDD implements LireFeature {
         double[] Fuzzy24BinResultTable = new double[24];
         double[] CEDD = new double[144];
 
-        int width = image.getWidth();
-        int height = image.getHeight();
+        int width = source.getWidth();
+        int height = source.getHeight();
 
 
         double[][] ImageGrid = new double[width][height];
@@ -111,14 +117,15 @@ public class CEDD implements LireFeature {
             CEDD[i] = 0;
         }
 
+        int[] rgb = source.getRGB();
+        int[] gray = source.getGray();
         for (int x = 0; x < width; x++) {
             for (int y = 0; y < height; y++) {
-                int pixel = image.getRGB(x, y);
+                int pixel = rgb[y * width + x];
                 ImageGridRed[x][y] = (pixel >> 16) & 0xff;
                 ImageGridGreen[x][y] = (pixel >> 8) & 0xff;
                 ImageGridBlue[x][y] = (pixel) & 0xff;
-                int mean = (int) (0.114 * ImageGridBlue[x][y] + 0.587 * ImageGridGreen[x][y] + 0.299 * ImageGridRed[x][y]);
-                ImageGrid[x][y] = mean;
+                ImageGrid[x][y] = gray[y * width + x];
             }
         }
 
@@ -331,6 +338,23 @@ public class CEDD implements LireFeature {
 
     }
 
+    /**
+     * Tanimoto coefficient computed directly on the byte[] representation of the other feature.
+     *
+     * @see #getDistance(LireFeature)
+     * @see #getByteArrayRepresentation()
+     */
+    public float getDistance(byte[] in, int offset, int length) {
+        if (FeatureCodec.isEncoded(in, offset, length)) {
+            if (FeatureCodec.getHistogramLength(in, offset) != data.length)
+                throw new UnsupportedOperationException("Histogram lengths or color spaces do not match");
+            return (float) FeatureCodec.tanimoto(in, offset, data);
+        }
+        if (length != data.length)
+            throw new UnsupportedOperationException("Histogram lengths or color spaces do not match");
+        return (float) MetricsUtils.tanimoto(in, offset, data);
+    }
+
     private double scalarMult(double[] a, double[] b) {
         double sum = 0.0;
         for (int i = 0; i < a.length; i++) {
@@ -386,12 +410,26 @@ public class CEDD implements LireFeature {
      * @see net.semanticmetadata.lire.imageanalysis.CEDD#getByteArrayRepresentation
      */
     public void setByteArrayRepresentation(byte[] in) {
+        if (FeatureCodec.isEncoded(in, 0, in.length)) {
+            data = FeatureCodec.decodeHistogram(in, 0);
+            return;
+        }
         data = new double[in.length];
         for (int i = 0; i < data.length; i++) {
             data[i] = in[i];
         }
     }
 
+    /**
+     * The histogram packed with 3 bits per bin.
+     *
+     * @see FeatureCodec#encodeHistogram(double[])
+     */
+    public byte[] getCompactByteArrayRepresentation() {
+        byte[] result = FeatureCodec.encodeHistogram(data);
+        return (result != null) ? result : getByteArrayRepresentation();
+    }
+
     public double[] getDoubleHistogram() {
         return data;
     }
@@ -39,7 +39,7 @@ import net.semanticmetadata.lire.utils.SerializationUtils;
  *
  * @author Mathias Lux, mathias@juggle.at
  */
-public class ColorLayout extends ColorLayoutImpl implements LireFeature {
+public class ColorLayout extends ColorLayoutImpl implements CompactFeature, ByteArrayDistance, PixelSourceFeature {
 
     /*
         public String getStringRepresentation() {
@@ -108,6 +108,19 @@ public class ColorLayout extends ColorLayoutImpl implements LireFeature {
      * @see net.semanticmetadata.lire.imageanalysis.CEDD#getByteArrayRepresentation
      */
     public void setByteArrayRepresentation(byte[] in) {
+        if (FeatureCodec.isEncoded(in, 0, in.length)) {
+            FeatureCodec.checkVersion(in, 0);
+            int pos = FeatureCodec.HEADER_LENGTH;
+            numYCoeff = in[pos++] & 0xff;
+            numCCoeff = in[pos++] & 0xff;
+            YCoeff = new int[numYCoeff];
+            CbCoeff = new int[numCCoeff];
+            CrCoeff = new int[numCCoeff];
+            for (int i = 0; i < numYCoeff; i++) YCoeff[i] = in[pos++] & 0xff;
+            for (int i = 0; i < numCCoeff; i++) CbCoeff[i] = in[pos++] & 0xff;
+            for (int i = 0; i < numCCoeff; i++) CrCoeff[i] = in[pos++] & 0xff;
+            return;
+        }
         int[] data = SerializationUtils.toIntArray(in);
         numYCoeff = data[0];
         numCCoeff = data[1];
@@ -119,6 +132,32 @@ public class ColorLayout extends ColorLayoutImpl implements LireFeature {
         System.arraycopy(data, 2 + numYCoeff + numCCoeff, CrCoeff, 0, numCCoeff);
     }
 
+    /**
+     * The number of coefficients and the coefficients as one byte each.
+     *
+     * @see FeatureCodec
+     */
+    public byte[] getCompactByteArrayRepresentation() {
+        if (numYCoeff > 255 || numCCoeff > 255 || !fitsByte(YCoeff, numYCoeff)
+                || !fitsByte(CbCoeff, numCCoeff) || !fitsByte(CrCoeff, numCCoeff))
+            return getByteArrayRepresentation();
+        byte[] result = FeatureCodec.createEncoded(2 + numYCoeff + 2 * numCCoeff);
+        int pos = FeatureCodec.HEADER_LENGTH;
+        result[pos++] = (byte) numYCoeff;
+        result[pos++] = (byte) numCCoeff;
+        for (int i = 0; i < numYCoeff; i++) result[pos++] = (byte) YCoeff[i];
+        for (int i = 0; i < numCCoeff; i++) result[pos++] = (byte) CbCoeff[i];
+        for (int i = 0; i < numCCoeff; i++) result[pos++] = (byte) CrCoeff[i];
+        return result;
+    }
+
+    private static boolean fitsByte(int[] coeffs, int length) {
+        for (int i = 0; i < length; i++) {
+            if (coeffs[i] < 0 || coeffs[i] > 255) return false;
+        }
+        return true;
+    }
+
     public double[] getDoubleHistogram() {
         double[] result = new double[numYCoeff + numCCoeff * 2];
         for (int i = 0; i < numYCoeff; i++) {
@@ -143,4 +182,40 @@ public class ColorLayout extends ColorLayoutImpl implements LireFeature {
         ColorLayoutImpl cl = (ColorLayoutImpl) descriptor;
         return (float) ColorLayoutImpl.getSimilarity(YCoeff, CbCoeff, CrCoeff, cl.YCoeff, cl.CbCoeff, cl.CrCoeff);
     }
+
+    public float getDistance(byte[] in, int offset, int length) {
+        if (FeatureCodec.isEncoded(in, offset, length))
+            return (float) getCompactSimilarity(in, offset);
+        return (float) ColorLayoutImpl.getSimilarity(YCoeff, CbCoeff, CrCoeff, in, offset);
+    }
+
+    /**
+     * Same as {@link ColorLayoutImpl#getSimilarity(int[], int[], int[], byte[], int)} for the compact format.
+     */
+    private double getCompactSimilarity(byte[] in, int offset) {
+        FeatureCodec.checkVersion(in, offset);
+        int numYCoeff2 = in[offset + FeatureCodec.HEADER_LENGTH] & 0xff;
+        int CCoeff2 = in[offset + FeatureCodec.HEADER_LENGTH + 1] & 0xff;
+        int YCoeff = Math.min(this.YCoeff.length, numYCoeff2);
+        int CCoeff = Math.min(CbCoeff.length, CCoeff2);
+        // positions of the Y, Cb and Cr coefficients of the second descriptor
+        int y2 = offset + FeatureCodec.HEADER_LENGTH + 2, cb2 = y2 + numYCoeff2, cr2 = cb2 + CCoeff2;
+
+        int j;
+        int sum0 = 0, sum1 = 0, sum2 = 0;
+        int diff;
+        for (j = 0; j < YCoeff; j++) {
+            diff = (this.YCoeff[j] - (in[y2 + j] & 0xff));
+            sum0 += (weightMatrix[0][j] * diff * diff);
+        }
+        for (j = 0; j < CCoeff; j++) {
+            diff = (CbCoeff[j] - (in[cb2 + j] & 0xff));
+            sum1 += (weightMatrix[1][j] * diff * diff);
+        }
+        for (j = 0; j < CCoeff; j++) {
+            diff = (CrCoeff[j] - (in[cr2 + j] & 0xff));
+            sum2 += (weightMatrix[2][j] * diff * diff);
+        }
+        return Math.sqrt(sum0 * 1.0) + Math.sqrt(sum1 * 1.0) + Math.sqrt(sum2 * 1.0);
+    }
 }
@@ -41,16 +41,48 @@ import net.semanticmetadata.lire.utils.SerializationUtils;
  *
  * @author Mathias Lux, mathias@juggle.at
  */
-public class EdgeHistogram extends EdgeHistogramImplementation implements LireFeature {
+public class EdgeHistogram extends EdgeHistogramImplementation implements CompactFeature, ByteArrayDistance, PixelSourceFeature {
     public byte[] getByteArrayRepresentation() {
         return SerializationUtils.toByteArray(edgeHistogram);
     }
 
     public void setByteArrayRepresentation(byte[] in) {
-        edgeHistogram = SerializationUtils.toIntArray(in);
+        if (FeatureCodec.isEncoded(in, 0, in.length)) {
+            FeatureCodec.checkVersion(in, 0);
+            edgeHistogram = new int[in.length - FeatureCodec.HEADER_LENGTH];
+            for (int i = 0; i < edgeHistogram.length; i++) {
+                edgeHistogram[i] = in[FeatureCodec.HEADER_LENGTH + i] & 0xff;
+            }
+        } else {
+            edgeHistogram = SerializationUtils.toIntArray(in);
+        }
+    }
+
+    /**
+     * The bins as one byte each.
+     *
+     * @see FeatureCodec
+     */
+    public byte[] getCompactByteArrayRepresentation() {
+        for (int bin : edgeHistogram) {
+            if (bin < 0 || bin > 255) return getByteArrayRepresentation();
+        }
+        byte[] result = FeatureCodec.createEncoded(edgeHistogram.length);
+        for (int i = 0; i < edgeHistogram.length; i++) {
+            result[FeatureCodec.HEADER_LENGTH + i] = (byte) edgeHistogram[i];
+        }
+        return result;
     }
 
     public double[] getDoubleHistogram() {
         return ConversionUtils.toDouble(edgeHistogram);
     }
+
+    public float getDistance(byte[] in, int offset, int length) {
+        if (FeatureCodec.isEncoded(in, offset, length)) {
+            FeatureCodec.checkVersion(in, offset);
+            return calculateCompactDistance(in, offset + FeatureCodec.HEADER_LENGTH, edgeHistogram);
+        }
+        return calculateDistance(in, offset, edgeHistogram);
+    }
 }
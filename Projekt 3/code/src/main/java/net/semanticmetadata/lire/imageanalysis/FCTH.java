@@ -30,6 +30,8 @@
 package net.semanticmetadata.lire.imageanalysis;
 
 import net.semanticmetadata.lire.imageanalysis.fcth.*;
+import net.semanticmetadata.lire.imageanalysis.utils.PixelSource;
+import net.semanticmetadata.lire.utils.MetricsUtils;
 import net.semanticmetadata.lire.utils.SerializationUtils;
 
 import java.awt.image.BufferedImage;
@@ -45,7 +47,7 @@ import java.util.StringTokenizer;
  * @author: Savvas A. Chatzichristofis, savvash@gmail.com
  */
 
-public class FCTH implements LireFeature {
+public class FCTH implements CompactFeature, ByteArrayDistance, PixelSourceFeature {
     protected double[] histogram = null;
 
     public boolean Compact = false;
@@ -58,6 +60,10 @@ public class FCTH implements LireFeature {
 
     // Apply filter
     public double[] Apply(BufferedImage image) {
+        return Apply(new PixelSource(image));
+    }
+
+    public double[] Apply(PixelSource source) {
         Fuzzy10Bin Fuzzy10 = new Fuzzy10Bin(false);
         Fuzzy24Bin Fuzzy24 = new Fuzzy24Bin(false);
         FuzzyFCTHpart FuccyFCTH = new FuzzyFCTHpart();
@@ -69,8 +75,8 @@ public class FCTH implements LireFeature {
 
 
         int Method = 2;
-        int width = image.getWidth();
-        int height = image.getHeight();
+        int width = source.getWidth();
+        int height = source.getHeight();
 
 
         for (int R = 0; R < 192; R++) {
@@ -90,15 +96,15 @@ public class FCTH implements LireFeature {
         int[][] ImageGridGreen = new int[width][height];
         int[][] ImageGridBlue = new int[width][height];
 
+        int[] rgb = source.getRGB();
+        int[] gray = source.getGray();
         for (int x = 0; x < width; x++) {
             for (int y = 0; y < height; y++) {
-                int pixel = image.getRGB(x, y);
+                int pixel = rgb[y * width + x];
                 ImageGridRed[x][y] = (pixel >> 16) & 0xff;
                 ImageGridGreen[x][y] = (pixel >> 8) & 0xff;
                 ImageGridBlue[x][y] = (pixel) & 0xff;
-
-                int mean = (int) (0.114 * ImageGridBlue[x][y] + 0.587 * ImageGridGreen[x][y] + 0.299 * ImageGridRed[x][y]);
-                ImageGrid[x][y] = mean;
+                ImageGrid[x][y] = gray[y * width + x];
             }
         }
 
@@ -341,12 +347,29 @@ public class FCTH implements LireFeature {
         histogram = Apply(bimg);
     }
 
+    public void extract(PixelSource source) {
+        histogram = Apply(source);
+    }
+
     public byte[] getByteArrayRepresentation() {
         return SerializationUtils.toByteArray(histogram);
     }
 
     public void setByteArrayRepresentation(byte[] in) {
-        histogram = SerializationUtils.toDoubleArray(in);
+        if (FeatureCodec.isEncoded(in, 0, in.length))
+            histogram = FeatureCodec.decodeHistogram(in, 0);
+        else
+            histogram = SerializationUtils.toDoubleArray(in);
+    }
+
+    /**
+     * The histogram packed with 3 bits per bin.
+     *
+     * @see FeatureCodec#encodeHistogram(double[])
+     */
+    public byte[] getCompactByteArrayRepresentation() {
+        byte[] result = FeatureCodec.encodeHistogram(histogram);
+        return (result != null) ? result : getByteArrayRepresentation();
     }
 
     public double[] getDoubleHistogram() {
@@ -395,6 +418,23 @@ public class FCTH implements LireFeature {
 
     }
 
+    /**
+     * Tanimoto coefficient computed directly on the byte[] representation of the other feature.
+     *
+     * @see #getDistance(LireFeature)
+     * @see #getByteArrayRepresentation()
+     */
+    public float getDistance(byte[] in, int offset, int length) {
+        if (FeatureCodec.isEncoded(in, offset, length)) {
+            if (FeatureCodec.getHistogramLength(in, offset) != histogram.length)
+                throw new UnsupportedOperationException("Histogram lengths or color spaces do not match");
+            return (float) FeatureCodec.tanimoto(in, offset, histogram);
+        }
+        if (length != histogram.length * 8)
+            throw new UnsupportedOperationException("Histogram lengths or color spaces do not match");
+        return (float) MetricsUtils.tanimotoDoubles(in, offset, histogram);
+    }
+
     public String getStringRepresentation() {
         // FCTH is quantized to 3bits / bin ... therefore ints are enough.
         StringBuilder sb = new StringBuilder(histogram.length * 2 + 25);
@@ -0,0 +1,263 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+package net.semanticmetadata.lire.imageanalysis;
+
+/**
+ * Versioned compact storage format for features. An encoded feature starts with a two byte header,
+ * {@link #MAGIC} and {@link #VERSION}, followed by the payload defined by the feature, see
+ * {@link CompactFeature}. The magic byte is never the first byte of the byte[] representation of the
+ * features implementing CompactFeature, so both formats can be told apart. Version 1 payloads are:
+ * <ul>
+ * <li>CEDD, FCTH, JCD: packed histogram, see {@link #encodeHistogram(double[])}, i.e. 3 bits per bin
+ * for CEDD and FCTH, 5 bits (half steps) for JCD.</li>
+ * <li>ColorLayout, EdgeHistogram: one byte per coefficient or bin.</li>
+ * <li>ScalableColor: coefficients as zigzag encoded variable length ints, one byte for most of them.</li>
+ * <li>SurfFeature, MSERFeature, sift.Feature: descriptor as 16 bit half precision floats.</li>
+ * </ul>
+ * All but the local features are encoded without loss, i.e. distances are the same as with the
+ * byte[] representation of the feature.
+ * <br>Date: 18.10.2026
+ */
+public class FeatureCodec {
+    /**
+     * First byte of an encoded feature.
+     */
+    public static final byte MAGIC = (byte) 0xFF;
+    /**
+     * Current version of the format, written by {@link #createEncoded(int)}.
+     */
+    public static final byte VERSION = 1;
+    /**
+     * Length of the header in bytes.
+     */
+    public static final int HEADER_LENGTH = 2;
+    /**
+     * Length of the header of packed histograms in bytes, after the header of the format.
+     */
+    private static final int HISTOGRAM_HEADER_LENGTH = 4;
+
+    /**
+     * Histogram values as doubles, looking them up is faster than converting them in the inner loops.
+     */
+    private static final double[] INTEGER_VALUES = new double[256], HALF_VALUES = new double[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            INTEGER_VALUES[i] = i;
+            HALF_VALUES[i] = i / 2d;
+        }
+    }
+
+    /**
+     * Serializes a feature in the compact format if it supports it, otherwise the byte[]
+     * representation of the feature is returned.
+     *
+     * @param feature the feature to serialize.
+     * @return the feature as byte array, to be read with setByteArrayRepresentation(byte[]).
+     */
+    public static byte[] encode(LireFeature feature) {
+        if (feature instanceof CompactFeature)
+            return ((CompactFeature) feature).getCompactByteArrayRepresentation();
+        return feature.getByteArrayRepresentation();
+    }
+
+    /**
+     * Tells if the given data is in the compact format.
+     *
+     * @param in     array holding the serialized feature.
+     * @param offset position of the feature in the array.
+     * @param length length of the feature in bytes.
+     * @return true if the data starts with the header of the compact format.
+     */
+    public static boolean isEncoded(byte[] in, int offset, int length) {
+        return length >= HEADER_LENGTH && in[offset] == MAGIC;
+    }
+
+    /**
+     * Creates an array for an encoded feature with the header already set.
+     *
+     * @param payloadLength length of the payload in bytes.
+     * @return the array, the payload starts at {@link #HEADER_LENGTH}.
+     */
+    public static byte[] createEncoded(int payloadLength) {
+        byte[] result = new byte[HEADER_LENGTH + payloadLength];
+        result[0] = MAGIC;
+        result[1] = VERSION;
+        return result;
+    }
+
+    /**
+     * Checks the version of an encoded feature.
+     *
+     * @param in     array holding the encoded feature.
+     * @param offset position of the feature in the array.
+     * @throws UnsupportedOperationException if the feature has been written by a newer version.
+     */
+    public static void checkVersion(byte[] in, int offset) {
+        if (in[offset + 1] != VERSION)
+            throw new UnsupportedOperationException("Unsupported version of the feature format: " + in[offset + 1]);
+    }
+
+    /**
+     * Encodes a histogram with non negative integer or half step values below 256 (after doubling
+     * half steps) without loss. The payload is the number of bits per bin, the scale (1 or 2 for half
+     * steps), the number of bins (2 bytes) and the bins, packed with the given number of bits starting
+     * with the most significant one.
+     *
+     * @param histogram the histogram to encode.
+     * @return the encoded histogram or null if the values cannot be encoded without loss.
+     */
+    public static byte[] encodeHistogram(double[] histogram) {
+        if (histogram.length > 0xffff) return null;
+        int scale = 1;
+        for (int i = 0; i < histogram.length; i++) {
+            if (histogram[i] != Math.rint(histogram[i])) scale = 2;
+        }
+        int max = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            double value = histogram[i] * scale;
+            if (value != Math.rint(value) || value < 0 || value > 255) return null;
+            max = Math.max(max, (int) value);
+        }
+        int bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(max));
+
+        byte[] result = createEncoded(HISTOGRAM_HEADER_LENGTH + (histogram.length * bits + 7) / 8);
+        result[HEADER_LENGTH] = (byte) bits;
+        result[HEADER_LENGTH + 1] = (byte) scale;
+        result[HEADER_LENGTH + 2] = (byte) (histogram.length >> 8);
+        result[HEADER_LENGTH + 3] = (byte) histogram.length;
+        int pos = HEADER_LENGTH + HISTOGRAM_HEADER_LENGTH;
+        int buffer = 0, bufferedBits = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            buffer = (buffer << bits) | (int) (histogram[i] * scale);
+            bufferedBits += bits;
+            while (bufferedBits >= 8) {
+                bufferedBits -= 8;
+                result[pos++] = (byte) (buffer >>> bufferedBits);
+            }
+        }
+        if (bufferedBits > 0) result[pos] = (byte) (buffer << (8 - bufferedBits));
+        return result;
+    }
+
+    /**
+     * Returns the number of bins of a histogram encoded with {@link #encodeHistogram(double[])}.
+     *
+     * @param in     array holding the encoded histogram.
+     * @param offset position of the encoded histogram in the array.
+     * @return the number of bins.
+     */
+    public static int getHistogramLength(byte[] in, int offset) {
+        return (in[offset + HEADER_LENGTH + 2] & 0xff) << 8 | (in[offset + HEADER_LENGTH + 3] & 0xff);
+    }
+
+    /**
+     * Decodes a histogram encoded with {@link #encodeHistogram(double[])}.
+     *
+     * @param in     array holding the encoded histogram.
+     * @param offset position of the encoded histogram in the array.
+     * @return the histogram.
+     */
+    public static double[] decodeHistogram(byte[] in, int offset) {
+        checkVersion(in, offset);
+        int bits = in[offset + HEADER_LENGTH], mask = (1 << bits) - 1;
+        double[] values = (in[offset + HEADER_LENGTH + 1] == 1) ? INTEGER_VALUES : HALF_VALUES;
+        double[] result = new double[getHistogramLength(in, offset)];
+        int pos = offset + HEADER_LENGTH + HISTOGRAM_HEADER_LENGTH;
+        int buffer = 0, bufferedBits = 0;
+        for (int i = 0; i < result.length; i++) {
+            while (bufferedBits < bits) {
+                buffer = (buffer << 8) | (in[pos++] & 0xff);
+                bufferedBits += 8;
+            }
+            bufferedBits -= bits;
+            result[i] = values[(buffer >>> bufferedBits) & mask];
+        }
+        return result;
+    }
+
+    /**
+     * Tanimoto coefficient of a histogram encoded with {@link #encodeHistogram(double[])} and a
+     * double[] histogram with the same number of bins. The bins are unpacked on the fly, nothing
+     * is allocated.
+     *
+     * @param in        array holding the encoded histogram
+     * @param offset    position of the encoded histogram in the array
+     * @param histogram the second histogram
+     * @return the same value as {@link net.semanticmetadata.lire.utils.MetricsUtils#tanimoto(int[], int[])}
+     *         for the decoded histograms.
+     */
+    public static double tanimoto(byte[] in, int offset, double[] histogram) {
+        checkVersion(in, offset);
+        int bits = in[offset + HEADER_LENGTH], mask = (1 << bits) - 1;
+        double[] values = (in[offset + HEADER_LENGTH + 1] == 1) ? INTEGER_VALUES : HALF_VALUES;
+        int start = offset + HEADER_LENGTH + HISTOGRAM_HEADER_LENGTH;
+
+        double result = 0;
+        double tmp1 = 0;
+        double tmp2 = 0;
+
+        double tmpCnt1 = 0, tmpCnt2 = 0, tmpCnt3 = 0;
+
+        int pos = start, buffer = 0, bufferedBits = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            while (bufferedBits < bits) {
+                buffer = (buffer << 8) | (in[pos++] & 0xff);
+                bufferedBits += 8;
+            }
+            bufferedBits -= bits;
+            tmp1 += values[(buffer >>> bufferedBits) & mask];
+            tmp2 += histogram[i];
+        }
+
+        if (tmp1 == 0 || tmp2 == 0) result = 100;
+        if (tmp1 == 0 && tmp2 == 0) result = 0;
+
+        if (tmp1 > 0 && tmp2 > 0) {
+            pos = start;
+            bufferedBits = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                while (bufferedBits < bits) {
+                    buffer = (buffer << 8) | (in[pos++] & 0xff);
+                    bufferedBits += 8;
+                }
+                bufferedBits -= bits;
+                double v1 = values[(buffer >>> bufferedBits) & mask];
+                tmpCnt1 += (v1 / tmp1) * (histogram[i] / tmp2);
+                tmpCnt2 += (histogram[i] / tmp2) * (histogram[i] / tmp2);
+                tmpCnt3 += (v1 / tmp1) * (v1 / tmp1);
+            }
+
+            result = (100 - 100 * (tmpCnt1 / (tmpCnt2 + tmpCnt3
+                    - tmpCnt1))); //Tanimoto
+        }
+        return result;
+    }
+}
@@ -41,7 +41,10 @@ import java.util.StringTokenizer;
 
 /**
  * Implementation of a Gabor texture features done by  Marko Keuschnig & Christian Penz<br>
- * Fixed 2011-05-10 based on the comments of Arthur Lin.
+ * Fixed 2011-05-10 based on the comments of Arthur Lin.<br>
+ * The response of a filter to a pixel only depends on its gray level, so the magnitudes of the
+ * responses of all filters are computed once for each gray level. Mean and deviation per filter
+ * are then taken from the histogram of the gray levels of the image.
  */
 
 public class Gabor implements LireFeature {
@@ -52,6 +55,7 @@ public class Gabor implements LireFeature {
     private static final int M = 5, N = 6; // scale & orientation
 
     private static final int MAX_IMG_HEIGHT = 64;
+    private static final int NUM_GRAY_LEVELS = 256;
 
     private static final double A = Math.pow((U_H / U_L), 1. / (M - 1));
     private static double[] theta = new double[N];
@@ -59,10 +63,10 @@ public class Gabor implements LireFeature {
     private static double[] sigma_x = new double[M];
     private static double[] sigma_y = new double[M];
     private static double[][][][][] selfSimilarGaborWavelets = new double[S][T][M][N][2];
+    private static double[][][] magnitudes = new double[M][N][NUM_GRAY_LEVELS]; // per scale, orientation and gray level
 
     private static final double LOG2 = Math.log(2);
 
-    private double[][][][][] gaborWavelet = null;
     private double[] histogram;
 
     static {
@@ -90,6 +94,14 @@ public class Gabor implements LireFeature {
                 }
             }
         }
+        for (int m = 0; m < M; m++) {
+            for (int n = 0; n < N; n++) {
+                for (int grayLevel = 0; grayLevel < NUM_GRAY_LEVELS; grayLevel++) {
+                    double[] gaborWavelet = gaborWavelet(grayLevel, m, n);
+                    magnitudes[m][n][grayLevel] = Math.sqrt(Math.pow(gaborWavelet[0], 2) + Math.pow(gaborWavelet[1], 2));
+                }
+            }
+        }
     }
 
 
@@ -147,94 +159,46 @@ public class Gabor implements LireFeature {
     public double[] getFeature(BufferedImage image) {
         image = ImageUtils.scaleImage(image, MAX_IMG_HEIGHT);
         Raster imageRaster = image.getRaster();
-        int[][] grayLevel = new int[imageRaster.getWidth()][imageRaster.getHeight()];
-        int[] tmp = new int[3];
-        for (int i = 0; i < imageRaster.getWidth(); i++) {
-            for (int j = 0; j < imageRaster.getHeight(); j++) {
-                grayLevel[i][j] = imageRaster.getPixel(i, j, tmp)[0];
+        int width = imageRaster.getWidth(), height = imageRaster.getHeight();
+        // the histogram of the gray levels of the pixels the filters are applied to:
+        int[] grayLevelHistogram = new int[NUM_GRAY_LEVELS];
+        if (width > S && height > T) {
+            int[] grayLevels = imageRaster.getSamples(S, T, width - S, height - T, 0, new int[(width - S) * (height - T)]);
+            for (int grayLevel : grayLevels) {
+                grayLevelHistogram[grayLevel]++;
             }
         }
 
         double[] featureVector = new double[M * N * 2];
-        double[][] magnitudes = computeMagnitudes(grayLevel);
-        int imageSize = image.getWidth() * image.getHeight();
-        double[][] magnitudesForVariance = new double[M][N];
-
-        if (this.gaborWavelet == null) {
-            precomputeGaborWavelet(grayLevel);
-        }
-
+        int imageSize = width * height;
         for (int m = 0; m < M; m++) {
             for (int n = 0; n < N; n++) {
-                featureVector[m * 2 * N + n * 2] = magnitudes[m][n] / imageSize;
-                for (int i = 0; i < magnitudesForVariance.length; i++) {
-                    for (int j = 0; j < magnitudesForVariance[0].length; j++) {
-                        magnitudesForVariance[i][j] = 0.;
-                    }
+                double[] magnitude = magnitudes[m][n];
+                double sum = 0;
+                for (int grayLevel = 0; grayLevel < NUM_GRAY_LEVELS; grayLevel++) {
+                    sum += grayLevelHistogram[grayLevel] * magnitude[grayLevel];
                 }
-                for (int x = S; x < image.getWidth(); x++) {
-                    for (int y = T; y < image.getHeight(); y++) {
-                        magnitudesForVariance[m][n] += Math.pow(Math.sqrt(Math.pow(this.gaborWavelet[x - S][y - T][m][n][0], 2) + Math.pow(this.gaborWavelet[x - S][y - T][m][n][1], 2)) - featureVector[m * 2 * N + n * 2], 2);
-                    }
+                double mean = sum / imageSize;
+                double magnitudeForVariance = 0;
+                for (int grayLevel = 0; grayLevel < NUM_GRAY_LEVELS; grayLevel++) {
+                    double d = magnitude[grayLevel] - mean;
+                    magnitudeForVariance += grayLevelHistogram[grayLevel] * d * d;
                 }
-
-                featureVector[m * 2 * N + n * 2 + 1] = Math.sqrt(magnitudesForVariance[m][n]) / imageSize;
+                featureVector[m * 2 * N + n * 2] = mean;
+                featureVector[m * 2 * N + n * 2 + 1] = Math.sqrt(magnitudeForVariance) / imageSize;
             }
         }
-        this.gaborWavelet = null;
-
         return featureVector;
     }
 
-    private void precomputeGaborWavelet(int[][] image) {
-        this.gaborWavelet = new double[image.length - S][image[0].length - T][M][N][2];
-        double[] gaborWavelet;
-        for (int m = 0; m < M; m++) {
-            for (int n = 0; n < N; n++) {
-                for (int x = S; x < image.length; x++) {
-                    for (int y = T; y < image[0].length; y++) {
-                        gaborWavelet = gaborWavelet(image, x, y, m, n);
-                        this.gaborWavelet[x - S][y - T][m][n][0] = gaborWavelet[0];
-                        this.gaborWavelet[x - S][y - T][m][n][1] = gaborWavelet[1];
-                    }
-                }
-            }
-        }
-    }
-
-    private double[][] computeMagnitudes(int[][] image) {
-        double[][] magnitudes = new double[M][N];
-        for (int i = 0; i < magnitudes.length; i++) {
-            for (int j = 0; j < magnitudes[0].length; j++) {
-                magnitudes[i][j] = 0.;
-            }
-        }
-
-        if (this.gaborWavelet == null) {
-            precomputeGaborWavelet(image);
-        }
-
-        for (int m = 0; m < M; m++) {
-            for (int n = 0; n < N; n++) {
-                for (int x = S; x < image.length; x++) {
-                    for (int y = T; y < image[0].length; y++) {
-                        magnitudes[m][n] += Math.sqrt(Math.pow(this.gaborWavelet[x - S][y - T][m][n][0], 2) + Math.pow(this.gaborWavelet[x - S][y - T][m][n][1], 2));
-
-                    }
-                }
-            }
-        }
-        return magnitudes;
-    }
-
-    // returns 2 doubles representing the real ([0]) and imaginary ([1]) part of the mother wavelet
-    private double[] gaborWavelet(int[][] img, int x, int y, int m, int n) {
+    // returns 2 doubles representing the real ([0]) and imaginary ([1]) part of the response to a pixel
+    private static double[] gaborWavelet(int grayLevel, int m, int n) {
         double re = 0;
         double im = 0;
         for (int s = 0; s < S; s++) {
             for (int t = 0; t < T; t++) {
-                re += img[x][y] * selfSimilarGaborWavelets[s][t][m][n][0];
-                im += img[x][y] * -selfSimilarGaborWavelets[s][t][m][n][1];
+                re += grayLevel * selfSimilarGaborWavelets[s][t][m][n][0];
+                im += grayLevel * -selfSimilarGaborWavelets[s][t][m][n][1];
             }
         }
 
@@ -29,6 +29,8 @@
  */
 package net.semanticmetadata.lire.imageanalysis;
 
+import net.semanticmetadata.lire.imageanalysis.utils.PixelSource;
+import net.semanticmetadata.lire.utils.MetricsUtils;
 import net.semanticmetadata.lire.utils.SerializationUtils;
 
 import java.awt.image.BufferedImage;
@@ -38,7 +40,7 @@ import java.awt.image.BufferedImage;
  *
  * @author: Savvas A. Chatzichristofis, savvash@gmail.com
  */
-public class JCD implements LireFeature {
+public class JCD implements CompactFeature, ByteArrayDistance, PixelSourceFeature {
     protected double[] data;
 
     public JCD(CEDD cedd, FCTH fcth) {
@@ -50,10 +52,15 @@ public class JCD implements LireFeature {
 
 
     public void extract(BufferedImage bimg) {
+        extract(new PixelSource(bimg));
+    }
+
+    public void extract(PixelSource source) {
+        // CEDD and FCTH share the pixels.
         CEDD c = new CEDD();
-        c.extract(bimg);
+        c.extract(source);
         FCTH f = new FCTH();
-        f.extract(bimg);
+        f.extract(source);
         init(c, f);
     }
 
@@ -62,7 +69,20 @@ public class JCD implements LireFeature {
     }
 
     public void setByteArrayRepresentation(byte[] in) {
-        data = SerializationUtils.toDoubleArray(in);
+        if (FeatureCodec.isEncoded(in, 0, in.length))
+            data = FeatureCodec.decodeHistogram(in, 0);
+        else
+            data = SerializationUtils.toDoubleArray(in);
+    }
+
+    /**
+     * The histogram packed with 5 bits per bin, the values are multiples of 0.5.
+     *
+     * @see FeatureCodec#encodeHistogram(double[])
+     */
+    public byte[] getCompactByteArrayRepresentation() {
+        byte[] result = FeatureCodec.encodeHistogram(data);
+        return (result != null) ? result : getByteArrayRepresentation();
     }
 
     public double[] getDoubleHistogram() {
@@ -115,6 +135,23 @@ public class JCD implements LireFeature {
 
     }
 
+    /**
+     * Tanimoto coefficient computed directly on the byte[] representation of the other feature.
+     *
+     * @see #getDistance(LireFeature)
+     * @see #getByteArrayRepresentation()
+     */
+    public float getDistance(byte[] in, int offset, int length) {
+        if (FeatureCodec.isEncoded(in, offset, length)) {
+            if (FeatureCodec.getHistogramLength(in, offset) != data.length)
+                throw new UnsupportedOperationException("Histogram lengths or color spaces do not match");
+            return (float) FeatureCodec.tanimoto(in, offset, data);
+        }
+        if (length != data.length * 8)
+            throw new UnsupportedOperationException("Histogram lengths or color spaces do not match");
+        return (float) MetricsUtils.tanimotoDoubles(in, offset, data);
+    }
+
     public String getStringRepresentation() {
         throw new UnsupportedOperationException("This is not meant to be used!");
     }
@@ -42,21 +42,22 @@
 
 package net.semanticmetadata.lire.imageanalysis;
 
+import net.semanticmetadata.lire.imageanalysis.utils.DCT;
 import net.semanticmetadata.lire.utils.SerializationUtils;
 
 import java.awt.color.ColorSpace;
 import java.awt.image.BufferedImage;
 import java.awt.image.WritableRaster;
-import java.util.Arrays;
-import java.util.Comparator;
 import java.util.StringTokenizer;
 
 public class JpegCoefficientHistogram implements LireFeature {
 
     protected int[] descriptorValues;
-    protected final int BLOCK_SIZE = 8;
-
-    protected double[][][][] transform;
+    protected final int BLOCK_SIZE = DCT.BLOCK_SIZE;
+    /**
+     * The number of the largest coefficients of each block counted in the histogram.
+     */
+    protected final int NUM_COEFFICIENTS = 8;
 
     double[][][] dctScaler2 = new double[][][]
             {
@@ -75,15 +76,13 @@ public class JpegCoefficientHistogram implements LireFeature {
         if (bimg.getColorModel().getColorSpace().getType() != ColorSpace.TYPE_RGB)
             throw new UnsupportedOperationException("Invalid color space (need RGB)");
 
-        transform = createTransformArray();
-
         int newWidth = bimg.getWidth() - bimg.getWidth() % BLOCK_SIZE;
         int newHeight = bimg.getHeight() - bimg.getHeight() % BLOCK_SIZE;
-        int[][][] yuvImage = getYUVImage(bimg.getRaster(), newWidth, newHeight, -128);
+        int[][] yuvImage = getYUVImage(bimg.getRaster(), newWidth, newHeight, -128);
         descriptorValues = new int[BLOCK_SIZE * BLOCK_SIZE * 3];
-        getComponentHistogram(yuvImage, newWidth, newHeight, 0, descriptorValues);
-        getComponentHistogram(yuvImage, newWidth, newHeight, 1, descriptorValues);
-        getComponentHistogram(yuvImage, newWidth, newHeight, 2, descriptorValues);
+        getComponentHistogram(yuvImage[0], newWidth, newHeight, 0, descriptorValues);
+        getComponentHistogram(yuvImage[1], newWidth, newHeight, 1, descriptorValues);
+        getComponentHistogram(yuvImage[2], newWidth, newHeight, 2, descriptorValues);
     }
 
     public byte[] getByteArrayRepresentation() {
@@ -102,100 +101,79 @@ public class JpegCoefficientHistogram implements LireFeature {
         return result;
     }
 
-    protected class DctPoint {
-        public int i;
-        public int j;
-        public double v;
-    }
-
-    public class DctComparator implements Comparator<DctPoint> {
-
-
-        public int compare(DctPoint o1, DctPoint o2) {
-            // reverse sort
-            return Double.compare(o1.v, o2.v) * -1;
-        }
-
-    }
-
-    protected void getComponentHistogram(int[][][] yuvImage, int width, int height, int component, int[] descriptorBytes) {
+    /**
+     * Adds up the {@link #NUM_COEFFICIENTS} largest weighted DCT coefficients of all blocks of a
+     * component, the largest one counts 1, the second 1/2 and so on.
+     *
+     * @param plane           the values of the component, row by row.
+     * @param width           the width of the image, a multiple of the block size.
+     * @param height          the height of the image, a multiple of the block size.
+     * @param component       0 for Y, 1 for U, 2 for V.
+     * @param descriptorBytes the descriptor the histogram is written to.
+     */
+    protected void getComponentHistogram(int[] plane, int width, int height, int component, int[] descriptorBytes) {
 
         int hBlockCount = width / BLOCK_SIZE;
         int vBlockCount = height / BLOCK_SIZE;
-        double[][] tempHistogram = new double[BLOCK_SIZE][BLOCK_SIZE];
+        // all arrays are indexed like the blocks of the DCT, coefficient (i, j) at BLOCK_SIZE * j + i
+        double[] tempHistogram = new double[BLOCK_SIZE * BLOCK_SIZE];
+        double[] scaler = new double[BLOCK_SIZE * BLOCK_SIZE];
+        for (int j = 0; j < BLOCK_SIZE; j++) {
+            for (int i = 0; i < BLOCK_SIZE; i++) {
+                scaler[BLOCK_SIZE * j + i] = dctScaler2[i][j][component];
+            }
+        }
+        double[] block = new double[BLOCK_SIZE * BLOCK_SIZE];
+        int[] top = new int[NUM_COEFFICIENTS];
+        double[] topValues = new double[NUM_COEFFICIENTS];
 
         for (int by = 0; by < vBlockCount; by++) {
             for (int bx = 0; bx < hBlockCount; bx++) {
-                double[][] dctValues = new double[BLOCK_SIZE][BLOCK_SIZE];
-                for (int v = 0; v < BLOCK_SIZE; v++) {
-                    for (int u = 0; u < BLOCK_SIZE; u++) {
-                        double t = 0;
-                        for (int j = 0; j < BLOCK_SIZE; j++) {
-                            for (int i = 0; i < BLOCK_SIZE; i++) {
-                                t += yuvImage[bx * BLOCK_SIZE + i][by * BLOCK_SIZE + j][component] * transform[i][j][u][v];
-
-                                // Info Dump
-                                // System.out.println(i + ", " + j +", " + u +", " + v + ", " +t + ", " + yuvImage[bx * BLOCK_SIZE + i][by * BLOCK_SIZE + j][component] + ", " + transform[i][j][u][v]);
-                            }
-                        }
-                        double cU = 1;
-                        double cV = 1;
-                        if (u == 0)
-                            cU = 0.707106781;
-                        if (v == 0)
-                            cV = 0.707106781;
-                        dctValues[u][v] = cU * cV * t / 4;
-                    }
-                }
-
-                // filtering for noise (ensures that c# and java implementations give the same output)
-                dctValues[0][0] = 0;
                 for (int j = 0; j < BLOCK_SIZE; j++) {
+                    int offset = (by * BLOCK_SIZE + j) * width + bx * BLOCK_SIZE;
                     for (int i = 0; i < BLOCK_SIZE; i++) {
-                        if (Math.abs(dctValues[i][j]) < 0.001)
-                            dctValues[i][j] = 0;
+                        block[j * BLOCK_SIZE + i] = plane[offset + i];
                     }
                 }
-
-                DctPoint[] dctPoints = new DctPoint[BLOCK_SIZE * BLOCK_SIZE];
-                int p = 0;
-                for (int j = 0; j < BLOCK_SIZE; j++) {
-                    for (int i = 0; i < BLOCK_SIZE; i++) {
-                        dctPoints[p] = new DctPoint();
-                        dctPoints[p].i = i;
-                        dctPoints[p].j = j;
-                        dctPoints[p].v = Math.abs(dctScaler2[i][j][component] * dctValues[i][j]);
-                        p++;
+                DCT.forward(block);
+                block[0] = 0;
+
+                // the largest values by insertion, equal values stay in the order of the coefficients:
+                int count = 0;
+                for (int p = 0; p < block.length; p++) {
+                    double c = block[p];
+                    // filtering for noise (ensures that c# and java implementations give the same output)
+                    if (Math.abs(c) < 0.001)
+                        c = 0;
+                    double v = Math.abs(scaler[p] * c);
+                    if (count == NUM_COEFFICIENTS && v <= topValues[NUM_COEFFICIENTS - 1])
+                        continue;
+                    int pos = count < NUM_COEFFICIENTS ? count++ : NUM_COEFFICIENTS - 1;
+                    while (pos > 0 && topValues[pos - 1] < v) {
+                        topValues[pos] = topValues[pos - 1];
+                        top[pos] = top[pos - 1];
+                        pos--;
                     }
+                    topValues[pos] = v;
+                    top[pos] = p;
                 }
 
-
-                Arrays.sort(dctPoints, new DctComparator());
-
-                int n = 0;
-                for (int cc = 0; cc < (BLOCK_SIZE * BLOCK_SIZE); cc++) {
-                    tempHistogram[dctPoints[cc].i][dctPoints[cc].j] += 1.0 / (cc + 1);
-                    n++;
-                    if (n == 8)
-                        break;
+                for (int cc = 0; cc < count; cc++) {
+                    tempHistogram[top[cc]] += 1.0 / (cc + 1);
                 }
             }
         }
 
         double maxPoint = 0;
-        for (int j = 0; j < BLOCK_SIZE; j++) {
-            for (int i = 0; i < BLOCK_SIZE; i++) {
-                if (tempHistogram[i][j] > maxPoint)
-                    maxPoint = tempHistogram[i][j];
-            }
+        for (double v : tempHistogram) {
+            if (v > maxPoint)
+                maxPoint = v;
         }
 
         int p = BLOCK_SIZE * BLOCK_SIZE * component;
-        for (int j = 0; j < BLOCK_SIZE; j++) {
-            for (int i = 0; i < BLOCK_SIZE; i++) {
-                descriptorBytes[p] = (int) (tempHistogram[i][j] / maxPoint * 255);
-                p++;
-            }
+        for (double v : tempHistogram) {
+            descriptorBytes[p] = (int) (v / maxPoint * 255);
+            p++;
         }
     }
 
@@ -244,40 +222,30 @@ public class JpegCoefficientHistogram implements LireFeature {
 
     }
 
-    protected int[][][] getYUVImage(WritableRaster raster, int newWidth, int newHeight, int shift) {
-        int[][][] yuvImage = new int[newWidth][newHeight][3];
-        int[] rgbPixel = new int[3];
+    /**
+     * Converts the pixels to YUV.
+     *
+     * @return the planes of Y, U and V, each row by row.
+     */
+    protected int[][] getYUVImage(WritableRaster raster, int newWidth, int newHeight, int shift) {
+        int[][] yuvImage = new int[3][newWidth * newHeight];
+        int bands = raster.getNumBands();
+        int[] row = new int[newWidth * bands];
         for (int j = 0; j < newHeight; j++) {
+            raster.getPixels(0, j, newWidth, 1, row);
             for (int i = 0; i < newWidth; i++) {
-                raster.getPixel(i, j, rgbPixel);
-
-                int r = rgbPixel[0];
-                int g = rgbPixel[1];
-                int b = rgbPixel[2];
+                int r = row[i * bands];
+                int g = row[i * bands + 1];
+                int b = row[i * bands + 2];
 
                 // order: Y, U, V
-                yuvImage[i][j][0] = (int) (0.299 * r + 0.587 * g + 0.114 * b) + shift;
-                yuvImage[i][j][1] = (int) (128 - 0.1687 * r - 0.3313 * g + 0.5 * b) + shift;
-                yuvImage[i][j][2] = (int) (128 + 0.5 * r - 0.4187 * g - 0.0813 * b) + shift;
+                int p = j * newWidth + i;
+                yuvImage[0][p] = (int) (0.299 * r + 0.587 * g + 0.114 * b) + shift;
+                yuvImage[1][p] = (int) (128 - 0.1687 * r - 0.3313 * g + 0.5 * b) + shift;
+                yuvImage[2][p] = (int) (128 + 0.5 * r - 0.4187 * g - 0.0813 * b) + shift;
             }
         }
         return yuvImage;
     }
 
-
-    protected double[][][][] createTransformArray() {
-        double[][][][] t = new double[BLOCK_SIZE][BLOCK_SIZE][BLOCK_SIZE][BLOCK_SIZE];
-        for (int v = 0; v < BLOCK_SIZE; v++) {
-            for (int u = 0; u < BLOCK_SIZE; u++) {
-                for (int j = 0; j < BLOCK_SIZE; j++) {
-                    for (int i = 0; i < BLOCK_SIZE; i++) {
-                        t[i][j][u][v] = Math.cos(((2 * i + 1) * u * Math.PI) / 2 / BLOCK_SIZE)
-                                * Math.cos(((2 * j + 1) * v * Math.PI) / 2 / BLOCK_SIZE);
-                    }
-                }
-            }
-        }
-        return t;
-    }
-
 }
@@ -41,7 +41,7 @@ import net.semanticmetadata.lire.utils.SerializationUtils;
  *
  * @author Mathias Lux, mathias@juggle.at
  */
-public class ScalableColor extends ScalableColorImpl implements LireFeature {
+public class ScalableColor extends ScalableColorImpl implements CompactFeature, ByteArrayDistance {
 
     public byte[] getByteArrayRepresentation() {
         /*
@@ -66,6 +66,24 @@ public class ScalableColor extends ScalableColorImpl implements LireFeature {
     }
 
     public void setByteArrayRepresentation(byte[] in) {
+        if (FeatureCodec.isEncoded(in, 0, in.length)) {
+            FeatureCodec.checkVersion(in, 0);
+            int pos = FeatureCodec.HEADER_LENGTH;
+            NumberOfBitplanesDiscarded = in[pos++] & 0xff;
+            NumberOfCoefficients = (in[pos++] & 0xff) << 8;
+            NumberOfCoefficients |= in[pos++] & 0xff;
+            haarTransformedHistogram = new int[NumberOfCoefficients];
+            for (int i = 0; i < NumberOfCoefficients; i++) {
+                // zigzag encoded variable length int, 7 bits per byte.
+                int b = in[pos++], value = b & 0x7f;
+                for (int shift = 7; b < 0; shift += 7) {
+                    b = in[pos++];
+                    value |= (b & 0x7f) << shift;
+                }
+                haarTransformedHistogram[i] = (value >>> 1) ^ -(value & 1);
+            }
+            return;
+        }
         int[] result = SerializationUtils.toIntArray(in);
         NumberOfBitplanesDiscarded = result[0];
         NumberOfCoefficients = result[1];
@@ -75,6 +93,38 @@ public class ScalableColor extends ScalableColorImpl implements LireFeature {
         }
     }
 
+    /**
+     * The coefficients as zigzag encoded variable length ints, most of them fit in one byte.
+     *
+     * @see FeatureCodec
+     */
+    public byte[] getCompactByteArrayRepresentation() {
+        if (NumberOfBitplanesDiscarded < 0 || NumberOfBitplanesDiscarded > 255 || NumberOfCoefficients > 0xffff)
+            return getByteArrayRepresentation();
+        int length = 3;
+        for (int i = 0; i < NumberOfCoefficients; i++) {
+            int value = (haarTransformedHistogram[i] << 1) ^ (haarTransformedHistogram[i] >> 31);
+            do {
+                length++;
+                value >>>= 7;
+            } while (value != 0);
+        }
+        byte[] result = FeatureCodec.createEncoded(length);
+        int pos = FeatureCodec.HEADER_LENGTH;
+        result[pos++] = (byte) NumberOfBitplanesDiscarded;
+        result[pos++] = (byte) (NumberOfCoefficients >> 8);
+        result[pos++] = (byte) NumberOfCoefficients;
+        for (int i = 0; i < NumberOfCoefficients; i++) {
+            int value = (haarTransformedHistogram[i] << 1) ^ (haarTransformedHistogram[i] >> 31);
+            while ((value & ~0x7f) != 0) {
+                result[pos++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            result[pos++] = (byte) value;
+        }
+        return result;
+    }
+
     public double[] getDoubleHistogram() {
         int[] result = new int[NumberOfCoefficients];
         for (int i = 2; i < result.length; i++) {
@@ -82,4 +132,46 @@ public class ScalableColor extends ScalableColorImpl implements LireFeature {
         }
         return ConversionUtils.toDouble(result);
     }
+
+    /**
+     * L1 distance of the Haar transformed histograms computed directly on the byte[] representation
+     * of the other feature.
+     *
+     * @return the distance from [0,infinite) or -1 if the number of bitplanes or coefficients do not match
+     * @see #getSimilarity(net.semanticmetadata.lire.imageanalysis.mpeg7.ScalableColorImpl)
+     */
+    public float getDistance(byte[] in, int offset, int length) {
+        if (FeatureCodec.isEncoded(in, offset, length))
+            return getCompactDistance(in, offset);
+        if (SerializationUtils.toInt(in, offset) != NumberOfBitplanesDiscarded
+                || SerializationUtils.toInt(in, offset + 4) != NumberOfCoefficients
+                || haarTransformedHistogram == null)
+            return -1f;
+        int diffsum = 0;
+        for (int l = 0; l < NumberOfCoefficients; l++) {
+            diffsum += Math.abs(haarTransformedHistogram[l] - SerializationUtils.toInt(in, offset + 8 + l * 4));
+        }
+        return diffsum;
+    }
+
+    private float getCompactDistance(byte[] in, int offset) {
+        FeatureCodec.checkVersion(in, offset);
+        int pos = offset + FeatureCodec.HEADER_LENGTH;
+        int bitplanes = in[pos++] & 0xff;
+        int numberOfCoefficients = (in[pos++] & 0xff) << 8;
+        numberOfCoefficients |= in[pos++] & 0xff;
+        if (bitplanes != NumberOfBitplanesDiscarded || numberOfCoefficients != NumberOfCoefficients
+                || haarTransformedHistogram == null)
+            return -1f;
+        int diffsum = 0;
+        for (int l = 0; l < NumberOfCoefficients; l++) {
+            int b = in[pos++], value = b & 0x7f;
+            for (int shift = 7; b < 0; shift += 7) {
+                b = in[pos++];
+                value |= (b & 0x7f) << shift;
+            }
+            diffsum += Math.abs(haarTransformedHistogram[l] - ((value >>> 1) ^ -(value & 1)));
+        }
+        return diffsum;
+    }
 }
@@ -29,6 +29,7 @@
  */
 package net.semanticmetadata.lire.imageanalysis;
 
+import net.semanticmetadata.lire.imageanalysis.utils.PixelSource;
 import net.semanticmetadata.lire.utils.ConversionUtils;
 import net.semanticmetadata.lire.utils.SerializationUtils;
 
@@ -47,7 +48,7 @@ import java.util.StringTokenizer;
  *
  * @author Mathias Lux, mathias@juggle.at
  */
-public class SimpleColorHistogram implements LireFeature {
+public class SimpleColorHistogram implements PixelSourceFeature {
     public static final int DEFAULT_NUMBER_OF_BINS = 512;
     public static HistogramType DEFAULT_HISTOGRAM_TYPE = HistogramType.RGB;
     public static DistanceFunction DEFAULT_DISTANCE_FUNCTION = DistanceFunction.L1;
@@ -109,26 +110,45 @@ public class SimpleColorHistogram implements LireFeature {
      * @param image
      */
     public void extract(BufferedImage image) {
+        extract(new PixelSource(image));
+    }
+
+    public void extract(PixelSource source) {
+        BufferedImage image = source.getImage();
         if (image.getColorModel().getColorSpace().getType() != ColorSpace.TYPE_RGB)
             throw new UnsupportedOperationException("Color space not supported. Only RGB.");
-        WritableRaster raster = image.getRaster();
-        for (int x = 0; x < image.getWidth(); x++) {
-            for (int y = 0; y < image.getHeight(); y++) {
-                raster.getPixel(x, y, pixel);
-                if (histogramType == HistogramType.HSV) {
-                    rgb2hsv(pixel[0], pixel[1], pixel[2], pixel);
-                    histogram[quant(pixel)]++;
-                } else if (histogramType == HistogramType.Luminance) {
-                    rgb2yuv(pixel[0], pixel[1], pixel[2], pixel);
-                } else if (histogramType == HistogramType.HMMD) {
-                    histogram[quantHmmd(rgb2hmmd(pixel[0], pixel[1], pixel[2]), DEFAULT_NUMBER_OF_BINS)]++;
-                } else // RGB 
-                    histogram[quant(pixel)]++;
+        if (source.isRGBRaster()) {
+            int[] rgb = source.getRGB();
+            for (int i = 0; i < rgb.length; i++) {
+                pixel[0] = (rgb[i] >> 16) & 0xff;
+                pixel[1] = (rgb[i] >> 8) & 0xff;
+                pixel[2] = rgb[i] & 0xff;
+                addPixel(pixel);
+            }
+        } else {
+            WritableRaster raster = image.getRaster();
+            for (int x = 0; x < image.getWidth(); x++) {
+                for (int y = 0; y < image.getHeight(); y++) {
+                    raster.getPixel(x, y, pixel);
+                    addPixel(pixel);
+                }
             }
         }
         normalize(histogram, image.getWidth() * image.getHeight());
     }
 
+    private void addPixel(int[] pixel) {
+        if (histogramType == HistogramType.HSV) {
+            rgb2hsv(pixel[0], pixel[1], pixel[2], pixel);
+            histogram[quant(pixel)]++;
+        } else if (histogramType == HistogramType.Luminance) {
+            rgb2yuv(pixel[0], pixel[1], pixel[2], pixel);
+        } else if (histogramType == HistogramType.HMMD) {
+            histogram[quantHmmd(rgb2hmmd(pixel[0], pixel[1], pixel[2]), DEFAULT_NUMBER_OF_BINS)]++;
+        } else // RGB
+            histogram[quant(pixel)]++;
+    }
+
     public byte[] getByteArrayRepresentation() {
         return SerializationUtils.toByteArray(histogram);
     }
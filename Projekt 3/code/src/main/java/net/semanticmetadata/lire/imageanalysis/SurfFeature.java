@@ -43,7 +43,7 @@ import java.awt.image.BufferedImage;
  * Time: 15:44:14
  * To change this template use File | Settings | File Templates.
  */
-public class SurfFeature extends Histogram implements LireFeature {
+public class SurfFeature extends Histogram implements CompactFeature {
     SURFInterestPoint sip;
 
     public SurfFeature(SURFInterestPoint surfInterestPoint) {
@@ -89,7 +89,23 @@ public class SurfFeature extends Histogram implements LireFeature {
      * @see net.semanticmetadata.lire.imageanalysis.CEDD#getByteArrayRepresentation
      */
     public void setByteArrayRepresentation(byte[] in) {
-        descriptor = SerializationUtils.toFloatArray(in);
+        if (FeatureCodec.isEncoded(in, 0, in.length)) {
+            FeatureCodec.checkVersion(in, 0);
+            descriptor = SerializationUtils.toFloatArrayFromHalf(in, FeatureCodec.HEADER_LENGTH, (in.length - FeatureCodec.HEADER_LENGTH) / 2);
+        } else {
+            descriptor = SerializationUtils.toFloatArray(in);
+        }
+    }
+
+    /**
+     * The descriptor as 16 bit half precision floats, which is not without loss.
+     *
+     * @see FeatureCodec
+     */
+    public byte[] getCompactByteArrayRepresentation() {
+        byte[] result = FeatureCodec.createEncoded(descriptor.length * 2);
+        SerializationUtils.toHalfByteArray(descriptor, result, FeatureCodec.HEADER_LENGTH);
+        return result;
     }
 
     public double[] getDoubleHistogram() {
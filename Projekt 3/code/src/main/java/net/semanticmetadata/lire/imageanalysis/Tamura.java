@@ -48,15 +48,34 @@ import java.util.StringTokenizer;
  * <li> shen72@users.sourceforge.net: bugfixes in math (casting and brackets)
  * <li> Arthur Lin (applefan99@gmail.com) 2011-05-10: fix to avoid NaN
  * </ul>
+ * The sums over the neighborhoods needed for the coarseness are taken from a summed-area table of
+ * the gray values, so each of them takes four lookups, whatever the size of the neighborhood. The
+ * image is scaled to {@link #MAX_IMG_HEIGHT} pixels.
  * Date: 28.05.2008
  * Time: 11:52:03
  *
  * @author Mathias Lux, mathias@juggle.at
  */
 public class Tamura implements LireFeature {
-    private static final int MAX_IMG_HEIGHT = 64;
-    private int[][] grayScales;
+    /**
+     * The length of the longer side of the image the features are extracted from. The features depend
+     * on it, so it has to be the same for indexing and searching.
+     */
+    public static int MAX_IMG_HEIGHT = 64;
+    /**
+     * The number of neighborhood sizes 2^2k the coarseness looks at, k = 0, 1, 2.
+     */
+    private static final int NUM_SIZES = 3;
+    /**
+     * The image is extended by that many pixels repeating the border on each side for the summed-area
+     * table, enough for the neighborhoods of all sizes.
+     */
+    private static final int PADDING = 1 << (2 * (NUM_SIZES - 1));
+    private static final double[] POWERS_OF_TWO = {1, 2, 4};
+    private double[] grayScales; // row by row, pixel (x, y) at y * imgWidth + x
     private int imgWidth, imgHeight;
+    private double[] integral; // summed-area table of the padded image with an additional first row and column of zeros
+    private int integralWidth, integralHeight;
     private double[] histogram; // stores all three tamura features in one histogram.
     private static final double[][] filterH = {{-1, 0, 1}, {-1, 0, 1}, {-1, 0, 1}};
     private static final double[][] filterV = {{-1, -1, -1}, {0, 0, 0}, {1, 1, 1}};
@@ -66,7 +85,7 @@ public class Tamura implements LireFeature {
         double result = 0;
         for (int i = 1; i < n0 - 1; i++) {
             for (int j = 1; j < n1 - 1; j++) {
-                result = result + Math.pow(2, this.sizeLeadDiffValue(i, j));
+                result = result + POWERS_OF_TWO[this.sizeLeadDiffValue(i, j)];
             }
         }
         // fixed based on the patch by shen72@users.sourceforge.net
@@ -75,30 +94,43 @@ public class Tamura implements LireFeature {
     }
 
     /**
-     * 1. For every point(x, y) calculate the average over neighborhoods.
+     * 1. For every point(x, y) calculate the average over neighborhoods. The neighborhood is
+     * 2^2k pixels wide and high, pixels outside of the image take the value of the nearest one
+     * inside, the sum is divided by 2^2k.
      *
      * @param x
      * @param y
      * @return
      */
     public double averageOverNeighborhoods(int x, int y, int k) {
-        double result = 0, border;
-        border = Math.pow(2, 2 * k);
-        int x0 = 0, y0 = 0;
+        int half = k > 0 ? 1 << (k - 1) : 0;
+        int border = 1 << (2 * k);
+        // the corners in the summed-area table:
+        int x0 = x - half + PADDING, y0 = y - half + PADDING;
+        int x1 = x0 + border, y1 = y0 + border;
+        if (x0 < 0 || y0 < 0 || x1 >= integralWidth || y1 >= integralHeight) {
+            return averageOverNeighborhoodsOutside(x, y, k);
+        }
+        double result = integral[y1 * integralWidth + x1] - integral[y0 * integralWidth + x1]
+                - integral[y1 * integralWidth + x0] + integral[y0 * integralWidth + x0];
+        return result / (border);
+    }
 
+    /**
+     * The average over a neighborhood reaching further out of the image than the padding.
+     */
+    private double averageOverNeighborhoodsOutside(int x, int y, int k) {
+        double result = 0;
+        int half = k > 0 ? 1 << (k - 1) : 0;
+        int border = 1 << (2 * k);
         for (int i = 0; i < border; i++) {
             for (int j = 0; j < border; j++) {
-                x0 = x - (int) Math.pow(2, k - 1) + i;
-                y0 = y - (int) Math.pow(2, k - 1) + j;
-                if (x0 < 0) x0 = 0;
-                if (y0 < 0) y0 = 0;
-                if (x0 >= imgWidth) x0 = imgWidth - 1;
-                if (y0 >= imgHeight) y0 = imgHeight - 1;
-                result = result + grayScales[x0][y0];
+                int x0 = Math.min(Math.max(x - half + i, 0), imgWidth - 1);
+                int y0 = Math.min(Math.max(y - half + j, 0), imgHeight - 1);
+                result = result + grayScales[y0 * imgWidth + x0];
             }
         }
-        result = (1 / Math.pow(2, 2 * k)) * result;
-        return result;
+        return result / (border);
     }
 
     /**
@@ -110,10 +142,9 @@ public class Tamura implements LireFeature {
      * @return
      */
     public double differencesBetweenNeighborhoodsHorizontal(int x, int y, int k) {
-        double result = 0;
-        result = Math.abs(this.averageOverNeighborhoods(x + (int) Math.pow(2, k - 1), y, k) -
-                this.averageOverNeighborhoods(x - (int) Math.pow(2, k - 1), y, k));
-        return result;
+        int half = k > 0 ? 1 << (k - 1) : 0;
+        return Math.abs(this.averageOverNeighborhoods(x + half, y, k) -
+                this.averageOverNeighborhoods(x - half, y, k));
     }
 
     /**
@@ -125,10 +156,9 @@ public class Tamura implements LireFeature {
      * @return
      */
     public double differencesBetweenNeighborhoodsVertical(int x, int y, int k) {
-        double result = 0;
-        result = Math.abs(this.averageOverNeighborhoods(x, y + (int) Math.pow(2, k - 1), k) -
-                this.averageOverNeighborhoods(x, y - (int) Math.pow(2, k - 1), k));
-        return result;
+        int half = k > 0 ? 1 << (k - 1) : 0;
+        return Math.abs(this.averageOverNeighborhoods(x, y + half, k) -
+                this.averageOverNeighborhoods(x, y - half, k));
     }
 
     /**
@@ -142,7 +172,7 @@ public class Tamura implements LireFeature {
         double result = 0, tmp;
         int maxK = 1;
 
-        for (int k = 0; k < 3; k++) {
+        for (int k = 0; k < NUM_SIZES; k++) {
             tmp = Math.max(this.differencesBetweenNeighborhoodsHorizontal(x, y, k),
                     this.differencesBetweenNeighborhoodsVertical(x, y, k));
             if (result < tmp) {
@@ -153,6 +183,25 @@ public class Tamura implements LireFeature {
         return maxK;
     }
 
+    /**
+     * Creates the summed-area table of the image extended by {@link #PADDING} pixels on each side.
+     */
+    private void createIntegralImage() {
+        integralWidth = imgWidth + 2 * PADDING + 1;
+        integralHeight = imgHeight + 2 * PADDING + 1;
+        integral = new double[integralWidth * integralHeight];
+        for (int py = 1; py < integralHeight; py++) {
+            int y = Math.min(Math.max(py - 1 - PADDING, 0), imgHeight - 1);
+            double rowSum = 0;
+            int offset = py * integralWidth;
+            for (int px = 1; px < integralWidth; px++) {
+                int x = Math.min(Math.max(px - 1 - PADDING, 0), imgWidth - 1);
+                rowSum += grayScales[y * imgWidth + x];
+                integral[offset + px] = integral[offset - integralWidth + px] + rowSum;
+            }
+        }
+    }
+
     /**
      * Picture Quality.
      *
@@ -168,7 +217,7 @@ public class Tamura implements LireFeature {
 
         for (int x = 0; x < this.imgWidth; x++) {
             for (int y = 0; y < this.imgHeight; y++) {
-                my4 = my4 + Math.pow(this.grayScales[x][y] - my, 4);
+                my4 = my4 + Math.pow(this.grayScales[y * imgWidth + x] - my, 4);
             }
         }
         alpha4 = my4 / (Math.pow(sigma, 4));
@@ -185,7 +234,7 @@ public class Tamura implements LireFeature {
 
         for (int x = 0; x < this.imgWidth; x++) {
             for (int y = 0; y < this.imgHeight; y++) {
-                mean = mean + this.grayScales[x][y];
+                mean = mean + this.grayScales[y * imgWidth + x];
             }
         }
         mean = mean / (this.imgWidth * this.imgHeight);
@@ -200,7 +249,7 @@ public class Tamura implements LireFeature {
 
         for (int x = 0; x < this.imgWidth; x++) {
             for (int y = 0; y < this.imgHeight; y++) {
-                result = result + Math.pow(this.grayScales[x][y] - mean, 2);
+                result = result + Math.pow(this.grayScales[y * imgWidth + x] - mean, 2);
             }
         }
         result = result / (this.imgWidth * this.imgHeight);
@@ -232,7 +281,7 @@ public class Tamura implements LireFeature {
 
         for (int i = 0; i < 3; i++) {
             for (int j = 0; j < 3; j++) {
-                result = result + this.grayScales[x - 1 + i][y - 1 + j] * filterH[i][j];
+                result = result + this.grayScales[(y - 1 + j) * imgWidth + x - 1 + i] * filterH[i][j];
             }
         }
         return result;
@@ -246,7 +295,7 @@ public class Tamura implements LireFeature {
 
         for (int i = 0; i < 3; i++) {
             for (int j = 0; j < 3; j++) {
-                result = result + this.grayScales[x - 1 + i][y - 1 + j] * filterV[i][j];
+                result = result + this.grayScales[(y - 1 + j) * imgWidth + x - 1 + i] * filterV[i][j];
             }
         }
         return result;
@@ -270,16 +319,10 @@ public class Tamura implements LireFeature {
         BufferedImage bimg = op.filter(image, null);
         bimg = ImageUtils.scaleImage(bimg, MAX_IMG_HEIGHT);
         Raster raster = bimg.getRaster();
-        int[] tmp = new int[3];
-        this.grayScales = new int[raster.getWidth()][raster.getHeight()];
-        for (int i = 0; i < raster.getWidth(); i++) {
-            for (int j = 0; j < raster.getHeight(); j++) {
-                raster.getPixel(i, j, tmp);
-                this.grayScales[i][j] = tmp[0];
-            }
-        }
         imgWidth = bimg.getWidth();
         imgHeight = bimg.getHeight();
+        this.grayScales = raster.getSamples(0, 0, imgWidth, imgHeight, 0, new double[imgWidth * imgHeight]);
+        createIntegralImage();
         histogram[0] = this.coarseness(bimg.getWidth(), bimg.getHeight());
         histogram[1] = this.contrast();
         directionality = this.directionality();
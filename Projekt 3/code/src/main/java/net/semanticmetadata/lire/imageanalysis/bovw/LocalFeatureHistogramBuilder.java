@@ -31,6 +31,7 @@ package net.semanticmetadata.lire.imageanalysis.bovw;
 
 import net.semanticmetadata.lire.DocumentBuilder;
 import net.semanticmetadata.lire.clustering.Cluster;
+import net.semanticmetadata.lire.clustering.FastKMeans;
 import net.semanticmetadata.lire.clustering.KMeans;
 import net.semanticmetadata.lire.clustering.ParallelKMeans;
 import net.semanticmetadata.lire.imageanalysis.Histogram;
@@ -39,6 +40,7 @@ import net.semanticmetadata.lire.utils.LuceneUtils;
 import net.semanticmetadata.lire.utils.SerializationUtils;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.MapFieldSelector;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.Term;
@@ -47,9 +49,10 @@ import javax.swing.*;
 import java.io.IOException;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.Random;
 
 /**
  * General class creating bag of visual words vocabularies parallel based on k-means. Works with SIFT, SURF and MSER.
@@ -59,13 +62,29 @@ import java.util.LinkedList;
  * @author Mathias Lux, mathias@juggle.at
  */
 public abstract class LocalFeatureHistogramBuilder {
+    /**
+     * Appended to the name of the cluster file for the file of the vocabulary tree.
+     */
+    public static final String TREE_EXTENSION = ".tree";
+
+    /**
+     * The k-means implementations available for building the vocabulary. FastKMeans uses k-means++ and
+     * the triangle inequality, MiniBatchKMeans updates the means from small random batches of features.
+     */
+    public enum ClusteringEngine {
+        KMeans, ParallelKMeans, FastKMeans, MiniBatchKMeans
+    }
+
     IndexReader reader;
     // number of documents used to build the vocabulary / clusters.
     private int numDocsForVocabulary = 100;
     private int numClusters = 1000;
-    private Cluster[] clusters = null;
     DecimalFormat df = (DecimalFormat) NumberFormat.getNumberInstance();
     private ProgressMonitor pm = null;
+    private ClusteringEngine clusteringEngine = ClusteringEngine.ParallelKMeans;
+    int maxChecks = 0;
+    private Random random = new Random();
+    private Vocabulary vocabulary = null;
 
     protected String localFeatureFieldName = DocumentBuilder.FIELD_NAME_SURF;
     protected String visualWordsFieldName = DocumentBuilder.FIELD_NAME_SURF_LOCAL_FEATURE_HISTOGRAM_VISUAL_WORDS;
@@ -104,26 +123,81 @@ public abstract class LocalFeatureHistogramBuilder {
      * @throws java.io.IOException
      */
     public void index() throws IOException {
+        // do the clustering and serialize the clusters to a file on the disk:
+        vocabulary = Vocabulary.write(createVocabulary(), maxChecks, clusterFile);
+        //  create & store histograms:
+        System.out.println("Creating histograms ...");
+        double time = System.currentTimeMillis();
+        IndexWriter iw = LuceneUtils.createIndexWriter(reader.directory(), true, LuceneUtils.AnalyzerType.WhitespaceAnalyzer, 256d);
+        if (pm !=null) { // set to 50 of 100 after clustering.
+            pm.setProgress(50);
+            pm.setNote("Clustering finished");
+        }
+        // parallelized indexing
+        LinkedList<Thread> threads = new LinkedList<Thread>();
+        int numThreads = 4;
+        // careful: copy reader to RAM for faster access when reading ...
+//        reader = IndexReader.open(new RAMDirectory(reader.directory()), true);
+        int step = reader.maxDoc() / numThreads;
+        for (int part = 0; part < numThreads; part++) {
+            Indexer indexer = null;
+            if (part < numThreads - 1) indexer = new Indexer(part * step, (part + 1) * step, iw, null);
+            else indexer = new Indexer(part * step, reader.maxDoc(), iw, pm);
+            Thread t = new Thread(indexer);
+            threads.add(t);
+            t.start();
+        }
+        for (Iterator<Thread> iterator = threads.iterator(); iterator.hasNext(); ) {
+            Thread next = iterator.next();
+            try {
+                next.join();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+        if (pm !=null) { // set to 50 of 100 after clustering.
+            pm.setProgress(95);
+            pm.setNote("Indexing finished");
+        }
+
+        System.out.println(getDuration(time));
+        iw.optimize();
+        iw.close();
+        if (pm !=null) { // set to 50 of 100 after clustering.
+            pm.setProgress(100);
+            pm.setNote("Indexing finished");
+            pm.close();
+        }
+        System.out.println("Finished.");
+    }
+
+
+    /**
+     * Selects a number of random documents (numDocsForVocabulary) and clusters their local features to get
+     * a vocabulary of visual words (the cluster means). The index is not changed.
+     *
+     * @return the clusters of the vocabulary.
+     * @throws IOException
+     */
+    public Cluster[] createVocabulary() throws IOException {
         df.setMaximumFractionDigits(3);
         // find the documents for building the vocabulary:
-        HashSet<Integer> docIDs = selectVocabularyDocs();
-        KMeans k = new ParallelKMeans(numClusters);
-        // fill the KMeans object:
+        int[] docIDs = selectVocabularyDocs();
+        KMeans k = createKMeans();
+        // fill the KMeans object, reading only the local features in the order of the documents in the index:
+        MapFieldSelector fieldSelector = new MapFieldSelector(localFeatureFieldName, DocumentBuilder.FIELD_NAME_IDENTIFIER);
         LinkedList<Histogram> features;
-        for (Iterator<Integer> iterator = docIDs.iterator(); iterator.hasNext(); ) {
-            int nextDoc = iterator.next();
-            if (!reader.isDeleted(nextDoc)) {
-                Document d = reader.document(nextDoc);
-                features = new LinkedList<Histogram>();
-                byte[][] binaryValues = d.getBinaryValues(localFeatureFieldName);
-                String file = d.getValues(DocumentBuilder.FIELD_NAME_IDENTIFIER)[0];
-                for (int j = 0; j < binaryValues.length; j++) {
-                    LireFeature f = getFeatureInstance();
-                    f.setByteArrayRepresentation(binaryValues[j]);
-                    features.add((Histogram) f);
-                }
-                k.addImage(file, features);
+        for (int nextDoc : docIDs) {
+            Document d = reader.document(nextDoc, fieldSelector);
+            features = new LinkedList<Histogram>();
+            byte[][] binaryValues = d.getBinaryValues(localFeatureFieldName);
+            String file = d.getValues(DocumentBuilder.FIELD_NAME_IDENTIFIER)[0];
+            for (int j = 0; j < binaryValues.length; j++) {
+                LireFeature f = getFeatureInstance();
+                f.setByteArrayRepresentation(binaryValues[j]);
+                features.add((Histogram) f);
             }
+            k.addImage(file, features);
         }
         if (pm !=null) { // set to 5 of 100 before clustering starts.
             pm.setProgress(5);
@@ -166,144 +240,154 @@ public abstract class LocalFeatureHistogramBuilder {
             }
             cstep++;
         }
-        // Serializing clusters to a file on the disk ...
-        clusters = k.getClusters();
-        Cluster.writeClusters(clusters, clusterFile);
-        //  create & store histograms:
-        System.out.println("Creating histograms ...");
-        time = System.currentTimeMillis();
-        int[] tmpHist = new int[numClusters];
-        IndexWriter iw = LuceneUtils.createIndexWriter(reader.directory(), true, LuceneUtils.AnalyzerType.WhitespaceAnalyzer, 256d);
-        if (pm !=null) { // set to 50 of 100 after clustering.
-            pm.setProgress(50);
-            pm.setNote("Clustering finished");
-        }
-        // parallelized indexing
-        LinkedList<Thread> threads = new LinkedList<Thread>();
-        int numThreads = 4;
-        // careful: copy reader to RAM for faster access when reading ...
-//        reader = IndexReader.open(new RAMDirectory(reader.directory()), true);
-        int step = reader.maxDoc() / numThreads;
-        for (int part = 0; part < numThreads; part++) {
-            Indexer indexer = null;
-            if (part < numThreads - 1) indexer = new Indexer(part * step, (part + 1) * step, iw, null);
-            else indexer = new Indexer(part * step, reader.maxDoc(), iw, pm);
-            Thread t = new Thread(indexer);
-            threads.add(t);
-            t.start();
-        }
-        for (Iterator<Thread> iterator = threads.iterator(); iterator.hasNext(); ) {
-            Thread next = iterator.next();
-            try {
-                next.join();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        }
-        if (pm !=null) { // set to 50 of 100 after clustering.
-            pm.setProgress(95);
-            pm.setNote("Indexing finished");
-        }
-
-        System.out.println(getDuration(time));
-        iw.optimize();
-        iw.close();
-        if (pm !=null) { // set to 50 of 100 after clustering.
-            pm.setProgress(100);
-            pm.setNote("Indexing finished");
-            pm.close();
-        }
-        System.out.println("Finished.");
+        return k.getClusters();
     }
 
-
-    public void indexMissing() throws IOException {
+    /**
+     * Adds the visual words to the documents not having them yet, using the vocabulary stored in the
+     * cluster file.
+     *
+     * @return the number of documents updated.
+     * @throws IOException
+     */
+    public int indexMissing() throws IOException {
         // Reading clusters from disk:
-        clusters = Cluster.readClusters(clusterFile);
+        vocabulary = Vocabulary.read(clusterFile, maxChecks);
         //  create & store histograms:
         System.out.println("Creating histograms ...");
-        int[] tmpHist = new int[numClusters];
+        int[] tmpHist = new int[vocabulary.size()];
         LireFeature f = getFeatureInstance();
-        IndexWriter iw = LuceneUtils.createIndexWriter(reader.directory(), true, LuceneUtils.AnalyzerType.WhitespaceAnalyzer);
+        // the documents with visual words are not changed, so the index is not created anew:
+        IndexWriter iw = LuceneUtils.createIndexWriter(reader.directory(), false, LuceneUtils.AnalyzerType.WhitespaceAnalyzer);
+        int updated = 0;
         for (int i = 0; i < reader.maxDoc(); i++) {
             if (!reader.isDeleted(i)) {
                 for (int j = 0; j < tmpHist.length; j++) {
                     tmpHist[j] = 0;
                 }
                 Document d = reader.document(i);
-                // Only if there are no values yet:
-                if (d.getValues(visualWordsFieldName) == null || d.getValues(visualWordsFieldName).length ==0) {
+                // Only if there are no values yet, the visual words are stored binary so getValues does not find them:
+                if (d.getFieldable(visualWordsFieldName) == null) {
                     byte[][] binaryValues = d.getBinaryValues(localFeatureFieldName);
                     // find the appropriate cluster for each feature:
                     for (int j = 0; j < binaryValues.length; j++) {
                         f.setByteArrayRepresentation(binaryValues[j]);
-                        tmpHist[clusterForFeature((Histogram) f)]++;
+                        tmpHist[vocabulary.getVisualWord((Histogram) f)]++;
                     }
-                    d.add(new Field(visualWordsFieldName, arrayToVisualWordString(tmpHist), Field.Store.YES, Field.Index.ANALYZED));
-                    d.add(new Field(localFeatureHistFieldName, SerializationUtils.arrayToString(tmpHist), Field.Store.YES, Field.Index.ANALYZED));
+                    setVisualWords(d, tmpHist, vocabulary.getVersion());
                     // now write the new one. we use the identifier to update ;)
                     iw.updateDocument(new Term(DocumentBuilder.FIELD_NAME_IDENTIFIER, d.getValues(DocumentBuilder.FIELD_NAME_IDENTIFIER)[0]), d);
+                    updated++;
                 }
             }
         }
-        iw.optimize();
+        if (updated > 0) iw.optimize();
         iw.close();
         System.out.println("Finished.");
+        return updated;
     }
 
     /**
-     * Find the appropriate cluster for a given feature.
+     * Replaces the visual words, the histogram of visual words and the version of the vocabulary in
+     * a document.
      *
-     * @param f
-     * @return the index of the cluster.
+     * @param d         the document.
+     * @param histogram the number of local features per visual word.
+     * @param version   the version of the vocabulary, see {@link Vocabulary#getVersion()}.
      */
-    private int clusterForFeature(Histogram f) {
-        double d = clusters[0].getDistance(f);
-        double tmp;
-        int result = 0;
-        for (int i = 1; i < clusters.length; i++) {
-            tmp = clusters[i].getDistance(f);
-            if (tmp < d) {
-                d = tmp;
-                result = i;
+    void setVisualWords(Document d, int[] histogram, long version) {
+        d.removeFields(visualWordsFieldName);
+        d.removeFields(localFeatureHistFieldName);
+        d.removeFields(getVocabularyVersionFieldName());
+        // the visual words are stored as sparse histogram and indexed without creating a String:
+        d.add(new Field(visualWordsFieldName, SerializationUtils.toSparseByteArray(histogram)));
+        d.add(new Field(visualWordsFieldName, new VisualWordsTokenStream(histogram)));
+        d.add(new Field(localFeatureHistFieldName, SerializationUtils.arrayToString(histogram), Field.Store.YES, Field.Index.ANALYZED));
+        d.add(new Field(getVocabularyVersionFieldName(), Long.toString(version), Field.Store.YES, Field.Index.NOT_ANALYZED));
+    }
+
+    /**
+     * @return the name of the field storing the version of the vocabulary used for the visual words.
+     */
+    public String getVocabularyVersionFieldName() {
+        return visualWordsFieldName + "Version";
+    }
+
+    /**
+     * Selects numDocsForVocabulary random documents with reservoir sampling in one pass over the
+     * documents up to maxDoc, skipping the deleted ones. No stored fields are read.
+     *
+     * @return the sorted numbers of the selected documents.
+     */
+    int[] selectVocabularyDocs() {
+        int capacity = Math.min(numDocsForVocabulary, reader.numDocs());
+        int[] result = new int[capacity];
+        int seen = 0;
+        for (int i = 0; i < reader.maxDoc(); i++) {
+            if (reader.isDeleted(i)) continue;
+            if (seen < capacity) result[seen] = i;
+            else {
+                int j = random.nextInt(seen + 1);
+                if (j < capacity) result[j] = i;
             }
+            seen++;
         }
+        Arrays.sort(result);
         return result;
     }
 
-    private String arrayToVisualWordString(int[] hist) {
-        StringBuilder sb = new StringBuilder(1024);
-        for (int i = 0; i < hist.length; i++) {
-            int visualWordIndex = hist[i];
-            for (int j = 0; j < visualWordIndex; j++) {
-                sb.append('v');
-                sb.append(i);
-                sb.append(' ');
-            }
+    /**
+     * Creates the k-means implementation according to the clustering engine set.
+     *
+     * @return a new KMeans instance for numClusters clusters.
+     */
+    protected KMeans createKMeans() {
+        switch (clusteringEngine) {
+            case KMeans:
+                return new KMeans(numClusters);
+            case FastKMeans:
+                FastKMeans k = new FastKMeans(numClusters);
+                k.setSeed(random.nextLong());
+                return k;
+            case MiniBatchKMeans:
+                k = new FastKMeans(numClusters);
+                k.setSeed(random.nextLong());
+                k.setMiniBatchSize(1024);
+                return k;
+            default:
+                return new ParallelKMeans(numClusters);
         }
-        return sb.toString();
     }
 
-    private HashSet<Integer> selectVocabularyDocs() throws IOException {
-        // need to make sure that this is not running forever ...
-        int loopCount = 0;
-        float maxDocs = reader.maxDoc();
-        int capacity = (int) Math.min(numDocsForVocabulary, maxDocs - 5);
-        HashSet<Integer> result = new HashSet<Integer>(capacity);
-        int tmpDocNumber;
-        for (int r = 0; r < capacity; r++) {
-            boolean worksFine = false;
-            do {
-                tmpDocNumber = (int) (Math.random() * maxDocs);
-                // check if the selected doc number is valid: not null, not deleted and not already chosen.
-                worksFine = (reader.document(tmpDocNumber) != null) && !reader.isDeleted(tmpDocNumber) && !result.contains(tmpDocNumber);
-            } while (!worksFine);
-            result.add(tmpDocNumber);
-            // need to make sure that this is not running forever ...
-            if (loopCount++ > numDocsForVocabulary * 100)
-                throw new UnsupportedOperationException("Could not get the documents, maybe there are not enough documents in the index?");
-        }
-        return result;
+    /**
+     * Sets the k-means implementation used in {@link #index()}, default is ParallelKMeans.
+     *
+     * @param clusteringEngine the clustering engine to use.
+     */
+    public void setClusteringEngine(ClusteringEngine clusteringEngine) {
+        this.clusteringEngine = clusteringEngine;
+    }
+
+    /**
+     * Sets the number of visual words compared to each local feature. If it is greater than 0, a
+     * {@link net.semanticmetadata.lire.clustering.VocabularyTree} is used to find the visual word of a local feature, which is faster but
+     * might not find the nearest visual word. The tree is stored next to the cluster file. Default
+     * is 0, which compares each feature to all visual words.
+     *
+     * @param maxChecks the number of visual words compared, 0 for the exact visual words.
+     */
+    public void setMaxChecks(int maxChecks) {
+        this.maxChecks = maxChecks;
+    }
+
+    /**
+     * Sets the seed of the random numbers used for selecting the documents for the vocabulary. With the
+     * same seed, index and clustering engine FastKMeans or MiniBatchKMeans the same vocabulary is created.
+     *
+     * @param seed the seed of the random number generator.
+     */
+    public void setSeed(long seed) {
+        random = new Random(seed);
     }
 
     protected abstract LireFeature getFeatureInstance();
@@ -321,7 +405,7 @@ public abstract class LocalFeatureHistogramBuilder {
         }
 
         public void run() {
-            int[] tmpHist = new int[numClusters];
+            int[] tmpHist = new int[vocabulary.size()];
             LireFeature f = getFeatureInstance();
             for (int i = start; i < end; i++) {
                 try {
@@ -331,17 +415,13 @@ public abstract class LocalFeatureHistogramBuilder {
                         }
                         Document d = reader.document(i);
                         byte[][] binaryValues = d.getBinaryValues(localFeatureFieldName);
-                        // remove the fields if they are already there ...
-                        d.removeField(visualWordsFieldName);
-                        d.removeField(localFeatureHistFieldName);
-
                         // find the appropriate cluster for each feature:
                         for (int j = 0; j < binaryValues.length; j++) {
                             f.setByteArrayRepresentation(binaryValues[j]);
-                            tmpHist[clusterForFeature((Histogram) f)]++;
+                            tmpHist[vocabulary.getVisualWord((Histogram) f)]++;
                         }
-                        d.add(new Field(visualWordsFieldName, arrayToVisualWordString(tmpHist), Field.Store.YES, Field.Index.ANALYZED));
-                        d.add(new Field(localFeatureHistFieldName, SerializationUtils.arrayToString(tmpHist), Field.Store.YES, Field.Index.ANALYZED));
+                        // the fields are replaced if they are already there ...
+                        setVisualWords(d, tmpHist, vocabulary.getVersion());
                         // now write the new one. we use the identifier to update ;)
                         iw.updateDocument(new Term(DocumentBuilder.FIELD_NAME_IDENTIFIER, d.getValues(DocumentBuilder.FIELD_NAME_IDENTIFIER)[0]), d);
                         if (pm!=null) {
@@ -0,0 +1,142 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+package net.semanticmetadata.lire.imageanalysis.bovw;
+
+import net.semanticmetadata.lire.DocumentBuilder;
+import net.semanticmetadata.lire.utils.SerializationUtils;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.Fieldable;
+
+/**
+ * Turns a histogram of visual words into the tokens of a Lucene field without creating and analyzing
+ * a String. The term of visual word i is "v" + i, it is created once per word and then repeated as
+ * often as the word occurs, so the term frequencies, length norms and scores are the same as for the
+ * whitespace separated visual words used before. Repeating the term with a position increment of 0
+ * would make the default similarity discount the repetitions as overlaps when computing the norm.
+ * <p/>
+ * Only the sparse histogram of the visual words is stored. Code writing documents read from an index
+ * back to an index has to call {@link #restore(Document, String...)}, otherwise the visual words of
+ * these documents cannot be found anymore.
+ * <br>Date: 18.10.2026
+ */
+public final class VisualWordsTokenStream extends TokenStream {
+    /**
+     * The fields of the visual words written by the local feature histogram builders of LIRe.
+     */
+    public static final String[] FIELD_NAMES = new String[]{
+            DocumentBuilder.FIELD_NAME_SIFT_LOCAL_FEATURE_HISTOGRAM_VISUAL_WORDS,
+            DocumentBuilder.FIELD_NAME_SURF_LOCAL_FEATURE_HISTOGRAM_VISUAL_WORDS,
+            DocumentBuilder.FIELD_NAME_MSER_LOCAL_FEATURE_HISTOGRAM_VISUAL_WORDS
+    };
+
+    private final CharTermAttribute termAttribute = addAttribute(CharTermAttribute.class);
+    private final int[] histogram;
+    private int word = -1;
+    private int remaining = 0;
+
+    /**
+     * @param histogram the number of local features per visual word.
+     */
+    public VisualWordsTokenStream(int[] histogram) {
+        this.histogram = histogram;
+    }
+
+    public boolean incrementToken() {
+        if (remaining > 0) {
+            // same term as before, the attributes are left as they are.
+            remaining--;
+            return true;
+        }
+        while (++word < histogram.length) {
+            if (histogram[word] > 0) {
+                clearAttributes();
+                char[] buffer = termAttribute.resizeBuffer(11);
+                buffer[0] = 'v';
+                int length = 2;
+                for (int w = word; w >= 10; w /= 10) length++;
+                for (int i = length - 1, w = word; i > 0; i--, w /= 10) {
+                    buffer[i] = (char) ('0' + w % 10);
+                }
+                termAttribute.setLength(length);
+                remaining = histogram[word] - 1;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void reset() {
+        word = -1;
+        remaining = 0;
+    }
+
+    /**
+     * Adds the indexed visual words to a document read from an index, they are created from the
+     * stored sparse histograms. Fields already having the indexed visual words and fields storing the
+     * visual words as String, which are analyzed again anyway, are left as they are.
+     *
+     * @param d          a document read from an index.
+     * @param fieldNames the fields of the visual words, e.g. {@link #FIELD_NAMES}.
+     * @return the document.
+     */
+    public static Document restore(Document d, String... fieldNames) {
+        for (String fieldName : fieldNames) {
+            Fieldable[] fields = d.getFieldables(fieldName);
+            byte[] stored = null;
+            for (Fieldable field : fields) {
+                if (field.tokenStreamValue() != null) {
+                    stored = null;
+                    break;
+                }
+                if (field.isBinary() && stored == null) {
+                    stored = new byte[field.getBinaryLength()];
+                    System.arraycopy(field.getBinaryValue(), field.getBinaryOffset(), stored, 0, stored.length);
+                }
+            }
+            if (stored == null) continue;
+            int[] sparse = SerializationUtils.toSparseIntArray(stored);
+            int[] histogram = new int[sparse.length > 0 ? sparse[sparse.length - 2] + 1 : 0];
+            for (int i = 0; i < sparse.length; i += 2) histogram[sparse[i]] = sparse[i + 1];
+            d.add(new Field(fieldName, new VisualWordsTokenStream(histogram)));
+        }
+        return d;
+    }
+
+    /**
+     * @param word the index of the visual word.
+     * @return the term used for the visual word.
+     */
+    public static String getTerm(int word) {
+        return "v" + word;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+package net.semanticmetadata.lire.imageanalysis.bovw;
+
+import net.semanticmetadata.lire.clustering.Cluster;
+import net.semanticmetadata.lire.clustering.VocabularyTree;
+import net.semanticmetadata.lire.imageanalysis.Histogram;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * A visual vocabulary: the clusters of local features, optionally with a {@link VocabularyTree} for
+ * finding the visual words faster, and a version telling vocabularies apart. The version is the
+ * {@link Cluster#checksum(Cluster[])} of the means, so it does not change when the cluster file is
+ * copied or touched and it always matches the clusters it has been computed from. Instances are not
+ * changed after creation, so they can be shared by any number of threads.
+ * <br>Date: 18.10.2026
+ */
+public class Vocabulary {
+    private final Cluster[] clusters;
+    private final VocabularyTree tree;
+    private final int maxChecks;
+    private final long version;
+
+    /**
+     * Creates a vocabulary.
+     *
+     * @param clusters  the clusters, each one is a visual word.
+     * @param tree      the tree over the clusters, null if each feature is compared to all clusters.
+     * @param maxChecks the maximum number of clusters compared to a feature if a tree is given.
+     * @param version   the version of the vocabulary.
+     */
+    public Vocabulary(Cluster[] clusters, VocabularyTree tree, int maxChecks, long version) {
+        this.clusters = clusters;
+        this.tree = tree;
+        this.maxChecks = maxChecks;
+        this.version = version;
+    }
+
+    /**
+     * Reads the clusters written with {@link Cluster#writeClusters(Cluster[], String)}. If maxChecks is
+     * greater than 0, the vocabulary tree is read from the file next to it. It is built if there is
+     * none or if it has been built for other clusters, e.g. left over from an earlier vocabulary.
+     *
+     * @param clusterFile the cluster file.
+     * @param maxChecks   the number of visual words compared to a feature, 0 for all of them.
+     * @return the vocabulary.
+     * @throws IOException
+     */
+    public static Vocabulary read(String clusterFile, int maxChecks) throws IOException {
+        Cluster[] clusters = Cluster.readClusters(clusterFile);
+        VocabularyTree tree = null;
+        if (maxChecks > 0) {
+            File treeFile = new File(clusterFile + LocalFeatureHistogramBuilder.TREE_EXTENSION);
+            if (treeFile.exists()) tree = VocabularyTree.read(treeFile.getPath(), clusters);
+            if (tree == null) tree = new VocabularyTree(clusters);
+        }
+        return new Vocabulary(clusters, tree, maxChecks, Cluster.checksum(clusters));
+    }
+
+    /**
+     * Writes the clusters and, if maxChecks is greater than 0, a vocabulary tree. Both are written to
+     * temporary files first and then moved over the existing files, so readers never see half written
+     * files.
+     *
+     * @param clusters    the clusters, each one is a visual word.
+     * @param maxChecks   the number of visual words compared to a feature, 0 for all of them.
+     * @param clusterFile the cluster file.
+     * @return the new vocabulary.
+     * @throws IOException
+     */
+    public static Vocabulary write(Cluster[] clusters, int maxChecks, String clusterFile) throws IOException {
+        VocabularyTree tree = null;
+        if (maxChecks > 0) {
+            tree = new VocabularyTree(clusters);
+            File tmp = new File(clusterFile + LocalFeatureHistogramBuilder.TREE_EXTENSION + ".tmp");
+            tree.write(tmp.getPath());
+            move(tmp, new File(clusterFile + LocalFeatureHistogramBuilder.TREE_EXTENSION));
+        }
+        File tmp = new File(clusterFile + ".tmp");
+        Cluster.writeClusters(clusters, tmp.getPath());
+        move(tmp, new File(clusterFile));
+        return new Vocabulary(clusters, tree, maxChecks, Cluster.checksum(clusters));
+    }
+
+    private static void move(File source, File target) throws IOException {
+        Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Finds the visual word of a local feature.
+     *
+     * @param f the local feature.
+     * @return the index of the visual word.
+     */
+    public int getVisualWord(Histogram f) {
+        if (tree != null) return tree.findNearest(f.descriptor, maxChecks);
+        double d = clusters[0].getDistance(f);
+        double tmp;
+        int result = 0;
+        for (int i = 1; i < clusters.length; i++) {
+            tmp = clusters[i].getDistance(f);
+            if (tmp < d) {
+                d = tmp;
+                result = i;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creates the histogram of visual words for the local features of an image.
+     *
+     * @param features the local features.
+     * @return the number of features per visual word.
+     */
+    public int[] getHistogram(List<? extends Histogram> features) {
+        int[] histogram = new int[clusters.length];
+        for (Histogram f : features) {
+            histogram[getVisualWord(f)]++;
+        }
+        return histogram;
+    }
+
+    public Cluster[] getClusters() {
+        return clusters;
+    }
+
+    /**
+     * @return the number of visual words.
+     */
+    public int size() {
+        return clusters.length;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+}
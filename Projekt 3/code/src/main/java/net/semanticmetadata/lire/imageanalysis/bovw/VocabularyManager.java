@@ -0,0 +1,147 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+package net.semanticmetadata.lire.imageanalysis.bovw;
+
+import net.semanticmetadata.lire.DocumentBuilder;
+import net.semanticmetadata.lire.imageanalysis.Histogram;
+import net.semanticmetadata.lire.imageanalysis.LireFeature;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.MapFieldSelector;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Incremental bag of visual words indexing: The vocabulary is loaded once and the visual words are
+ * added when the document is created, e.g. by {@link net.semanticmetadata.lire.impl.SurfDocumentBuilder},
+ * so new documents do not need a rewrite of the index. A new vocabulary can be created in the
+ * background with {@link #recluster(LocalFeatureHistogramBuilder, java.util.concurrent.ExecutorService)},
+ * documents created in the meantime still get the visual words of the old one. The new vocabulary
+ * replaces the old one atomically, each document uses one vocabulary only. Documents indexed with
+ * an older vocabulary are updated with {@link #update(org.apache.lucene.index.IndexReader, org.apache.lucene.index.IndexWriter)}.
+ * <br>Date: 18.10.2026
+ */
+public class VocabularyManager {
+    private final LocalFeatureHistogramBuilder builder;
+    private final String clusterFile;
+    private final int maxChecks;
+    private volatile Vocabulary vocabulary;
+
+    /**
+     * Loads the vocabulary of the given builder from its cluster file.
+     *
+     * @param builder defines the local feature, the fields, the cluster file and the number of visual
+     *                words compared to each local feature (see {@link LocalFeatureHistogramBuilder#setMaxChecks(int)}).
+     * @throws IOException if the cluster file cannot be read.
+     */
+    public VocabularyManager(LocalFeatureHistogramBuilder builder) throws IOException {
+        this.builder = builder;
+        this.clusterFile = builder.clusterFile;
+        this.maxChecks = builder.maxChecks;
+        vocabulary = Vocabulary.read(clusterFile, maxChecks);
+    }
+
+    /**
+     * @return the vocabulary currently used.
+     */
+    public Vocabulary getVocabulary() {
+        return vocabulary;
+    }
+
+    /**
+     * Adds the visual words of the given local features to a document with the current vocabulary.
+     *
+     * @param doc      the document.
+     * @param features the local features of the image.
+     */
+    public void addVisualWords(Document doc, List<? extends Histogram> features) {
+        Vocabulary v = vocabulary;
+        builder.setVisualWords(doc, v.getHistogram(features), v.getVersion());
+    }
+
+    /**
+     * Creates a new vocabulary from the index of the given builder in the background, writes it to the
+     * cluster file and uses it from then on.
+     *
+     * @param source   the builder reading the local features to be clustered, e.g. a
+     *                 {@link SurfFeatureHistogramBuilder} on a current IndexReader.
+     * @param executor runs the clustering.
+     * @return the new vocabulary, available as soon as it is used.
+     */
+    public Future<Vocabulary> recluster(final LocalFeatureHistogramBuilder source, ExecutorService executor) {
+        return executor.submit(new Callable<Vocabulary>() {
+            public Vocabulary call() throws Exception {
+                Vocabulary v = Vocabulary.write(source.createVocabulary(), maxChecks, clusterFile);
+                vocabulary = v;
+                return v;
+            }
+        });
+    }
+
+    /**
+     * Updates the visual words of all documents without visual words or with visual words from a
+     * different vocabulary. Only the version field is read from the other documents.
+     *
+     * @param reader the reader on the index.
+     * @param writer the writer on the same index, documents are replaced by their identifier.
+     * @return the number of documents updated.
+     * @throws IOException
+     */
+    public int update(IndexReader reader, IndexWriter writer) throws IOException {
+        Vocabulary v = vocabulary;
+        String version = Long.toString(v.getVersion());
+        MapFieldSelector versionOnly = new MapFieldSelector(builder.getVocabularyVersionFieldName());
+        int count = 0;
+        for (int i = 0; i < reader.maxDoc(); i++) {
+            if (reader.isDeleted(i)) continue;
+            if (version.equals(reader.document(i, versionOnly).get(builder.getVocabularyVersionFieldName())))
+                continue;
+            Document d = reader.document(i);
+            byte[][] binaryValues = d.getBinaryValues(builder.localFeatureFieldName);
+            List<Histogram> features = new ArrayList<Histogram>(binaryValues.length);
+            for (byte[] data : binaryValues) {
+                LireFeature f = builder.getFeatureInstance();
+                f.setByteArrayRepresentation(data);
+                features.add((Histogram) f);
+            }
+            builder.setVisualWords(d, v.getHistogram(features), v.getVersion());
+            writer.updateDocument(new Term(DocumentBuilder.FIELD_NAME_IDENTIFIER, d.getValues(DocumentBuilder.FIELD_NAME_IDENTIFIER)[0]), d);
+            count++;
+        }
+        return count;
+    }
+}
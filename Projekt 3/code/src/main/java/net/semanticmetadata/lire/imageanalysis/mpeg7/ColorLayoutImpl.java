@@ -29,10 +29,12 @@
  */
 package net.semanticmetadata.lire.imageanalysis.mpeg7;
 
+import net.semanticmetadata.lire.imageanalysis.utils.PixelSource;
+import net.semanticmetadata.lire.utils.SerializationUtils;
+
 import java.awt.image.BufferedImage;
 import java.awt.image.WritableRaster;
 
-
 /**
  * Class for extrcating & comparing MPEG-7 based CBIR descriptor ColorLayout
  *
@@ -43,6 +45,7 @@ public class ColorLayoutImpl {
     protected int[][] shape;
     protected int imgYSize, imgXSize;
     protected BufferedImage img;
+    private PixelSource source = null;
 
     protected static int[] availableCoeffNumbers = {1, 3, 6, 10, 15, 21, 28, 64};
 
@@ -94,6 +97,11 @@ public class ColorLayoutImpl {
             }
     };
     protected static int[][] weightMatrix = new int[3][64];
+
+    static {
+        setWeightingValues();
+    }
+
     protected BufferedImage colorLayoutImage;
 
     public ColorLayoutImpl() {
@@ -152,10 +160,16 @@ public class ColorLayoutImpl {
     }
 
     public void extract(BufferedImage bimg) {
-        this.img = bimg;
+        extract(new PixelSource(bimg));
+    }
+
+    public void extract(PixelSource source) {
+        this.source = source;
+        this.img = source.getImage();
         imgYSize = img.getHeight();
         imgXSize = img.getWidth();
         init();
+        this.source = null;
     }
 
     private void createShape() {
@@ -177,26 +191,43 @@ public class ColorLayoutImpl {
             shape[2][i] = 0;
         }
 
-        WritableRaster raster = img.getRaster();
-        int[] pixel = {0, 0, 0};
-        for (y = 0; y < imgYSize; y++) {
-            for (x = 0; x < imgXSize; x++) {
-                raster.getPixel(x, y, pixel);
-                R = pixel[0];
-                G = pixel[1];
-                B = pixel[2];
-
+        if (source != null && source.isRGBRaster()) {
+            // same values as below, but converted once for all features.
+            int[][] yCbCr = source.getYCbCr();
+            for (y = 0; y < imgYSize; y++) {
                 y_axis = (int) (y / (imgYSize / 8.0));
-                x_axis = (int) (x / (imgXSize / 8.0));
-
-                k = (y_axis << 3) + x_axis;
-
-                //RGB to YCbCr, partition and average-calculation
-                yy = (0.299 * R + 0.587 * G + 0.114 * B) / 256.0;
-                sum[0][k] += (int) (219.0 * yy + 16.5); // Y
-                sum[1][k] += (int) (224.0 * 0.564 * (B / 256.0 * 1.0 - yy) + 128.5); // Cb
-                sum[2][k] += (int) (224.0 * 0.713 * (R / 256.0 * 1.0 - yy) + 128.5); // Cr
-                cnt[k]++;
+                for (x = 0; x < imgXSize; x++) {
+                    x_axis = (int) (x / (imgXSize / 8.0));
+                    k = (y_axis << 3) + x_axis;
+                    int index = y * imgXSize + x;
+                    sum[0][k] += yCbCr[0][index];
+                    sum[1][k] += yCbCr[1][index];
+                    sum[2][k] += yCbCr[2][index];
+                    cnt[k]++;
+                }
+            }
+        } else {
+            WritableRaster raster = img.getRaster();
+            int[] pixel = {0, 0, 0};
+            for (y = 0; y < imgYSize; y++) {
+                for (x = 0; x < imgXSize; x++) {
+                    raster.getPixel(x, y, pixel);
+                    R = pixel[0];
+                    G = pixel[1];
+                    B = pixel[2];
+
+                    y_axis = (int) (y / (imgYSize / 8.0));
+                    x_axis = (int) (x / (imgXSize / 8.0));
+
+                    k = (y_axis << 3) + x_axis;
+
+                    //RGB to YCbCr, partition and average-calculation
+                    yy = (0.299 * R + 0.587 * G + 0.114 * B) / 256.0;
+                    sum[0][k] += (int) (219.0 * yy + 16.5); // Y
+                    sum[1][k] += (int) (224.0 * 0.564 * (B / 256.0 * 1.0 - yy) + 128.5); // Cb
+                    sum[2][k] += (int) (224.0 * 0.713 * (R / 256.0 * 1.0 - yy) + 128.5); // Cr
+                    cnt[k]++;
+                }
             }
         }
 
@@ -212,10 +243,16 @@ public class ColorLayoutImpl {
         }
     }
 
-    private static void Fdct(int[] shapes) {
+    /**
+     * Forward DCT of a block with the cosine table. The table and the rounding define the stored descriptors,
+     * so they must not be replaced by a different DCT.
+     *
+     * @param shapes the 64 samples, replaced by the coefficients.
+     * @param dct    an array of 64 elements for intermediate results.
+     */
+    private static void Fdct(int[] shapes, double[] dct) {
         int i, j, k;
         double s;
-        double[] dct = new double[64];
 
         //calculation of the cos-values of the second sum
         for (i = 0; i < 8; i++) {
@@ -301,9 +338,10 @@ public class ColorLayoutImpl {
 
         createShape();
 
-        Fdct(shape[0]);
-        Fdct(shape[1]);
-        Fdct(shape[2]);
+        double[] dct = new double[64];
+        Fdct(shape[0], dct);
+        Fdct(shape[1], dct);
+        Fdct(shape[2], dct);
 
         YCoeff[0] = quant_ydc(shape[0][0] >> 3) >> 1;
         CbCoeff[0] = quant_cdc(shape[1][0] >> 3);
@@ -388,8 +426,6 @@ public class ColorLayoutImpl {
         YCoeff = Math.min(numYCoeff1, numYCoeff2);
         CCoeff = Math.min(CCoeff1, CCoeff2);
 
-        setWeightingValues();
-
         int j;
         int[] sum = new int[3];
         int diff;
@@ -417,6 +453,44 @@ public class ColorLayoutImpl {
         return Math.sqrt(sum[0] * 1.0) + Math.sqrt(sum[1] * 1.0) + Math.sqrt(sum[2] * 1.0);
     }
 
+    /**
+     * Computes the same distance as {@link #getSimilarity(int[], int[], int[], int[], int[], int[])}, but
+     * reads the second descriptor directly from the byte[] representation of
+     * {@link net.semanticmetadata.lire.imageanalysis.ColorLayout}, i.e. the number of Y and C coefficients
+     * followed by the Y, Cb and Cr coefficients, all as 4 byte ints.
+     *
+     * @param YCoeff1  Y coefficients of the first descriptor
+     * @param CbCoeff1 Cb coefficients of the first descriptor
+     * @param CrCoeff1 Cr coefficients of the first descriptor
+     * @param in       array holding the second descriptor
+     * @param offset   position of the second descriptor in the array
+     * @return the distance between the two descriptors
+     */
+    public static double getSimilarity(int[] YCoeff1, int[] CbCoeff1, int[] CrCoeff1, byte[] in, int offset) {
+        int numYCoeff2 = SerializationUtils.toInt(in, offset), CCoeff2 = SerializationUtils.toInt(in, offset + 4);
+        int YCoeff = Math.min(YCoeff1.length, numYCoeff2);
+        int CCoeff = Math.min(CbCoeff1.length, CCoeff2);
+        // positions of the Y, Cb and Cr coefficients of the second descriptor
+        int y2 = offset + 8, cb2 = y2 + numYCoeff2 * 4, cr2 = cb2 + CCoeff2 * 4;
+
+        int j;
+        int sum0 = 0, sum1 = 0, sum2 = 0;
+        int diff;
+        for (j = 0; j < YCoeff; j++) {
+            diff = (YCoeff1[j] - SerializationUtils.toInt(in, y2 + j * 4));
+            sum0 += (weightMatrix[0][j] * diff * diff);
+        }
+        for (j = 0; j < CCoeff; j++) {
+            diff = (CbCoeff1[j] - SerializationUtils.toInt(in, cb2 + j * 4));
+            sum1 += (weightMatrix[1][j] * diff * diff);
+        }
+        for (j = 0; j < CCoeff; j++) {
+            diff = (CrCoeff1[j] - SerializationUtils.toInt(in, cr2 + j * 4));
+            sum2 += (weightMatrix[2][j] * diff * diff);
+        }
+        return Math.sqrt(sum0 * 1.0) + Math.sqrt(sum1 * 1.0) + Math.sqrt(sum2 * 1.0);
+    }
+
     private static void setWeightingValues() {
         weightMatrix[0][0] = 2;
         weightMatrix[0][1] = weightMatrix[0][2] = 2;
@@ -470,9 +544,10 @@ public class ColorLayoutImpl {
             }
 
             // inverse Discrete Cosine Transform
-            Idct(smallReImage[0]);
-            Idct(smallReImage[1]);
-            Idct(smallReImage[2]);
+            double[] dct = new double[64];
+            Idct(smallReImage[0], dct);
+            Idct(smallReImage[1], dct);
+            Idct(smallReImage[2], dct);
 
             // YCrCb to RGB
             colorLayoutImage = YCrCb2RGB(smallReImage);
@@ -480,10 +555,15 @@ public class ColorLayoutImpl {
         }
     }
 
-    private static void Idct(int[] iShapes) {
+    /**
+     * Inverse DCT of a block with the cosine table.
+     *
+     * @param iShapes the 64 coefficients, replaced by the rounded samples.
+     * @param dct     an array of 64 elements for intermediate results.
+     */
+    private static void Idct(int[] iShapes, double[] dct) {
         int u, v, k;
         double s;
-        double[] dct = new double[64];
 
         //calculation of the cos-values of the second sum
         for (u = 0; u < 8; u++) {
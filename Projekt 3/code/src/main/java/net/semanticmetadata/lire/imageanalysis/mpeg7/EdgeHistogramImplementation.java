@@ -31,6 +31,8 @@
 package net.semanticmetadata.lire.imageanalysis.mpeg7;
 
 import net.semanticmetadata.lire.imageanalysis.LireFeature;
+import net.semanticmetadata.lire.imageanalysis.utils.PixelSource;
+import net.semanticmetadata.lire.utils.SerializationUtils;
 
 import java.awt.image.BufferedImage;
 import java.util.StringTokenizer;
@@ -110,7 +112,7 @@ public class EdgeHistogramImplementation {
 
     private double Local_Edge_Histogram[] = new double[80];
     private int blockSize = -1;
-    private BufferedImage image;
+    private PixelSource source;
 
     /**
      * The actual edge histogram.
@@ -123,20 +125,20 @@ public class EdgeHistogramImplementation {
      */
 
     public EdgeHistogramImplementation(BufferedImage image) {
-        this.image = image;
-        width = image.getWidth();
-        height = image.getHeight();
-
-        extractFeature();
-        edgeHistogram = setEdgeHistogram();
+        extract(new PixelSource(image));
     }
 
     public void extract(BufferedImage image) {
-        this.image = image;
-        width = image.getWidth();
-        height = image.getHeight();
+        extract(new PixelSource(image));
+    }
+
+    public void extract(PixelSource source) {
+        this.source = source;
+        width = source.getWidth();
+        height = source.getHeight();
         extractFeature();
         edgeHistogram = setEdgeHistogram();
+        this.source = null;
     }
 
     public EdgeHistogramImplementation(String descriptor) {
@@ -228,9 +230,10 @@ public class EdgeHistogramImplementation {
 
     public void makeGreyLevel() {
         grey_level = new double[(int) width][(int) height];
+        int[] luminance = source.getYCbCr()[0];
         for (int x = 0; x < width; x++) {
             for (int y = 0; y < height; y++) {
-                grey_level[x][y] = getYfromRGB(image.getRGB(x, y));
+                grey_level[x][y] = luminance[y * (int) width + x];
             }
         }
 
@@ -526,6 +529,54 @@ public class EdgeHistogramImplementation {
         return result;
     }
 
+    /**
+     * Computes the same distance as {@link #calculateDistance(int[], int[])}, but reads the first
+     * histogram directly from its byte[] representation (80 bins as 4 byte ints).
+     *
+     * @param edgeHistogramA array holding the first point
+     * @param offset         position of the first point in the array
+     * @param edgeHistogramB defines the second point
+     * @return the distance from [0, 480]
+     */
+    public static float calculateDistance(byte[] edgeHistogramA, int offset, int[] edgeHistogramB) {
+        float result = 0f;
+        for (int i = 0; i < 80; i++) {
+            int a = SerializationUtils.toInt(edgeHistogramA, offset + i * 4);
+            result += Math.abs((float) EdgeHistogramImplementation.QuantTable[i % 5][a] - (float) EdgeHistogramImplementation.QuantTable[i % 5][edgeHistogramB[i]]);
+        }
+        for (int i = 0; i <= 4; i++) {
+            result += 5f * Math.abs((float) SerializationUtils.toInt(edgeHistogramA, offset + i * 4) - (float) edgeHistogramB[i]);
+        }
+        for (int i = 5; i < 80; i++) {
+            result += Math.abs((float) SerializationUtils.toInt(edgeHistogramA, offset + i * 4) - (float) edgeHistogramB[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Computes the same distance as {@link #calculateDistance(int[], int[])}, but reads the first
+     * histogram directly from an array with one byte per bin (unsigned).
+     *
+     * @param edgeHistogramA array holding the first point
+     * @param offset         position of the first bin of the first point in the array
+     * @param edgeHistogramB defines the second point
+     * @return the distance from [0, 480]
+     */
+    public static float calculateCompactDistance(byte[] edgeHistogramA, int offset, int[] edgeHistogramB) {
+        float result = 0f;
+        for (int i = 0; i < 80; i++) {
+            int a = edgeHistogramA[offset + i] & 0xff;
+            result += Math.abs((float) EdgeHistogramImplementation.QuantTable[i % 5][a] - (float) EdgeHistogramImplementation.QuantTable[i % 5][edgeHistogramB[i]]);
+        }
+        for (int i = 0; i <= 4; i++) {
+            result += 5f * Math.abs((float) (edgeHistogramA[offset + i] & 0xff) - (float) edgeHistogramB[i]);
+        }
+        for (int i = 5; i < 80; i++) {
+            result += Math.abs((float) (edgeHistogramA[offset + i] & 0xff) - (float) edgeHistogramB[i]);
+        }
+        return result;
+    }
+
     private static int[] RGB2YCRCB(int[] pixel, int[] result) {
         double yy = (0.299 * pixel[0] + 0.587 * pixel[1] + 0.114 * pixel[2]) / 256.0;
         result[0] = (int) (219.0 * yy + 16.5);
@@ -534,14 +585,6 @@ public class EdgeHistogramImplementation {
         return result;
     }
 
-    private static int getYfromRGB(int rgb) {
-        int b = rgb & 255;
-        int g = rgb >> 8 & 255;
-        int r = rgb >> 16 & 255;
-        double yy = (0.299 * r + 0.587 * g + 0.114 * b) / 256.0;
-        return (int) (219.0 * yy + 16.5);
-    }
-
     /**
      * Compares one descriptor to another.
      *
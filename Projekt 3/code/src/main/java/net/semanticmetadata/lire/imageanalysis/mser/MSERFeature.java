@@ -30,6 +30,8 @@
 
 package net.semanticmetadata.lire.imageanalysis.mser;
 
+import net.semanticmetadata.lire.imageanalysis.CompactFeature;
+import net.semanticmetadata.lire.imageanalysis.FeatureCodec;
 import net.semanticmetadata.lire.imageanalysis.Histogram;
 import net.semanticmetadata.lire.imageanalysis.LireFeature;
 import net.semanticmetadata.lire.utils.ConversionUtils;
@@ -46,7 +48,7 @@ import java.awt.image.BufferedImage;
  *
  * @author Christine Keim, christine.keim@inode.at
  */
-public class MSERFeature extends Histogram implements LireFeature {
+public class MSERFeature extends Histogram implements CompactFeature {
     MSERGrowthHistory mser;
 
     public MSERFeature(MSERGrowthHistory maxStableExtremalRegion, float[] invariants) {
@@ -93,7 +95,23 @@ public class MSERFeature extends Histogram implements LireFeature {
      * @see net.semanticmetadata.lire.imageanalysis.CEDD#getByteArrayRepresentation
      */
     public void setByteArrayRepresentation(byte[] in) {
-        descriptor = SerializationUtils.toFloatArray(in);
+        if (FeatureCodec.isEncoded(in, 0, in.length)) {
+            FeatureCodec.checkVersion(in, 0);
+            descriptor = SerializationUtils.toFloatArrayFromHalf(in, FeatureCodec.HEADER_LENGTH, (in.length - FeatureCodec.HEADER_LENGTH) / 2);
+        } else {
+            descriptor = SerializationUtils.toFloatArray(in);
+        }
+    }
+
+    /**
+     * The descriptor as 16 bit half precision floats, which is not without loss.
+     *
+     * @see FeatureCodec
+     */
+    public byte[] getCompactByteArrayRepresentation() {
+        byte[] result = FeatureCodec.createEncoded(descriptor.length * 2);
+        SerializationUtils.toHalfByteArray(descriptor, result, FeatureCodec.HEADER_LENGTH);
+        return result;
     }
 
     public double[] getDoubleHistogram() {
@@ -35,10 +35,12 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.PriorityQueue;
 
 /**
  * ...
@@ -79,19 +81,22 @@ public class Extractor {
             List<Feature> fs1 = computeSiftFeatures(img1);
             List<Feature> fs2 = computeSiftFeatures(img2);
 
-            // find the best matching features:
-            LinkedList<Found> res = new LinkedList<Found>();
-            for (int i = 0; i < fs1.size(); i++) {
-                Feature f1 = fs1.get(i);
-                for (int j = i + 1; j < fs2.size(); j++) {
-                    Feature f2 = fs2.get(j);
+            // find the best matching features, the worst of the best five is on top of the queue:
+            PriorityQueue<Found> best = new PriorityQueue<Found>(6, Collections.reverseOrder());
+            for (Feature f1 : fs1) {
+                for (Feature f2 : fs2) {
                     // determine similarity:
                     float d = f2.descriptorDistance(f1);
-                    res.add(new Found(f1, f2, d));
-                    Collections.sort(res);
-                    if (res.size() > 5) res.removeLast();
+                    if (best.size() < 5) {
+                        best.add(new Found(f1, f2, d));
+                    } else if (d < best.peek().d) {
+                        best.poll();
+                        best.add(new Found(f1, f2, d));
+                    }
                 }
             }
+            ArrayList<Found> res = new ArrayList<Found>(best);
+            Collections.sort(res);
             Graphics2D g1 = (Graphics2D) img1.getGraphics();
             g1.setColor(Color.red);
             Graphics2D g2 = (Graphics2D) img2.getGraphics();
@@ -30,6 +30,8 @@
 package net.semanticmetadata.lire.imageanalysis.sift;
 
 
+import net.semanticmetadata.lire.imageanalysis.CompactFeature;
+import net.semanticmetadata.lire.imageanalysis.FeatureCodec;
 import net.semanticmetadata.lire.imageanalysis.Histogram;
 import net.semanticmetadata.lire.imageanalysis.LireFeature;
 import net.semanticmetadata.lire.utils.SerializationUtils;
@@ -43,7 +45,7 @@ import java.util.logging.Logger;
 /**
  * SIFT feature container
  */
-public class Feature extends Histogram implements Comparable<Feature>, Serializable, LireFeature {
+public class Feature extends Histogram implements Comparable<Feature>, Serializable, CompactFeature {
     /**
      *
      */
@@ -182,6 +184,17 @@ public class Feature extends Histogram implements Comparable<Feature>, Serializa
      * @see net.semanticmetadata.lire.imageanalysis.CEDD#getByteArrayRepresentation
      */
     public void setByteArrayRepresentation(byte[] in) {
+        if (FeatureCodec.isEncoded(in, 0, in.length)) {
+            FeatureCodec.checkVersion(in, 0);
+            int pos = FeatureCodec.HEADER_LENGTH;
+            location = new float[2];
+            scale = Float.intBitsToFloat(SerializationUtils.toInt(in, pos));
+            orientation = Float.intBitsToFloat(SerializationUtils.toInt(in, pos + 4));
+            location[0] = Float.intBitsToFloat(SerializationUtils.toInt(in, pos + 8));
+            location[1] = Float.intBitsToFloat(SerializationUtils.toInt(in, pos + 12));
+            descriptor = SerializationUtils.toFloatArrayFromHalf(in, pos + 16, (in.length - pos - 16) / 2);
+            return;
+        }
         byte[] tmp = new byte[4];
         descriptor = new float[in.length / 4 - 4];
         location = new float[2];
@@ -201,6 +214,23 @@ public class Feature extends Histogram implements Comparable<Feature>, Serializa
         }
     }
 
+    /**
+     * Scale, orientation and location as floats, the descriptor as 16 bit half precision floats,
+     * which is not without loss.
+     *
+     * @see FeatureCodec
+     */
+    public byte[] getCompactByteArrayRepresentation() {
+        byte[] result = FeatureCodec.createEncoded(4 * 4 + descriptor.length * 2);
+        int pos = FeatureCodec.HEADER_LENGTH;
+        System.arraycopy(SerializationUtils.toBytes(scale), 0, result, pos, 4);
+        System.arraycopy(SerializationUtils.toBytes(orientation), 0, result, pos + 4, 4);
+        System.arraycopy(SerializationUtils.toBytes(location[0]), 0, result, pos + 8, 4);
+        System.arraycopy(SerializationUtils.toBytes(location[1]), 0, result, pos + 12, 4);
+        SerializationUtils.toHalfByteArray(descriptor, result, pos + 16);
+        return result;
+    }
+
     public double[] getDoubleHistogram() {
         double[] result = new double[descriptor.length];
         for (int i = 0; i < descriptor.length; i++) {
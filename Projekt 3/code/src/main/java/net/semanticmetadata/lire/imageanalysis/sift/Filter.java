@@ -484,9 +484,14 @@ public class Filter {
             src.data[i] = scale * (src.data[i] - min);
     }
 
+    /**
+     * number of columns convolved at once in the vertical pass, small enough to
+     * keep the rows of a kernel in the cache
+     */
+    private static final int BLOCK_WIDTH = 512;
+
     /**
      * convolve an image with a horizontal and a vertical kernel
-     * simple straightforward, not optimized---replace this with a trusted better version soon
      *
      * @param input the input image
      * @param h     horizontal kernel
@@ -494,97 +499,89 @@ public class Filter {
      * @return convolved image
      */
     public static FloatArray2D convolveSeparable(FloatArray2D input, float[] h, float[] v) {
-        FloatArray2D output = new FloatArray2D(input.width, input.height);
-        FloatArray2D temp = new FloatArray2D(input.width, input.height);
+        return convolveSeparable(
+                input,
+                h,
+                v,
+                new FloatArray2D(input.width, input.height),
+                new float[input.width * input.height]);
+    }
 
+    /**
+     * convolve an image with a horizontal and a vertical kernel into a given
+     * image, coordinates outside the image are mirrored like in
+     * {@link #flipInRange(int, int)}
+     * <p/>
+     * Both passes run along the rows: each row is copied into a buffer having
+     * the mirrored borders, then the kernel is applied tap by tap to the whole
+     * row, so the inner loops are free of boundary checks.  The vertical pass
+     * works on blocks of columns adding up the rows of the kernel.
+     *
+     * @param input  the input image
+     * @param h      horizontal kernel
+     * @param v      vertical kernel
+     * @param output the convolved image of the size of input, may not be input
+     * @param temp   buffer for the horizontally convolved image, at least
+     *               input.width * input.height long, reused to avoid allocations
+     * @return output
+     */
+    public static FloatArray2D convolveSeparable(
+            FloatArray2D input,
+            float[] h,
+            float[] v,
+            FloatArray2D output,
+            float[] temp) {
+        int width = input.width;
+        int height = input.height;
         int hl = h.length / 2;
         int vl = v.length / 2;
 
-        int xl = input.width - h.length + 1;
-        int yl = input.height - v.length + 1;
-
-        // create lookup tables for coordinates outside the image range
-        int[] xb = new int[h.length + hl - 1];
-        int[] xa = new int[h.length + hl - 1];
-        for (int i = 0; i < xb.length; ++i) {
-            xb[i] = flipInRange(i - hl, input.width);
-            xa[i] = flipInRange(i + xl, input.width);
-        }
-
-        int[] yb = new int[v.length + vl - 1];
-        int[] ya = new int[v.length + vl - 1];
-        for (int i = 0; i < yb.length; ++i) {
-            yb[i] = input.width * flipInRange(i - vl, input.height);
-            ya[i] = input.width * flipInRange(i + yl, input.height);
-        }
-
-//		String xa_str = "xa: ";
-//		String xb_str = "xb: ";
-//		String ya_str = "ya: ";
-//		String yb_str = "yb: ";
-//		for ( int i = 0; i < xa.length; ++i )
-//		{
-//			xa_str = xa_str + xa[ i ] + ", ";
-//			xb_str = xb_str + xb[ i ] + ", ";
-//			ya_str = ya_str + ( ya[ i ] / input.width ) + ", ";
-//			yb_str = yb_str + ( yb[ i ] / input.width ) + ", ";
-//		}
-//		
-//		System.out.println( xb_str );
-//		System.out.println( xa_str );
-//		System.out.println( yb_str );
-//		System.out.println( ya_str );
-
-
-        xl += hl;
-        yl += vl;
         // horizontal convolution per row
-        int rl = input.height * input.width;
-        for (int r = 0; r < rl; r += input.width) {
-            for (int x = hl; x < xl; ++x) {
-                int c = x - hl;
-                float val = 0;
-                for (int xk = 0; xk < h.length; ++xk) {
-                    val += h[xk] * input.data[r + c + xk];
-                }
-                temp.data[r + x] = val;
+        int[] xm = new int[width + 2 * hl];
+        for (int i = 0; i < xm.length; ++i) {
+            xm[i] = flipInRange(i - hl, width);
+        }
+        float[] row = new float[xm.length];
+        for (int r = 0; r < width * height; r += width) {
+            for (int i = 0; i < hl; ++i) {
+                row[i] = input.data[r + xm[i]];
+                row[hl + width + i] = input.data[r + xm[hl + width + i]];
+            }
+            System.arraycopy(input.data, r, row, hl, width);
+            float k = h[0];
+            for (int x = 0; x < width; ++x) {
+                temp[r + x] = k * row[x];
             }
-            for (int x = 0; x < hl; ++x) {
-                float valb = 0;
-                float vala = 0;
-                for (int xk = 0; xk < h.length; ++xk) {
-                    valb += h[xk] * input.data[r + xb[x + xk]];
-                    vala += h[xk] * input.data[r + xa[x + xk]];
+            for (int xk = 1; xk < h.length; ++xk) {
+                k = h[xk];
+                for (int x = 0, xr = r; x < width; ++x, ++xr) {
+                    temp[xr] += k * row[x + xk];
                 }
-                temp.data[r + x] = valb;
-                temp.data[r + x + xl] = vala;
             }
         }
 
-        // vertical convolution per column
-        rl = yl * temp.width;
-        int vlc = vl * temp.width;
-        for (int x = 0; x < temp.width; ++x) {
-            for (int r = vlc; r < rl; r += temp.width) {
-                float val = 0;
-                int c = r - vlc;
-                int rk = 0;
-                for (int yk = 0; yk < v.length; ++yk) {
-                    val += v[yk] * temp.data[c + rk + x];
-                    rk += temp.width;
+        // vertical convolution per block of columns
+        int[] ym = new int[height + 2 * vl];
+        for (int i = 0; i < ym.length; ++i) {
+            ym[i] = width * flipInRange(i - vl, height);
+        }
+        float[] out = output.data;
+        for (int x0 = 0; x0 < width; x0 += BLOCK_WIDTH) {
+            int x1 = Math.min(x0 + BLOCK_WIDTH, width);
+            for (int y = 0; y < height; ++y) {
+                int r = y * width;
+                float k = v[0];
+                int rk = ym[y];
+                for (int x = x0; x < x1; ++x) {
+                    out[r + x] = k * temp[rk + x];
                 }
-                output.data[r + x] = val;
-            }
-            for (int y = 0; y < vl; ++y) {
-                int r = y * temp.width;
-                float valb = 0;
-                float vala = 0;
-                for (int yk = 0; yk < v.length; ++yk) {
-                    valb += h[yk] * temp.data[yb[y + yk] + x];
-                    vala += h[yk] * temp.data[ya[y + yk] + x];
+                for (int yk = 1; yk < v.length; ++yk) {
+                    k = v[yk];
+                    rk = ym[y + yk];
+                    for (int x = x0; x < x1; ++x) {
+                        out[r + x] += k * temp[rk + x];
+                    }
                 }
-                output.data[r + x] = valb;
-                output.data[r + rl + x] = vala;
             }
         }
 
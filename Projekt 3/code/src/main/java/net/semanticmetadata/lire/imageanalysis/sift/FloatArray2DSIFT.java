@@ -120,6 +120,12 @@ public class FloatArray2DSIFT {
         return octaves[i];
     }
 
+    /**
+     * buffer for the convolutions of all octaves, the first octave is the
+     * largest one
+     */
+    private float[] temp = null;
+
     /**
      * Difference of Gaussian detector
      */
@@ -203,6 +209,9 @@ public class FloatArray2DSIFT {
 
             kernel_diff[i] = Filter.createGaussianKernel1D(sigma_diff[i], true);
         }
+        float[][] kernel_increment = FloatArray2DScaleOctave.createIncrementKernels(sigma);
+        if (temp == null || temp.length < src.width * src.height)
+            temp = new float[src.width * src.height];
 
         FloatArray2D next;
 
@@ -211,8 +220,9 @@ public class FloatArray2DSIFT {
                     src,
                     sigma,
                     sigma_diff,
-                    kernel_diff);
-            octaves[i].buildStub();
+                    kernel_diff,
+                    kernel_increment);
+            octaves[i].buildStub(temp);
             next = new FloatArray2D(
                     src.width / 2 + src.width % 2,
                     src.height / 2 + src.height % 2);
@@ -503,7 +513,7 @@ public class FloatArray2DSIFT {
     public Vector<Feature> runOctave(int o) {
         Vector<Feature> features = new Vector<Feature>();
         FloatArray2DScaleOctave octave = octaves[o];
-        octave.build();
+        octave.build(temp);
         dog.run(octave);
         Vector<float[]> candidates = dog.getCandidates();
         for (float[] c : candidates) {
@@ -119,6 +119,12 @@ public class FloatArray2DScaleOctave {
      */
     private float[][] KERNEL_DIFF;
 
+    /**
+     * 1D gaussian kernels required to create the corresponding gaussian
+     * image instances from the previous one
+     */
+    private float[][] KERNEL_INCREMENT;
+
     /**
      * gaussian smoothed images
      */
@@ -204,6 +210,7 @@ public class FloatArray2DScaleOctave {
                     SIGMA_DIFF[i],
                     true);
         }
+        KERNEL_INCREMENT = createIncrementKernels(SIGMA);
         l = new FloatArray2D[1];
         l[0] = img;
         d = null;
@@ -223,6 +230,27 @@ public class FloatArray2DScaleOctave {
             float[] sigma,
             float[] sigma_diff,
             float[][] kernel_diff) {
+        this(img, sigma, sigma_diff, kernel_diff, createIncrementKernels(sigma));
+    }
+
+    /**
+     * Constructor
+     * <p/>
+     * faster initialisation with precomputed gaussian kernels
+     *
+     * @param img              image being the first gaussian instance of the scale octave
+     * @param sigma            sigma of the gaussian images
+     * @param sigma_diff       sigma of the gaussian kernels creating the images from the first one
+     * @param kernel_diff      kernels creating the images from the first one
+     * @param kernel_increment kernels creating the images from the previous one, see
+     *                         {@link #createIncrementKernels(float[])}
+     */
+    public FloatArray2DScaleOctave(
+            FloatArray2D img,
+            float[] sigma,
+            float[] sigma_diff,
+            float[][] kernel_diff,
+            float[][] kernel_increment) {
         state = State.EMPTY;
 
         width = img.width;
@@ -236,6 +264,7 @@ public class FloatArray2DScaleOctave {
         SIGMA = sigma;
         SIGMA_DIFF = sigma_diff;
         KERNEL_DIFF = kernel_diff;
+        KERNEL_INCREMENT = kernel_increment;
 
         l = new FloatArray2D[1];
         l[0] = img;
@@ -253,10 +282,24 @@ public class FloatArray2DScaleOctave {
      * INITIAL_SIGMA of the half image size.
      */
     public void buildStub() {
+        buildStub(new float[width * height]);
+    }
+
+    /**
+     * build only the gaussian image with 2 * INITIAL_SIGMA
+     *
+     * @param temp buffer of at least width * height floats for the convolution
+     */
+    public void buildStub(float[] temp) {
         FloatArray2D img = l[0];
         l = new FloatArray2D[2];
         l[0] = img;
-        l[1] = Filter.convolveSeparable(l[0], KERNEL_DIFF[STEPS], KERNEL_DIFF[STEPS]);
+        l[1] = Filter.convolveSeparable(
+                l[0],
+                KERNEL_DIFF[STEPS],
+                KERNEL_DIFF[STEPS],
+                new FloatArray2D(width, height),
+                temp);
 
         state = State.STUB;
     }
@@ -266,6 +309,20 @@ public class FloatArray2DScaleOctave {
      * build the scale octave
      */
     public boolean build() {
+        return build(new float[width * height]);
+    }
+
+    /**
+     * build the scale octave
+     * <p/>
+     * Each gaussian image is created from the previous one with the
+     * difference kernel sqrt( SIGMA[i]^2 - SIGMA[i-1]^2 ), which is smaller
+     * than the one creating it from the first image.
+     *
+     * @param temp buffer of at least width * height floats for the convolution,
+     *             so one buffer can be used for all octaves of a scale space
+     */
+    public boolean build(float[] temp) {
         FloatArray2D img = l[0];
         FloatArray2D img2;
         if (state == State.STUB) {
@@ -277,7 +334,12 @@ public class FloatArray2DScaleOctave {
         for (int i = 1; i < SIGMA_DIFF.length; ++i) {
             if (state == State.STUB && i == STEPS) continue;
             // use precomputed kernels
-            l[i] = Filter.convolveSeparable(l[0], KERNEL_DIFF[i], KERNEL_DIFF[i]);
+            l[i] = Filter.convolveSeparable(
+                    l[i - 1],
+                    KERNEL_INCREMENT[i],
+                    KERNEL_INCREMENT[i],
+                    new FloatArray2D(width, height),
+                    temp);
             //l[ i ] = ImageFilter.computeGaussian( l[ 0 ], SIGMA_DIFF[ i ] );
         }
         d = new FloatArray2D[STEPS + 2];
@@ -298,6 +360,23 @@ public class FloatArray2DScaleOctave {
         return true;
     }
 
+    /**
+     * create the 1D gaussian kernels creating each gaussian image from the
+     * previous one
+     *
+     * @param sigma sigma of the gaussian images
+     * @return the kernels, the first one is null
+     */
+    public static float[][] createIncrementKernels(float[] sigma) {
+        float[][] kernel_increment = new float[sigma.length][];
+        for (int i = 1; i < sigma.length; ++i) {
+            kernel_increment[i] = Filter.createGaussianKernel1D(
+                    (float) Math.sqrt(sigma[i] * sigma[i] - sigma[i - 1] * sigma[i - 1]),
+                    true);
+        }
+        return kernel_increment;
+    }
+
     /**
      * clear the scale octave to save memory
      */
@@ -0,0 +1,250 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+package net.semanticmetadata.lire.imageanalysis.sift;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * KD-tree over the descriptors of local features for finding the two nearest neighbours of a
+ * descriptor, e.g. for the ratio test when matching the features of two images. Each node splits
+ * its descriptors at the mean of the dimension with the highest variance, the tree is searched best
+ * bin first: after descending to the nearest leaf, the branches not taken are visited in the order
+ * of their distance to the descriptor until maxChecks descriptors have been compared. With enough
+ * checks the result is exact, with less checks it is approximate but much faster for descriptors
+ * with many dimensions like SIFT. Instances are not changed by searching and can be shared by
+ * threads.
+ * <br>Date: 18.10.2026
+ */
+public class KDTree {
+    private static final int LEAF_SIZE = 8;
+    private static final int VARIANCE_SAMPLE_SIZE = 128;
+
+    private final float[][] descriptors;
+    private final int[] order;
+    // per node: the split dimension or -1 for leaves, the split value, the children or the range in order.
+    private int[] dimensions = new int[64];
+    private float[] splits = new float[64];
+    private int[] left = new int[64];
+    private int[] right = new int[64];
+    private int numNodes = 0;
+
+    /**
+     * @param features the features, their descriptors must not be changed afterwards.
+     */
+    public KDTree(List<? extends Feature> features) {
+        descriptors = new float[features.size()][];
+        for (int i = 0; i < descriptors.length; i++) {
+            descriptors[i] = features.get(i).descriptor;
+        }
+        order = new int[descriptors.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        if (order.length > 0) build(0, order.length, new Random(order.length));
+    }
+
+    private int build(int start, int end, Random random) {
+        int node = numNodes++;
+        if (node == dimensions.length) {
+            dimensions = Arrays.copyOf(dimensions, node * 2);
+            splits = Arrays.copyOf(splits, node * 2);
+            left = Arrays.copyOf(left, node * 2);
+            right = Arrays.copyOf(right, node * 2);
+        }
+        dimensions[node] = -1;
+        left[node] = start;
+        right[node] = end;
+        if (end - start <= LEAF_SIZE) return node;
+        // mean and variance per dimension on a sample of the descriptors:
+        int length = descriptors[order[start]].length;
+        double[] sums = new double[length];
+        double[] squares = new double[length];
+        int count = Math.min(end - start, VARIANCE_SAMPLE_SIZE);
+        for (int i = 0; i < count; i++) {
+            float[] d = descriptors[order[end - start > VARIANCE_SAMPLE_SIZE ? start + random.nextInt(end - start) : start + i]];
+            for (int j = 0; j < length; j++) {
+                sums[j] += d[j];
+                squares[j] += d[j] * d[j];
+            }
+        }
+        int dimension = 0;
+        double maxVariance = -1;
+        for (int j = 0; j < length; j++) {
+            double variance = squares[j] - sums[j] * sums[j] / count;
+            if (variance > maxVariance) {
+                maxVariance = variance;
+                dimension = j;
+            }
+        }
+        float split = (float) (sums[dimension] / count);
+        // partition the range at the split value:
+        int i = start, j = end - 1;
+        while (i <= j) {
+            if (descriptors[order[i]][dimension] < split) {
+                i++;
+            } else {
+                int tmp = order[i];
+                order[i] = order[j];
+                order[j--] = tmp;
+            }
+        }
+        // all descriptors on one side, e.g. duplicates, are kept in one leaf.
+        if (i == start || i == end) return node;
+        dimensions[node] = dimension;
+        splits[node] = split;
+        int leftChild = build(start, i, random);
+        int rightChild = build(i, end, random);
+        left[node] = leftChild;
+        right[node] = rightChild;
+        return node;
+    }
+
+    /**
+     * @return the number of descriptors in the tree.
+     */
+    public int size() {
+        return descriptors.length;
+    }
+
+    /**
+     * Finds the two nearest descriptors by Euclidean distance.
+     *
+     * @param descriptor the descriptor to search for.
+     * @param maxChecks  the maximum number of descriptors compared, use {@link #size()} for exact results.
+     * @param nearest    gets the indices of the nearest and the second nearest feature, -1 if there is none.
+     * @param distances  gets the squared distances of the nearest and the second nearest feature.
+     */
+    public void findTwoNearest(float[] descriptor, int maxChecks, int[] nearest, float[] distances) {
+        nearest[0] = nearest[1] = -1;
+        distances[0] = distances[1] = Float.MAX_VALUE;
+        if (numNodes == 0) return;
+        BranchQueue queue = new BranchQueue();
+        int checks = search(0, descriptor, nearest, distances, queue);
+        // the squared distance to the split is a lower bound for all descriptors on the other side.
+        while (checks < maxChecks && queue.size > 0 && queue.distances[0] < distances[1]) {
+            checks += search(queue.poll(), descriptor, nearest, distances, queue);
+        }
+    }
+
+    /**
+     * Descends from the node to the nearest leaf, adds the other branches to the queue and compares
+     * the descriptors of the leaf.
+     *
+     * @return the number of descriptors compared.
+     */
+    private int search(int node, float[] descriptor, int[] nearest, float[] distances, BranchQueue queue) {
+        while (dimensions[node] >= 0) {
+            float diff = descriptor[dimensions[node]] - splits[node];
+            if (diff < 0) {
+                queue.add(right[node], diff * diff);
+                node = left[node];
+            } else {
+                queue.add(left[node], diff * diff);
+                node = right[node];
+            }
+        }
+        for (int i = left[node]; i < right[node]; i++) {
+            int index = order[i];
+            float d = distance(descriptor, descriptors[index], distances[1]);
+            if (d < distances[0]) {
+                nearest[1] = nearest[0];
+                distances[1] = distances[0];
+                nearest[0] = index;
+                distances[0] = d;
+            } else if (d < distances[1]) {
+                nearest[1] = index;
+                distances[1] = d;
+            }
+        }
+        return right[node] - left[node];
+    }
+
+    /**
+     * Squared Euclidean distance, the computation stops as soon as it exceeds the limit.
+     */
+    private static float distance(float[] a, float[] b, float limit) {
+        float sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            float d = a[i] - b[i];
+            sum += d * d;
+            if ((i & 15) == 15 && sum > limit) return sum;
+        }
+        return sum;
+    }
+
+    /**
+     * Primitive min-heap of nodes by their distance to the descriptor.
+     */
+    private static class BranchQueue {
+        int[] nodes = new int[64];
+        float[] distances = new float[64];
+        int size = 0;
+
+        void add(int node, float distance) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                distances = Arrays.copyOf(distances, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (distances[parent] <= distance) break;
+                nodes[i] = nodes[parent];
+                distances[i] = distances[parent];
+                i = parent;
+            }
+            nodes[i] = node;
+            distances[i] = distance;
+        }
+
+        int poll() {
+            int result = nodes[0];
+            int last = nodes[--size];
+            float distance = distances[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) break;
+                if (child + 1 < size && distances[child + 1] < distances[child]) child++;
+                if (distance <= distances[child]) break;
+                nodes[i] = nodes[child];
+                distances[i] = distances[child];
+                i = child;
+            }
+            if (size > 0) {
+                nodes[i] = last;
+                distances[i] = distance;
+            }
+            return result;
+        }
+    }
+}
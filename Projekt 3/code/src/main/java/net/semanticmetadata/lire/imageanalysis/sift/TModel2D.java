@@ -85,8 +85,9 @@ public class TModel2D extends Model {
         float[] m1_p1 = m1.getP1().getL();
         float[] m1_p2 = m1.getP2().getL();
 
-        float tx = m1_p1[0] - m1_p2[0];
-        float ty = m1_p1[1] - m1_p2[1];
+        // moves the first point onto the second like minimize():
+        float tx = m1_p2[0] - m1_p1[0];
+        float ty = m1_p2[1] - m1_p1[1];
 
         affine.setToIdentity();
         affine.translate(tx, ty);
@@ -0,0 +1,205 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+package net.semanticmetadata.lire.imageanalysis.utils;
+
+/**
+ * Orthonormal two dimensional DCT of 8x8 blocks, F(u,v) = C(u)C(v)/4 * sum f(x,y) cos((2x+1)u&pi;/16)
+ * cos((2y+1)v&pi;/16) with C(0) = 1/sqrt(2) and C(k) = 1 otherwise. A block is stored row by row
+ * in an array of 64 values, f(x,y) at 8*y+x and F(u,v) at 8*v+u.
+ * <p/>
+ * The rows and then the columns are transformed with the factorization of Arai, Agui and Nakajima
+ * (5 multiplications and 29 additions per row), which leaves each coefficient scaled by a constant
+ * factor. The factors are applied once per coefficient after the second pass. The blocks are
+ * transformed in place, nothing is allocated.
+ * <br>Date: 18.10.2026
+ */
+public final class DCT {
+    public static final int BLOCK_SIZE = 8;
+
+    private static final double C4 = Math.cos(4 * Math.PI / 16);
+    private static final double C6 = Math.cos(6 * Math.PI / 16);
+    private static final double C2_MINUS_C6 = Math.cos(2 * Math.PI / 16) - C6;
+    private static final double C2_PLUS_C6 = Math.cos(2 * Math.PI / 16) + C6;
+    private static final double SQRT2 = Math.sqrt(2);
+    private static final double TWO_C2 = 2 * Math.cos(2 * Math.PI / 16);
+    private static final double TWO_C2_MINUS_C6 = 2 * C2_MINUS_C6;
+    private static final double TWO_C2_PLUS_C6 = 2 * C2_PLUS_C6;
+
+    /**
+     * The factors turning the scaled results of the forward transform into the orthonormal
+     * coefficients, also the factors the coefficients are scaled with before the inverse transform.
+     */
+    private static final double[] FORWARD_SCALE = new double[64], INVERSE_SCALE = new double[64];
+
+    static {
+        double[] aan = new double[BLOCK_SIZE];
+        aan[0] = 1;
+        for (int k = 1; k < BLOCK_SIZE; k++) aan[k] = Math.cos(k * Math.PI / 16) * SQRT2;
+        for (int v = 0; v < BLOCK_SIZE; v++) {
+            for (int u = 0; u < BLOCK_SIZE; u++) {
+                FORWARD_SCALE[v * BLOCK_SIZE + u] = 1 / (8 * aan[u] * aan[v]);
+                INVERSE_SCALE[v * BLOCK_SIZE + u] = aan[u] * aan[v] / 8;
+            }
+        }
+    }
+
+    private DCT() {
+    }
+
+    /**
+     * Transforms a block in place.
+     *
+     * @param block 64 samples, row by row, replaced by the coefficients.
+     */
+    public static void forward(double[] block) {
+        for (int offset = 0; offset < 64; offset += BLOCK_SIZE) forward(block, offset, 1);
+        for (int offset = 0; offset < BLOCK_SIZE; offset++) forward(block, offset, BLOCK_SIZE);
+        for (int i = 0; i < 64; i++) block[i] *= FORWARD_SCALE[i];
+    }
+
+    /**
+     * Transforms a block of integer samples, the coefficients are rounded.
+     *
+     * @param block 64 samples, row by row, replaced by the rounded coefficients.
+     * @param temp  an array of at least 64 elements used for the computation, so it can be reused.
+     */
+    public static void forward(int[] block, double[] temp) {
+        for (int i = 0; i < 64; i++) temp[i] = block[i];
+        forward(temp);
+        for (int i = 0; i < 64; i++) block[i] = (int) Math.floor(temp[i] + 0.499999);
+    }
+
+    /**
+     * Inverse transform of a block in place.
+     *
+     * @param block 64 coefficients, F(u,v) at 8*v+u, replaced by the samples.
+     */
+    public static void inverse(double[] block) {
+        for (int i = 0; i < 64; i++) block[i] *= INVERSE_SCALE[i];
+        for (int offset = 0; offset < 64; offset += BLOCK_SIZE) inverse(block, offset, 1);
+        for (int offset = 0; offset < BLOCK_SIZE; offset++) inverse(block, offset, BLOCK_SIZE);
+    }
+
+    /**
+     * Inverse transform of a block of integer coefficients, the samples are rounded.
+     *
+     * @param block 64 coefficients, F(u,v) at 8*v+u, replaced by the rounded samples.
+     * @param temp  an array of at least 64 elements used for the computation, so it can be reused.
+     */
+    public static void inverse(int[] block, double[] temp) {
+        for (int i = 0; i < 64; i++) temp[i] = block[i];
+        inverse(temp);
+        for (int i = 0; i < 64; i++) block[i] = (int) Math.floor(temp[i] + 0.499999);
+    }
+
+    /**
+     * One dimensional forward transform of 8 values, the results are scaled by 8 and by
+     * cos(k&pi;/16)*sqrt(2) for k &gt; 0.
+     */
+    private static void forward(double[] d, int offset, int stride) {
+        int i0 = offset, i1 = i0 + stride, i2 = i1 + stride, i3 = i2 + stride;
+        int i4 = i3 + stride, i5 = i4 + stride, i6 = i5 + stride, i7 = i6 + stride;
+        double tmp0 = d[i0] + d[i7];
+        double tmp7 = d[i0] - d[i7];
+        double tmp1 = d[i1] + d[i6];
+        double tmp6 = d[i1] - d[i6];
+        double tmp2 = d[i2] + d[i5];
+        double tmp5 = d[i2] - d[i5];
+        double tmp3 = d[i3] + d[i4];
+        double tmp4 = d[i3] - d[i4];
+
+        // even part:
+        double tmp10 = tmp0 + tmp3;
+        double tmp13 = tmp0 - tmp3;
+        double tmp11 = tmp1 + tmp2;
+        double tmp12 = tmp1 - tmp2;
+        d[i0] = tmp10 + tmp11;
+        d[i4] = tmp10 - tmp11;
+        double z1 = (tmp12 + tmp13) * C4;
+        d[i2] = tmp13 + z1;
+        d[i6] = tmp13 - z1;
+
+        // odd part:
+        tmp10 = tmp4 + tmp5;
+        tmp11 = tmp5 + tmp6;
+        tmp12 = tmp6 + tmp7;
+        double z5 = (tmp10 - tmp12) * C6;
+        double z2 = C2_MINUS_C6 * tmp10 + z5;
+        double z4 = C2_PLUS_C6 * tmp12 + z5;
+        double z3 = tmp11 * C4;
+        double z11 = tmp7 + z3;
+        double z13 = tmp7 - z3;
+        d[i5] = z13 + z2;
+        d[i3] = z13 - z2;
+        d[i1] = z11 + z4;
+        d[i7] = z11 - z4;
+    }
+
+    /**
+     * One dimensional inverse transform of 8 values scaled like the results of the forward
+     * transform.
+     */
+    private static void inverse(double[] d, int offset, int stride) {
+        int i0 = offset, i1 = i0 + stride, i2 = i1 + stride, i3 = i2 + stride;
+        int i4 = i3 + stride, i5 = i4 + stride, i6 = i5 + stride, i7 = i6 + stride;
+        // even part:
+        double tmp10 = d[i0] + d[i4];
+        double tmp11 = d[i0] - d[i4];
+        double tmp13 = d[i2] + d[i6];
+        double tmp12 = (d[i2] - d[i6]) * SQRT2 - tmp13;
+        double tmp0 = tmp10 + tmp13;
+        double tmp3 = tmp10 - tmp13;
+        double tmp1 = tmp11 + tmp12;
+        double tmp2 = tmp11 - tmp12;
+
+        // odd part:
+        double z13 = d[i5] + d[i3];
+        double z10 = d[i5] - d[i3];
+        double z11 = d[i1] + d[i7];
+        double z12 = d[i1] - d[i7];
+        double tmp7 = z11 + z13;
+        tmp11 = (z11 - z13) * SQRT2;
+        double z5 = (z10 + z12) * TWO_C2;
+        tmp10 = TWO_C2_MINUS_C6 * z12 - z5;
+        tmp12 = -TWO_C2_PLUS_C6 * z10 + z5;
+        double tmp6 = tmp12 - tmp7;
+        double tmp5 = tmp11 - tmp6;
+        double tmp4 = tmp10 + tmp5;
+
+        d[i0] = tmp0 + tmp7;
+        d[i7] = tmp0 - tmp7;
+        d[i1] = tmp1 + tmp6;
+        d[i6] = tmp1 - tmp6;
+        d[i2] = tmp2 + tmp5;
+        d[i5] = tmp2 - tmp5;
+        d[i4] = tmp3 + tmp4;
+        d[i3] = tmp3 - tmp4;
+    }
+}
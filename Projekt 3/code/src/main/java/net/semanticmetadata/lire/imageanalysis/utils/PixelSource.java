@@ -0,0 +1,129 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+package net.semanticmetadata.lire.imageanalysis.utils;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+
+/**
+ * The pixels of an image, read once and shared by all features extracted from it. The packed RGB
+ * values are read with a single call to {@link BufferedImage#getRGB(int, int, int, int, int[], int, int)},
+ * the planes derived from them are computed on first use. All arrays are in row major order, i.e.
+ * the pixel (x, y) is at index <code>y * width + x</code>. They are shared, so they must not be changed.
+ * <p/>
+ * Features are extracted from the same PixelSource concurrently, so all methods are thread safe.
+ * <br>Date: 18.10.2026
+ */
+public class PixelSource {
+    private BufferedImage image;
+    private int width, height;
+    private int[] rgb = null;
+    private int[] gray = null;
+    private int[][] yCbCr = null;
+
+    public PixelSource(BufferedImage image) {
+        this.image = image;
+        width = image.getWidth();
+        height = image.getHeight();
+    }
+
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the pixels as packed ARGB values, the same as {@link BufferedImage#getRGB(int, int)} returns.
+     */
+    public synchronized int[] getRGB() {
+        if (rgb == null) rgb = image.getRGB(0, 0, width, height, null, 0, width);
+        return rgb;
+    }
+
+    /**
+     * @return the gray level of the pixels, <code>(int) (0.114 * b + 0.587 * g + 0.299 * r)</code> as used by CEDD and FCTH.
+     */
+    public synchronized int[] getGray() {
+        if (gray == null) {
+            int[] rgb = getRGB();
+            gray = new int[rgb.length];
+            for (int i = 0; i < rgb.length; i++) {
+                int pixel = rgb[i];
+                gray[i] = (int) (0.114 * (pixel & 0xff) + 0.587 * ((pixel >> 8) & 0xff) + 0.299 * ((pixel >> 16) & 0xff));
+            }
+        }
+        return gray;
+    }
+
+    /**
+     * @return the Y, Cb and Cr planes in the range of MPEG-7 (Y from 16 to 235), as used by ColorLayout
+     *         and EdgeHistogram.
+     */
+    public synchronized int[][] getYCbCr() {
+        if (yCbCr == null) {
+            int[] rgb = getRGB();
+            yCbCr = new int[3][rgb.length];
+            for (int i = 0; i < rgb.length; i++) {
+                int pixel = rgb[i];
+                int r = (pixel >> 16) & 0xff, g = (pixel >> 8) & 0xff, b = pixel & 0xff;
+                double yy = (0.299 * r + 0.587 * g + 0.114 * b) / 256.0;
+                yCbCr[0][i] = (int) (219.0 * yy + 16.5);
+                yCbCr[1][i] = (int) (224.0 * 0.564 * (b / 256.0 * 1.0 - yy) + 128.5);
+                yCbCr[2][i] = (int) (224.0 * 0.713 * (r / 256.0 * 1.0 - yy) + 128.5);
+            }
+        }
+        return yCbCr;
+    }
+
+    /**
+     * Features reading the raster of the image get the same values from {@link #getRGB()} only if
+     * the first three samples of each pixel are its red, green and blue component in 8 bits, e.g.
+     * not for gray or indexed images. They have to fall back to the raster otherwise.
+     *
+     * @return true if the samples of the raster are the components of the packed RGB values.
+     */
+    public boolean isRGBRaster() {
+        ColorModel cm = image.getColorModel();
+        if (cm instanceof IndexColorModel || !cm.getColorSpace().isCS_sRGB() || cm.isAlphaPremultiplied()) return false;
+        if (cm.getNumColorComponents() != 3 || image.getRaster().getNumBands() < 3) return false;
+        for (int i = 0; i < 3; i++) {
+            if (cm.getComponentSize(i) != 8) return false;
+        }
+        return true;
+    }
+}
@@ -31,33 +31,43 @@
 package net.semanticmetadata.lire.imageanalysis.visualattention;
 
 import java.awt.image.BufferedImage;
-import java.awt.image.WritableRaster;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Implements a visual attention model described in F. W. M. Stentiford, <i>An estimator for
  * visual attention through competitive novelty with application to image compression</i>,
- * Proc. Picture Coding Symposium, pp 101-104, Seoul, 24-27 April, 2001.
+ * Proc. Picture Coding Symposium, pp 101-104, Seoul, 24-27 April, 2001.<br>
+ * The image is converted to HSV once, then the rows are split over a ForkJoinPool. The random
+ * numbers for a row come from a generator seeded with the seed of the model and the row, so the
+ * attention model only depends on the image and the seed, not on the number of threads. The
+ * attention of the pixels is kept row by row in a float[], see {@link #getSaliencyMap()}.
  *
  * @author Mathias Lux, mathias@juggle.at, http://www.semanticmetadata.net
  *         Date: 22.03.2010
  *         Time: 15:52:24
  */
 public class StentifordModel {
+    private static final int ROWS_PER_TASK = 8;
+    private static ForkJoinPool sharedPool = null;
+
     // taken from paper
     private int neighbourhoodSize = 3;
     private int maxChecks = 100;
     // What neighbourhood is deemed similar? ... depends on the color space (heuristic value).
     private int maxDist = 40;
-
-    // stores the random neighbourhood per pixel.
-    private HashSet<Integer> randomNeighbourhood = new HashSet<Integer>(neighbourhoodSize);
+    private long seed = 0;
+    private ForkJoinPool pool;
 
     // that's the max norm radius we select our neighbours from (heuristic value).
     static int radius = 2;
     static int[][] possibleNeighbours;
-    private int[][] attentionModel;
+
+    private int width = 0, height = 0;
+    private int[] hsv = new int[0]; // per pixel row by row, H, S and V packed in bits 16-24, 8-14 and 0-6
+    private int[] neighbourOffsets = new int[0]; // of the possible neighbours in the rows
+    private float[] saliencyMap = new float[0];
 
     /**
      * Constructor for advance use. Instead of using the default values they can be set.
@@ -67,15 +77,29 @@ public class StentifordModel {
      * @param maxDist           the maximum distance between colors to be deemed similar
      */
     public StentifordModel(int neighbourhoodSize, int maxChecks, int maxDist) {
-        this.neighbourhoodSize = neighbourhoodSize;
+        this(neighbourhoodSize, maxChecks, maxDist, getSharedPool());
+    }
+
+    /**
+     * Constructor for advance use running the extraction in the given pool.
+     *
+     * @param neighbourhoodSize number of pixels selected from the neighbourhood
+     * @param maxChecks         number of random checks for each pixels, according to the paper 100 should work fine.
+     * @param maxDist           the maximum distance between colors to be deemed similar
+     * @param pool              the pool to run the extraction in.
+     */
+    public StentifordModel(int neighbourhoodSize, int maxChecks, int maxDist, ForkJoinPool pool) {
+        this.neighbourhoodSize = Math.min(neighbourhoodSize, possibleNeighbours.length);
         this.maxChecks = maxChecks;
         this.maxDist = maxDist;
+        this.pool = pool;
     }
 
     /**
      * Default constructor with default values.
      */
     public StentifordModel() {
+        this.pool = getSharedPool();
     }
 
     static {
@@ -93,84 +117,132 @@ public class StentifordModel {
         }
     }
 
+    private static synchronized ForkJoinPool getSharedPool() {
+        if (sharedPool == null) sharedPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        return sharedPool;
+    }
+
     public void extract(BufferedImage img) {
-        // temp vars:
-        int[][] nx = new int[neighbourhoodSize][3];
-        int[][] ny = new int[neighbourhoodSize][3];
-        boolean match = true;
-        // create attention model array:
-        attentionModel = new int[img.getWidth()][img.getHeight()];
-        for (int i = 0; i < attentionModel.length; i++) {
-            for (int j = 0; j < attentionModel[i].length; j++) {
-                attentionModel[i][j] = 0;
+        width = img.getWidth();
+        height = img.getHeight();
+        int size = width * height;
+        // the arrays are reused for images of the same size:
+        if (saliencyMap.length != size) {
+            saliencyMap = new float[size];
+            hsv = new int[size];
+        } else {
+            Arrays.fill(saliencyMap, 0f);
+        }
+        // convert to HSV:
+        int[] row = new int[width];
+        int[] tmp = new int[3];
+        for (int y = 0; y < height; y++) {
+            img.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0, k = y * width; x < width; x++, k++) {
+                int rgb = row[x];
+                rgb2hsv((rgb >> 16) & 0xff, (rgb >> 8) & 0xff, rgb & 0xff, tmp);
+                hsv[k] = (tmp[0] << 16) | (tmp[1] << 8) | tmp[2];
             }
         }
-
-        // start with the extraction:
-        WritableRaster raster = img.getRaster();
+        if (neighbourOffsets.length != possibleNeighbours.length) {
+            neighbourOffsets = new int[possibleNeighbours.length];
+        }
+        for (int n = 0; n < possibleNeighbours.length; n++) {
+            neighbourOffsets[n] = possibleNeighbours[n][0] + possibleNeighbours[n][1] * width;
+        }
         // for each pixel ...
-        for (int x = radius; x < raster.getWidth() - radius; x++) {
-            for (int y = radius; y < raster.getHeight() - radius; y++) {
-                createRandomNeighbourhood();
-                getNeighbourhood(x, y, nx, raster);
-                for (int checks = 0; checks < maxChecks; checks++) {
-                    getNeighbourhood((int) (Math.random() * (img.getWidth() - 2 * radius) + radius),
-                            (int) (Math.random() * (img.getHeight() - 2 * radius) + radius), ny, raster);
-                    match = true;
-                    for (int i = 0; i < nx.length; i++) {
-                        if (getDistance(nx[i], ny[i]) > maxDist) {
-                            match = false;
-                            break;
-                        }
-                    }
-                    if (!match) {
-                        attentionModel[x][y]++;
+        if (width > 2 * radius && height > 2 * radius) {
+            pool.invoke(new AttentionTask(radius, height - radius));
+        }
+    }
+
+    /**
+     * Computes the attention of the pixels in the given row.
+     */
+    private void computeRow(int y) {
+        RowRandom random = new RowRandom(seed, y);
+        int[] neighbourhood = new int[neighbourhoodSize];
+        int rangeX = width - 2 * radius, rangeY = height - 2 * radius;
+        for (int x = radius; x < width - radius; x++) {
+            createRandomNeighbourhood(random, neighbourhood);
+            int p = y * width + x;
+            int mismatches = 0;
+            for (int checks = 0; checks < maxChecks; checks++) {
+                int q = (random.nextInt(rangeY) + radius) * width + random.nextInt(rangeX) + radius;
+                for (int offset : neighbourhood) {
+                    int a = hsv[p + offset], b = hsv[q + offset];
+                    if (Math.abs((a >> 16) - (b >> 16)) + Math.abs(((a >> 8) & 0xff) - ((b >> 8) & 0xff))
+                            + Math.abs((a & 0xff) - (b & 0xff)) > maxDist) {
+                        mismatches++;
+                        break;
                     }
                 }
             }
+            saliencyMap[y * width + x] = mismatches / (float) maxChecks;
         }
-        System.out.println("");
+    }
 
+    /**
+     * Selects neighbourhoodSize different neighbours and stores their offsets in neighbourhood.
+     */
+    private void createRandomNeighbourhood(RowRandom random, int[] neighbourhood) {
+        int size = 0;
+        while (size < neighbourhood.length) {
+            int offset = neighbourOffsets[random.nextInt(neighbourOffsets.length)];
+            boolean contained = false;
+            for (int i = 0; i < size && !contained; i++) {
+                contained = neighbourhood[i] == offset;
+            }
+            if (!contained) neighbourhood[size++] = offset;
+        }
     }
 
     /**
-     * Get L1 distance between two pixel arrays. Can be used to get the distance between colors
-     * or the city-block distance between pixels ;)
+     * Returns the attention model as number of checks failed per pixel, indexed by x and y.
      *
-     * @param p1
-     * @param p2
-     * @return
+     * @return the attention model of the last image.
      */
-    private int getDistance(int[] p1, int[] p2) {
-        int sum = 0;
-        for (int i = 0; i < p1.length; i++) {
-            sum += Math.abs(p1[i] - p2[i]);
+    public int[][] getAttentionModel() {
+        int[][] attentionModel = new int[width][height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                attentionModel[x][y] = Math.round(saliencyMap[y * width + x] * maxChecks);
+            }
         }
-        return sum;
+        return attentionModel;
     }
 
-    private void getNeighbourhood(int x, int y, int[][] values, WritableRaster raster) {
-        int k = 0;
-        for (Iterator<Integer> integerIterator = randomNeighbourhood.iterator(); integerIterator.hasNext(); ) {
-            int n = integerIterator.next();
-            raster.getPixel(x + possibleNeighbours[n][0], y + possibleNeighbours[n][1], values[k]);
-            // convert to HSV:
-            rgb2hsv(values[k][0], values[k][1], values[k][2], values[k]);
-            k++;
-        }
+    /**
+     * Returns the attention of the pixels of the last image as the fraction of the checks failed,
+     * row by row, so pixel (x, y) is at y * getWidth() + x. The array is owned by the model and
+     * reused by the next extraction from an image of the same size.
+     *
+     * @return the saliency map with values in [0, 1].
+     */
+    public float[] getSaliencyMap() {
+        return saliencyMap;
     }
 
-    private void createRandomNeighbourhood() {
-        randomNeighbourhood.clear();
-        while (randomNeighbourhood.size() < neighbourhoodSize) {
-            int n = (int) (Math.random() * possibleNeighbours.length);
-            if (n == possibleNeighbours.length) n--;
-            randomNeighbourhood.add(n);
-        }
+    public int getWidth() {
+        return width;
     }
 
-    public int[][] getAttentionModel() {
-        return attentionModel;
+    public int getHeight() {
+        return height;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Sets the seed for the random numbers, the same image and seed result in the same attention
+     * model.
+     *
+     * @param seed the seed used by the next extraction.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
     }
 
     /**
@@ -179,15 +251,14 @@ public class StentifordModel {
      * @return an image visualizing the attention model
      */
     public BufferedImage getAttentionVisualization() {
-        BufferedImage result = new BufferedImage(attentionModel.length, attentionModel[0].length, BufferedImage.TYPE_INT_RGB);
-        int[] pixel = new int[3];
-        for (int i = 0; i < attentionModel.length; i++) {
-            for (int j = 0; j < attentionModel[i].length; j++) {
-                pixel[0] = (int) (((float) attentionModel[i][j]) / ((float) maxChecks) * 255f);
-                pixel[1] = (int) (((float) attentionModel[i][j]) / ((float) maxChecks) * 255f);
-                pixel[2] = (int) (((float) attentionModel[i][j]) / ((float) maxChecks) * 255f);
-                result.getRaster().setPixel(i, j, pixel);
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int v = (int) (saliencyMap[y * width + x] * 255f);
+                row[x] = (v << 16) | (v << 8) | v;
             }
+            result.setRGB(0, y, width, 1, row, 0, width);
         }
         return result;
     }
@@ -233,4 +304,51 @@ public class StentifordModel {
         hsv[2] = (int) (V * 100);
     }
 
+    private class AttentionTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        int start, end;
+
+        private AttentionTask(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        protected void compute() {
+            if (end - start > ROWS_PER_TASK) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new AttentionTask(start, middle), new AttentionTask(middle, end));
+                return;
+            }
+            for (int y = start; y < end; y++) {
+                computeRow(y);
+            }
+        }
+    }
+
+    /**
+     * Random numbers for a row after SplitMix64, the generator of each row is independent from the
+     * others, so the rows can be computed in any order.
+     */
+    private static final class RowRandom {
+        private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+        private long state;
+
+        RowRandom(long seed, int row) {
+            state = mix(seed + (row + 1) * GOLDEN_GAMMA);
+        }
+
+        /**
+         * @return a random number in [0, bound).
+         */
+        int nextInt(int bound) {
+            state += GOLDEN_GAMMA;
+            return (int) (((mix(state) >>> 32) * bound) >>> 32);
+        }
+
+        private static long mix(long z) {
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+    }
 }
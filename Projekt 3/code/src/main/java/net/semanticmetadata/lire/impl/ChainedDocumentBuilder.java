@@ -32,6 +32,7 @@ package net.semanticmetadata.lire.impl;
 
 import net.semanticmetadata.lire.AbstractDocumentBuilder;
 import net.semanticmetadata.lire.DocumentBuilder;
+import net.semanticmetadata.lire.imageanalysis.utils.PixelSource;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.Fieldable;
@@ -39,8 +40,17 @@ import org.apache.lucene.document.Fieldable;
 import java.awt.image.BufferedImage;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
 /**
+ * Combines several DocumentBuilders into one. The image is scaled down and its pixels are read
+ * only once for all {@link GenericDocumentBuilder}s instead of once per builder, see
+ * {@link net.semanticmetadata.lire.imageanalysis.utils.PixelSource}. If a ForkJoinPool is given, the
+ * builders run concurrently and the latency per document is about the one of the slowest builder.
+ * The fields are added in the order of the builders in both cases.
+ * <p/>
  * Created by IntelliJ IDEA.
  * User: mlux
  * Date: 20.02.2007
@@ -50,11 +60,22 @@ import java.util.LinkedList;
 public class ChainedDocumentBuilder extends AbstractDocumentBuilder {
     private LinkedList<DocumentBuilder> builders;
     private boolean docsCreated = false;
+    private ForkJoinPool pool = null;
 
     public ChainedDocumentBuilder() {
         builders = new LinkedList<DocumentBuilder>();
     }
 
+    /**
+     * Creates a builder running the chained builders concurrently.
+     *
+     * @param pool the pool the builders are run in, may be shared with other builders and searchers.
+     */
+    public ChainedDocumentBuilder(ForkJoinPool pool) {
+        this();
+        this.pool = pool;
+    }
+
     public void addBuilder(DocumentBuilder builder) {
         if (docsCreated)
             throw new UnsupportedOperationException("Cannot modify chained builder after documents have been created!");
@@ -66,10 +87,26 @@ public class ChainedDocumentBuilder extends AbstractDocumentBuilder {
         Document doc = new Document();
         if (identifier != null)
             doc.add(new Field(DocumentBuilder.FIELD_NAME_IDENTIFIER, identifier, Field.Store.YES, Field.Index.NOT_ANALYZED));
-        // this is unfortunately rather slow, but however it works :)
         if (builders.size() >= 1) {
+            // GenericDocumentBuilders share the pixels of the scaled image, so they don't scale it
+            // and read the pixels again each.
+            PixelSource scaled = new PixelSource(GenericDocumentBuilder.scaleImage(image));
+            final LinkedList<BuilderTask> tasks = new LinkedList<BuilderTask>();
             for (DocumentBuilder builder : builders) {
-                Document d = builder.createDocument(image, identifier);
+                tasks.add(new BuilderTask(builder, image, scaled, identifier));
+            }
+            if (pool == null || tasks.size() == 1) {
+                for (BuilderTask task : tasks) task.invoke();
+            } else {
+                pool.invoke(new RecursiveAction() {
+                    protected void compute() {
+                        invokeAll(tasks);
+                    }
+                });
+            }
+            for (BuilderTask task : tasks) {
+                Document d = task.getRawResult();
+                if (d == null) continue;
                 for (Iterator<Fieldable> iterator = d.getFields().iterator(); iterator.hasNext(); ) {
                     Field f = (Field) iterator.next();
                     if (!f.name().equals(DocumentBuilder.FIELD_NAME_IDENTIFIER)) {
@@ -80,4 +117,28 @@ public class ChainedDocumentBuilder extends AbstractDocumentBuilder {
         }
         return doc;
     }
+
+    /**
+     * Runs a single builder.
+     */
+    private static class BuilderTask extends RecursiveTask<Document> {
+        private static final long serialVersionUID = 1L;
+        private DocumentBuilder builder;
+        private BufferedImage image;
+        private PixelSource scaled;
+        private String identifier;
+
+        BuilderTask(DocumentBuilder builder, BufferedImage image, PixelSource scaled, String identifier) {
+            this.builder = builder;
+            this.image = image;
+            this.scaled = scaled;
+            this.identifier = identifier;
+        }
+
+        protected Document compute() {
+            if (builder instanceof GenericDocumentBuilder)
+                return ((GenericDocumentBuilder) builder).createDocument(scaled, identifier);
+            return builder.createDocument(image, identifier);
+        }
+    }
 }
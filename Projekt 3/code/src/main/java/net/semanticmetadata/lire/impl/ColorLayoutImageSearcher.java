@@ -90,7 +90,7 @@ public class ColorLayoutImageSearcher extends GenericImageSearcher {
                 lireFeature.setByteArrayRepresentation(cls);
             float maxDistance = findSimilar(reader, lireFeature);
 
-            searchHits = new SimpleImageSearchHits(this.docs, maxDistance);
+            searchHits = new SimpleImageSearchHits(this.docs.getResults(reader), maxDistance);
         } catch (InstantiationException e) {
             logger.log(Level.SEVERE, "Error instantiating class for generic image searcher: " + e.getMessage());
         } catch (IllegalAccessException e) {
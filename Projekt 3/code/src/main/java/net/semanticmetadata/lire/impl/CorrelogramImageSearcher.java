@@ -45,7 +45,6 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.TreeSet;
 import java.util.logging.Logger;
 
 /**
@@ -60,12 +59,12 @@ public class CorrelogramImageSearcher extends AbstractImageSearcher {
     private AutoColorCorrelogram.Mode mode = AutoColorCorrelogram.Mode.FullNeighbourhood;
 
     private int maxHits = 10;
-    private TreeSet<SimpleResult> docs;
+    private TopHitsCollector docs;
 
     public CorrelogramImageSearcher(int maxHits, AutoColorCorrelogram.Mode mode) {
         this.maxHits = maxHits;
         this.mode = mode;
-        docs = new TreeSet<SimpleResult>();
+        docs = new TopHitsCollector(maxHits);
     }
 
     public ImageSearchHits search(BufferedImage image, IndexReader reader) throws IOException {
@@ -80,7 +79,7 @@ public class CorrelogramImageSearcher extends AbstractImageSearcher {
         logger.fine("Extraction from image finished");
 
         float maxDistance = findSimilar(reader, acc);
-        return new SimpleImageSearchHits(this.docs, maxDistance);
+        return new SimpleImageSearchHits(this.docs.getResults(reader), maxDistance);
     }
 
     /**
@@ -90,13 +89,12 @@ public class CorrelogramImageSearcher extends AbstractImageSearcher {
      * @throws java.io.IOException
      */
     private float findSimilar(IndexReader reader, AutoColorCorrelogram acc) throws IOException {
-        float maxDistance = -1f, overallMaxDistance = -1f;
         boolean hasDeletions = reader.hasDeletions();
 
         // clear result set ...
         docs.clear();
 
-        int docs = reader.numDocs();
+        int docs = reader.maxDoc();
         for (int i = 0; i < docs; i++) {
             // bugfix by Roman Kern
             if (hasDeletions && reader.isDeleted(i)) {
@@ -105,29 +103,9 @@ public class CorrelogramImageSearcher extends AbstractImageSearcher {
 
             Document d = reader.document(i);
             float distance = getDistance(d, acc);
-            // calculate the overall max distance to normalize score afterwards
-            if (overallMaxDistance < distance) {
-                overallMaxDistance = distance;
-            }
-            // if it is the first document:
-            if (maxDistance < 0) {
-                maxDistance = distance;
-            }
-            // if the array is not full yet:
-            if (this.docs.size() < maxHits) {
-                this.docs.add(new SimpleResult(distance, d));
-                if (distance > maxDistance) maxDistance = distance;
-            } else if (distance < maxDistance) {
-                // if it is nearer to the sample than at least on of the current set:
-                // remove the last one ...
-                this.docs.remove(this.docs.last());
-                // add the new one ...
-                this.docs.add(new SimpleResult(distance, d));
-                // and set our new distance border ...
-                maxDistance = this.docs.last().getDistance();
-            }
+            this.docs.collect(i, distance);
         }
-        return maxDistance;
+        return this.docs.getMaxDistance();
     }
 
     private float getDistance(Document d, AutoColorCorrelogram acc) {
@@ -149,7 +127,7 @@ public class CorrelogramImageSearcher extends AbstractImageSearcher {
             acc.setStringRepresentation(cls[0]);
         float maxDistance = findSimilar(reader, acc);
 
-        return new SimpleImageSearchHits(this.docs, maxDistance);
+        return new SimpleImageSearchHits(this.docs.getResults(reader), maxDistance);
     }
 
     public ImageDuplicates findDuplicates(IndexReader reader) throws IOException {
@@ -0,0 +1,164 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+package net.semanticmetadata.lire.impl;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.MapFieldSelector;
+import org.apache.lucene.index.IndexReader;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * In-memory columnar cache for the byte[] representation of a single feature field. All features
+ * of one field are read once per IndexReader and packed into one byte[] slab, which is addressed
+ * by document number. Linear searchers can scan this slab instead of loading and decoding the
+ * stored fields of each and every document per query.
+ * <p/>
+ * Caches are bound to the core cache key of the IndexReader, so a reopened reader automatically
+ * gets a fresh cache, while the cache for an outdated reader is garbage collected along with it.
+ * Use {@link #purge(org.apache.lucene.index.IndexReader)} to drop a cache explicitly.
+ * <br>Date: 18.10.2026
+ */
+public class FeatureCache {
+    private static final Map<Object, Map<String, FeatureCache>> caches = new WeakHashMap<Object, Map<String, FeatureCache>>();
+
+    private String fieldName;
+    private byte[] data;
+    private int[] offsets;
+
+    /**
+     * Returns the cache for the given reader and field. The cache is created on first access, which
+     * means one sequential pass over the stored fields of the index.
+     *
+     * @param reader    the IndexReader the features are taken from.
+     * @param fieldName the name of the field holding the byte[] representation of the feature.
+     * @return the cache for the field.
+     * @throws IOException in case the index cannot be read.
+     */
+    public static FeatureCache getCache(IndexReader reader, String fieldName) throws IOException {
+        Object key = reader.getCoreCacheKey();
+        Map<String, FeatureCache> fieldCaches;
+        synchronized (caches) {
+            fieldCaches = caches.get(key);
+            if (fieldCaches == null) {
+                fieldCaches = new HashMap<String, FeatureCache>();
+                caches.put(key, fieldCaches);
+            }
+        }
+        synchronized (fieldCaches) {
+            FeatureCache cache = fieldCaches.get(fieldName);
+            if (cache == null) {
+                cache = new FeatureCache(reader, fieldName);
+                fieldCaches.put(fieldName, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Removes all cached fields of the given reader.
+     *
+     * @param reader the reader, e.g. before it is closed or after it has been reopened.
+     */
+    public static void purge(IndexReader reader) {
+        synchronized (caches) {
+            caches.remove(reader.getCoreCacheKey());
+        }
+    }
+
+    private FeatureCache(IndexReader reader, String fieldName) throws IOException {
+        this.fieldName = fieldName;
+        int maxDoc = reader.maxDoc();
+        offsets = new int[maxDoc + 1];
+        data = new byte[1024];
+        int size = 0;
+        boolean hasDeletions = reader.hasDeletions();
+        // only the feature field is loaded, all other stored fields are skipped.
+        MapFieldSelector selector = new MapFieldSelector(new String[]{fieldName});
+        for (int i = 0; i < maxDoc; i++) {
+            offsets[i] = size;
+            if (hasDeletions && reader.isDeleted(i)) continue;
+            Document d = reader.document(i, selector);
+            byte[] value = d.getBinaryValue(fieldName);
+            if (value == null || value.length == 0) continue;
+            if (size + value.length > data.length) {
+                byte[] tmp = new byte[Math.max(data.length * 2, size + value.length)];
+                System.arraycopy(data, 0, tmp, 0, size);
+                data = tmp;
+            }
+            System.arraycopy(value, 0, data, size, value.length);
+            size += value.length;
+        }
+        offsets[maxDoc] = size;
+        // trim the slab to its actual size.
+        if (data.length > size) {
+            byte[] tmp = new byte[size];
+            System.arraycopy(data, 0, tmp, 0, size);
+            data = tmp;
+        }
+    }
+
+    /**
+     * @return the packed byte[] representations of all documents.
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * @param docNumber the Lucene document number.
+     * @return the position of the feature of the given document within {@link #getData()}.
+     */
+    public int getOffset(int docNumber) {
+        return offsets[docNumber];
+    }
+
+    /**
+     * @param docNumber the Lucene document number.
+     * @return the length of the feature of the given document, 0 if it is deleted or has no feature.
+     */
+    public int getLength(int docNumber) {
+        return offsets[docNumber + 1] - offsets[docNumber];
+    }
+
+    /**
+     * @return the number of documents covered, i.e. maxDoc of the reader the cache was created for.
+     */
+    public int size() {
+        return offsets.length - 1;
+    }
+
+    public String getFieldName() {
+        return fieldName;
+    }
+}
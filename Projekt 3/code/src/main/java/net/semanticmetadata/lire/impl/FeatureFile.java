@@ -0,0 +1,283 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+package net.semanticmetadata.lire.impl;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.MapFieldSelector;
+import org.apache.lucene.index.IndexReader;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Memory mapped sidecar file holding the byte[] representation of a single feature field of an
+ * index in records of fixed length, addressed by document number. Linear searchers can scan it
+ * without loading stored fields and without keeping the features on the heap, the operating system
+ * pages the data in and out as needed.
+ * <p/>
+ * The file starts with a header of {@link #HEADER_LENGTH} bytes: magic number, format version,
+ * the version of the index ({@link org.apache.lucene.index.IndexReader#getVersion()}), the number
+ * of records (maxDoc of the index) and the record length. Each record holds the length of the
+ * feature (2 bytes, 0 for deleted documents and documents without the feature) followed by the
+ * feature, padded to the record length.
+ * <p/>
+ * Lucene renumbers documents on merges, so the file is bound to the index version it has been
+ * written for. After the index has been changed it has to be written again, e.g. with
+ * {@link net.semanticmetadata.lire.indexing.FeatureFileBuilder}, use {@link #isCurrent(org.apache.lucene.index.IndexReader)}
+ * to check.
+ * <br>Date: 18.10.2026
+ */
+public class FeatureFile {
+    public static final int MAGIC = 0x4c495246; // "LIRF"
+    public static final int VERSION = 1;
+    public static final int HEADER_LENGTH = 32;
+    /**
+     * File extension of the sidecar files written next to the index.
+     */
+    public static final String EXTENSION = ".lirf";
+
+    private long indexVersion;
+    private int size;
+    private int recordLength;
+    private int recordsPerBuffer;
+    private ByteBuffer[] buffers;
+
+    private FeatureFile(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            while (header.hasRemaining() && channel.read(header, header.position()) >= 0) ;
+            header.flip();
+            if (header.remaining() < HEADER_LENGTH || header.getInt() != MAGIC)
+                throw new IOException("Not a feature file: " + file);
+            int version = header.getInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported version of feature file " + file + ": " + version);
+            indexVersion = header.getLong();
+            size = header.getInt();
+            recordLength = header.getInt();
+            if (channel.size() < HEADER_LENGTH + (long) size * recordLength)
+                throw new IOException("Feature file is truncated: " + file);
+            // each buffer holds whole records only and is limited to 2 GB.
+            recordsPerBuffer = Math.max(1, Integer.MAX_VALUE / recordLength);
+            buffers = new ByteBuffer[(size + recordsPerBuffer - 1) / recordsPerBuffer];
+            for (int i = 0; i < buffers.length; i++) {
+                int records = Math.min(recordsPerBuffer, size - i * recordsPerBuffer);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                        HEADER_LENGTH + (long) i * recordsPerBuffer * recordLength, (long) records * recordLength);
+                buffers[i] = buffer;
+            }
+        } finally {
+            // the mappings stay valid after the channel has been closed.
+            raf.close();
+        }
+    }
+
+    /**
+     * Maps an existing feature file into memory.
+     *
+     * @param file the file.
+     * @return the mapped file.
+     * @throws IOException if the file cannot be read or is no feature file.
+     */
+    public static FeatureFile open(File file) throws IOException {
+        return new FeatureFile(file);
+    }
+
+    /**
+     * Returns the default location of the feature file of a field, i.e. a file named after the
+     * field in the index directory. Lucene ignores the file there.
+     *
+     * @param indexDirectory the directory of the index.
+     * @param fieldName      the name of the feature field.
+     * @return the file, which does not need to exist.
+     */
+    public static File getFile(File indexDirectory, String fieldName) {
+        return new File(indexDirectory, fieldName + EXTENSION);
+    }
+
+    /**
+     * Writes the feature file of a field with one sequential pass over the stored fields of the
+     * given reader. The features are buffered in a temporary file until the record length is
+     * known, so memory usage does not depend on the size of the index. The feature file itself is
+     * written to a temporary file in the same directory, which is then moved over the existing file,
+     * so searchers having mapped the old file keep reading it unchanged.
+     *
+     * @param reader    the index.
+     * @param fieldName the name of the field holding the byte[] representation of the feature.
+     * @param file      the feature file to write, an existing file is replaced.
+     * @throws IOException
+     */
+    public static void write(IndexReader reader, String fieldName, File file) throws IOException {
+        int maxDoc = reader.maxDoc();
+        int maxLength = 0;
+        File directory = file.getAbsoluteFile().getParentFile();
+        File tmp = File.createTempFile("lire", EXTENSION, directory);
+        File result = null;
+        try {
+            // pass over the index: store the features with their length.
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16));
+            try {
+                boolean hasDeletions = reader.hasDeletions();
+                MapFieldSelector selector = new MapFieldSelector(new String[]{fieldName});
+                for (int i = 0; i < maxDoc; i++) {
+                    byte[] value = null;
+                    if (!hasDeletions || !reader.isDeleted(i)) {
+                        Document d = reader.document(i, selector);
+                        value = d.getBinaryValue(fieldName);
+                    }
+                    if (value == null) value = new byte[0];
+                    if (value.length > 0xffff)
+                        throw new IOException("Feature of document " + i + " too long for a feature file: " + value.length);
+                    out.writeShort(value.length);
+                    out.write(value);
+                    maxLength = Math.max(maxLength, value.length);
+                }
+            } finally {
+                out.close();
+            }
+            // copy the features to records of fixed length.
+            int recordLength = maxLength + 2;
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(tmp), 1 << 16));
+            result = File.createTempFile("lire", EXTENSION, directory);
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(result), 1 << 16));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(reader.getVersion());
+                out.writeInt(maxDoc);
+                out.writeInt(recordLength);
+                out.write(new byte[HEADER_LENGTH - 24]);
+                byte[] record = new byte[recordLength];
+                for (int i = 0; i < maxDoc; i++) {
+                    int length = in.readUnsignedShort();
+                    record[0] = (byte) (length >> 8);
+                    record[1] = (byte) length;
+                    in.readFully(record, 2, length);
+                    for (int j = length + 2; j < recordLength; j++) record[j] = 0;
+                    out.write(record);
+                }
+            } finally {
+                in.close();
+                out.close();
+            }
+            Files.move(result.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            result = null;
+        } finally {
+            tmp.delete();
+            if (result != null) result.delete();
+        }
+    }
+
+    /**
+     * Checks if the file has been written for the index the reader is opened on, i.e. if the
+     * document numbers still match.
+     *
+     * @param reader the index.
+     * @return true if the file can be used for searching the index.
+     */
+    public boolean isCurrent(IndexReader reader) {
+        return reader.getVersion() == indexVersion && reader.maxDoc() == size;
+    }
+
+    /**
+     * Copies a block of records into the given array. Each record is {@link #getRecordLength()}
+     * bytes long and starts with the length of the feature in 2 bytes, see {@link #getLength(byte[], int)}.
+     * The block ends early at the end of a mapped region, so the number of records copied may be
+     * smaller than requested.
+     *
+     * @param docNumber the document number of the first record.
+     * @param count     the maximum number of records to copy.
+     * @param records   the array to copy to, has to hold count records.
+     * @return the number of records copied.
+     */
+    public int read(int docNumber, int count, byte[] records) {
+        int index = docNumber / recordsPerBuffer;
+        int first = docNumber - index * recordsPerBuffer;
+        count = Math.min(count, Math.min(recordsPerBuffer - first, size - docNumber));
+        // a duplicate has its own position, so several threads can read at the same time.
+        ByteBuffer buffer = buffers[index].duplicate();
+        buffer.position(first * recordLength);
+        buffer.get(records, 0, count * recordLength);
+        return count;
+    }
+
+    /**
+     * Reads the feature of a single document.
+     *
+     * @param docNumber the document number.
+     * @return the byte[] representation of the feature, an empty array if the document has none.
+     */
+    public byte[] getFeature(int docNumber) {
+        byte[] record = new byte[recordLength];
+        read(docNumber, 1, record);
+        byte[] result = new byte[getLength(record, 0)];
+        System.arraycopy(record, 2, result, 0, result.length);
+        return result;
+    }
+
+    /**
+     * Returns the length of the feature in a record read with {@link #read(int, int, byte[])}, the
+     * feature itself starts two bytes after the record.
+     *
+     * @param records the records.
+     * @param offset  the start of the record.
+     * @return the length of the feature, 0 if the document is deleted or has no feature.
+     */
+    public static int getLength(byte[] records, int offset) {
+        return (records[offset] & 0xff) << 8 | (records[offset + 1] & 0xff);
+    }
+
+    /**
+     * @return the number of records, i.e. maxDoc of the index the file has been written for.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the length of a record including the length of the feature.
+     */
+    public int getRecordLength() {
+        return recordLength;
+    }
+
+    /**
+     * @return the version of the index the file has been written for.
+     */
+    public long getIndexVersion() {
+        return indexVersion;
+    }
+}
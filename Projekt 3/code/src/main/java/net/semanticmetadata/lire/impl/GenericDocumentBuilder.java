@@ -31,7 +31,10 @@ package net.semanticmetadata.lire.impl;
 
 import net.semanticmetadata.lire.AbstractDocumentBuilder;
 import net.semanticmetadata.lire.DocumentBuilder;
+import net.semanticmetadata.lire.imageanalysis.FeatureCodec;
 import net.semanticmetadata.lire.imageanalysis.LireFeature;
+import net.semanticmetadata.lire.imageanalysis.PixelSourceFeature;
+import net.semanticmetadata.lire.imageanalysis.utils.PixelSource;
 import net.semanticmetadata.lire.utils.ImageUtils;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
@@ -55,9 +58,9 @@ public class GenericDocumentBuilder extends AbstractDocumentBuilder {
     final static Mode DEFAULT_MODE = Mode.Slow;
     Mode currentMode = DEFAULT_MODE;
 
-    // Decide between byte array version (fast) or string version (slow)
+    // Decide between byte array version (fast), compact byte array version (see FeatureCodec) or string version (slow)
     public enum Mode {
-        Fast, Slow
+        Fast, Slow, Compact
     }
 
     /**
@@ -76,7 +79,7 @@ public class GenericDocumentBuilder extends AbstractDocumentBuilder {
      *
      * @param descriptorClass has to implement {@link net.semanticmetadata.lire.imageanalysis.LireFeature}
      * @param fieldName       the field name in the index.
-     * @param mode            the mode the GenericDocumentBuilder should work in, byte[] (== Mode.Fast) or string (==Mode.Slow) storage in Lucene.
+     * @param mode            the mode the GenericDocumentBuilder should work in, byte[] (== Mode.Fast), compact byte[] (== Mode.Compact) or string (==Mode.Slow) storage in Lucene.
      */
     public GenericDocumentBuilder(Class<? extends LireFeature> descriptorClass, String fieldName, Mode mode) {
         this.descriptorClass = descriptorClass;
@@ -84,26 +87,53 @@ public class GenericDocumentBuilder extends AbstractDocumentBuilder {
         this.currentMode = mode;
     }
 
+    /**
+     * Scales the image down to {@link #MAX_IMAGE_DIMENSION} like it is done before extraction.
+     * Images, which are small enough already, are not scaled, so scaling an image twice does
+     * not change it.
+     *
+     * @param image the image.
+     * @return the scaled image or the image itself if it is small enough.
+     */
+    public static BufferedImage scaleImage(BufferedImage image) {
+        if (Math.max(image.getHeight(), image.getWidth()) > MAX_IMAGE_DIMENSION) {
+            return ImageUtils.scaleImage(image, MAX_IMAGE_DIMENSION);
+        }
+        return image;
+    }
+
     public Document createDocument(BufferedImage image, String identifier) {
-        String featureString = "";
         assert (image != null);
-        BufferedImage bimg = image;
         // Scaling image is especially with the correlogram features very important!
         // All images are scaled to guarantee a certain upper limit for indexing.
-        if (Math.max(image.getHeight(), image.getWidth()) > MAX_IMAGE_DIMENSION) {
-            bimg = ImageUtils.scaleImage(image, MAX_IMAGE_DIMENSION);
-        }
+        return createDocument(new PixelSource(scaleImage(image)), identifier);
+    }
+
+    /**
+     * Creates a document from an image, which has already been scaled with {@link #scaleImage(java.awt.image.BufferedImage)}.
+     * Features implementing {@link PixelSourceFeature} read the pixels from the given PixelSource,
+     * so it can be shared by several builders.
+     *
+     * @param source     the pixels of the scaled image.
+     * @param identifier an id for the image, for instance the filename or an URL.
+     * @return a Lucene Document containing the feature.
+     */
+    public Document createDocument(PixelSource source, String identifier) {
+        String featureString = "";
         Document doc = null;
         logger.finer("Starting extraction from image [" + descriptorClass.getName() + "].");
         try {
             LireFeature vd = (LireFeature) descriptorClass.newInstance();
-            vd.extract(bimg);
+            if (vd instanceof PixelSourceFeature) ((PixelSourceFeature) vd).extract(source);
+            else vd.extract(source.getImage());
 //            featureString = vd.getStringRepresentation();
             logger.fine("Extraction finished [" + descriptorClass.getName() + "].");
 
             doc = new Document();
             if (currentMode == Mode.Slow)
                 doc.add(new Field(fieldName, vd.getStringRepresentation(), Field.Store.YES, Field.Index.NO));
+            else if (currentMode == Mode.Compact)
+                doc.add(new Field(fieldName, FeatureCodec.encode(vd)));
             else
                 doc.add(new Field(fieldName, vd.getByteArrayRepresentation()));
 
@@ -33,6 +33,8 @@ package net.semanticmetadata.lire.impl;
 import net.semanticmetadata.lire.imageanalysis.LireFeature;
 
 /**
+ * Stores the features as byte[]. Optionally the compact format of
+ * {@link net.semanticmetadata.lire.imageanalysis.FeatureCodec} is written instead.
  * User: Mathias, mathias@juggle.at
  * Date: 28.07.11
  * Time: 12:03
@@ -41,4 +43,16 @@ public class GenericFastDocumentBuilder extends GenericDocumentBuilder {
     public GenericFastDocumentBuilder(Class<? extends LireFeature> descriptorClass, String fieldName) {
         super(descriptorClass, fieldName, Mode.Fast);
     }
+
+    /**
+     * Creates a builder storing the features as byte[].
+     *
+     * @param descriptorClass has to implement {@link net.semanticmetadata.lire.imageanalysis.LireFeature}
+     * @param fieldName       the field name in the index.
+     * @param compact         true to write the compact format of {@link net.semanticmetadata.lire.imageanalysis.FeatureCodec},
+     *                        which is smaller but slower to compare, false for the format of getByteArrayRepresentation().
+     */
+    public GenericFastDocumentBuilder(Class<? extends LireFeature> descriptorClass, String fieldName, boolean compact) {
+        super(descriptorClass, fieldName, compact ? Mode.Compact : Mode.Fast);
+    }
 }
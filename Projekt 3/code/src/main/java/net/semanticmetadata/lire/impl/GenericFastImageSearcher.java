@@ -33,6 +33,7 @@ import net.semanticmetadata.lire.AbstractImageSearcher;
 import net.semanticmetadata.lire.DocumentBuilder;
 import net.semanticmetadata.lire.ImageDuplicates;
 import net.semanticmetadata.lire.ImageSearchHits;
+import net.semanticmetadata.lire.imageanalysis.ByteArrayDistance;
 import net.semanticmetadata.lire.imageanalysis.LireFeature;
 import net.semanticmetadata.lire.utils.ImageUtils;
 import org.apache.lucene.document.Document;
@@ -44,7 +45,8 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -62,12 +64,22 @@ public class GenericFastImageSearcher extends AbstractImageSearcher {
     private LireFeature cachedInstance = null;
 
     private int maxHits = 10;
-    protected TreeSet<SimpleResult> docs;
-    private byte[] tempBinaryValue;
+    protected TopHitsCollector docs;
+    private boolean useFeatureCache = false;
+    private ForkJoinPool pool = null;
+    /**
+     * Minimum number of documents scanned by one task in parallel mode.
+     */
+    private static final int MIN_DOCS_PER_TASK = 1024;
+    /**
+     * Number of documents and queries compared en bloc in batch mode, chosen so that both
+     * blocks of features fit into the CPU cache together.
+     */
+    private static final int DOCS_PER_TILE = 64, QUERIES_PER_TILE = 32;
 
     public GenericFastImageSearcher(int maxHits, Class<?> descriptorClass, String fieldName) {
         this.maxHits = maxHits;
-        docs = new TreeSet<SimpleResult>();
+        docs = new TopHitsCollector(maxHits);
         this.descriptorClass = descriptorClass;
         this.fieldName = fieldName;
         try {
@@ -79,6 +91,37 @@ public class GenericFastImageSearcher extends AbstractImageSearcher {
         }
     }
 
+    /**
+     * Creates a new searcher, which optionally scans an in-memory {@link FeatureCache} instead of
+     * the stored fields of the index. The cache is filled on the first search with a specific
+     * IndexReader, so it pays off if many searches are done with the same reader.
+     *
+     * @param maxHits         the maximum number of hits returned.
+     * @param descriptorClass the feature class, has to implement {@link LireFeature}.
+     * @param fieldName       the field name of the feature in the index.
+     * @param useFeatureCache set to true to load the features of all documents into memory once per reader.
+     */
+    public GenericFastImageSearcher(int maxHits, Class<?> descriptorClass, String fieldName, boolean useFeatureCache) {
+        this(maxHits, descriptorClass, fieldName);
+        this.useFeatureCache = useFeatureCache;
+    }
+
+    /**
+     * Creates a new searcher, which splits the linear scan over the index into ranges of
+     * document numbers processed in parallel by the given pool. Each task uses its own feature
+     * instance and result heap, the partial results are merged afterwards.
+     *
+     * @param maxHits         the maximum number of hits returned.
+     * @param descriptorClass the feature class, has to implement {@link LireFeature}.
+     * @param fieldName       the field name of the feature in the index.
+     * @param useFeatureCache set to true to load the features of all documents into memory once per reader.
+     * @param pool            the pool the scan is executed in, null for a sequential scan in the calling thread.
+     */
+    public GenericFastImageSearcher(int maxHits, Class<?> descriptorClass, String fieldName, boolean useFeatureCache, ForkJoinPool pool) {
+        this(maxHits, descriptorClass, fieldName, useFeatureCache);
+        this.pool = pool;
+    }
+
     public ImageSearchHits search(BufferedImage image, IndexReader reader) throws IOException {
         logger.finer("Starting extraction.");
         LireFeature lireFeature = null;
@@ -94,7 +137,7 @@ public class GenericFastImageSearcher extends AbstractImageSearcher {
             logger.fine("Extraction from image finished");
 
             float maxDistance = findSimilar(reader, lireFeature);
-            searchHits = new SimpleImageSearchHits(this.docs, maxDistance);
+            searchHits = new SimpleImageSearchHits(this.docs.getResults(reader), maxDistance);
         } catch (InstantiationException e) {
             logger.log(Level.SEVERE, "Error instantiating class for generic image searcher: " + e.getMessage());
         } catch (IllegalAccessException e) {
@@ -110,45 +153,215 @@ public class GenericFastImageSearcher extends AbstractImageSearcher {
      * @throws java.io.IOException
      */
     protected float findSimilar(IndexReader reader, LireFeature lireFeature) throws IOException {
-        float maxDistance = -1f, overallMaxDistance = -1f;
-        boolean hasDeletions = reader.hasDeletions();
+        FeatureCache cache = null;
+        if (useFeatureCache) cache = FeatureCache.getCache(reader, fieldName);
 
         // clear result set ...
         docs.clear();
 
-        int docs = reader.numDocs();
-        for (int i = 0; i < docs; i++) {
-            // bugfix by Roman Kern
-            if (hasDeletions && reader.isDeleted(i)) {
-                continue;
+        if (pool == null) {
+            scan(reader, cache, lireFeature, cachedInstance, 0, reader.maxDoc(), docs);
+        } else {
+            int minDocsPerTask = Math.max(MIN_DOCS_PER_TASK, reader.maxDoc() / (pool.getParallelism() * 4));
+            try {
+                docs.merge(pool.invoke(new ScanTask(reader, cache, lireFeature, 0, reader.maxDoc(), minDocsPerTask)));
+            } catch (RuntimeException e) {
+                throw unwrapIOException(e);
             }
+        }
+        return docs.getMaxDistance();
+    }
 
-            Document d = reader.document(i);
-            float distance = getDistance(d, lireFeature);
-            assert (distance >= 0);
-            // calculate the overall max distance to normalize score afterwards
-            if (overallMaxDistance < distance) {
-                overallMaxDistance = distance;
+    /**
+     * Linear search over a range of documents, either based on the stored fields or on the
+     * {@link FeatureCache} of the given reader. In the latter case no documents are loaded from
+     * the index. If the feature implements {@link ByteArrayDistance} the distances are computed
+     * directly on the byte[] representations, i.e. the features of the documents are not
+     * deserialized.
+     *
+     * @param reader      the index.
+     * @param cache       the cache of the field or null if the stored fields are to be used.
+     * @param lireFeature the query.
+     * @param instance    the feature instance the features of the documents are read into.
+     * @param start       first document number of the range.
+     * @param end         first document number after the range.
+     * @param collector   the heap the results are added to.
+     * @throws IOException
+     */
+    protected void scan(IndexReader reader, FeatureCache cache, LireFeature lireFeature, LireFeature instance,
+                        int start, int end, TopHitsCollector collector) throws IOException {
+        ByteArrayDistance kernel = getByteArrayDistance(lireFeature);
+        if (cache != null) {
+            byte[] data = cache.getData();
+            byte[] feature = new byte[0];
+            for (int i = start; i < end; i++) {
+                int length = cache.getLength(i);
+                // deleted documents and documents without the feature are not in the cache.
+                if (length == 0) continue;
+                float distance;
+                if (kernel != null) {
+                    distance = kernel.getDistance(data, cache.getOffset(i), length);
+                } else {
+                    if (feature.length != length) feature = new byte[length];
+                    System.arraycopy(data, cache.getOffset(i), feature, 0, length);
+                    instance.setByteArrayRepresentation(feature);
+                    distance = lireFeature.getDistance(instance);
+                }
+                assert (distance >= 0);
+                collector.collect(i, distance);
             }
-            // if it is the first document:
-            if (maxDistance < 0) {
-                maxDistance = distance;
+        } else {
+            boolean hasDeletions = reader.hasDeletions();
+            for (int i = start; i < end; i++) {
+                // bugfix by Roman Kern
+                if (hasDeletions && reader.isDeleted(i)) {
+                    continue;
+                }
+
+                byte[] feature = reader.document(i).getBinaryValue(fieldName);
+                float distance;
+                if (kernel != null && feature != null && feature.length > 0) {
+                    distance = kernel.getDistance(feature, 0, feature.length);
+                } else {
+                    distance = getDistance(feature, lireFeature, instance);
+                }
+                assert (distance >= 0);
+                collector.collect(i, distance);
             }
-            // if the array is not full yet:
-            if (this.docs.size() < maxHits) {
-                this.docs.add(new SimpleResult(distance, d));
-                if (distance > maxDistance) maxDistance = distance;
-            } else if (distance < maxDistance) {
-                // if it is nearer to the sample than at least on of the current set:
-                // remove the last one ...
-                this.docs.remove(this.docs.last());
-                // add the new one ...
-                this.docs.add(new SimpleResult(distance, d));
-                // and set our new distance border ...
-                maxDistance = this.docs.last().getDistance();
+        }
+    }
+
+    /**
+     * Searches for many queries at once with a single pass over the index: the feature of each
+     * document is read only once and compared to all queries. Documents and queries are processed
+     * in blocks so that the features involved stay in the CPU cache. If the searcher has been
+     * created with a ForkJoinPool, the pass is split over ranges of document numbers like in
+     * {@link #search(org.apache.lucene.document.Document, org.apache.lucene.index.IndexReader)}.
+     *
+     * @param queries the query features, e.g. extracted from images or read from documents.
+     * @param reader  the index to search in.
+     * @return one result list per query, in the order of the queries.
+     * @throws IOException
+     */
+    public ImageSearchHits[] searchBatch(List<LireFeature> queries, IndexReader reader) throws IOException {
+        LireFeature[] lireFeatures = queries.toArray(new LireFeature[queries.size()]);
+        FeatureCache cache = null;
+        if (useFeatureCache) cache = FeatureCache.getCache(reader, fieldName);
+
+        TopHitsCollector[] collectors;
+        try {
+            if (pool == null) {
+                collectors = new BatchScanTask(reader, cache, lireFeatures, 0, reader.maxDoc(), reader.maxDoc()).compute();
+            } else {
+                int minDocsPerTask = Math.max(MIN_DOCS_PER_TASK, reader.maxDoc() / (pool.getParallelism() * 4));
+                collectors = pool.invoke(new BatchScanTask(reader, cache, lireFeatures, 0, reader.maxDoc(), minDocsPerTask));
             }
+        } catch (RuntimeException e) {
+            throw unwrapIOException(e);
         }
-        return maxDistance;
+
+        ImageSearchHits[] searchHits = new ImageSearchHits[lireFeatures.length];
+        for (int i = 0; i < searchHits.length; i++) {
+            searchHits[i] = new SimpleImageSearchHits(collectors[i].getResults(reader), collectors[i].getMaxDistance());
+        }
+        return searchHits;
+    }
+
+    /**
+     * Block-wise comparison of a range of documents with all queries.
+     *
+     * @param reader       the index.
+     * @param cache        the cache of the field or null if the stored fields are to be used.
+     * @param lireFeatures the queries.
+     * @param start        first document number of the range.
+     * @param end          first document number after the range.
+     * @param collectors   one heap per query the results are added to.
+     * @throws IOException
+     */
+    protected void scanBatch(IndexReader reader, FeatureCache cache, LireFeature[] lireFeatures,
+                             int start, int end, TopHitsCollector[] collectors) throws IOException,
+            IllegalAccessException, InstantiationException {
+        // queries supporting ByteArrayDistance are compared to the serialized features directly,
+        // the features of the documents only need to be deserialized for the remaining ones.
+        ByteArrayDistance[] kernels = new ByteArrayDistance[lireFeatures.length];
+        boolean deserialize = false;
+        for (int j = 0; j < lireFeatures.length; j++) {
+            kernels[j] = getByteArrayDistance(lireFeatures[j]);
+            if (kernels[j] == null) deserialize = true;
+        }
+        LireFeature[] tile = new LireFeature[DOCS_PER_TILE];
+        if (deserialize) {
+            for (int i = 0; i < tile.length; i++) {
+                tile[i] = (LireFeature) descriptorClass.newInstance();
+            }
+        }
+        int[] tileDocs = new int[DOCS_PER_TILE];
+        byte[][] tileData = new byte[DOCS_PER_TILE][];
+        int[] tileOffsets = new int[DOCS_PER_TILE];
+        int[] tileLengths = new int[DOCS_PER_TILE];
+        boolean hasDeletions = reader.hasDeletions();
+        byte[] feature = new byte[0];
+        int i = start;
+        while (i < end) {
+            // read the next block of documents ...
+            int tileSize = 0;
+            for (; i < end && tileSize < DOCS_PER_TILE; i++) {
+                if (cache != null) {
+                    int length = cache.getLength(i);
+                    if (length == 0) continue;
+                    tileData[tileSize] = cache.getData();
+                    tileOffsets[tileSize] = cache.getOffset(i);
+                    tileLengths[tileSize] = length;
+                    if (deserialize) {
+                        if (feature.length != length) feature = new byte[length];
+                        System.arraycopy(cache.getData(), cache.getOffset(i), feature, 0, length);
+                        tile[tileSize].setByteArrayRepresentation(feature);
+                    }
+                } else {
+                    if (hasDeletions && reader.isDeleted(i)) continue;
+                    feature = reader.document(i).getBinaryValue(fieldName);
+                    if (feature == null || feature.length == 0) {
+                        logger.warning("No feature stored in this document! (" + descriptorClass.getName() + ")");
+                        feature = new byte[0];
+                        continue;
+                    }
+                    tileData[tileSize] = feature;
+                    tileOffsets[tileSize] = 0;
+                    tileLengths[tileSize] = feature.length;
+                    if (deserialize) tile[tileSize].setByteArrayRepresentation(feature);
+                }
+                tileDocs[tileSize] = i;
+                tileSize++;
+            }
+            // ... and compare it block by block to the queries.
+            for (int q = 0; q < lireFeatures.length; q += QUERIES_PER_TILE) {
+                int qEnd = Math.min(q + QUERIES_PER_TILE, lireFeatures.length);
+                for (int d = 0; d < tileSize; d++) {
+                    for (int j = q; j < qEnd; j++) {
+                        float distance;
+                        if (kernels[j] != null) {
+                            distance = kernels[j].getDistance(tileData[d], tileOffsets[d], tileLengths[d]);
+                        } else {
+                            distance = lireFeatures[j].getDistance(tile[d]);
+                        }
+                        collectors[j].collect(tileDocs[d], distance);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the query as {@link ByteArrayDistance} if its distance can be computed on the
+     * byte[] representations of the features in the index.
+     *
+     * @param lireFeature the query.
+     * @return the query or null if the features have to be deserialized.
+     */
+    protected ByteArrayDistance getByteArrayDistance(LireFeature lireFeature) {
+        if (lireFeature instanceof ByteArrayDistance && lireFeature.getClass() == descriptorClass)
+            return (ByteArrayDistance) lireFeature;
+        return null;
     }
 
     /**
@@ -159,10 +372,13 @@ public class GenericFastImageSearcher extends AbstractImageSearcher {
      * @return the distance between the given feature and the feature stored in the document.
      */
     protected float getDistance(Document document, LireFeature lireFeature) {
-        tempBinaryValue = document.getBinaryValue(fieldName);
-        if (tempBinaryValue != null && tempBinaryValue.length > 0) {
-            cachedInstance.setByteArrayRepresentation(tempBinaryValue);
-            return lireFeature.getDistance(cachedInstance);
+        return getDistance(document.getBinaryValue(fieldName), lireFeature, cachedInstance);
+    }
+
+    private float getDistance(byte[] binaryValue, LireFeature lireFeature, LireFeature instance) {
+        if (binaryValue != null && binaryValue.length > 0) {
+            instance.setByteArrayRepresentation(binaryValue);
+            return lireFeature.getDistance(instance);
         } else {
             logger.warning("No feature stored in this document! (" + descriptorClass.getName() + ")");
         }
@@ -179,7 +395,7 @@ public class GenericFastImageSearcher extends AbstractImageSearcher {
                 lireFeature.setByteArrayRepresentation(cls);
             float maxDistance = findSimilar(reader, lireFeature);
 
-            searchHits = new SimpleImageSearchHits(this.docs, maxDistance);
+            searchHits = new SimpleImageSearchHits(this.docs.getResults(reader), maxDistance);
         } catch (InstantiationException e) {
             logger.log(Level.SEVERE, "Error instantiating class for generic image searcher: " + e.getMessage());
         } catch (IllegalAccessException e) {
@@ -245,4 +461,110 @@ public class GenericFastImageSearcher extends AbstractImageSearcher {
         return "GenericSearcher using " + descriptorClass.getName();
     }
 
+    /**
+     * Finds the IOException wrapped in an exception thrown by a task.
+     */
+    private static IOException unwrapIOException(RuntimeException e) {
+        Throwable cause = e;
+        while (cause != null && !(cause instanceof IOException)) cause = cause.getCause();
+        if (cause != null) return (IOException) cause;
+        throw e;
+    }
+
+    /**
+     * Scans a range of document numbers, ranges larger than minDocsPerTask are split in two halves.
+     */
+    private class ScanTask extends RecursiveTask<TopHitsCollector> {
+        private static final long serialVersionUID = 1L;
+        private IndexReader reader;
+        private FeatureCache cache;
+        private LireFeature lireFeature;
+        private int start, end, minDocsPerTask;
+
+        ScanTask(IndexReader reader, FeatureCache cache, LireFeature lireFeature, int start, int end, int minDocsPerTask) {
+            this.reader = reader;
+            this.cache = cache;
+            this.lireFeature = lireFeature;
+            this.start = start;
+            this.end = end;
+            this.minDocsPerTask = minDocsPerTask;
+        }
+
+        @Override
+        protected TopHitsCollector compute() {
+            if (end - start > minDocsPerTask) {
+                int middle = (start + end) >>> 1;
+                ScanTask left = new ScanTask(reader, cache, lireFeature, start, middle, minDocsPerTask);
+                ScanTask right = new ScanTask(reader, cache, lireFeature, middle, end, minDocsPerTask);
+                left.fork();
+                TopHitsCollector result = right.compute();
+                result.merge(left.join());
+                return result;
+            }
+            TopHitsCollector result = new TopHitsCollector(maxHits);
+            try {
+                // each task needs its own instance to deserialize the features into.
+                LireFeature instance = (LireFeature) descriptorClass.newInstance();
+                scan(reader, cache, lireFeature, instance, start, end, result);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            } catch (InstantiationException e) {
+                throw new RuntimeException(e);
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Scans a range of document numbers for a batch of queries, ranges larger than minDocsPerTask
+     * are split in two halves.
+     */
+    private class BatchScanTask extends RecursiveTask<TopHitsCollector[]> {
+        private static final long serialVersionUID = 1L;
+        private IndexReader reader;
+        private FeatureCache cache;
+        private LireFeature[] lireFeatures;
+        private int start, end, minDocsPerTask;
+
+        BatchScanTask(IndexReader reader, FeatureCache cache, LireFeature[] lireFeatures, int start, int end, int minDocsPerTask) {
+            this.reader = reader;
+            this.cache = cache;
+            this.lireFeatures = lireFeatures;
+            this.start = start;
+            this.end = end;
+            this.minDocsPerTask = minDocsPerTask;
+        }
+
+        @Override
+        protected TopHitsCollector[] compute() {
+            if (end - start > minDocsPerTask) {
+                int middle = (start + end) >>> 1;
+                BatchScanTask left = new BatchScanTask(reader, cache, lireFeatures, start, middle, minDocsPerTask);
+                BatchScanTask right = new BatchScanTask(reader, cache, lireFeatures, middle, end, minDocsPerTask);
+                left.fork();
+                TopHitsCollector[] result = right.compute();
+                TopHitsCollector[] leftResult = left.join();
+                for (int i = 0; i < result.length; i++) {
+                    result[i].merge(leftResult[i]);
+                }
+                return result;
+            }
+            TopHitsCollector[] result = new TopHitsCollector[lireFeatures.length];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = new TopHitsCollector(maxHits);
+            }
+            try {
+                scanBatch(reader, cache, lireFeatures, start, end, result);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            } catch (InstantiationException e) {
+                throw new RuntimeException(e);
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+            return result;
+        }
+    }
 }
@@ -44,7 +44,6 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -61,11 +60,11 @@ public class GenericImageSearcher extends AbstractImageSearcher {
     String fieldName;
 
     private int maxHits = 10;
-    protected TreeSet<SimpleResult> docs;
+    protected TopHitsCollector docs;
 
     public GenericImageSearcher(int maxHits, Class<?> descriptorClass, String fieldName) {
         this.maxHits = maxHits;
-        docs = new TreeSet<SimpleResult>();
+        docs = new TopHitsCollector(maxHits);
         this.descriptorClass = descriptorClass;
         this.fieldName = fieldName;
     }
@@ -85,7 +84,7 @@ public class GenericImageSearcher extends AbstractImageSearcher {
             logger.fine("Extraction from image finished");
 
             float maxDistance = findSimilar(reader, lireFeature);
-            searchHits = new SimpleImageSearchHits(this.docs, maxDistance);
+            searchHits = new SimpleImageSearchHits(this.docs.getResults(reader), maxDistance);
         } catch (InstantiationException e) {
             logger.log(Level.SEVERE, "Error instantiating class for generic image searcher: " + e.getMessage());
         } catch (IllegalAccessException e) {
@@ -101,13 +100,12 @@ public class GenericImageSearcher extends AbstractImageSearcher {
      * @throws java.io.IOException
      */
     protected float findSimilar(IndexReader reader, LireFeature lireFeature) throws IOException {
-        float maxDistance = -1f, overallMaxDistance = -1f;
         boolean hasDeletions = reader.hasDeletions();
 
         // clear result set ...
         docs.clear();
 
-        int docs = reader.numDocs();
+        int docs = reader.maxDoc();
         for (int i = 0; i < docs; i++) {
             // bugfix by Roman Kern
             if (hasDeletions && reader.isDeleted(i)) {
@@ -117,29 +115,55 @@ public class GenericImageSearcher extends AbstractImageSearcher {
             Document d = reader.document(i);
             float distance = getDistance(d, lireFeature);
             assert (distance >= 0);
-            // calculate the overall max distance to normalize score afterwards
-            if (overallMaxDistance < distance) {
-                overallMaxDistance = distance;
-            }
-            // if it is the first document:
-            if (maxDistance < 0) {
-                maxDistance = distance;
-            }
-            // if the array is not full yet:
-            if (this.docs.size() < maxHits) {
-                this.docs.add(new SimpleResult(distance, d));
-                if (distance > maxDistance) maxDistance = distance;
-            } else if (distance < maxDistance) {
-                // if it is nearer to the sample than at least on of the current set:
-                // remove the last one ...
-                this.docs.remove(this.docs.last());
-                // add the new one ...
-                this.docs.add(new SimpleResult(distance, d));
-                // and set our new distance border ...
-                maxDistance = this.docs.last().getDistance();
+            this.docs.collect(i, distance);
+        }
+        return this.docs.getMaxDistance();
+    }
+
+    /**
+     * Searches for many queries at once with a single pass over the index: the feature of each
+     * document is parsed only once and compared to all queries.
+     *
+     * @param queries the query features.
+     * @param reader  the index to search in.
+     * @return one result list per query, in the order of the queries.
+     * @throws IOException
+     * @see GenericFastImageSearcher#searchBatch(java.util.List, org.apache.lucene.index.IndexReader)
+     */
+    public ImageSearchHits[] searchBatch(List<LireFeature> queries, IndexReader reader) throws IOException {
+        LireFeature[] lireFeatures = queries.toArray(new LireFeature[queries.size()]);
+        TopHitsCollector[] collectors = new TopHitsCollector[lireFeatures.length];
+        for (int i = 0; i < collectors.length; i++) {
+            collectors[i] = new TopHitsCollector(maxHits);
+        }
+        try {
+            LireFeature lf = (LireFeature) descriptorClass.newInstance();
+            boolean hasDeletions = reader.hasDeletions();
+            int docs = reader.maxDoc();
+            for (int i = 0; i < docs; i++) {
+                if (hasDeletions && reader.isDeleted(i)) {
+                    continue;
+                }
+                String[] cls = reader.document(i).getValues(fieldName);
+                if (cls == null || cls.length == 0) {
+                    logger.warning("No feature stored in this document!");
+                    continue;
+                }
+                lf.setStringRepresentation(cls[0]);
+                for (int j = 0; j < collectors.length; j++) {
+                    collectors[j].collect(i, lireFeatures[j].getDistance(lf));
+                }
             }
+        } catch (InstantiationException e) {
+            logger.log(Level.SEVERE, "Error instantiating class for generic image searcher: " + e.getMessage());
+        } catch (IllegalAccessException e) {
+            logger.log(Level.SEVERE, "Error instantiating class for generic image searcher: " + e.getMessage());
+        }
+        ImageSearchHits[] searchHits = new ImageSearchHits[collectors.length];
+        for (int i = 0; i < searchHits.length; i++) {
+            searchHits[i] = new SimpleImageSearchHits(collectors[i].getResults(reader), collectors[i].getMaxDistance());
         }
-        return maxDistance;
+        return searchHits;
     }
 
     protected float getDistance(Document d, LireFeature lireFeature) {
@@ -173,7 +197,7 @@ public class GenericImageSearcher extends AbstractImageSearcher {
                 lireFeature.setStringRepresentation(cls[0]);
             float maxDistance = findSimilar(reader, lireFeature);
 
-            searchHits = new SimpleImageSearchHits(this.docs, maxDistance);
+            searchHits = new SimpleImageSearchHits(this.docs.getResults(reader), maxDistance);
         } catch (InstantiationException e) {
             logger.log(Level.SEVERE, "Error instantiating class for generic image searcher: " + e.getMessage());
         } catch (IllegalAccessException e) {
@@ -0,0 +1,421 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+package net.semanticmetadata.lire.impl;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * In-memory inverted file of the visual words of one field. The postings of each visual word are
+ * the ascending document numbers and the term frequencies, compressed as variable length ints with
+ * the document numbers stored as differences. Every {@link #BLOCK_SIZE} postings the last document
+ * number and the offset of the next block are kept, so {@link Postings#advance(int)} can skip whole
+ * blocks without decoding them. For early termination the maximum term frequency, the minimum
+ * document length and the maximum ratio of both are stored for each visual word.
+ * <p/>
+ * The postings are read once per IndexReader from the terms of the field, they are cached like in
+ * {@link FeatureCache}. Documents deleted afterwards are still contained and have to be checked by
+ * the searcher.
+ * <br>Date: 18.10.2026
+ */
+public class InvertedFile {
+    /**
+     * Number of postings between two skip entries.
+     */
+    public static final int BLOCK_SIZE = 64;
+    /**
+     * Document number of exhausted postings.
+     */
+    public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+    private static final Map<Object, Map<String, InvertedFile>> files = new WeakHashMap<Object, Map<String, InvertedFile>>();
+
+    private int maxDoc;
+    private int numDocs = 0;
+    private long totalLength = 0;
+    private int[] lengths;
+    private byte[][] postings = new byte[0][];
+    private int[][] blockLastDocs = new int[0][];
+    private int[][] blockOffsets = new int[0][];
+    private int[] docFreqs = new int[0];
+    private int[] maxFreqs = new int[0];
+    private int[] minLengths = new int[0];
+    private float[] maxFreqRatios = new float[0];
+
+    /**
+     * Returns the inverted file for the given reader and field. It is created on first access from
+     * the terms of the field, which have to be "v" followed by the number of the visual word.
+     *
+     * @param reader    the IndexReader the postings are taken from.
+     * @param fieldName the name of the field holding the visual words.
+     * @return the inverted file for the field.
+     * @throws IOException in case the index cannot be read.
+     */
+    public static InvertedFile getInvertedFile(IndexReader reader, String fieldName) throws IOException {
+        Object key = reader.getCoreCacheKey();
+        Map<String, InvertedFile> fieldFiles;
+        synchronized (files) {
+            fieldFiles = files.get(key);
+            if (fieldFiles == null) {
+                fieldFiles = new HashMap<String, InvertedFile>();
+                files.put(key, fieldFiles);
+            }
+        }
+        synchronized (fieldFiles) {
+            InvertedFile file = fieldFiles.get(fieldName);
+            if (file == null) {
+                file = new InvertedFile(reader, fieldName);
+                fieldFiles.put(fieldName, file);
+            }
+            return file;
+        }
+    }
+
+    /**
+     * Removes all cached inverted files of the given reader.
+     *
+     * @param reader the reader, e.g. before it is closed or after it has been reopened.
+     */
+    public static void purge(IndexReader reader) {
+        synchronized (files) {
+            files.remove(reader.getCoreCacheKey());
+        }
+    }
+
+    private InvertedFile(IndexReader reader, String fieldName) throws IOException {
+        this(reader.maxDoc());
+        int[] docs = new int[1024];
+        int[] freqs = new int[1024];
+        TermEnum terms = reader.terms(new Term(fieldName, ""));
+        TermDocs termDocs = reader.termDocs();
+        try {
+            do {
+                Term term = terms.term();
+                if (term == null || !term.field().equals(fieldName)) break;
+                int word = Integer.parseInt(term.text().substring(1));
+                termDocs.seek(terms);
+                int count = 0;
+                while (termDocs.next()) {
+                    if (count == docs.length) {
+                        docs = Arrays.copyOf(docs, count * 2);
+                        freqs = Arrays.copyOf(freqs, count * 2);
+                    }
+                    docs[count] = termDocs.doc();
+                    freqs[count] = termDocs.freq();
+                    count++;
+                }
+                add(word, docs, freqs, count);
+            } while (terms.next());
+        } finally {
+            termDocs.close();
+            terms.close();
+        }
+        finish();
+    }
+
+    /**
+     * Creates an empty inverted file, the postings are added with
+     * {@link #add(int, int[], int[], int)} followed by one call of {@link #finish()}.
+     *
+     * @param maxDoc the number of documents.
+     */
+    InvertedFile(int maxDoc) {
+        this.maxDoc = maxDoc;
+        lengths = new int[maxDoc];
+    }
+
+    /**
+     * Adds the postings of a visual word.
+     *
+     * @param word  the number of the visual word.
+     * @param docs  the ascending document numbers.
+     * @param freqs the number of occurrences of the word in the documents.
+     * @param count the number of postings.
+     */
+    void add(int word, int[] docs, int[] freqs, int count) {
+        if (count == 0) return;
+        if (word >= postings.length) {
+            int size = Math.max(word + 1, postings.length * 2);
+            postings = Arrays.copyOf(postings, size);
+            blockLastDocs = Arrays.copyOf(blockLastDocs, size);
+            blockOffsets = Arrays.copyOf(blockOffsets, size);
+            docFreqs = Arrays.copyOf(docFreqs, size);
+            maxFreqs = Arrays.copyOf(maxFreqs, size);
+            minLengths = Arrays.copyOf(minLengths, size);
+            maxFreqRatios = Arrays.copyOf(maxFreqRatios, size);
+        }
+        int numBlocks = (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int[] lastDocs = new int[numBlocks];
+        int[] offsets = new int[numBlocks];
+        byte[] data = new byte[count * 2 + 16];
+        int length = 0, lastDoc = 0, maxFreq = 0;
+        for (int i = 0; i < count; i++) {
+            if (i % BLOCK_SIZE == 0) offsets[i / BLOCK_SIZE] = length;
+            if (length + 10 > data.length) data = Arrays.copyOf(data, data.length * 2);
+            length = writeVInt(docs[i] - lastDoc, data, length);
+            length = writeVInt(freqs[i], data, length);
+            lastDoc = docs[i];
+            lastDocs[i / BLOCK_SIZE] = lastDoc;
+            if (lengths[lastDoc] == 0) numDocs++;
+            lengths[lastDoc] += freqs[i];
+            totalLength += freqs[i];
+            maxFreq = Math.max(maxFreq, freqs[i]);
+        }
+        postings[word] = Arrays.copyOf(data, length);
+        blockLastDocs[word] = lastDocs;
+        blockOffsets[word] = offsets;
+        docFreqs[word] = count;
+        maxFreqs[word] = maxFreq;
+    }
+
+    /**
+     * Computes the minimum document length and the maximum ratio of term frequency and document length
+     * per visual word, which need the lengths of all documents.
+     */
+    void finish() {
+        for (int word = 0; word < postings.length; word++) {
+            if (postings[word] == null) continue;
+            int minLength = Integer.MAX_VALUE;
+            float maxFreqRatio = 0;
+            Postings p = getPostings(word);
+            while (p.next()) {
+                minLength = Math.min(minLength, lengths[p.doc()]);
+                maxFreqRatio = Math.max(maxFreqRatio, p.freq() / (float) lengths[p.doc()]);
+            }
+            minLengths[word] = minLength;
+            maxFreqRatios[word] = maxFreqRatio;
+        }
+    }
+
+    private static int writeVInt(int value, byte[] data, int offset) {
+        while ((value & ~0x7F) != 0) {
+            data[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[offset++] = (byte) value;
+        return offset;
+    }
+
+    /**
+     * @param word the number of the visual word.
+     * @return a new cursor on the postings of the visual word or null if it does not occur.
+     */
+    public Postings getPostings(int word) {
+        if (word < 0 || word >= postings.length || postings[word] == null) return null;
+        return new Postings(postings[word], blockLastDocs[word], blockOffsets[word], docFreqs[word]);
+    }
+
+    /**
+     * @return the number of documents of the index, including deleted ones.
+     */
+    public int getMaxDoc() {
+        return maxDoc;
+    }
+
+    /**
+     * @return the number of documents with at least one visual word.
+     */
+    public int getNumDocs() {
+        return numDocs;
+    }
+
+    /**
+     * @return the average number of visual words of the documents with at least one visual word.
+     */
+    public float getAverageLength() {
+        return numDocs == 0 ? 0f : (float) ((double) totalLength / numDocs);
+    }
+
+    /**
+     * @param doc the document number.
+     * @return the number of visual words of the document, each occurrence counted.
+     */
+    public int getLength(int doc) {
+        return lengths[doc];
+    }
+
+    /**
+     * @param word the number of the visual word.
+     * @return the number of documents containing the visual word.
+     */
+    public int getDocFreq(int word) {
+        return word < docFreqs.length ? docFreqs[word] : 0;
+    }
+
+    /**
+     * @param word the number of the visual word.
+     * @return the maximum number of occurrences of the visual word in a document.
+     */
+    public int getMaxFreq(int word) {
+        return word < maxFreqs.length ? maxFreqs[word] : 0;
+    }
+
+    /**
+     * @param word the number of the visual word.
+     * @return the minimum length of the documents containing the visual word.
+     */
+    public int getMinLength(int word) {
+        return word < minLengths.length ? minLengths[word] : 0;
+    }
+
+    /**
+     * @param word the number of the visual word.
+     * @return the maximum number of occurrences of the visual word in a document divided by the
+     *         length of the document.
+     */
+    public float getMaxFreqRatio(int word) {
+        return word < maxFreqRatios.length ? maxFreqRatios[word] : 0f;
+    }
+
+    /**
+     * @return the size of the compressed postings in bytes.
+     */
+    public long getPostingsSize() {
+        long size = 0;
+        for (byte[] p : postings) {
+            if (p != null) size += p.length;
+        }
+        return size;
+    }
+
+    /**
+     * Cursor on the postings of one visual word. Use {@link #next()} to read the first posting.
+     */
+    public static class Postings {
+        private final byte[] data;
+        private final int[] lastDocs;
+        private final int[] offsets;
+        private final int count;
+        private int offset = 0;
+        private int index = 0;
+        private int doc = -1;
+        private int freq = 0;
+
+        private Postings(byte[] data, int[] lastDocs, int[] offsets, int count) {
+            this.data = data;
+            this.lastDocs = lastDocs;
+            this.offsets = offsets;
+            this.count = count;
+        }
+
+        /**
+         * @return the current document number, {@link InvertedFile#NO_MORE_DOCS} if exhausted.
+         */
+        public int doc() {
+            return doc;
+        }
+
+        /**
+         * @return the number of occurrences of the visual word in the current document.
+         */
+        public int freq() {
+            return freq;
+        }
+
+        /**
+         * @return the number of documents containing the visual word.
+         */
+        public int docFreq() {
+            return count;
+        }
+
+        /**
+         * Moves to the next posting.
+         *
+         * @return false if there are no more postings.
+         */
+        public boolean next() {
+            if (index == count) {
+                doc = NO_MORE_DOCS;
+                return false;
+            }
+            byte[] data = this.data;
+            int offset = this.offset;
+            byte b = data[offset++];
+            int delta = b & 0x7F;
+            for (int shift = 7; b < 0; shift += 7) {
+                b = data[offset++];
+                delta |= (b & 0x7F) << shift;
+            }
+            b = data[offset++];
+            int f = b & 0x7F;
+            for (int shift = 7; b < 0; shift += 7) {
+                b = data[offset++];
+                f |= (b & 0x7F) << shift;
+            }
+            this.offset = offset;
+            doc = (index == 0 ? 0 : doc) + delta;
+            freq = f;
+            index++;
+            return true;
+        }
+
+        /**
+         * Moves to the first posting with a document number greater or equal to the target, blocks
+         * ending before the target are skipped.
+         *
+         * @param target the document number.
+         * @return false if there are no more postings.
+         */
+        public boolean advance(int target) {
+            if (doc >= target) return doc != NO_MORE_DOCS;
+            int block = index == 0 ? 0 : (index - 1) / BLOCK_SIZE;
+            if (lastDocs[block] < target) {
+                // binary search for the first block ending at or after the target.
+                int low = block + 1, high = lastDocs.length - 1;
+                if (low > high || lastDocs[high] < target) {
+                    index = count;
+                    doc = NO_MORE_DOCS;
+                    return false;
+                }
+                while (low < high) {
+                    int middle = (low + high) >>> 1;
+                    if (lastDocs[middle] < target) low = middle + 1;
+                    else high = middle;
+                }
+                offset = offsets[low];
+                index = low * BLOCK_SIZE;
+                doc = lastDocs[low - 1];
+            }
+            while (next()) {
+                if (doc >= target) return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+package net.semanticmetadata.lire.impl;
+
+import net.semanticmetadata.lire.AbstractImageSearcher;
+import net.semanticmetadata.lire.DocumentBuilder;
+import net.semanticmetadata.lire.ImageDuplicates;
+import net.semanticmetadata.lire.ImageSearchHits;
+import net.semanticmetadata.lire.utils.SerializationUtils;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.StringTokenizer;
+
+/**
+ * Bag of visual words search on an {@link InvertedFile} instead of a Lucene BooleanQuery. The
+ * documents are scored with tf-idf or BM25 and the top k are found with MaxScore early termination:
+ * the visual words of the query are sorted by the maximum score they can contribute, once the k-th
+ * best score is higher than the sum of the maximum scores of the least important words, documents
+ * are only taken from the postings of the other words. Their scores are added up in windows of
+ * document numbers, the postings of the least important words are only looked up for documents
+ * which can still get into the results, skipping the postings in between. The results are the
+ * same as without early termination.
+ * <p/>
+ * Queries are documents with visual words, e.g. from the index, or images if a DocumentBuilder
+ * adding the visual words is given, e.g. a {@link SurfDocumentBuilder} with a
+ * {@link net.semanticmetadata.lire.imageanalysis.bovw.VocabularyManager}. The distance of a hit is
+ * 1 / score like in {@link VisualWordsImageSearcher}. Only the documents of the hits are loaded.
+ * <br>Date: 18.10.2026
+ */
+public class InvertedFileImageSearcher extends AbstractImageSearcher {
+    /**
+     * Weighting of the visual words.
+     */
+    public enum Weighting {
+        /**
+         * Query tf * sqrt(tf) * idf^2 / sqrt(document length) with idf = 1 + ln(numDocs / (docFreq + 1)),
+         * like the DefaultSimilarity of Lucene without coordination factor.
+         */
+        TfIdf,
+        /**
+         * Okapi BM25 with k1 = 1.2 and b = 0.75, multiplied by the query tf.
+         */
+        BM25
+    }
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    private static final int WINDOW_SIZE = 2048;
+    private static final float[] SQRT = new float[256];
+
+    static {
+        for (int i = 0; i < SQRT.length; i++) {
+            SQRT[i] = (float) Math.sqrt(i);
+        }
+    }
+
+    private int numMaxHits;
+    private String fieldName;
+    private Weighting weighting = Weighting.BM25;
+    private DocumentBuilder documentBuilder = null;
+    private boolean earlyTermination = true;
+
+    /**
+     * Creates a searcher using BM25 for queries with visual words.
+     *
+     * @param numMaxHits the number of hits.
+     * @param fieldName  the field of the visual words, e.g. {@link DocumentBuilder#FIELD_NAME_SURF_LOCAL_FEATURE_HISTOGRAM_VISUAL_WORDS}.
+     */
+    public InvertedFileImageSearcher(int numMaxHits, String fieldName) {
+        this.numMaxHits = numMaxHits;
+        this.fieldName = fieldName;
+    }
+
+    /**
+     * @param numMaxHits the number of hits.
+     * @param fieldName  the field of the visual words.
+     * @param weighting  the weighting of the visual words.
+     */
+    public InvertedFileImageSearcher(int numMaxHits, String fieldName, Weighting weighting) {
+        this(numMaxHits, fieldName);
+        this.weighting = weighting;
+    }
+
+    /**
+     * Creates a searcher also supporting queries by image.
+     *
+     * @param numMaxHits      the number of hits.
+     * @param documentBuilder creates documents with visual words in the given field from images, e.g.
+     *                        a {@link SurfDocumentBuilder} with a {@link net.semanticmetadata.lire.imageanalysis.bovw.VocabularyManager}.
+     * @param fieldName       the field of the visual words.
+     * @param weighting       the weighting of the visual words.
+     */
+    public InvertedFileImageSearcher(int numMaxHits, DocumentBuilder documentBuilder, String fieldName, Weighting weighting) {
+        this(numMaxHits, fieldName, weighting);
+        this.documentBuilder = documentBuilder;
+    }
+
+    /**
+     * Early termination is on per default, switching it off scores all documents containing any of
+     * the visual words of the query.
+     *
+     * @param earlyTermination true to skip documents which cannot get into the results.
+     */
+    public void setEarlyTermination(boolean earlyTermination) {
+        this.earlyTermination = earlyTermination;
+    }
+
+    public ImageSearchHits search(BufferedImage image, IndexReader reader) throws IOException {
+        if (documentBuilder == null)
+            throw new UnsupportedOperationException("Searching by image needs a DocumentBuilder adding the visual words.");
+        return search(documentBuilder.createDocument(image, null), reader);
+    }
+
+    public ImageSearchHits search(Document doc, IndexReader reader) throws IOException {
+        byte[] histogram = doc.getBinaryValue(fieldName);
+        if (histogram != null) return search(SerializationUtils.toSparseIntArray(histogram), reader);
+        // indexes created before the visual words were stored as sparse histogram:
+        String[] values = doc.getValues(fieldName);
+        if (values.length == 0) return search(new int[0], reader);
+        return search(parseVisualWords(values[0]), reader);
+    }
+
+    /**
+     * Searches for the documents most similar to the given histogram of visual words.
+     *
+     * @param histogram the non zero entries of the histogram as pairs of visual word and count, see
+     *                  {@link SerializationUtils#toSparseIntArray(byte[])}.
+     * @param reader    the reader on the index.
+     * @return the hits.
+     * @throws IOException in case the index cannot be read.
+     */
+    public ImageSearchHits search(int[] histogram, IndexReader reader) throws IOException {
+        TopHitsCollector collector = new TopHitsCollector(numMaxHits);
+        score(InvertedFile.getInvertedFile(reader, fieldName), histogram, reader, collector);
+        int[] docs = new int[collector.size()];
+        float[] distances = new float[collector.size()];
+        collector.sort(docs, distances);
+        ArrayList<SimpleResult> results = new ArrayList<SimpleResult>(docs.length);
+        float maxDistance = 0;
+        for (int i = 0; i < docs.length; i++) {
+            // the collector holds the negative scores.
+            float d = 1f / -distances[i];
+            maxDistance = Math.max(d, maxDistance);
+            results.add(new SimpleResult(d, reader.document(docs[i]), docs[i]));
+        }
+        return new SimpleImageSearchHits(results, maxDistance);
+    }
+
+    /**
+     * Scores the documents with MaxScore early termination, the collector gets the negative scores.
+     */
+    private void score(InvertedFile file, int[] histogram, IndexReader reader, TopHitsCollector collector) {
+        int n = 0;
+        InvertedFile.Postings[] postings = new InvertedFile.Postings[histogram.length / 2];
+        float[] weights = new float[postings.length];
+        float[] bounds = new float[postings.length];
+        float numDocs = file.getNumDocs();
+        float averageLength = Math.max(file.getAverageLength(), 1f);
+        for (int i = 0; i < histogram.length; i += 2) {
+            int word = histogram[i];
+            InvertedFile.Postings p = file.getPostings(word);
+            if (p == null) continue;
+            float idf;
+            if (weighting == Weighting.TfIdf) {
+                idf = (float) (Math.log(numDocs / (p.docFreq() + 1)) + 1.0);
+                weights[n] = histogram[i + 1] * idf * idf;
+            } else {
+                idf = (float) Math.log(1 + (numDocs - p.docFreq() + 0.5f) / (p.docFreq() + 0.5f));
+                weights[n] = histogram[i + 1] * idf;
+            }
+            // a little more than the maximum to be safe from rounding errors:
+            bounds[n] = weights[n] * maxWeight(file, word, averageLength) * 1.0001f;
+            postings[n++] = p;
+        }
+        // sort by ascending bound (insertion sort, queries have a few hundred visual words at most):
+        for (int i = 1; i < n; i++) {
+            InvertedFile.Postings p = postings[i];
+            float w = weights[i], bound = bounds[i];
+            int j = i - 1;
+            for (; j >= 0 && bounds[j] > bound; j--) {
+                postings[j + 1] = postings[j];
+                weights[j + 1] = weights[j];
+                bounds[j + 1] = bounds[j];
+            }
+            postings[j + 1] = p;
+            weights[j + 1] = w;
+            bounds[j + 1] = bound;
+        }
+        // prefix[i] is the maximum score of a document containing only the words 0 .. i.
+        float[] prefix = new float[n];
+        int doc = InvertedFile.NO_MORE_DOCS;
+        for (int i = 0; i < n; i++) {
+            prefix[i] = (i == 0 ? 0 : prefix[i - 1]) + bounds[i];
+            postings[i].next();
+            doc = Math.min(doc, postings[i].doc());
+        }
+        boolean hasDeletions = reader.hasDeletions();
+        // the words before firstEssential cannot get a document into the results on their own.
+        int firstEssential = 0;
+        float threshold = 0;
+        // summed up in double, so the order of the words hardly matters for the result:
+        double[] scores = new double[WINDOW_SIZE];
+        float[] norms = new float[WINDOW_SIZE];
+        int[] candidates = new int[WINDOW_SIZE];
+        while (doc != InvertedFile.NO_MORE_DOCS) {
+            // the postings of the essential words are added up for a window of documents ...
+            int end = (int) Math.min((long) doc + WINDOW_SIZE, InvertedFile.NO_MORE_DOCS);
+            int windowFirstEssential = firstEssential;
+            for (int i = windowFirstEssential; i < n; i++) {
+                InvertedFile.Postings p = postings[i];
+                float w = weights[i];
+                if (weighting == Weighting.TfIdf) {
+                    // the division by the square root of the length is done once per document below.
+                    while (p.doc() < end) {
+                        scores[p.doc() - doc] += w * sqrt(p.freq());
+                        p.next();
+                    }
+                } else {
+                    while (p.doc() < end) {
+                        scores[p.doc() - doc] += w * weight(p.freq(), file.getLength(p.doc()), averageLength);
+                        p.next();
+                    }
+                }
+            }
+            int numCandidates = 0;
+            for (int slot = 0; slot < end - doc; slot++) {
+                if (scores[slot] == 0) continue;
+                if (weighting == Weighting.TfIdf) {
+                    norms[slot] = (float) (1 / Math.sqrt(file.getLength(doc + slot)));
+                    scores[slot] *= norms[slot];
+                }
+                candidates[numCandidates++] = slot;
+            }
+            // ... and the other words are only looked up for documents which may still get into the
+            // results, one word after the other starting with the most important one.
+            for (int i = windowFirstEssential - 1; i >= 0 && numCandidates > 0; i--) {
+                InvertedFile.Postings p = postings[i];
+                float w = weights[i];
+                int kept = 0;
+                for (int c = 0; c < numCandidates; c++) {
+                    int slot = candidates[c];
+                    if (scores[slot] + prefix[i] <= threshold) {
+                        scores[slot] = 0;
+                        continue;
+                    }
+                    int d = doc + slot;
+                    if (p.doc() < d) p.advance(d);
+                    if (p.doc() == d) {
+                        if (weighting == Weighting.TfIdf) scores[slot] += w * sqrt(p.freq()) * norms[slot];
+                        else scores[slot] += w * weight(p.freq(), file.getLength(d), averageLength);
+                    }
+                    candidates[kept++] = slot;
+                }
+                numCandidates = kept;
+            }
+            for (int c = 0; c < numCandidates; c++) {
+                int slot = candidates[c];
+                double score = scores[slot];
+                scores[slot] = 0;
+                int d = doc + slot;
+                if (score > threshold && !(hasDeletions && reader.isDeleted(d))) {
+                    collector.collect(d, (float) -score);
+                    if (earlyTermination && collector.isFull()) {
+                        threshold = -collector.getMaxDistance();
+                        while (firstEssential < n && prefix[firstEssential] <= threshold) firstEssential++;
+                    }
+                }
+            }
+            doc = InvertedFile.NO_MORE_DOCS;
+            for (int i = firstEssential; i < n; i++) {
+                doc = Math.min(doc, postings[i].doc());
+            }
+        }
+    }
+
+    /**
+     * Weight of a visual word in a document without the idf.
+     */
+    private float weight(int freq, int length, float averageLength) {
+        if (weighting == Weighting.TfIdf) return (float) (sqrt(freq) / Math.sqrt(length));
+        return freq * (K1 + 1) / (freq + K1 * (1 - B + B * length / averageLength));
+    }
+
+    /**
+     * Upper bound of {@link #weight(int, int, float)} for all documents containing the visual word.
+     */
+    private float maxWeight(InvertedFile file, int word, float averageLength) {
+        float ratio = file.getMaxFreqRatio(word);
+        if (weighting == Weighting.TfIdf) return (float) Math.sqrt(ratio);
+        // BM25 grows with the frequency and falls with the length, without the k1 (1 - b) in the
+        // denominator it only depends on the ratio of both:
+        return Math.min(weight(file.getMaxFreq(word), file.getMinLength(word), averageLength),
+                ratio * (K1 + 1) / (ratio + K1 * B / averageLength));
+    }
+
+    private static float sqrt(int freq) {
+        return freq < SQRT.length ? SQRT[freq] : (float) Math.sqrt(freq);
+    }
+
+    /**
+     * Parses whitespace separated visual words like "v12 v12 v3".
+     */
+    private int[] parseVisualWords(String visualWords) {
+        StringTokenizer st = new StringTokenizer(visualWords);
+        int[] words = new int[st.countTokens()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = Integer.parseInt(st.nextToken().substring(1));
+        }
+        Arrays.sort(words);
+        int[] histogram = new int[words.length * 2];
+        int length = 0;
+        for (int i = 0; i < words.length; i++) {
+            if (i > 0 && words[i] == words[i - 1]) {
+                histogram[length - 1]++;
+            } else {
+                histogram[length++] = words[i];
+                histogram[length++] = 1;
+            }
+        }
+        return Arrays.copyOf(histogram, length);
+    }
+
+    public ImageDuplicates findDuplicates(IndexReader reader) throws IOException {
+        throw new UnsupportedOperationException("Not implemented!");
+    }
+}
@@ -31,6 +31,7 @@ package net.semanticmetadata.lire.impl;
 
 import net.semanticmetadata.lire.AbstractDocumentBuilder;
 import net.semanticmetadata.lire.DocumentBuilder;
+import net.semanticmetadata.lire.imageanalysis.bovw.VocabularyManager;
 import net.semanticmetadata.lire.imageanalysis.mser.MSER;
 import net.semanticmetadata.lire.imageanalysis.mser.MSERFeature;
 import org.apache.lucene.document.Document;
@@ -40,6 +41,7 @@ import java.awt.color.ColorSpace;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorConvertOp;
 import java.awt.image.RescaleOp;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.logging.Logger;
@@ -64,11 +66,35 @@ public class MSERDocumentBuilder extends AbstractDocumentBuilder {
 
     private Logger logger = Logger.getLogger(getClass().getName());
     private MSER extractor;
+    private VocabularyManager vocabulary = null;
+    private boolean compact = false;
 
     public MSERDocumentBuilder() {
         extractor = new MSER();
     }
 
+    /**
+     * Creates a builder adding the visual words of the current vocabulary of the given manager to each document.
+     *
+     * @param vocabulary the vocabulary manager, e.g. for a {@link net.semanticmetadata.lire.imageanalysis.bovw.MSERFeatureHistogramBuilder}.
+     */
+    public MSERDocumentBuilder(VocabularyManager vocabulary) {
+        this();
+        this.vocabulary = vocabulary;
+    }
+
+    /**
+     * Creates a builder that optionally writes the features in the compact format of
+     * {@link net.semanticmetadata.lire.imageanalysis.FeatureCodec}, which stores the descriptors as half floats.
+     *
+     * @param vocabulary the vocabulary manager adding the visual words, or null.
+     * @param compact    true to write the compact format, false for the format of getByteArrayRepresentation().
+     */
+    public MSERDocumentBuilder(VocabularyManager vocabulary, boolean compact) {
+        this(vocabulary);
+        this.compact = compact;
+    }
+
     public Document createDocument(BufferedImage image, String identifier) {
         Document doc = null;
         try {
@@ -87,6 +113,7 @@ public class MSERDocumentBuilder extends AbstractDocumentBuilder {
             if (features.size() < 1) {
                 System.err.println("No MSER features found for " + identifier);
             }
+            List<MSERFeature> indexed = new ArrayList<MSERFeature>(features.size());
             for (Iterator<MSERFeature> fit = features.iterator(); fit.hasNext(); ) {
                 MSERFeature f = fit.next();
                 boolean skip = false;
@@ -97,10 +124,12 @@ public class MSERDocumentBuilder extends AbstractDocumentBuilder {
                     break;
                 }
 
-                if (!skip)
-                    doc.add(new Field(DocumentBuilder.FIELD_NAME_MSER, f.getByteArrayRepresentation()));
-                else System.err.println("Found NaN in features in file " + identifier + ". ");
+                if (!skip) {
+                    doc.add(new Field(DocumentBuilder.FIELD_NAME_MSER, compact ? f.getCompactByteArrayRepresentation() : f.getByteArrayRepresentation()));
+                    indexed.add(f);
+                } else System.err.println("Found NaN in features in file " + identifier + ". ");
             }
+            if (vocabulary != null) vocabulary.addVisualWords(doc, indexed);
             if (identifier != null) {
                 doc.add(new Field(DocumentBuilder.FIELD_NAME_IDENTIFIER, identifier, Field.Store.YES, Field.Index.NOT_ANALYZED));
             }
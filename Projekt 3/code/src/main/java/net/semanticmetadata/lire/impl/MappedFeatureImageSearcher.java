@@ -0,0 +1,117 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+package net.semanticmetadata.lire.impl;
+
+import net.semanticmetadata.lire.imageanalysis.ByteArrayDistance;
+import net.semanticmetadata.lire.imageanalysis.LireFeature;
+import org.apache.lucene.index.IndexReader;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Linear searcher scanning a memory mapped {@link FeatureFile} instead of the stored fields of the
+ * index. Blocks of records are copied from the mapped file into a small buffer and compared there,
+ * so neither the features nor Lucene documents are put on the heap. Only the documents of the
+ * results are loaded from the index.
+ * <p/>
+ * If the feature file does not match the index, e.g. because documents have been added after it has
+ * been written, the searcher falls back to the stored fields. Batch searches always use the stored
+ * fields.
+ * <br>Date: 18.10.2026
+ */
+public class MappedFeatureImageSearcher extends GenericFastImageSearcher {
+    /**
+     * Number of records copied from the mapped file at once.
+     */
+    private static final int RECORDS_PER_BLOCK = 256;
+    private FeatureFile featureFile;
+
+    /**
+     * @param maxHits         the maximum number of hits returned.
+     * @param descriptorClass the feature class, has to implement {@link LireFeature}.
+     * @param fieldName       the field name of the feature in the index.
+     * @param featureFile     the feature file written for the field.
+     */
+    public MappedFeatureImageSearcher(int maxHits, Class<?> descriptorClass, String fieldName, FeatureFile featureFile) {
+        this(maxHits, descriptorClass, fieldName, featureFile, null);
+    }
+
+    /**
+     * @param maxHits         the maximum number of hits returned.
+     * @param descriptorClass the feature class, has to implement {@link LireFeature}.
+     * @param fieldName       the field name of the feature in the index.
+     * @param featureFile     the feature file written for the field.
+     * @param pool            the pool the scan is executed in, null for a sequential scan in the calling thread.
+     */
+    public MappedFeatureImageSearcher(int maxHits, Class<?> descriptorClass, String fieldName, FeatureFile featureFile, ForkJoinPool pool) {
+        super(maxHits, descriptorClass, fieldName, false, pool);
+        this.featureFile = featureFile;
+    }
+
+    protected float findSimilar(IndexReader reader, LireFeature lireFeature) throws IOException {
+        if (!featureFile.isCurrent(reader))
+            logger.warning("Feature file of " + fieldName + " is outdated, searching the stored fields.");
+        return super.findSimilar(reader, lireFeature);
+    }
+
+    protected void scan(IndexReader reader, FeatureCache cache, LireFeature lireFeature, LireFeature instance,
+                        int start, int end, TopHitsCollector collector) throws IOException {
+        if (!featureFile.isCurrent(reader)) {
+            super.scan(reader, cache, lireFeature, instance, start, end, collector);
+            return;
+        }
+        ByteArrayDistance kernel = getByteArrayDistance(lireFeature);
+        int recordLength = featureFile.getRecordLength();
+        byte[] records = new byte[RECORDS_PER_BLOCK * recordLength];
+        byte[] feature = new byte[0];
+        boolean hasDeletions = reader.hasDeletions();
+        int i = start;
+        while (i < end) {
+            int count = featureFile.read(i, Math.min(RECORDS_PER_BLOCK, end - i), records);
+            for (int r = 0; r < count; r++, i++) {
+                int offset = r * recordLength;
+                int length = FeatureFile.getLength(records, offset);
+                if (length == 0 || (hasDeletions && reader.isDeleted(i))) continue;
+                float distance;
+                if (kernel != null) {
+                    distance = kernel.getDistance(records, offset + 2, length);
+                } else {
+                    if (feature.length != length) feature = new byte[length];
+                    System.arraycopy(records, offset + 2, feature, 0, length);
+                    instance.setByteArrayRepresentation(feature);
+                    distance = lireFeature.getDistance(instance);
+                }
+                assert (distance >= 0);
+                collector.collect(i, distance);
+            }
+        }
+    }
+}
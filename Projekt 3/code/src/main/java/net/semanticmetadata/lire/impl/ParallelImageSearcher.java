@@ -40,7 +40,6 @@ import org.apache.lucene.index.IndexReader;
 
 import java.awt.image.BufferedImage;
 import java.io.IOException;
-import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -57,7 +56,7 @@ public class ParallelImageSearcher extends AbstractImageSearcher {
     Class<?> descriptorClass;
     String fieldName;
     private int maxHits = 10;
-    private TreeSet<SimpleResult>[] parDocs;
+    private TopHitsCollector[] parDocs;
 
     public ParallelImageSearcher(int maxHits, Class<?> descriptorClass, String fieldName) {
         this.maxHits = maxHits;
@@ -93,7 +92,7 @@ public class ParallelImageSearcher extends AbstractImageSearcher {
         }
         float[] distance = findSimilar(reader, lireFeature);
         for (int i = 0; i < distance.length; i++) {
-            searchHits[i] = new SimpleImageSearchHits(parDocs[i], distance[i]);
+            searchHits[i] = new SimpleImageSearchHits(parDocs[i].getResults(reader), distance[i]);
         }
         return searchHits;
 
@@ -118,7 +117,7 @@ public class ParallelImageSearcher extends AbstractImageSearcher {
         }
         float[] distance = findSimilar(reader, lireFeature);
         for (int i = 0; i < distance.length; i++) {
-            searchHits[i] = new SimpleImageSearchHits(parDocs[i], distance[i]);
+            searchHits[i] = new SimpleImageSearchHits(parDocs[i].getResults(reader), distance[i]);
         }
         return searchHits;
 
@@ -130,26 +129,15 @@ public class ParallelImageSearcher extends AbstractImageSearcher {
      * @return the maximum distance found for normalizing.
      * @throws java.io.IOException
      */
-    @SuppressWarnings("unchecked")
     private float[] findSimilar(IndexReader reader, LireFeature[] lireFeature) throws IOException {
-        float[] maxDistance = new float[lireFeature.length];
-        float[] overallMaxDistance = new float[lireFeature.length];
-
-        for (int i = 0; i < overallMaxDistance.length; i++) {
-            overallMaxDistance[i] = -1f;
-            maxDistance[i] = -1f;
-        }
-
-        parDocs = new TreeSet[lireFeature.length];
+        parDocs = new TopHitsCollector[lireFeature.length];
         for (int i = 0; i < parDocs.length; i++) {
-            parDocs[i] = new TreeSet<SimpleResult>();
+            parDocs[i] = new TopHitsCollector(maxHits);
         }
 
         boolean hasDeletions = reader.hasDeletions();
 
-        // clear result set ...
-
-        int docs = reader.numDocs();
+        int docs = reader.maxDoc();
         for (int i = 0; i < docs; i++) {
             // bugfix by Roman Kern
             if (hasDeletions && reader.isDeleted(i)) {
@@ -158,34 +146,14 @@ public class ParallelImageSearcher extends AbstractImageSearcher {
 
             Document d = reader.document(i);
             float[] distance = getDistance(d, lireFeature);
-            // calculate the overall max distance to normalize score afterwards
             for (int j = 0; j < distance.length; j++) {
-                float f = distance[j];
-                if (overallMaxDistance[j] < f) {
-                    overallMaxDistance[j] = f;
-                }
-                // if it is the first document:
-                if (maxDistance[j] < 0) {
-                    maxDistance[j] = f;
-                }
-                // if the array is not full yet:
-                if (this.parDocs[j].size() < maxHits) {
-                    this.parDocs[j].add(new SimpleResult(f, d));
-                    if (f > maxDistance[j]) {
-                        maxDistance[j] = f;
-                    }
-                } else if (f < maxDistance[j]) {
-                    // if it is nearer to the sample than at least on of the current set:
-                    // remove the last one ...
-                    this.parDocs[j].remove(this.parDocs[j].last());
-                    // add the new one ...
-                    this.parDocs[j].add(new SimpleResult(f, d));
-                    // and set our new distance border ...
-                    maxDistance[j] = this.parDocs[j].last().getDistance();
-                }
-
+                this.parDocs[j].collect(i, distance[j]);
             }
         }
+        float[] maxDistance = new float[lireFeature.length];
+        for (int j = 0; j < maxDistance.length; j++) {
+            maxDistance[j] = this.parDocs[j].getMaxDistance();
+        }
         return maxDistance;
     }
 
@@ -31,6 +31,7 @@ package net.semanticmetadata.lire.impl;
 
 import net.semanticmetadata.lire.AbstractDocumentBuilder;
 import net.semanticmetadata.lire.DocumentBuilder;
+import net.semanticmetadata.lire.imageanalysis.bovw.VocabularyManager;
 import net.semanticmetadata.lire.imageanalysis.sift.Extractor;
 import net.semanticmetadata.lire.imageanalysis.sift.Feature;
 import org.apache.lucene.document.Document;
@@ -52,11 +53,35 @@ import java.util.logging.Logger;
 public class SiftDocumentBuilder extends AbstractDocumentBuilder {
     private Logger logger = Logger.getLogger(getClass().getName());
     private Extractor extractor;
+    private VocabularyManager vocabulary = null;
+    private boolean compact = false;
 
     public SiftDocumentBuilder() {
         extractor = new Extractor();
     }
 
+    /**
+     * Creates a builder adding the visual words of the current vocabulary of the given manager to each document.
+     *
+     * @param vocabulary the vocabulary manager, e.g. for a {@link net.semanticmetadata.lire.imageanalysis.bovw.SiftFeatureHistogramBuilder}.
+     */
+    public SiftDocumentBuilder(VocabularyManager vocabulary) {
+        this();
+        this.vocabulary = vocabulary;
+    }
+
+    /**
+     * Creates a builder that optionally writes the features in the compact format of
+     * {@link net.semanticmetadata.lire.imageanalysis.FeatureCodec}, which stores the descriptors as half floats.
+     *
+     * @param vocabulary the vocabulary manager adding the visual words, or null.
+     * @param compact    true to write the compact format, false for the format of getByteArrayRepresentation().
+     */
+    public SiftDocumentBuilder(VocabularyManager vocabulary, boolean compact) {
+        this(vocabulary);
+        this.compact = compact;
+    }
+
     public Document createDocument(BufferedImage image, String identifier) {
         Document doc = null;
         try {
@@ -67,8 +92,9 @@ public class SiftDocumentBuilder extends AbstractDocumentBuilder {
             for (Iterator<Feature> fit = features.iterator(); fit.hasNext(); ) {
                 Feature f = fit.next();
                 // add each feature to the document:
-                doc.add(new Field(DocumentBuilder.FIELD_NAME_SIFT, f.getByteArrayRepresentation()));
+                doc.add(new Field(DocumentBuilder.FIELD_NAME_SIFT, compact ? f.getCompactByteArrayRepresentation() : f.getByteArrayRepresentation()));
             }
+            if (vocabulary != null) vocabulary.addVisualWords(doc, features);
             if (identifier != null)
                 doc.add(new Field(DocumentBuilder.FIELD_NAME_IDENTIFIER, identifier, Field.Store.YES, Field.Index.NOT_ANALYZED));
         } catch (IOException e) {
@@ -46,7 +46,6 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.TreeSet;
 
 /**
  * This file is part of the Caliph and Emir project: http://www.SemanticMetadata.net
@@ -61,11 +60,11 @@ public class SimpleImageSearcher extends AbstractImageSearcher {
     float colorHistogramWeight = 1f;
     float colorDistributionWeight = 1f;
     float textureWeight = 1f;
-    private TreeSet<SimpleResult> docs;
+    private TopHitsCollector docs;
 
     public SimpleImageSearcher(int maxHits) {
         this.maxHits = maxHits;
-        docs = new TreeSet<SimpleResult>();
+        docs = new TopHitsCollector(maxHits);
     }
 
     public SimpleImageSearcher(int maxHits,
@@ -73,7 +72,7 @@ public class SimpleImageSearcher extends AbstractImageSearcher {
                                float colorDistributionWeight,
                                float textureWeight) {
         this.maxHits = maxHits;
-        docs = new TreeSet<SimpleResult>();
+        docs = new TopHitsCollector(maxHits);
         this.colorDistributionWeight = colorDistributionWeight;
         this.colorHistogramWeight = colorHistogramWeight;
         this.textureWeight = textureWeight;
@@ -97,7 +96,7 @@ public class SimpleImageSearcher extends AbstractImageSearcher {
         }
 
         float maxDistance = findSimilar(reader, cl, sc, eh);
-        return new SimpleImageSearchHits(this.docs, maxDistance);
+        return new SimpleImageSearchHits(this.docs.getResults(reader), maxDistance);
     }
 
     /**
@@ -109,13 +108,12 @@ public class SimpleImageSearcher extends AbstractImageSearcher {
      * @throws IOException
      */
     private float findSimilar(IndexReader reader, ColorLayout cl, ScalableColor sc, EdgeHistogram eh) throws IOException {
-        float maxDistance = -1f, overallMaxDistance = -1f;
         boolean hasDeletions = reader.hasDeletions();
 
         // clear result set ...
         docs.clear();
 
-        int docs = reader.numDocs();
+        int docs = reader.maxDoc();
         for (int i = 0; i < docs; i++) {
             // bugfix by Roman Kern
             if (hasDeletions && reader.isDeleted(i)) {
@@ -124,29 +122,9 @@ public class SimpleImageSearcher extends AbstractImageSearcher {
 
             Document d = reader.document(i);
             float distance = getDistance(d, cl, sc, eh);
-            // calculate the overall max distance to normalize score afterwards
-            if (overallMaxDistance < distance) {
-                overallMaxDistance = distance;
-            }
-            // if it is the first document:
-            if (maxDistance < 0) {
-                maxDistance = distance;
-            }
-            // if the array is not full yet:
-            if (this.docs.size() < maxHits) {
-                this.docs.add(new SimpleResult(distance, d));
-                if (distance > maxDistance) maxDistance = distance;
-            } else if (distance < maxDistance) {
-                // if it is nearer to the sample than at least on of the current set:
-                // remove the last one ...
-                this.docs.remove(this.docs.last());
-                // add the new one ...
-                this.docs.add(new SimpleResult(distance, d));
-                // and set our new distance border ...
-                maxDistance = this.docs.last().getDistance();
-            }
+            this.docs.collect(i, distance);
         }
-        return maxDistance;
+        return this.docs.getMaxDistance();
     }
 
     private float getDistance(Document d, ColorLayout cl, ScalableColor sc, EdgeHistogram eh) {
@@ -214,7 +192,7 @@ public class SimpleImageSearcher extends AbstractImageSearcher {
 
         float maxDistance = findSimilar(reader, cl, sc, eh);
 
-        return new SimpleImageSearchHits(this.docs, maxDistance);
+        return new SimpleImageSearchHits(this.docs.getResults(reader), maxDistance);
     }
 
     public ImageDuplicates findDuplicates(IndexReader reader) throws IOException {
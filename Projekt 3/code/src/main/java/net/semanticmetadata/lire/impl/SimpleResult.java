@@ -42,12 +42,27 @@ import org.apache.lucene.document.Document;
 public class SimpleResult implements Comparable<SimpleResult> {
     private float distance;
     private Document document;
+    private int indexNumber = -1;
 
     public SimpleResult(float distance, Document document) {
         this.distance = distance;
         this.document = document;
     }
 
+    /**
+     * Creates a result referring to a document by its number in the index. The document itself
+     * may be null and set later on, e.g. if it is loaded only for the final result list.
+     *
+     * @param distance    the distance to the query.
+     * @param document    the document, may be null.
+     * @param indexNumber the Lucene document number.
+     */
+    public SimpleResult(float distance, Document document, int indexNumber) {
+        this.distance = distance;
+        this.document = document;
+        this.indexNumber = indexNumber;
+    }
+
     public float getDistance() {
         assert (distance >= 0);
         return distance;
@@ -65,11 +80,17 @@ public class SimpleResult implements Comparable<SimpleResult> {
         this.document = document;
     }
 
+    public int getIndexNumber() {
+        return indexNumber;
+    }
+
     public int compareTo(SimpleResult o) {
         int compareValue = (int) Math.signum(distance - ((SimpleResult) o).distance);
+        if (compareValue == 0 && (document == null || o.document == null))
+            compareValue = indexNumber - o.indexNumber;
         // Bugfix after hint from Kai Jauslin
-        if (compareValue == 0 && !(document.equals(((SimpleResult) o).document)))
+        else if (compareValue == 0 && !(document.equals(((SimpleResult) o).document)))
             compareValue = document.hashCode() - ((SimpleResult) o).document.hashCode();
         return compareValue;
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
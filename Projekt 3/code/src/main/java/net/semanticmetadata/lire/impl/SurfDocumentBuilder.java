@@ -35,10 +35,12 @@ import com.stromberglabs.jopensurf.Surf;
 import net.semanticmetadata.lire.AbstractDocumentBuilder;
 import net.semanticmetadata.lire.DocumentBuilder;
 import net.semanticmetadata.lire.imageanalysis.SurfFeature;
+import net.semanticmetadata.lire.imageanalysis.bovw.VocabularyManager;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 
 import java.awt.image.BufferedImage;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
@@ -48,17 +50,47 @@ import java.util.List;
  * Time: 15:41:28
  */
 public class SurfDocumentBuilder extends AbstractDocumentBuilder {
+    private VocabularyManager vocabulary = null;
+    private boolean compact = false;
+
+    public SurfDocumentBuilder() {
+    }
+
+    /**
+     * Creates a builder adding the visual words of the current vocabulary of the given manager to each document.
+     *
+     * @param vocabulary the vocabulary manager, e.g. for a {@link net.semanticmetadata.lire.imageanalysis.bovw.SurfFeatureHistogramBuilder}.
+     */
+    public SurfDocumentBuilder(VocabularyManager vocabulary) {
+        this.vocabulary = vocabulary;
+    }
+
+    /**
+     * Creates a builder that optionally writes the features in the compact format of
+     * {@link net.semanticmetadata.lire.imageanalysis.FeatureCodec}, which stores the descriptors as half floats.
+     *
+     * @param vocabulary the vocabulary manager adding the visual words, or null.
+     * @param compact    true to write the compact format, false for the format of getByteArrayRepresentation().
+     */
+    public SurfDocumentBuilder(VocabularyManager vocabulary, boolean compact) {
+        this(vocabulary);
+        this.compact = compact;
+    }
+
     public Document createDocument(BufferedImage image, String identifier) {
         Document doc = null;
         // test with MSER:
         Surf s = new Surf(image);
         List<SURFInterestPoint> interestPoints = s.getFreeOrientedInterestPoints();
         doc = new Document();
+        List<SurfFeature> features = new ArrayList<SurfFeature>(interestPoints.size());
         for (Iterator<SURFInterestPoint> sipi = interestPoints.iterator(); sipi.hasNext(); ) {
             SURFInterestPoint sip = sipi.next();
             SurfFeature sf = new SurfFeature(sip);
-            doc.add(new Field(DocumentBuilder.FIELD_NAME_SURF, sf.getByteArrayRepresentation()));
+            doc.add(new Field(DocumentBuilder.FIELD_NAME_SURF, compact ? sf.getCompactByteArrayRepresentation() : sf.getByteArrayRepresentation()));
+            features.add(sf);
         }
+        if (vocabulary != null) vocabulary.addVisualWords(doc, features);
         if (identifier != null)
             doc.add(new Field(DocumentBuilder.FIELD_NAME_IDENTIFIER, identifier, Field.Store.YES, Field.Index.NOT_ANALYZED));
         return doc;
@@ -0,0 +1,190 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+package net.semanticmetadata.lire.impl;
+
+import org.apache.lucene.index.IndexReader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded collector for the k nearest documents of a linear search. Document numbers and
+ * distances are kept in two parallel primitive arrays organized as a max-heap on the distance,
+ * so the worst of the current results is always on top and can be replaced in O(log k) without
+ * allocating objects per candidate. The actual {@link SimpleResult} objects including the
+ * Lucene documents are created only once at the end of the search by {@link #getResults(org.apache.lucene.index.IndexReader)}.
+ * <br>Date: 18.10.2026
+ */
+public class TopHitsCollector {
+    private int maxHits;
+    private int[] docNumbers;
+    private float[] distances;
+    private int size = 0;
+
+    public TopHitsCollector(int maxHits) {
+        this.maxHits = maxHits;
+        docNumbers = new int[maxHits];
+        distances = new float[maxHits];
+    }
+
+    /**
+     * Removes all collected hits.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Offers a document to the collector. It is taken if there are less than maxHits documents
+     * collected or if it is nearer than the worst document collected so far.
+     *
+     * @param docNumber the Lucene document number.
+     * @param distance  the distance of the document to the query.
+     * @return true if the document has been taken.
+     */
+    public boolean collect(int docNumber, float distance) {
+        if (size < maxHits) {
+            // sift up the new element from the last position.
+            int pos = size++;
+            while (pos > 0) {
+                int parent = (pos - 1) >> 1;
+                if (!isWorse(distance, docNumber, distances[parent], docNumbers[parent])) break;
+                distances[pos] = distances[parent];
+                docNumbers[pos] = docNumbers[parent];
+                pos = parent;
+            }
+            distances[pos] = distance;
+            docNumbers[pos] = docNumber;
+            return true;
+        } else if (maxHits > 0 && distance < distances[0]) {
+            // replace the top (= worst) element and sift it down.
+            siftDown(docNumbers, distances, size, docNumber, distance);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adds all hits of another collector, e.g. one of a parallel worker.
+     *
+     * @param collector the collector to merge into this one.
+     */
+    public void merge(TopHitsCollector collector) {
+        for (int i = 0; i < collector.size; i++) {
+            collect(collector.docNumbers[i], collector.distances[i]);
+        }
+    }
+
+    /**
+     * @return the number of hits collected.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if maxHits documents have been collected.
+     */
+    public boolean isFull() {
+        return size >= maxHits;
+    }
+
+    /**
+     * @return the distance of the worst document collected or -1 if there are none.
+     */
+    public float getMaxDistance() {
+        if (size == 0) return -1f;
+        return distances[0];
+    }
+
+    /**
+     * Creates the sorted result list. The documents are loaded from the given reader.
+     *
+     * @param reader the reader the document numbers refer to.
+     * @return the results sorted by ascending distance.
+     * @throws IOException in case a document cannot be read.
+     */
+    public List<SimpleResult> getResults(IndexReader reader) throws IOException {
+        int[] sortedDocs = new int[size];
+        float[] sortedDistances = new float[size];
+        sort(sortedDocs, sortedDistances);
+        ArrayList<SimpleResult> results = new ArrayList<SimpleResult>(size);
+        for (int i = 0; i < size; i++) {
+            results.add(new SimpleResult(sortedDistances[i], reader.document(sortedDocs[i]), sortedDocs[i]));
+        }
+        return results;
+    }
+
+    /**
+     * Copies the hits sorted by ascending distance into the given arrays without destroying the heap.
+     *
+     * @param sortedDocs      array of at least {@link #size()} elements for the document numbers.
+     * @param sortedDistances array of at least {@link #size()} elements for the distances.
+     */
+    public void sort(int[] sortedDocs, float[] sortedDistances) {
+        System.arraycopy(docNumbers, 0, sortedDocs, 0, size);
+        System.arraycopy(distances, 0, sortedDistances, 0, size);
+        // heap sort: move the worst element to the end and restore the heap for the remaining ones.
+        for (int end = size - 1; end > 0; end--) {
+            int doc = sortedDocs[end];
+            float distance = sortedDistances[end];
+            sortedDocs[end] = sortedDocs[0];
+            sortedDistances[end] = sortedDistances[0];
+            siftDown(sortedDocs, sortedDistances, end, doc, distance);
+        }
+    }
+
+    /**
+     * Puts the given element to the root of the heap and moves it down to its position.
+     */
+    private static void siftDown(int[] docNumbers, float[] distances, int size, int docNumber, float distance) {
+        int pos = 0;
+        while (true) {
+            int child = (pos << 1) + 1;
+            if (child >= size) break;
+            if (child + 1 < size && isWorse(distances[child + 1], docNumbers[child + 1], distances[child], docNumbers[child]))
+                child++;
+            if (!isWorse(distances[child], docNumbers[child], distance, docNumber)) break;
+            distances[pos] = distances[child];
+            docNumbers[pos] = docNumbers[child];
+            pos = child;
+        }
+        distances[pos] = distance;
+        docNumbers[pos] = docNumber;
+    }
+
+    /**
+     * Order of the hits: smaller distance first, ties are broken by the document number.
+     */
+    private static boolean isWorse(float distance, int docNumber, float otherDistance, int otherDocNumber) {
+        return distance > otherDistance || (distance == otherDistance && docNumber > otherDocNumber);
+    }
+}
@@ -33,6 +33,8 @@ package net.semanticmetadata.lire.impl;
 import net.semanticmetadata.lire.AbstractImageSearcher;
 import net.semanticmetadata.lire.ImageDuplicates;
 import net.semanticmetadata.lire.ImageSearchHits;
+import net.semanticmetadata.lire.imageanalysis.bovw.VisualWordsTokenStream;
+import net.semanticmetadata.lire.utils.SerializationUtils;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.FieldInvertState;
 import org.apache.lucene.index.IndexReader;
@@ -77,8 +79,14 @@ public class VisualWordsImageSearcher extends AbstractImageSearcher {
         SimpleImageSearchHits sh = null;
         IndexSearcher isearcher = new IndexSearcher(reader);
         isearcher.setSimilarity(similarity);
-        String queryString = doc.getValues(fieldName)[0];
-        Query tq = createQuery(queryString);
+        byte[] histogram = doc.getBinaryValue(fieldName);
+        Query tq;
+        if (histogram != null) {
+            tq = createQuery(SerializationUtils.toSparseIntArray(histogram));
+        } else {
+            // indexes created before the visual words were stored as sparse histogram:
+            tq = createQuery(doc.getValues(fieldName)[0]);
+        }
 
         TopDocs docs = isearcher.search(tq, numMaxHits);
         LinkedList<SimpleResult> res = new LinkedList<SimpleResult>();
@@ -93,6 +101,21 @@ public class VisualWordsImageSearcher extends AbstractImageSearcher {
         return sh;
     }
 
+    /**
+     * Creates a query with one clause per visual word of the histogram.
+     *
+     * @param histogram the non zero entries of the histogram as pairs of visual word and count, see
+     *                  {@link SerializationUtils#toSparseIntArray(byte[])}.
+     * @return the query.
+     */
+    private Query createQuery(int[] histogram) {
+        BooleanQuery query = new BooleanQuery();
+        for (int i = 0; i < histogram.length; i += 2) {
+            query.add(new BooleanClause(new TermQuery(new Term(fieldName, VisualWordsTokenStream.getTerm(histogram[i]))), BooleanClause.Occur.SHOULD));
+        }
+        return query;
+    }
+
     private Query createQuery(String queryString) {
         StringTokenizer st = new StringTokenizer(queryString);
         BooleanQuery query = new BooleanQuery();
@@ -0,0 +1,81 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+package net.semanticmetadata.lire.indexing;
+
+import net.semanticmetadata.lire.DocumentBuilder;
+import net.semanticmetadata.lire.impl.FeatureFile;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.FSDirectory;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes the {@link FeatureFile} sidecars of an index, e.g. after documents have been added or
+ * deleted. The files are put into the index directory, see {@link FeatureFile#getFile(java.io.File, String)}.
+ * Usage: <code>FeatureFileBuilder &lt;index&gt; [&lt;field&gt; ...]</code>, the CEDD field is used if no
+ * field is given.
+ * <br>Date: 18.10.2026
+ */
+public class FeatureFileBuilder {
+
+    /**
+     * Writes the feature files of the given fields for the index in the given directory.
+     *
+     * @param indexDirectory the directory of the index.
+     * @param fieldNames     the feature fields.
+     * @throws IOException
+     */
+    public static void build(File indexDirectory, String... fieldNames) throws IOException {
+        IndexReader reader = IndexReader.open(FSDirectory.open(indexDirectory), true);
+        try {
+            for (String fieldName : fieldNames) {
+                FeatureFile.write(reader, fieldName, FeatureFile.getFile(indexDirectory, fieldName));
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: FeatureFileBuilder <index> [<field> ...]");
+            return;
+        }
+        String[] fieldNames = new String[]{DocumentBuilder.FIELD_NAME_CEDD};
+        if (args.length > 1) {
+            fieldNames = new String[args.length - 1];
+            System.arraycopy(args, 1, fieldNames, 0, fieldNames.length);
+        }
+        long ms = System.currentTimeMillis();
+        build(new File(args[0]), fieldNames);
+        System.out.println("Feature files written in " + (System.currentTimeMillis() - ms) + " ms.");
+    }
+}
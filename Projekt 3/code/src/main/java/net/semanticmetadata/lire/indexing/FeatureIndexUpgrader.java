@@ -0,0 +1,169 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+package net.semanticmetadata.lire.indexing;
+
+import net.semanticmetadata.lire.DocumentBuilder;
+import net.semanticmetadata.lire.imageanalysis.*;
+import net.semanticmetadata.lire.imageanalysis.bovw.VisualWordsTokenStream;
+import net.semanticmetadata.lire.imageanalysis.mser.MSERFeature;
+import net.semanticmetadata.lire.imageanalysis.sift.Feature;
+import net.semanticmetadata.lire.utils.LuceneUtils;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.Fieldable;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.FSDirectory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Upgrade path for existing indexes: copies all documents of an index to a new one and rewrites the
+ * features in the compact format of {@link FeatureCodec}. Features already in the compact format are
+ * kept as they are. Only stored fields can be copied. The indexed visual words are not stored, they
+ * are created again from the stored histograms with {@link VisualWordsTokenStream#restore(Document, String...)}
+ * for the fields in {@link VisualWordsTokenStream#FIELD_NAMES}. Usage: <code>FeatureIndexUpgrader &lt;index&gt; &lt;new index&gt;</code>
+ * <br>Date: 18.10.2026
+ */
+public class FeatureIndexUpgrader {
+    private Logger logger = Logger.getLogger(getClass().getName());
+    private Map<String, Class<? extends LireFeature>> fields = new LinkedHashMap<String, Class<? extends LireFeature>>();
+    private long bytesBefore = 0, bytesAfter = 0;
+
+    /**
+     * Creates an upgrader for the fields of all features supporting the compact format, with the field
+     * names used by {@link net.semanticmetadata.lire.DocumentBuilderFactory}.
+     */
+    public FeatureIndexUpgrader() {
+        fields.put(DocumentBuilder.FIELD_NAME_CEDD, CEDD.class);
+        fields.put(DocumentBuilder.FIELD_NAME_FCTH, FCTH.class);
+        fields.put(DocumentBuilder.FIELD_NAME_JCD, JCD.class);
+        fields.put(DocumentBuilder.FIELD_NAME_COLORLAYOUT, ColorLayout.class);
+        fields.put(DocumentBuilder.FIELD_NAME_EDGEHISTOGRAM, EdgeHistogram.class);
+        fields.put(DocumentBuilder.FIELD_NAME_SCALABLECOLOR, ScalableColor.class);
+        fields.put(DocumentBuilder.FIELD_NAME_SURF, SurfFeature.class);
+        fields.put(DocumentBuilder.FIELD_NAME_SIFT, Feature.class);
+        fields.put(DocumentBuilder.FIELD_NAME_MSER, MSERFeature.class);
+    }
+
+    /**
+     * Adds a field to be upgraded or changes the feature class of a field.
+     *
+     * @param fieldName       the name of the field.
+     * @param descriptorClass the feature stored in the field.
+     */
+    public void setField(String fieldName, Class<? extends LireFeature> descriptorClass) {
+        fields.put(fieldName, descriptorClass);
+    }
+
+    /**
+     * Copies all documents, which are not deleted, from reader to writer and rewrites the features
+     * in the compact format. The writer is neither optimized nor closed.
+     *
+     * @param reader the index to upgrade.
+     * @param writer the new index.
+     * @return the number of documents copied.
+     * @throws IOException
+     */
+    public int upgrade(IndexReader reader, IndexWriter writer) throws IOException {
+        int count = 0;
+        try {
+            for (int i = 0; i < reader.maxDoc(); i++) {
+                if (reader.isDeleted(i)) continue;
+                writer.addDocument(upgrade(reader.document(i)));
+                count++;
+            }
+        } catch (InstantiationException e) {
+            throw new IllegalArgumentException("Could not create feature: " + e.getMessage());
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Could not create feature: " + e.getMessage());
+        }
+        logger.info("Upgraded " + count + " documents, features: " + bytesBefore + " bytes before, " + bytesAfter + " bytes after.");
+        return count;
+    }
+
+    /**
+     * Upgrades the features of a single document, the order of the fields is kept.
+     *
+     * @param document a document read from an index.
+     * @return a new document with the same fields.
+     */
+    private Document upgrade(Document document) throws IllegalAccessException, InstantiationException {
+        Document result = new Document();
+        for (Fieldable field : document.getFields()) {
+            Class<? extends LireFeature> descriptorClass = fields.get(field.name());
+            if (descriptorClass != null && field.isBinary()) {
+                byte[] value = field.getBinaryValue();
+                int offset = field.getBinaryOffset(), length = field.getBinaryLength();
+                bytesBefore += length;
+                if (!FeatureCodec.isEncoded(value, offset, length)) {
+                    byte[] in = new byte[length];
+                    System.arraycopy(value, offset, in, 0, length);
+                    LireFeature feature = descriptorClass.newInstance();
+                    feature.setByteArrayRepresentation(in);
+                    value = FeatureCodec.encode(feature);
+                    offset = 0;
+                    length = value.length;
+                }
+                bytesAfter += length;
+                result.add(new Field(field.name(), value, offset, length));
+            } else {
+                result.add(field);
+            }
+        }
+        return VisualWordsTokenStream.restore(result, VisualWordsTokenStream.FIELD_NAMES);
+    }
+
+    /**
+     * Number of bytes of the upgraded features before and after the upgrade.
+     *
+     * @return the sizes in bytes, before at index 0 and after at index 1.
+     */
+    public long[] getFeatureSizes() {
+        return new long[]{bytesBefore, bytesAfter};
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: FeatureIndexUpgrader <index> <new index>");
+            return;
+        }
+        IndexReader reader = IndexReader.open(FSDirectory.open(new File(args[0])), true);
+        IndexWriter writer = LuceneUtils.createIndexWriter(args[1], true, LuceneUtils.AnalyzerType.WhitespaceAnalyzer);
+        new FeatureIndexUpgrader().upgrade(reader, writer);
+        writer.optimize();
+        writer.close();
+        reader.close();
+    }
+}
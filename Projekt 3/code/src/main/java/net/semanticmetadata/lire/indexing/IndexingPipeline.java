@@ -0,0 +1,498 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+package net.semanticmetadata.lire.indexing;
+
+import net.semanticmetadata.lire.DocumentBuilder;
+import net.semanticmetadata.lire.imageanalysis.utils.PixelSource;
+import net.semanticmetadata.lire.impl.ChainedDocumentBuilder;
+import net.semanticmetadata.lire.impl.GenericDocumentBuilder;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.Fieldable;
+import org.apache.lucene.index.IndexWriter;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Multi threaded indexing of image files. Indexing is split into stages, each run by its own
+ * threads and connected by bounded queues, so a slow stage blocks the ones before it instead of
+ * filling up the memory with decoded images:
+ * <ol>
+ * <li>decode: reads the files with ImageIO,</li>
+ * <li>scale: scales the images down to {@link GenericDocumentBuilder#MAX_IMAGE_DIMENSION} once for all
+ * {@link GenericDocumentBuilder}s, other builders get the original image like in {@link ChainedDocumentBuilder},</li>
+ * <li>extract: runs the document builders, each builder of each image is a job of its own, so the
+ * features of a single image are extracted on several cores at the same time,</li>
+ * <li>write: merges the fields in the order of the builders and adds the documents to the
+ * IndexWriter in batches, in the calling thread.</li>
+ * </ol>
+ * The number of images processed and the time spent working are counted per stage, see
+ * {@link #getStages()}. Listeners are notified in the calling thread.
+ * <br>Date: 18.10.2026
+ */
+public class IndexingPipeline {
+    private Logger logger = Logger.getLogger(getClass().getName());
+    private IndexWriter writer;
+    private DocumentBuilder[] builders;
+    private int decoderThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private int scalerThreads = 1;
+    private int extractorThreads = Runtime.getRuntime().availableProcessors();
+    private int queueSize = 32;
+    private int batchSize = 16;
+    private List<Listener> listeners = new LinkedList<Listener>();
+    private Stage decode, scale, extract, write;
+    /**
+     * True if there are builders, which need the image in its original size.
+     */
+    private boolean needsOriginal = false;
+
+    /**
+     * Notified about each image file, in the thread calling {@link IndexingPipeline#index(java.util.Collection)}.
+     */
+    public interface Listener {
+        /**
+         * @param file      the image file.
+         * @param timeTaken milliseconds from reading the file until the document has been added.
+         */
+        public void indexed(File file, long timeTaken);
+
+        /**
+         * @param file  the image file, which has not been added to the index.
+         * @param cause the reason, also Errors like an OutOfMemoryError of a huge image.
+         */
+        public void failed(File file, Throwable cause);
+    }
+
+    /**
+     * Statistics of one stage of the pipeline.
+     */
+    public static class Stage {
+        private String name;
+        private int threads;
+        private AtomicLong count = new AtomicLong(0);
+        private AtomicLong busyTime = new AtomicLong(0);
+        private long startTime;
+        private volatile long endTime;
+
+        Stage(String name, int threads) {
+            this.name = name;
+            this.threads = threads;
+            startTime = endTime = System.nanoTime();
+        }
+
+        void add(long nanos) {
+            count.incrementAndGet();
+            busyTime.addAndGet(nanos);
+            endTime = System.nanoTime();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        /**
+         * @return the number of images processed.
+         */
+        public long getCount() {
+            return count.get();
+        }
+
+        /**
+         * @return images per second from the start of the pipeline until the last image passed the stage.
+         */
+        public double getThroughput() {
+            return count.get() * 1e9 / Math.max(1, endTime - startTime);
+        }
+
+        /**
+         * @return the share of time the threads of the stage have been working instead of waiting for
+         *         the queues, between 0 and 1.
+         */
+        public double getUtilization() {
+            return busyTime.get() / ((double) Math.max(1, endTime - startTime) * threads);
+        }
+
+        public String toString() {
+            return String.format("%s: %d images, %.1f images/s, %d threads %.0f%% busy", name, getCount(), getThroughput(), threads, getUtilization() * 100);
+        }
+    }
+
+    /**
+     * An image on its way through the pipeline.
+     */
+    private static class Item {
+        File file;
+        BufferedImage image;
+        PixelSource scaled;
+        long startTime;
+        Fieldable[][] fields;
+        AtomicInteger remaining;
+        AtomicLong extractionTime = new AtomicLong(0);
+        volatile Throwable error = null;
+
+        Item(File file, int numBuilders) {
+            this.file = file;
+            startTime = System.currentTimeMillis();
+            fields = new Fieldable[numBuilders][];
+            remaining = new AtomicInteger(numBuilders);
+        }
+    }
+
+    /**
+     * Extraction of one feature from one image.
+     */
+    private static class Job {
+        Item item;
+        int builder;
+
+        Job(Item item, int builder) {
+            this.item = item;
+            this.builder = builder;
+        }
+    }
+
+    /**
+     * Marks the end of a queue, one is put for each thread of the consuming stage.
+     */
+    private static final Item END = new Item(null, 0);
+    private static final Job END_JOB = new Job(END, -1);
+
+    private ConcurrentLinkedQueue<File> files;
+    private BlockingQueue<Item> decoded, extracted;
+    private BlockingQueue<Job> jobs;
+
+    /**
+     * Creates a pipeline writing to the given IndexWriter.
+     *
+     * @param writer   the IndexWriter the documents are added to. It is neither committed nor closed.
+     * @param builders the document builders applied to each image, their fields are added in this order.
+     */
+    public IndexingPipeline(IndexWriter writer, DocumentBuilder... builders) {
+        this.writer = writer;
+        this.builders = builders;
+        for (DocumentBuilder builder : builders) {
+            if (!(builder instanceof GenericDocumentBuilder)) needsOriginal = true;
+        }
+    }
+
+    /**
+     * Indexes the given image files, the identifier of each document is the absolute path of the file.
+     *
+     * @param imageFiles the images.
+     * @return the number of documents added.
+     * @throws IOException if a document cannot be added to the index, the pipeline is stopped then.
+     */
+    public int index(Collection<File> imageFiles) throws IOException {
+        files = new ConcurrentLinkedQueue<File>(imageFiles);
+        decoded = new ArrayBlockingQueue<Item>(queueSize);
+        jobs = new ArrayBlockingQueue<Job>(queueSize * Math.max(1, builders.length));
+        extracted = new ArrayBlockingQueue<Item>(queueSize);
+        decode = new Stage("decode", decoderThreads);
+        scale = new Stage("scale", scalerThreads);
+        extract = new Stage("extract", extractorThreads);
+        write = new Stage("write", 1);
+
+        LinkedList<Thread> threads = new LinkedList<Thread>();
+        AtomicInteger runningDecoders = new AtomicInteger(decoderThreads);
+        AtomicInteger runningScalers = new AtomicInteger(scalerThreads);
+        AtomicInteger runningExtractors = new AtomicInteger(extractorThreads);
+        for (int i = 0; i < decoderThreads; i++) threads.add(new Thread(new Decoder(runningDecoders), "decoder-" + i));
+        for (int i = 0; i < scalerThreads; i++) threads.add(new Thread(new Scaler(runningScalers), "scaler-" + i));
+        for (int i = 0; i < extractorThreads; i++) threads.add(new Thread(new Extractor(runningExtractors), "extractor-" + i));
+        for (Thread thread : threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int count = 0;
+        try {
+            count = writeDocuments();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Indexing has been interrupted.");
+        } finally {
+            // only necessary if writing failed, the threads have ended otherwise.
+            for (Thread thread : threads) thread.interrupt();
+        }
+        for (Stage stage : getStages()) logger.info(stage.toString());
+        return count;
+    }
+
+    /**
+     * The last stage, run in the calling thread.
+     */
+    private int writeDocuments() throws InterruptedException, IOException {
+        int count = 0;
+        LinkedList<Item> batch = new LinkedList<Item>();
+        LinkedList<Document> documents = new LinkedList<Document>();
+        boolean done = false;
+        while (!done) {
+            batch.add(extracted.take());
+            extracted.drainTo(batch, batchSize - 1);
+            long time = System.nanoTime();
+            for (Item item : batch) {
+                if (item == END) {
+                    done = true;
+                } else if (item.error != null) {
+                    fireFailed(item.file, item.error);
+                } else {
+                    Document doc = new Document();
+                    doc.add(new Field(DocumentBuilder.FIELD_NAME_IDENTIFIER, item.file.getAbsolutePath(), Field.Store.YES, Field.Index.NOT_ANALYZED));
+                    for (Fieldable[] fields : item.fields) {
+                        for (Fieldable field : fields) doc.add(field);
+                    }
+                    documents.add(doc);
+                }
+            }
+            if (!documents.isEmpty()) {
+                writer.addDocuments(documents);
+                long nanos = (System.nanoTime() - time) / documents.size();
+                for (Item item : batch) {
+                    if (item == END || item.error != null) continue;
+                    write.add(nanos);
+                    fireIndexed(item.file, System.currentTimeMillis() - item.startTime);
+                }
+                count += documents.size();
+            }
+            batch.clear();
+            documents.clear();
+        }
+        return count;
+    }
+
+    /**
+     * Reads the image files.
+     */
+    private class Decoder implements Runnable {
+        private AtomicInteger running;
+
+        Decoder(AtomicInteger running) {
+            this.running = running;
+        }
+
+        public void run() {
+            boolean stopped = false;
+            try {
+                File file;
+                while ((file = files.poll()) != null) {
+                    Item item = new Item(file, builders.length);
+                    long time = System.nanoTime();
+                    try {
+                        item.image = ImageIO.read(file);
+                        if (item.image == null) item.error = new IOException("Unsupported image format: " + file);
+                    } catch (Throwable t) {
+                        item.error = t;
+                    }
+                    decode.add(System.nanoTime() - time);
+                    decoded.put(item);
+                }
+            } catch (InterruptedException e) {
+                // indexing has been stopped.
+                stopped = true;
+            } finally {
+                // the last thread ends the stage, whatever happened to the others:
+                if (running.decrementAndGet() == 0 && !stopped) end(decoded, END, scalerThreads);
+            }
+        }
+    }
+
+    /**
+     * Scales the images and splits them into extraction jobs.
+     */
+    private class Scaler implements Runnable {
+        private AtomicInteger running;
+
+        Scaler(AtomicInteger running) {
+            this.running = running;
+        }
+
+        public void run() {
+            boolean stopped = false;
+            try {
+                Item item;
+                while ((item = decoded.take()) != END) {
+                    if (item.error != null || builders.length == 0) {
+                        extracted.put(item);
+                        continue;
+                    }
+                    long time = System.nanoTime();
+                    try {
+                        item.scaled = new PixelSource(GenericDocumentBuilder.scaleImage(item.image));
+                        if (!needsOriginal) item.image = null;
+                    } catch (Throwable t) {
+                        item.error = t;
+                        item.image = null;
+                        extracted.put(item);
+                        continue;
+                    }
+                    scale.add(System.nanoTime() - time);
+                    for (int i = 0; i < builders.length; i++) jobs.put(new Job(item, i));
+                }
+            } catch (InterruptedException e) {
+                // indexing has been stopped.
+                stopped = true;
+            } finally {
+                if (running.decrementAndGet() == 0 && !stopped) end(jobs, END_JOB, extractorThreads);
+            }
+        }
+    }
+
+    /**
+     * Runs one document builder on one image per job.
+     */
+    private class Extractor implements Runnable {
+        private AtomicInteger running;
+
+        Extractor(AtomicInteger running) {
+            this.running = running;
+        }
+
+        public void run() {
+            boolean stopped = false;
+            try {
+                Job job;
+                while ((job = jobs.take()) != END_JOB) {
+                    Item item = job.item;
+                    long time = System.nanoTime();
+                    try {
+                        DocumentBuilder builder = builders[job.builder];
+                        Document d;
+                        if (builder instanceof GenericDocumentBuilder)
+                            d = ((GenericDocumentBuilder) builder).createDocument(item.scaled, null);
+                        else
+                            d = builder.createDocument(item.image, null);
+                        LinkedList<Fieldable> fields = new LinkedList<Fieldable>();
+                        if (d != null) {
+                            for (Fieldable f : d.getFields()) {
+                                if (!f.name().equals(DocumentBuilder.FIELD_NAME_IDENTIFIER)) fields.add(f);
+                            }
+                        }
+                        item.fields[job.builder] = fields.toArray(new Fieldable[fields.size()]);
+                    } catch (Throwable t) {
+                        item.error = t;
+                    } finally {
+                        // the item has to be passed on in any case, the writer waits for it:
+                        item.extractionTime.addAndGet(System.nanoTime() - time);
+                        if (item.remaining.decrementAndGet() == 0) {
+                            // the image is not needed any more.
+                            item.image = null;
+                            item.scaled = null;
+                            extract.add(item.extractionTime.get());
+                            extracted.put(item);
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                // indexing has been stopped.
+                stopped = true;
+            } finally {
+                if (running.decrementAndGet() == 0 && !stopped) end(extracted, END, 1);
+            }
+        }
+    }
+
+    /**
+     * Puts the end marker for each thread of the next stage.
+     */
+    private static <T> void end(BlockingQueue<T> queue, T end, int threads) {
+        try {
+            for (int i = 0; i < threads; i++) queue.put(end);
+        } catch (InterruptedException e) {
+            // indexing has been stopped.
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void fireIndexed(File file, long timeTaken) {
+        for (Listener listener : listeners) listener.indexed(file, timeTaken);
+    }
+
+    private void fireFailed(File file, Throwable cause) {
+        for (Listener listener : listeners) listener.failed(file, cause);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return the statistics of the stages of the last call to {@link #index(java.util.Collection)},
+     *         in the order of the pipeline.
+     */
+    public Stage[] getStages() {
+        return new Stage[]{decode, scale, extract, write};
+    }
+
+    public void setDecoderThreads(int decoderThreads) {
+        this.decoderThreads = Math.max(1, decoderThreads);
+    }
+
+    public void setScalerThreads(int scalerThreads) {
+        this.scalerThreads = Math.max(1, scalerThreads);
+    }
+
+    public void setExtractorThreads(int extractorThreads) {
+        this.extractorThreads = Math.max(1, extractorThreads);
+    }
+
+    /**
+     * @param queueSize the number of images each queue between two stages can hold.
+     */
+    public void setQueueSize(int queueSize) {
+        this.queueSize = Math.max(1, queueSize);
+    }
+
+    /**
+     * @param batchSize the maximum number of documents added to the IndexWriter at once.
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+}
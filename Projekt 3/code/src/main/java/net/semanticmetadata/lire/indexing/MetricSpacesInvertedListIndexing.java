@@ -30,17 +30,20 @@
 package net.semanticmetadata.lire.indexing;
 
 import net.semanticmetadata.lire.DocumentBuilder;
-import net.semanticmetadata.lire.ImageSearchHits;
-import net.semanticmetadata.lire.ImageSearcher;
 import net.semanticmetadata.lire.imageanalysis.CEDD;
 import net.semanticmetadata.lire.imageanalysis.LireFeature;
-import net.semanticmetadata.lire.impl.GenericImageSearcher;
+import net.semanticmetadata.lire.imageanalysis.bovw.VisualWordsTokenStream;
+import net.semanticmetadata.lire.impl.GenericDocumentBuilder;
+import net.semanticmetadata.lire.impl.TopHitsCollector;
+import net.semanticmetadata.lire.utils.ImageUtils;
 import net.semanticmetadata.lire.utils.LuceneUtils;
 import org.apache.lucene.analysis.PerFieldAnalyzerWrapper;
 import org.apache.lucene.analysis.SimpleAnalyzer;
 import org.apache.lucene.analysis.WhitespaceAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.MapFieldSelector;
 import org.apache.lucene.index.*;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TopDocs;
@@ -50,12 +53,22 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Logger;
 
 
 /**
  * This class provides an indexing approach for approximate search based on the work of G. Amato
  * (giuseppe.amato@isti.cnr.it). See also his paper "Approximate Similarity Search in Metric Spaces
  * using Inverted Files"
+ * <p/>
+ * The reference objects are loaded into memory once per run of {@link #createIndex(String)} or
+ * {@link #updateIndex(String)}. The nearest reference objects of the documents are then computed
+ * in batches in a ForkJoinPool, while the next batch is read from the index, and each batch is
+ * written by the calling thread.
  * Date: 14.05.2009
  * Time: 14:22:03
  *
@@ -65,11 +78,19 @@ public class MetricSpacesInvertedListIndexing {
     public static int numReferenceObjects = 500;
     public static int numReferenceObjectsUsed = 50;
 
+    private static ForkJoinPool sharedPool = null;
     private static MetricSpacesInvertedListIndexing msili = new MetricSpacesInvertedListIndexing(CEDD.class, DocumentBuilder.FIELD_NAME_CEDD);
 
+    private Logger logger = Logger.getLogger(getClass().getName());
     private Class<? extends LireFeature> featureClass;
     private String featureFieldName;
     private int numHits = 100;
+    private ForkJoinPool pool;
+    private int batchSize = 512;
+
+    private String searchIndexPath = null;
+    private IndexReader searchReader = null;
+    private ReferenceObjects searchReferenceObjects = null;
 
     private ProgressIndicator progress;
 
@@ -80,15 +101,33 @@ public class MetricSpacesInvertedListIndexing {
     ;
 
     /**
+     * Creates an instance computing the nearest reference objects in a ForkJoinPool shared by all
+     * instances with one thread per available processor.
+     *
      * @param featureClass     the feature being used for this new index (e.g. CEDD)
      * @param featureFieldName the field name where to find the feature.
      */
     public MetricSpacesInvertedListIndexing(Class<? extends LireFeature> featureClass, String featureFieldName) {
+        this(featureClass, featureFieldName, getSharedPool());
+    }
+
+    /**
+     * @param featureClass     the feature being used for this new index (e.g. CEDD)
+     * @param featureFieldName the field name where to find the feature.
+     * @param pool             the pool the nearest reference objects are computed in.
+     */
+    public MetricSpacesInvertedListIndexing(Class<? extends LireFeature> featureClass, String featureFieldName, ForkJoinPool pool) {
         this.featureClass = featureClass;
         this.featureFieldName = featureFieldName;
+        this.pool = pool;
         progress = new ProgressIndicator();
     }
 
+    private static synchronized ForkJoinPool getSharedPool() {
+        if (sharedPool == null) sharedPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        return sharedPool;
+    }
+
     public static MetricSpacesInvertedListIndexing getDefaultInstance() {
         return msili;
     }
@@ -103,6 +142,8 @@ public class MetricSpacesInvertedListIndexing {
      * @throws IOException
      */
     public void createIndex(String indexPath) throws IOException {
+        // the reference objects change:
+        close();
         IndexReader reader = IndexReader.open(FSDirectory.open(new File(indexPath)));
         int numDocs = reader.numDocs();
 
@@ -137,7 +178,7 @@ public class MetricSpacesInvertedListIndexing {
         // find them in the index and put them into a separate index:
         for (int i : referenceObjsIds) {
             count++;
-            Document document = reader.document(i);
+            Document document = VisualWordsTokenStream.restore(reader.document(i), VisualWordsTokenStream.FIELD_NAMES);
             document.add(new Field("ro-id", count + "", Field.Store.YES, Field.Index.NOT_ANALYZED));
             iw.addDocument(document);
         }
@@ -149,34 +190,14 @@ public class MetricSpacesInvertedListIndexing {
 
         // now find the reference objects for each entry ;)
         IndexReader readerRo = IndexReader.open(FSDirectory.open(new File(indexPath + "-ro")));
-        ImageSearcher searcher = new GenericImageSearcher(numReferenceObjectsUsed, featureClass, featureFieldName);
-        PerFieldAnalyzerWrapper aWrapper =
-                new PerFieldAnalyzerWrapper(new SimpleAnalyzer(LuceneUtils.LUCENE_VERSION));
-        aWrapper.addAnalyzer("ro-order", new WhitespaceAnalyzer(LuceneUtils.LUCENE_VERSION));
-
-        iw = new IndexWriter(FSDirectory.open(new File(indexPath)), new IndexWriterConfig(LuceneUtils.LUCENE_VERSION, aWrapper).setOpenMode(IndexWriterConfig.OpenMode.CREATE));
-        StringBuilder sb = new StringBuilder(256);
-        for (int i = 0; i < numDocs; i++) {
-            if (hasDeletions && reader.isDeleted(i)) {
-                continue;
-            }
-            Document document = reader.document(i);
-            ImageSearchHits hits = searcher.search(document, readerRo);
-            sb.delete(0, sb.length());
-            for (int j = 0; j < numReferenceObjectsUsed; j++) {
-                sb.append(hits.doc(j).getValues("ro-id")[0]);
-                sb.append(' ');
-            }
-            // System.out.println(sb.toString());
-            document.add(new Field("ro-order", sb.toString(), Field.Store.YES, Field.Index.ANALYZED, Field.TermVector.WITH_POSITIONS_OFFSETS));
-            iw.updateDocument(new Term(DocumentBuilder.FIELD_NAME_IDENTIFIER, document.getValues(DocumentBuilder.FIELD_NAME_IDENTIFIER)[0]), document);
-
-            // progress report
-            progress.setNumDocsProcessed(progress.getNumDocsProcessed() + 1);
+        ReferenceObjects referenceObjects = new ReferenceObjects(readerRo);
+        readerRo.close();
 
-        }
+        iw = new IndexWriter(FSDirectory.open(new File(indexPath)), new IndexWriterConfig(LuceneUtils.LUCENE_VERSION, createAnalyzer()).setOpenMode(IndexWriterConfig.OpenMode.CREATE));
+        addReferenceObjectOrders(reader, iw, referenceObjects, false);
         iw.optimize();
         iw.close();
+        reader.close();
 
         // progress report
         progress.setCurrentState(State.Idle);
@@ -194,44 +215,92 @@ public class MetricSpacesInvertedListIndexing {
      */
     public void updateIndex(String indexPath) throws IOException {
         IndexReader reader = IndexReader.open(FSDirectory.open(new File(indexPath)));
-        int numDocs = reader.numDocs();
-        boolean hasDeletions = reader.hasDeletions();
-        int countUpdated = 0;
+
+        // progress report
+        progress.setNumDocsAll(reader.numDocs());
+        progress.setNumDocsProcessed(0);
+        progress.setCurrentState(State.Indexing);
 
         IndexReader readerRo = IndexReader.open(FSDirectory.open(new File(indexPath + "-ro")));
-        ImageSearcher searcher = new GenericImageSearcher(numReferenceObjectsUsed, featureClass, featureFieldName);
+        ReferenceObjects referenceObjects = new ReferenceObjects(readerRo);
+        readerRo.close();
+
+        // the documents already having the field stay in the index, the others are replaced.
+        IndexWriter iw = new IndexWriter(FSDirectory.open(new File(indexPath)), new IndexWriterConfig(LuceneUtils.LUCENE_VERSION, createAnalyzer()).setOpenMode(IndexWriterConfig.OpenMode.APPEND));
+        int countUpdated = addReferenceObjectOrders(reader, iw, referenceObjects, true);
+        logger.info(countUpdated + " documents updated.");
+        iw.optimize();
+        iw.close();
+        reader.close();
+
+        // progress report
+        progress.setCurrentState(State.Idle);
+    }
+
+    private PerFieldAnalyzerWrapper createAnalyzer() {
         PerFieldAnalyzerWrapper aWrapper =
                 new PerFieldAnalyzerWrapper(new SimpleAnalyzer(LuceneUtils.LUCENE_VERSION));
         aWrapper.addAnalyzer("ro-order", new WhitespaceAnalyzer(LuceneUtils.LUCENE_VERSION));
+        return aWrapper;
+    }
 
-        IndexWriter iw = new IndexWriter(FSDirectory.open(new File(indexPath)), new IndexWriterConfig(LuceneUtils.LUCENE_VERSION, aWrapper).setOpenMode(IndexWriterConfig.OpenMode.CREATE));
-        StringBuilder sb = new StringBuilder(256);
-        for (int i = 0; i < numDocs; i++) {
-            if (hasDeletions && reader.isDeleted(i)) {
-                continue;
+    /**
+     * Adds the field "ro-order" to the documents of the reader and writes them. The documents are
+     * read in batches, the orders of a batch are computed in the pool while the next batch is read.
+     *
+     * @param reader           the documents.
+     * @param iw               the writer the documents are written to.
+     * @param referenceObjects the reference objects.
+     * @param onlyMissing      true if documents already having the field are skipped.
+     * @return the number of documents written.
+     * @throws IOException
+     */
+    private int addReferenceObjectOrders(IndexReader reader, IndexWriter iw, ReferenceObjects referenceObjects, boolean onlyMissing) throws IOException {
+        boolean hasDeletions = reader.hasDeletions();
+        int maxDoc = reader.maxDoc();
+        int count = 0, processed = 0;
+        int next = 0;
+        Document[] batch = null;
+        ForkJoinTask<Void> task = null;
+        while (task != null || next < maxDoc) {
+            // read the next batch:
+            ArrayList<Document> documents = new ArrayList<Document>(batchSize);
+            int end = Math.min(maxDoc, next + batchSize);
+            for (; next < end; next++) {
+                if (hasDeletions && reader.isDeleted(next)) {
+                    continue;
+                }
+                processed++;
+                Document document = reader.document(next);
+                // if the field is not here we create it, the indexed visual words have to be added again:
+                if (!onlyMissing || document.getFieldable("ro-order") == null)
+                    documents.add(VisualWordsTokenStream.restore(document, VisualWordsTokenStream.FIELD_NAMES));
             }
-            Document document = reader.document(i);
-            if (document.getFieldable("ro-order") == null) {  // if the field is not here we create it.
-                ImageSearchHits hits = searcher.search(document, readerRo);
-                sb.delete(0, sb.length());
-                for (int j = 0; j < numReferenceObjectsUsed; j++) {
-                    sb.append(hits.doc(j).getValues("ro-id")[0]);
-                    sb.append(' ');
+            // write the previous batch:
+            if (task != null) {
+                try {
+                    task.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Indexing has been interrupted.");
+                } catch (ExecutionException e) {
+                    throw new IOException("Could not find the reference objects: " + e.getCause());
+                }
+                for (Document document : batch) {
+                    iw.updateDocument(new Term(DocumentBuilder.FIELD_NAME_IDENTIFIER, document.getValues(DocumentBuilder.FIELD_NAME_IDENTIFIER)[0]), document);
                 }
-                // System.out.println(sb.toString());
-                document.add(new Field("ro-order", sb.toString(), Field.Store.YES, Field.Index.ANALYZED, Field.TermVector.WITH_POSITIONS_OFFSETS));
-                iw.updateDocument(new Term(DocumentBuilder.FIELD_NAME_IDENTIFIER, document.getValues(DocumentBuilder.FIELD_NAME_IDENTIFIER)[0]), document);
-                countUpdated++;
+                count += batch.length;
+                task = null;
             }
-
             // progress report
-            progress.setNumDocsProcessed(progress.getNumDocsProcessed() + 1);
-
-            // debug:
-            System.out.println("countUpdated = " + countUpdated);
+            progress.setNumDocsProcessed(processed);
+            // start the current batch:
+            if (!documents.isEmpty()) {
+                batch = documents.toArray(new Document[documents.size()]);
+                task = pool.submit(new OrderTask(batch, 0, batch.length, referenceObjects));
+            }
         }
-        iw.optimize();
-        iw.close();
+        return count;
     }
 
     /**
@@ -243,14 +312,25 @@ public class MetricSpacesInvertedListIndexing {
      * @throws IOException
      */
     public TopDocs search(BufferedImage img, String indexPath) throws IOException {
-        ImageSearcher searcher = new GenericImageSearcher(numReferenceObjectsUsed, featureClass, featureFieldName);
-        ImageSearchHits hits = searcher.search(img, IndexReader.open(FSDirectory.open(new File(indexPath + "-ro"))));
-        StringBuilder sb = new StringBuilder(numReferenceObjectsUsed * 4);
-        for (int j = 0; j < numReferenceObjectsUsed; j++) {
-            sb.append(hits.doc(j).getValues("ro-id")[0]);
-            sb.append(' ');
+        LireFeature feature;
+        try {
+            feature = featureClass.newInstance();
+        } catch (InstantiationException e) {
+            throw new UnsupportedOperationException("Could not create an instance of " + featureClass.getName() + ": " + e.getMessage());
+        } catch (IllegalAccessException e) {
+            throw new UnsupportedOperationException("Could not create an instance of " + featureClass.getName() + ": " + e.getMessage());
+        }
+        // scaled like by the GenericDocumentBuilder:
+        if (Math.max(img.getHeight(), img.getWidth()) > GenericDocumentBuilder.MAX_IMAGE_DIMENSION) {
+            img = ImageUtils.scaleImage(img, GenericDocumentBuilder.MAX_IMAGE_DIMENSION);
+        }
+        feature.extract(img);
+        IndexReader reader = getSearchReader(indexPath);
+        try {
+            return scoreDocs(searchReferenceObjects.getOrder(feature), reader);
+        } finally {
+            reader.decRef();
         }
-        return scoreDocs(sb.toString(), IndexReader.open(FSDirectory.open(new File(indexPath))));
     }
 
     /**
@@ -262,66 +342,187 @@ public class MetricSpacesInvertedListIndexing {
      * @throws IOException
      */
     public TopDocs search(Document d, String indexPath) throws IOException {
-        if (d.getFieldable("ro-order") != null) // if the document already contains the information on reference object neighbourhood
-            return scoreDocs(d.getValues("ro-order")[0], IndexReader.open(FSDirectory.open(new File(indexPath))));
-        else { // if not we just create it :)
-            ImageSearcher searcher = new GenericImageSearcher(numReferenceObjectsUsed, featureClass, featureFieldName);
-            ImageSearchHits hits = searcher.search(d, IndexReader.open(FSDirectory.open(new File(indexPath + "-ro"))));
-            StringBuilder sb = new StringBuilder(numReferenceObjectsUsed * 4);
-            for (int j = 0; j < numReferenceObjectsUsed; j++) {
-                sb.append(hits.doc(j).getValues("ro-id")[0]);
-                sb.append(' ');
+        IndexReader reader = getSearchReader(indexPath);
+        try {
+            if (d.getFieldable("ro-order") != null) // if the document already contains the information on reference object neighbourhood
+                return scoreDocs(d.getValues("ro-order")[0], reader);
+            else { // if not we just create it :)
+                LireFeature feature = getFeature(d);
+                if (feature == null)
+                    throw new UnsupportedOperationException("The document has no feature in field " + featureFieldName + ".");
+                return scoreDocs(searchReferenceObjects.getOrder(feature), reader);
             }
-            return scoreDocs(sb.toString(), IndexReader.open(FSDirectory.open(new File(indexPath))));
+        } finally {
+            reader.decRef();
         }
     }
 
     /**
-     * Scoring function based on the footrule distance.
+     * Returns the reader used for searching the given index, opened on first use and reopened if the
+     * index has changed. The reference objects are loaded along with it. The reader has to be
+     * released with {@link org.apache.lucene.index.IndexReader#decRef()}.
      *
-     * @param queryString
-     * @param reader
-     * @return
+     * @param indexPath the index.
+     * @return the reader with its reference count incremented.
+     * @throws IOException
+     */
+    private synchronized IndexReader getSearchReader(String indexPath) throws IOException {
+        if (searchReader == null || !indexPath.equals(searchIndexPath)) {
+            close();
+            IndexReader readerRo = IndexReader.open(FSDirectory.open(new File(indexPath + "-ro")));
+            try {
+                searchReferenceObjects = new ReferenceObjects(readerRo);
+            } finally {
+                readerRo.close();
+            }
+            searchReader = IndexReader.open(FSDirectory.open(new File(indexPath)));
+            searchIndexPath = indexPath;
+        } else {
+            IndexReader newReader = searchReader.reopen();
+            if (newReader != searchReader) {
+                searchReader.decRef();
+                searchReader = newReader;
+            }
+        }
+        searchReader.incRef();
+        return searchReader;
+    }
+
+    /**
+     * Releases the reader and the reference objects kept for searching. They are loaded again by the
+     * next search.
+     *
+     * @throws IOException
+     */
+    public synchronized void close() throws IOException {
+        if (searchReader != null) searchReader.decRef();
+        searchReader = null;
+        searchIndexPath = null;
+        searchReferenceObjects = null;
+    }
+
+    /**
+     * Scoring function based on the footrule distance. Each reference object of the query found at
+     * position p in the list of a document adds (n-1) - |p - q| to its score, where q is its position
+     * in the query and n the length of the query. The scores are summed up in an int[] over all
+     * documents, one posting list after the other. Each remaining list can add at most n-1, so as soon
+     * as the numHits-th best score is larger than that, documents not seen so far cannot make it into
+     * the results anymore, and of the documents seen only those are followed, which can still reach
+     * the numHits-th best score. If just numHits documents are left, the remaining lists are skipped
+     * and the scores of these documents are computed from their stored lists.
+     *
+     * @param queryString the ids of the nearest reference objects of the query, separated by spaces.
+     * @param reader      the index.
+     * @return the numHits documents with the highest scores, sorted by descending score and ascending
+     *         document number.
      * @throws IOException
      */
     protected TopDocs scoreDocs(String queryString, IndexReader reader) throws IOException {
-        // TODO: optimize here ;) Perhaps focus on the most promising results
         StringTokenizer st = new StringTokenizer(queryString);
+        String[] queryObjects = new String[st.countTokens()];
+        for (int i = 0; i < queryObjects.length; i++) {
+            queryObjects[i] = st.nextToken();
+        }
+        int n = queryObjects.length;
+        int maxDoc = reader.maxDoc();
+        int[] scores = new int[maxDoc];
+        boolean[] isCandidate = new boolean[maxDoc];
+        int[] candidates = new int[1024];
+        int numCandidates = 0;
+        boolean pruning = false;
+        // lists longer than the query may add less than zero, then the best scores may still drop:
+        boolean longerLists = false;
         int position = 0;
-        HashMap<Integer, Integer> doc2score = new HashMap<Integer, Integer>(1000);
-        HashMap<Integer, Integer> doc2count = new HashMap<Integer, Integer>(1000);
-        int currDoc = 0;
-        while (st.hasMoreTokens()) {
-            TermPositions tp = reader.termPositions(new Term("ro-order", st.nextToken()));
-            while (tp.next()) {
-                currDoc = tp.doc();
-                // System.out.println(tp.doc() + ": " + tp.nextPosition());
-                if (doc2score.get(currDoc) == null) {
-                    doc2score.put(currDoc, Math.abs(tp.nextPosition() - position));
-                    doc2count.put(currDoc, 1);
-                } else {
-                    doc2score.put(currDoc, doc2score.get(currDoc) + Math.abs(tp.nextPosition() - position));
-                    doc2count.put(currDoc, doc2count.get(currDoc) + 1);
+        while (position < n) {
+            TermPositions tp = reader.termPositions(new Term("ro-order", queryObjects[position]));
+            try {
+                while (tp.next()) {
+                    int doc = tp.doc();
+                    if (!isCandidate[doc]) {
+                        if (pruning) continue;
+                        isCandidate[doc] = true;
+                        if (numCandidates == candidates.length)
+                            candidates = Arrays.copyOf(candidates, candidates.length * 2);
+                        candidates[numCandidates++] = doc;
+                    }
+                    int p = tp.nextPosition();
+                    if (p >= n) longerLists = true;
+                    scores[doc] += n - 1 - Math.abs(p - position);
                 }
-
+            } finally {
+                tp.close();
             }
             position++;
+            // before half of the lists have been read, no score is higher than what the remaining ones can add:
+            if (2 * position < n || numCandidates <= numHits || longerLists) continue;
+            int remaining = (n - position) * (n - 1);
+            int threshold = getThreshold(scores, candidates, numCandidates);
+            if (threshold > remaining) {
+                pruning = true;
+                int alive = 0;
+                for (int i = 0; i < numCandidates; i++) {
+                    int doc = candidates[i];
+                    if (scores[doc] + remaining >= threshold) candidates[alive++] = doc;
+                    else isCandidate[doc] = false;
+                }
+                numCandidates = alive;
+                if (numCandidates == numHits) break;
+            }
+        }
+        if (position < n) {
+            // stopped early, the scores of the remaining documents are not complete:
+            rescore(queryObjects, reader, scores, candidates, numCandidates);
+        }
+        // the best documents by ascending -score, for equal scores the lower document number wins:
+        Arrays.sort(candidates, 0, numCandidates);
+        TopHitsCollector collector = new TopHitsCollector(numHits);
+        for (int i = 0; i < numCandidates; i++) {
+            collector.collect(candidates[i], -scores[candidates[i]]);
         }
-        int currdocscore = 0;
-        int maxScore = 0, minScore = (position - 1) * position;
-        TreeSet<ScoreDoc> results = new TreeSet<ScoreDoc>(new ScoreDocComparator());
-        for (Iterator<Integer> iterator = doc2count.keySet().iterator(); iterator.hasNext(); ) {
-            currDoc = iterator.next();
-            currdocscore = (position - 1) * position -  // max score ... minus actual distance.
-                    (doc2score.get(currDoc) + (position - doc2count.get(currDoc)) * (position - 1));
-            maxScore = Math.max(maxScore, currdocscore);
-            minScore = Math.min(minScore, currdocscore);
-            if (results.size() < numHits || currdocscore >= minScore) {
-                results.add(new ScoreDoc(currDoc, currdocscore));
+        int[] docs = new int[collector.size()];
+        float[] distances = new float[collector.size()];
+        collector.sort(docs, distances);
+        ScoreDoc[] scoreDocs = new ScoreDoc[docs.length];
+        for (int i = 0; i < docs.length; i++) {
+            scoreDocs[i] = new ScoreDoc(docs[i], -distances[i]);
+        }
+        return new TopDocs(scoreDocs.length, scoreDocs, scoreDocs.length > 0 ? scoreDocs[0].score : 0f);
+    }
+
+    /**
+     * @return the numHits-th best score of the candidates.
+     */
+    private int getThreshold(int[] scores, int[] candidates, int numCandidates) {
+        TopHitsCollector collector = new TopHitsCollector(numHits);
+        for (int i = 0; i < numCandidates; i++) {
+            collector.collect(candidates[i], -scores[candidates[i]]);
+        }
+        return (int) -collector.getMaxDistance();
+    }
+
+    /**
+     * Computes the scores of the candidates from the lists stored in the documents.
+     */
+    private void rescore(String[] queryObjects, IndexReader reader, int[] scores, int[] candidates, int numCandidates) throws IOException {
+        int n = queryObjects.length;
+        HashMap<String, Integer> queryPositions = new HashMap<String, Integer>(n * 2);
+        for (int i = 0; i < n; i++) {
+            if (!queryPositions.containsKey(queryObjects[i])) queryPositions.put(queryObjects[i], i);
+        }
+        FieldSelector selector = new MapFieldSelector(new String[]{"ro-order"});
+        for (int i = 0; i < numCandidates; i++) {
+            int doc = candidates[i];
+            StringTokenizer st = new StringTokenizer(reader.document(doc, selector).get("ro-order"));
+            HashSet<String> seen = new HashSet<String>(n * 2);
+            int score = 0;
+            for (int p = 0; st.hasMoreTokens(); p++) {
+                String id = st.nextToken();
+                Integer q = queryPositions.get(id);
+                // the postings only know the first position of an id:
+                if (q != null && seen.add(id)) score += n - 1 - Math.abs(p - q);
             }
+            scores[doc] = score;
         }
-        while (results.size() > numHits) results.pollLast();
-        return new TopDocs(Math.min(results.size(), numHits), (ScoreDoc[]) results.toArray(new ScoreDoc[results.size()]), maxScore);
     }
 
     public int getNumHits() {
@@ -343,6 +544,17 @@ public class MetricSpacesInvertedListIndexing {
         return IndexReader.open(FSDirectory.open(new File(indexPath)));
     }
 
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize the number of documents read, processed and written at once, default is 512.
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
     public ProgressIndicator getProgress() {
         return progress;
     }
@@ -356,9 +568,106 @@ public class MetricSpacesInvertedListIndexing {
     // ** Inner class ...
     // ******************************************************************************
 
-    private static class ScoreDocComparator implements Comparator<ScoreDoc> {
-        public int compare(ScoreDoc o1, ScoreDoc o2) {
-            return (int) Math.signum(o2.score - o1.score);
+    /**
+     * The features of the reference objects parsed once, in the order of the documents in the
+     * index of the reference objects.
+     */
+    private class ReferenceObjects {
+        LireFeature[] features;
+        String[] ids;
+
+        ReferenceObjects(IndexReader readerRo) throws IOException {
+            ArrayList<LireFeature> featureList = new ArrayList<LireFeature>(readerRo.numDocs());
+            ArrayList<String> idList = new ArrayList<String>(readerRo.numDocs());
+            for (int i = 0; i < readerRo.maxDoc(); i++) {
+                if (readerRo.isDeleted(i)) continue;
+                Document document = readerRo.document(i);
+                LireFeature feature = getFeature(document);
+                if (feature == null) continue;
+                featureList.add(feature);
+                idList.add(document.getValues("ro-id")[0]);
+            }
+            features = featureList.toArray(new LireFeature[featureList.size()]);
+            ids = idList.toArray(new String[idList.size()]);
+            if (features.length < numReferenceObjectsUsed)
+                throw new UnsupportedOperationException("Too few reference objects in index.");
+        }
+
+        /**
+         * @param feature the feature of a document or query.
+         * @return the ids of the nearest reference objects, nearest first, separated by spaces.
+         */
+        String getOrder(LireFeature feature) {
+            TopHitsCollector nearest = new TopHitsCollector(numReferenceObjectsUsed);
+            for (int j = 0; j < features.length; j++) {
+                nearest.collect(j, feature.getDistance(features[j]));
+            }
+            int[] sortedObjects = new int[numReferenceObjectsUsed];
+            nearest.sort(sortedObjects, new float[numReferenceObjectsUsed]);
+            StringBuilder sb = new StringBuilder(numReferenceObjectsUsed * 4);
+            for (int j = 0; j < numReferenceObjectsUsed; j++) {
+                sb.append(ids[sortedObjects[j]]);
+                sb.append(' ');
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Parses the feature of a document, stored as byte[] like by the GenericFastDocumentBuilder or as
+     * String.
+     *
+     * @param document the document.
+     * @return the feature or null if the document has none.
+     */
+    private LireFeature getFeature(Document document) {
+        byte[] binaryValue = document.getBinaryValue(featureFieldName);
+        String[] values = document.getValues(featureFieldName);
+        if ((binaryValue == null || binaryValue.length == 0) && (values == null || values.length == 0)) return null;
+        try {
+            LireFeature feature = featureClass.newInstance();
+            if (binaryValue != null && binaryValue.length > 0) feature.setByteArrayRepresentation(binaryValue);
+            else feature.setStringRepresentation(values[0]);
+            return feature;
+        } catch (InstantiationException e) {
+            throw new UnsupportedOperationException("Could not create an instance of " + featureClass.getName() + ": " + e.getMessage());
+        } catch (IllegalAccessException e) {
+            throw new UnsupportedOperationException("Could not create an instance of " + featureClass.getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Adds the field "ro-order" with the nearest reference objects to a range of documents, ranges
+     * larger than {@link #THRESHOLD} are split up.
+     */
+    private class OrderTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        static final int THRESHOLD = 32;
+        Document[] documents;
+        int start, end;
+        ReferenceObjects referenceObjects;
+
+        OrderTask(Document[] documents, int start, int end, ReferenceObjects referenceObjects) {
+            this.documents = documents;
+            this.start = start;
+            this.end = end;
+            this.referenceObjects = referenceObjects;
+        }
+
+        protected void compute() {
+            if (end - start > THRESHOLD) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new OrderTask(documents, start, middle, referenceObjects), new OrderTask(documents, middle, end, referenceObjects));
+                return;
+            }
+            for (int i = start; i < end; i++) {
+                LireFeature feature = getFeature(documents[i]);
+                if (feature == null) {
+                    logger.warning("No feature stored in document " + documents[i].get(DocumentBuilder.FIELD_NAME_IDENTIFIER));
+                    continue;
+                }
+                documents[i].add(new Field("ro-order", referenceObjects.getOrder(feature), Field.Store.YES, Field.Index.ANALYZED, Field.TermVector.WITH_POSITIONS_OFFSETS));
+            }
         }
     }
 }
@@ -36,6 +36,17 @@ package net.semanticmetadata.lire.utils;
  * Time: 14:32:49
  */
 public class MetricsUtils {
+    /**
+     * Byte values as doubles, looking them up is faster than converting them in the inner loops.
+     */
+    private static final double[] BYTE_VALUES = new double[256];
+
+    static {
+        for (int i = 0; i < BYTE_VALUES.length; i++) {
+            BYTE_VALUES[i] = (byte) i;
+        }
+    }
+
     /**
      * Manhattan distance
      *
@@ -150,4 +161,83 @@ public class MetricsUtils {
         return result;
     }
 
+    /**
+     * Tanimoto coefficient of a histogram stored as one byte per bin, e.g. the byte[] representation
+     * of {@link net.semanticmetadata.lire.imageanalysis.CEDD}, and a double[] histogram. Works
+     * directly on the serialized data, nothing is allocated.
+     *
+     * @param h1      array holding the first histogram
+     * @param offset1 position of the first bin of the first histogram
+     * @param h2      the second histogram, its length is the number of bins
+     * @return the same value as {@link #tanimoto(int[], int[])} for the decoded histograms.
+     */
+    public static double tanimoto(byte[] h1, int offset1, double[] h2) {
+        double result = 0;
+        double tmp1 = 0;
+        double tmp2 = 0;
+
+        double tmpCnt1 = 0, tmpCnt2 = 0, tmpCnt3 = 0;
+
+        for (int i = 0; i < h2.length; i++) {
+            tmp1 += BYTE_VALUES[h1[offset1 + i] & 0xff];
+            tmp2 += h2[i];
+        }
+
+        if (tmp1 == 0 || tmp2 == 0) result = 100;
+        if (tmp1 == 0 && tmp2 == 0) result = 0;
+
+        if (tmp1 > 0 && tmp2 > 0) {
+            for (int i = 0; i < h2.length; i++) {
+                double v1 = BYTE_VALUES[h1[offset1 + i] & 0xff];
+                tmpCnt1 += (v1 / tmp1) * (h2[i] / tmp2);
+                tmpCnt2 += (h2[i] / tmp2) * (h2[i] / tmp2);
+                tmpCnt3 += (v1 / tmp1) * (v1 / tmp1);
+            }
+
+            result = (100 - 100 * (tmpCnt1 / (tmpCnt2 + tmpCnt3
+                    - tmpCnt1))); //Tanimoto
+        }
+        return result;
+    }
+
+    /**
+     * Tanimoto coefficient of a double[] histogram serialized with
+     * {@link SerializationUtils#toByteArray(double[])}, e.g. the byte[] representation of
+     * {@link net.semanticmetadata.lire.imageanalysis.FCTH}, and a double[] histogram. The doubles
+     * are read on the fly with {@link SerializationUtils#toDouble(byte[], int)}, so neither the
+     * histogram nor a buffer has to be created for each comparison.
+     *
+     * @param h1      array holding the first histogram
+     * @param offset1 position of the first byte of the first histogram
+     * @param h2      the second histogram, its length is the number of bins
+     * @return the same value as {@link #tanimoto(int[], int[])} for the decoded histograms.
+     */
+    public static double tanimotoDoubles(byte[] h1, int offset1, double[] h2) {
+        double result = 0;
+        double tmp1 = 0;
+        double tmp2 = 0;
+
+        double tmpCnt1 = 0, tmpCnt2 = 0, tmpCnt3 = 0;
+
+        for (int i = 0; i < h2.length; i++) {
+            tmp1 += SerializationUtils.toDouble(h1, offset1 + i * 8);
+            tmp2 += h2[i];
+        }
+
+        if (tmp1 == 0 || tmp2 == 0) result = 100;
+        if (tmp1 == 0 && tmp2 == 0) result = 0;
+
+        if (tmp1 > 0 && tmp2 > 0) {
+            for (int i = 0; i < h2.length; i++) {
+                double v1 = SerializationUtils.toDouble(h1, offset1 + i * 8);
+                tmpCnt1 += (v1 / tmp1) * (h2[i] / tmp2);
+                tmpCnt2 += (h2[i] / tmp2) * (h2[i] / tmp2);
+                tmpCnt3 += (v1 / tmp1) * (v1 / tmp1);
+            }
+
+            result = (100 - 100 * (tmpCnt1 / (tmpCnt2 + tmpCnt3
+                    - tmpCnt1))); //Tanimoto
+        }
+        return result;
+    }
 }
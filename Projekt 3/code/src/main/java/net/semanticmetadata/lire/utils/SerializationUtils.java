@@ -58,6 +58,21 @@ public class SerializationUtils {
         );
     }
 
+    /**
+     * Reads an int from 4 bytes of a byte array starting at the given offset, the counterpart
+     * of {@link #toBytes(int)} without the need to copy the bytes to a new array.
+     *
+     * @param data   the input byte array
+     * @param offset position of the first byte
+     * @return the resulting int
+     */
+    public static int toInt(byte[] data, int offset) {
+        return (0xff & data[offset]) << 24 |
+                (0xff & data[offset + 1]) << 16 |
+                (0xff & data[offset + 2]) << 8 |
+                (0xff & data[offset + 3]);
+    }
+
     /**
      * Converts an int to a byte array with 4 elements. Used to put ints into a byte[] payload in a convenient
      * and fast way by shifting without using streams (which is kind of slow). <br/>
@@ -122,6 +137,18 @@ public class SerializationUtils {
         );
     }
 
+    /**
+     * Reads a long from 8 bytes of a byte array starting at the given offset, the counterpart
+     * of {@link #toBytes(long)} without the need to copy the bytes to a new array.
+     *
+     * @param data   the input byte array
+     * @param offset position of the first byte
+     * @return the resulting long
+     */
+    public static long toLong(byte[] data, int offset) {
+        return (long) toInt(data, offset) << 32 | (toInt(data, offset + 4) & 0xffffffffL);
+    }
+
     /**
      * Convenience method to transform an int[] array to a byte array for serialization.
      *
@@ -145,14 +172,73 @@ public class SerializationUtils {
      */
     public static int[] toIntArray(byte[] data) {
         int[] result = new int[data.length / 4];
-        byte[] tmp = new byte[4];
         for (int i = 0; i < result.length; i++) {
-            System.arraycopy(data, i * 4, tmp, 0, 4);
-            result[i] = toInt(tmp);
+            result[i] = toInt(data, i * 4);
         }
         return result;
     }
 
+    /**
+     * Encodes the non zero entries of a histogram as pairs of index and value, both as variable
+     * length ints with the index stored as difference to the previous one. Use
+     * {@link net.semanticmetadata.lire.utils.SerializationUtils#toSparseIntArray(byte[])} to decode.
+     *
+     * @param histogram the histogram, all values have to be positive or zero.
+     * @return the resulting byte[], one to ten bytes per non zero entry.
+     */
+    public static byte[] toSparseByteArray(int[] histogram) {
+        byte[] result = new byte[64];
+        int length = 0, last = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            if (histogram[i] == 0) continue;
+            if (length + 10 > result.length) result = Arrays.copyOf(result, result.length * 2);
+            length = writeVInt(i - last, result, length);
+            length = writeVInt(histogram[i], result, length);
+            last = i;
+        }
+        return Arrays.copyOf(result, length);
+    }
+
+    /**
+     * Decodes a histogram encoded with
+     * {@link net.semanticmetadata.lire.utils.SerializationUtils#toSparseByteArray(int[])}.
+     *
+     * @param data the byte[] array to decode
+     * @return the non zero entries as pairs of index and value: [index0, value0, index1, value1, ...]
+     */
+    public static int[] toSparseIntArray(byte[] data) {
+        int[] result = new int[16];
+        int length = 0, index = 0, offset = 0;
+        while (offset < data.length) {
+            if (length + 2 > result.length) result = Arrays.copyOf(result, result.length * 2);
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = data[offset++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) break;
+            }
+            index += value;
+            value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = data[offset++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) break;
+            }
+            result[length++] = index;
+            result[length++] = value;
+        }
+        return Arrays.copyOf(result, length);
+    }
+
+    private static int writeVInt(int value, byte[] data, int offset) {
+        while ((value & ~0x7F) != 0) {
+            data[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[offset++] = (byte) value;
+        return offset;
+    }
+
     /**
      * Converts a float to a byte array with 4 elements. Used to put floats into a byte[] payload in a convenient
      * and fast way by shifting without using streams (which is kind of slow). Use
@@ -202,10 +288,8 @@ public class SerializationUtils {
      */
     public static float[] toFloatArray(byte[] data) {
         float[] result = new float[data.length / 4];
-        byte[] tmp = new byte[4];
         for (int i = 0; i < result.length; i++) {
-            System.arraycopy(data, i * 4, tmp, 0, 4);
-            result[i] = toFloat(tmp);
+            result[i] = Float.intBitsToFloat(toInt(data, i * 4));
         }
         return result;
     }
@@ -238,6 +322,18 @@ public class SerializationUtils {
         return Double.longBitsToDouble(toLong(data));
     }
 
+    /**
+     * Reads a double from 8 bytes of a byte array starting at the given offset, the counterpart
+     * of {@link #toBytes(double)} without the need to copy the bytes to a new array.
+     *
+     * @param data   the input byte array
+     * @param offset position of the first byte
+     * @return the resulting double
+     */
+    public static double toDouble(byte[] data, int offset) {
+        return Double.longBitsToDouble(toLong(data, offset));
+    }
+
     /**
      * Convenience method for creating a byte array from a double array.
      *
@@ -261,14 +357,103 @@ public class SerializationUtils {
      */
     public static double[] toDoubleArray(byte[] data) {
         double[] result = new double[data.length / 8];
-        byte[] tmp = new byte[8];
         for (int i = 0; i < result.length; i++) {
-            System.arraycopy(data, i * 8, tmp, 0, 8);
-            result[i] = toDouble(tmp);
+            result[i] = toDouble(data, i * 8);
         }
         return result;
     }
 
+    /**
+     * Converts a float to the 16 bit IEEE 754 half precision format, rounding to the nearest
+     * representable value. Values too large for half precision become infinite.
+     *
+     * @param value the float to convert
+     * @return the bits of the half precision value
+     * @see #toFloat(short)
+     */
+    public static short toHalf(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        if (Float.isNaN(value)) {
+            return (short) (sign | 0x7c00 | 0x0200 | ((bits >>> 13) & 0x03ff));
+        }
+        float abs = Math.abs(value);
+        // 65520 and above round to infinity, 2^-25 and below to zero.
+        if (abs >= 65520f) return (short) (sign | 0x7c00);
+        if (abs <= 0x1.0p-25f) return (short) sign;
+
+        int exponent = Math.getExponent(value);
+        int shift = 13;
+        int significand = bits & 0x007fffff;
+        if (exponent < -14) {
+            // subnormal half precision value, the implicit bit becomes explicit.
+            shift += -14 - exponent;
+            exponent = -15;
+            significand |= 0x00800000;
+        }
+        int result = significand >> shift;
+        // round half to even, a carry into the exponent is intended.
+        int lsb = significand & (1 << shift);
+        int round = significand & (1 << (shift - 1));
+        int sticky = significand & ((1 << (shift - 1)) - 1);
+        if (round != 0 && (lsb | sticky) != 0) result++;
+        return (short) (sign | (((exponent + 15) << 10) + result));
+    }
+
+    /**
+     * Converts the 16 bit IEEE 754 half precision format to a float, which is exact.
+     *
+     * @param half the bits of the half precision value
+     * @return the resulting float
+     * @see #toHalf(float)
+     */
+    public static float toFloat(short half) {
+        int sign = (half & 0x8000) << 16;
+        int exponent = (half & 0x7c00) >> 10;
+        int significand = half & 0x03ff;
+        if (exponent == 0) {
+            // zero or subnormal
+            float result = 0x1.0p-24f * significand;
+            return (sign == 0) ? result : -result;
+        } else if (exponent == 0x1f) {
+            // infinite or NaN
+            return Float.intBitsToFloat(sign | 0x7f800000 | (significand << 13));
+        }
+        return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (significand << 13));
+    }
+
+    /**
+     * Converts a float array to half precision values, 2 bytes per value, and writes them to the
+     * given byte array.
+     *
+     * @param data   the floats to convert
+     * @param result the array to write to
+     * @param offset position of the first byte in result
+     * @see #toHalf(float)
+     */
+    public static void toHalfByteArray(float[] data, byte[] result, int offset) {
+        for (int i = 0; i < data.length; i++) {
+            short half = toHalf(data[i]);
+            result[offset + i * 2] = (byte) (half >> 8);
+            result[offset + i * 2 + 1] = (byte) half;
+        }
+    }
+
+    /**
+     * Reads half precision values written by {@link #toHalfByteArray(float[], byte[], int)}.
+     *
+     * @param data   the input byte array
+     * @param offset position of the first byte
+     * @param length number of values
+     * @return the resulting float array
+     */
+    public static float[] toFloatArrayFromHalf(byte[] data, int offset, int length) {
+        float[] result = new float[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = toFloat((short) ((data[offset + i * 2] & 0xff) << 8 | (data[offset + i * 2 + 1] & 0xff)));
+        }
+        return result;
+    }
 
     /**
      * Convenience method for creating a String from an array.
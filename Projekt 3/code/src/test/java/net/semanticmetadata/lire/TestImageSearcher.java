@@ -31,7 +31,11 @@
 package net.semanticmetadata.lire;
 
 import junit.framework.TestCase;
+import net.semanticmetadata.lire.imageanalysis.CEDD;
+import net.semanticmetadata.lire.imageanalysis.LireFeature;
 import net.semanticmetadata.lire.impl.ChainedDocumentBuilder;
+import net.semanticmetadata.lire.impl.FeatureFile;
+import net.semanticmetadata.lire.impl.GenericFastImageSearcher;
 import net.semanticmetadata.lire.impl.VisualWordsImageSearcher;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexReader;
@@ -40,6 +44,8 @@ import org.apache.lucene.store.FSDirectory;
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.*;
+import java.util.LinkedList;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * This file is part of Caliph & Emir
@@ -187,6 +193,123 @@ public class TestImageSearcher extends TestCase {
 
     }
 
+    public void testCachedCEDDSearch() throws IOException {
+        IndexReader reader = IndexReader.open(FSDirectory.open(new File(indexPath)));
+        ImageSearcher searcher = ImageSearcherFactory.createCEDDImageSearcher(30);
+        ImageSearcher cachedSearcher = ImageSearcherFactory.createCachedCEDDImageSearcher(30);
+        BufferedImage bimg = ImageIO.read(new FileInputStream(testFilesPath + testFiles[0]));
+        ImageSearchHits hits = searcher.search(bimg, reader);
+        // first search fills the cache.
+        long time = System.currentTimeMillis();
+        ImageSearchHits cachedHits = cachedSearcher.search(bimg, reader);
+        System.out.println((System.currentTimeMillis() - time) + " ms for search with image including cache creation.");
+        time = System.currentTimeMillis();
+        for (int i = 0; i < numsearches; i++) {
+            cachedHits = cachedSearcher.search(bimg, reader);
+        }
+        time = System.currentTimeMillis() - time;
+        System.out.println(((float) time / (float) numsearches) + " ms per cached search with image, averaged on " + numsearches);
+        assertEquals(hits.length(), cachedHits.length());
+        for (int i = 0; i < hits.length(); i++) {
+            assertEquals(hits.score(i), cachedHits.score(i), 0.00001f);
+        }
+        reader.close();
+    }
+
+    public void testMappedCEDDSearch() throws IOException {
+        IndexReader reader = IndexReader.open(FSDirectory.open(new File(indexPath)));
+        File file = File.createTempFile("cedd", FeatureFile.EXTENSION);
+        FeatureFile.write(reader, DocumentBuilder.FIELD_NAME_CEDD, file);
+        FeatureFile featureFile = FeatureFile.open(file);
+        assertTrue(featureFile.isCurrent(reader));
+        assertEquals(reader.maxDoc(), featureFile.size());
+        ImageSearcher searcher = ImageSearcherFactory.createCEDDImageSearcher(30);
+        ImageSearcher mappedSearcher = ImageSearcherFactory.createMappedCEDDImageSearcher(30, featureFile);
+        BufferedImage bimg = ImageIO.read(new FileInputStream(testFilesPath + testFiles[0]));
+        ImageSearchHits hits = searcher.search(bimg, reader);
+        long time = System.currentTimeMillis();
+        ImageSearchHits mappedHits = null;
+        for (int i = 0; i < numsearches; i++) {
+            mappedHits = mappedSearcher.search(bimg, reader);
+        }
+        time = System.currentTimeMillis() - time;
+        System.out.println(((float) time / (float) numsearches) + " ms per mapped search with image, averaged on " + numsearches);
+        assertEquals(hits.length(), mappedHits.length());
+        for (int i = 0; i < hits.length(); i++) {
+            assertEquals(hits.score(i), mappedHits.score(i), 0.00001f);
+            assertEquals(hits.doc(i).get(DocumentBuilder.FIELD_NAME_IDENTIFIER), mappedHits.doc(i).get(DocumentBuilder.FIELD_NAME_IDENTIFIER));
+        }
+        // writing the file again replaces it, the mapped file stays readable:
+        FeatureFile.write(reader, DocumentBuilder.FIELD_NAME_CEDD, file);
+        mappedHits = mappedSearcher.search(bimg, reader);
+        for (int i = 0; i < hits.length(); i++) {
+            assertEquals(hits.score(i), mappedHits.score(i), 0.00001f);
+        }
+        assertTrue(FeatureFile.open(file).isCurrent(reader));
+        reader.close();
+        file.delete();
+    }
+
+    public void testParallelCEDDSearch() throws IOException {
+        IndexReader reader = IndexReader.open(FSDirectory.open(new File(indexPath)));
+        ImageSearcher searcher = ImageSearcherFactory.createCEDDImageSearcher(30);
+        ForkJoinPool pool = new ForkJoinPool();
+        ImageSearcher parallelSearcher = new GenericFastImageSearcher(30, CEDD.class, DocumentBuilder.FIELD_NAME_CEDD, false, pool);
+        ImageSearcher parallelCachedSearcher = new GenericFastImageSearcher(30, CEDD.class, DocumentBuilder.FIELD_NAME_CEDD, true, pool);
+        Document document = reader.document(0);
+        ImageSearchHits hits = searcher.search(document, reader);
+        long time = System.currentTimeMillis();
+        ImageSearchHits parallelHits = null;
+        for (int i = 0; i < numsearches; i++) {
+            parallelHits = parallelSearcher.search(document, reader);
+        }
+        time = System.currentTimeMillis() - time;
+        System.out.println(((float) time / (float) numsearches) + " ms per parallel search with document, averaged on " + numsearches);
+        ImageSearchHits parallelCachedHits = parallelCachedSearcher.search(document, reader);
+        assertEquals(hits.length(), parallelHits.length());
+        assertEquals(hits.length(), parallelCachedHits.length());
+        for (int i = 0; i < hits.length(); i++) {
+            assertEquals(hits.score(i), parallelHits.score(i), 0.00001f);
+            assertEquals(hits.score(i), parallelCachedHits.score(i), 0.00001f);
+        }
+        pool.shutdown();
+        reader.close();
+    }
+
+    public void testBatchSearch() throws IOException {
+        IndexReader reader = IndexReader.open(FSDirectory.open(new File(indexPath)));
+        GenericFastImageSearcher searcher = new GenericFastImageSearcher(30, CEDD.class, DocumentBuilder.FIELD_NAME_CEDD);
+        // use each document of the index as query several times.
+        LinkedList<LireFeature> queries = new LinkedList<LireFeature>();
+        for (int k = 0; k < 20; k++) {
+            for (int i = 0; i < reader.maxDoc(); i++) {
+                CEDD cedd = new CEDD();
+                cedd.setByteArrayRepresentation(reader.document(i).getBinaryValue(DocumentBuilder.FIELD_NAME_CEDD));
+                queries.add(cedd);
+            }
+        }
+        long time = System.currentTimeMillis();
+        ImageSearchHits[] batchHits = searcher.searchBatch(queries, reader);
+        time = System.currentTimeMillis() - time;
+        System.out.println((queries.size() * 1000f / Math.max(time, 1)) + " queries/s in batch mode with " + queries.size() + " queries.");
+
+        time = System.currentTimeMillis();
+        ImageSearchHits[] singleHits = new ImageSearchHits[queries.size()];
+        for (int i = 0; i < singleHits.length; i++) {
+            singleHits[i] = searcher.search(reader.document(i % reader.maxDoc()), reader);
+        }
+        time = System.currentTimeMillis() - time;
+        System.out.println((queries.size() * 1000f / Math.max(time, 1)) + " queries/s with one search per query.");
+
+        for (int i = 0; i < singleHits.length; i++) {
+            assertEquals(singleHits[i].length(), batchHits[i].length());
+            for (int j = 0; j < singleHits[i].length(); j++) {
+                assertEquals(singleHits[i].score(j), batchHits[i].score(j), 0.00001f);
+            }
+        }
+        reader.close();
+    }
+
     public void testSimpleColorHistogramSearch() throws IOException {
         IndexReader reader = IndexReader.open(FSDirectory.open(new File(indexPath)));
         int numDocs = reader.numDocs();
@@ -0,0 +1,165 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+package net.semanticmetadata.lire.clustering;
+
+import junit.framework.TestCase;
+import net.semanticmetadata.lire.imageanalysis.Histogram;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares the k-means implementations on synthetic data with known clusters.
+ * <br>Date: 18.10.2026
+ */
+public class KMeansTest extends TestCase {
+    private int numImages = 200, featuresPerImage = 100, dimensions = 64, numClusters = 50;
+
+    public void testFastKMeans() {
+        KMeans reference = fill(new KMeans(numClusters));
+        double referenceStress = cluster(reference, "KMeans");
+        FastKMeans fast = fill(new FastKMeans(numClusters));
+        fast.setSeed(17);
+        double fastStress = cluster(fast, "FastKMeans");
+        assertTrue(fast.isConverged());
+        // k-means++ should be at least as good as random initial means:
+        assertTrue(fastStress + " vs. " + referenceStress, fastStress <= referenceStress * 1.05);
+        checkAssignment(fast, true);
+    }
+
+    public void testMiniBatchKMeans() {
+        FastKMeans exact = fill(new FastKMeans(numClusters));
+        exact.setSeed(17);
+        double exactStress = cluster(exact, "FastKMeans");
+        FastKMeans miniBatch = fill(new FastKMeans(numClusters));
+        miniBatch.setSeed(17);
+        miniBatch.setMiniBatchSize(256);
+        double miniBatchStress = cluster(miniBatch, "Mini batch");
+        assertTrue(miniBatchStress + " vs. " + exactStress, miniBatchStress <= exactStress * 1.1);
+        checkAssignment(miniBatch, true);
+    }
+
+    public void testParallelKMeans() {
+        KMeans sequential = fill(new KMeans(numClusters));
+        ParallelKMeans parallel = fill(new ParallelKMeans(numClusters, new ForkJoinPool(4)));
+        sequential.init();
+        parallel.init();
+        // start both with the same means:
+        for (int i = 0; i < numClusters; i++) {
+            System.arraycopy(sequential.clusters[i].mean, 0, parallel.clusters[i].mean, 0, dimensions);
+        }
+        assertEquals(sequential.clusteringStep(), parallel.clusteringStep(), 1d);
+        for (int i = 0; i < numClusters; i++) {
+            assertEquals(sequential.clusters[i].members, parallel.getClusters()[i].members);
+        }
+        double referenceStress = cluster(sequential, "KMeans");
+        double parallelStress = cluster(parallel, "ParallelKMeans");
+        assertEquals(referenceStress, parallelStress, 1d);
+        checkAssignment(parallel, false);
+        ParallelKMeans shared = fill(new ParallelKMeans(numClusters));
+        cluster(shared, "ParallelKMeans, shared pool");
+        checkAssignment(shared, false);
+    }
+
+    public void testSeed() {
+        FastKMeans a = fill(new FastKMeans(numClusters));
+        a.setSeed(42);
+        FastKMeans b = fill(new FastKMeans(numClusters));
+        b.setSeed(42);
+        assertEquals(cluster(a, "Seed 42"), cluster(b, "Seed 42"));
+    }
+
+    /**
+     * Checks that all features are members of a cluster and optionally that it is the nearest one.
+     */
+    private void checkAssignment(KMeans k, boolean nearestCluster) {
+        Cluster[] clusters = k.getClusters();
+        int members = 0;
+        for (Cluster cluster : clusters) members += cluster.members.size();
+        assertEquals(k.getFeatureCount(), members);
+        for (int i = 0; i < k.features.size(); i += 97) {
+            Histogram f = k.features.get(i);
+            assertTrue(clusters[k.getClusterOfFeature(f)].members.contains(i));
+            if (!nearestCluster) continue;
+            int nearest = 0;
+            for (int c = 1; c < clusters.length; c++) {
+                if (clusters[c].getDistance(f) < clusters[nearest].getDistance(f)) nearest = c;
+            }
+            assertEquals(clusters[nearest].getDistance(f), clusters[k.getClusterOfFeature(f)].getDistance(f), 1e-3);
+        }
+    }
+
+    /**
+     * Runs the clustering like LocalFeatureHistogramBuilder does.
+     */
+    private double cluster(KMeans k, String name) {
+        long ms = System.currentTimeMillis();
+        k.init();
+        double lastStress = k.clusteringStep();
+        double newStress = k.clusteringStep();
+        int steps = 2;
+        double threshold = Math.max(20d, (double) k.getFeatureCount() / 1000d);
+        while (Math.abs(newStress - lastStress) > threshold) {
+            lastStress = newStress;
+            newStress = k.clusteringStep();
+            steps++;
+        }
+        k.getClusters();
+        System.out.println(name + ": stress = " + (int) newStress + " after " + steps + " steps in " + (System.currentTimeMillis() - ms) + " ms");
+        return newStress;
+    }
+
+    /**
+     * Adds features drawn from gaussian blobs around random centers, always the same data.
+     */
+    private <T extends KMeans> T fill(T k) {
+        Random random = new Random(1);
+        float[][] centers = new float[numClusters][dimensions];
+        for (float[] center : centers) {
+            for (int j = 0; j < dimensions; j++) center[j] = random.nextFloat();
+        }
+        for (int i = 0; i < numImages; i++) {
+            List<Histogram> features = new LinkedList<Histogram>();
+            for (int j = 0; j < featuresPerImage; j++) {
+                float[] center = centers[random.nextInt(numClusters)];
+                Histogram h = new Histogram();
+                h.descriptor = new float[dimensions];
+                for (int d = 0; d < dimensions; d++) {
+                    h.descriptor[d] = center[d] + (float) random.nextGaussian() * 0.05f;
+                }
+                features.add(h);
+            }
+            k.addImage("image" + i, features);
+        }
+        return k;
+    }
+}
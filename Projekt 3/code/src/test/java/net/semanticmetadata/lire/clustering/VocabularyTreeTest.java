@@ -0,0 +1,118 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+package net.semanticmetadata.lire.clustering;
+
+import junit.framework.TestCase;
+import net.semanticmetadata.lire.DocumentBuilder;
+import net.semanticmetadata.lire.imageanalysis.Histogram;
+import net.semanticmetadata.lire.imageanalysis.SurfFeature;
+import net.semanticmetadata.lire.impl.SurfDocumentBuilder;
+import org.apache.lucene.document.Document;
+
+import javax.imageio.ImageIO;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Compares the approximate assignment of the {@link VocabularyTree} to the exact one on SURF features.
+ * <br>Date: 18.10.2026
+ */
+public class VocabularyTreeTest extends TestCase {
+    private String[] testFiles = new String[]{"img01.JPG", "img02.JPG", "img03.JPG", "img04.JPG", "img05.JPG", "img06.JPG", "img07.JPG", "img08.JPG"};
+    private String testFilesPath = "src/test/resources/images/";
+    private int numClusters = 512;
+
+    public void testRecall() throws Exception {
+        FastKMeans k = new FastKMeans(numClusters);
+        k.setSeed(1);
+        SurfDocumentBuilder builder = new SurfDocumentBuilder();
+        for (String file : testFiles) {
+            Document d = builder.createDocument(ImageIO.read(new FileInputStream(testFilesPath + file)), file);
+            List<Histogram> features = new LinkedList<Histogram>();
+            for (byte[] data : d.getBinaryValues(DocumentBuilder.FIELD_NAME_SURF)) {
+                SurfFeature f = new SurfFeature();
+                f.setByteArrayRepresentation(data);
+                features.add(f);
+            }
+            k.addImage(file, features);
+        }
+        k.init();
+        while (!k.isConverged()) k.clusteringStep();
+        Cluster[] clusters = k.getClusters();
+        List<Histogram> queries = k.features;
+        System.out.println(queries.size() + " features, " + clusters.length + " clusters");
+
+        VocabularyTree tree = new VocabularyTree(clusters);
+        int[] exact = new int[queries.size()];
+        long ms = System.nanoTime();
+        for (int i = 0; i < exact.length; i++) {
+            exact[i] = tree.findNearest(queries.get(i).descriptor, clusters.length);
+        }
+        System.out.println("exact: " + (System.nanoTime() - ms) / 1000000 + " ms");
+        for (int i = 0; i < exact.length; i += 13) {
+            assertEquals(exact[i], k.getClusterOfFeature(queries.get(i)));
+        }
+        double lastRecall = 0;
+        for (int maxChecks = 16; maxChecks <= clusters.length; maxChecks *= 2) {
+            int correct = 0;
+            ms = System.nanoTime();
+            for (int i = 0; i < exact.length; i++) {
+                int nearest = tree.findNearest(queries.get(i).descriptor, maxChecks);
+                // equal distances count as correct:
+                if (clusters[nearest].getDistance(queries.get(i)) <= clusters[exact[i]].getDistance(queries.get(i))) correct++;
+            }
+            double recall = (double) correct / exact.length;
+            System.out.println("maxChecks = " + maxChecks + ": recall " + recall + ", " + (System.nanoTime() - ms) / 1000000 + " ms");
+            assertTrue(recall >= lastRecall - 0.02);
+            lastRecall = recall;
+        }
+        assertTrue(lastRecall > 0.9);
+
+        // the tree read from a file gives the same results:
+        File file = File.createTempFile("vocabulary", ".tree");
+        try {
+            tree.write(file.getPath());
+            VocabularyTree read = VocabularyTree.read(file.getPath(), clusters);
+            for (int i = 0; i < exact.length; i++) {
+                assertEquals(tree.findNearest(queries.get(i).descriptor, 64), read.findNearest(queries.get(i).descriptor, 64));
+            }
+            // a tree of other clusters with the same number of means is not used:
+            Cluster[] other = new Cluster[clusters.length];
+            for (int i = 0; i < other.length; i++) other[i] = new Cluster(clusters[i].mean.clone());
+            assertNotNull(VocabularyTree.read(file.getPath(), other));
+            other[other.length - 1].mean[0] += 1f;
+            assertNull(VocabularyTree.read(file.getPath(), other));
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+package net.semanticmetadata.lire.filter;
+
+import junit.framework.TestCase;
+import net.semanticmetadata.lire.DocumentBuilder;
+import net.semanticmetadata.lire.ImageSearchHits;
+import net.semanticmetadata.lire.impl.SiftDocumentBuilder;
+import net.semanticmetadata.lire.impl.SimpleImageSearchHits;
+import net.semanticmetadata.lire.impl.SimpleResult;
+import org.apache.lucene.document.Document;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+
+/**
+ * Checks that the {@link GeometricVerificationFilter} moves the image a query has been cut out of to
+ * the top of the results.
+ * <br>Date: 18.10.2026
+ */
+public class GeometricVerificationFilterTest extends TestCase {
+    private String[] testFiles = new String[]{"img01.JPG", "img02.JPG", "img03.JPG", "img04.JPG", "img05.JPG", "img06.JPG", "img07.JPG", "img08.JPG"};
+    private String testFilesPath = "src/test/resources/images/";
+
+    public void testFilter() throws Exception {
+        SiftDocumentBuilder builder = new SiftDocumentBuilder();
+        ArrayList<SimpleResult> results = new ArrayList<SimpleResult>();
+        BufferedImage queryImage = null;
+        for (int i = 0; i < testFiles.length; i++) {
+            BufferedImage image = ImageIO.read(new FileInputStream(testFilesPath + testFiles[i]));
+            // the query is a part of the last image, which is the last result:
+            if (i == testFiles.length - 1)
+                queryImage = image.getSubimage(image.getWidth() / 8, image.getHeight() / 8, image.getWidth() * 3 / 4, image.getHeight() * 3 / 4);
+            results.add(new SimpleResult(i, builder.createDocument(image, testFiles[i])));
+        }
+        ImageSearchHits hits = new SimpleImageSearchHits(results, testFiles.length);
+        Document query = builder.createDocument(queryImage, "query");
+
+        GeometricVerificationFilter filter = new GeometricVerificationFilter();
+        for (GeometricVerificationFilter.Transformation transformation : GeometricVerificationFilter.Transformation.values()) {
+            filter.setTransformation(transformation);
+            long time = System.currentTimeMillis();
+            ImageSearchHits filtered = filter.filter(hits, query);
+            System.out.println(transformation + ": " + (System.currentTimeMillis() - time) + " ms, distance of the top hit " + (1f - filtered.score(0)));
+            assertEquals(testFiles.length, filtered.length());
+            assertEquals(testFiles[testFiles.length - 1], filtered.doc(0).get(DocumentBuilder.FIELD_NAME_IDENTIFIER));
+            assertTrue(filtered.score(0) > 0);
+            // the hits below keep the order of their original scores:
+            for (int i = 1; i < filtered.length(); i++) {
+                assertTrue(filtered.score(i) <= filtered.score(i - 1));
+            }
+        }
+
+        // an interrupted thread stops verifying, keeps the order and its interrupt status:
+        Thread.currentThread().interrupt();
+        ImageSearchHits interrupted = filter.filter(hits, query);
+        assertTrue(Thread.interrupted());
+        for (int i = 0; i < testFiles.length; i++) {
+            assertEquals(testFiles[i], interrupted.doc(i).get(DocumentBuilder.FIELD_NAME_IDENTIFIER));
+            assertEquals(hits.score(i), interrupted.score(i));
+        }
+
+        // without time nothing is verified and the order is kept:
+        filter.setTimeBudget(0);
+        ImageSearchHits filtered = filter.filter(hits, query);
+        for (int i = 0; i < testFiles.length; i++) {
+            assertEquals(testFiles[i], filtered.doc(i).get(DocumentBuilder.FIELD_NAME_IDENTIFIER));
+            assertEquals(hits.score(i), filtered.score(i));
+        }
+    }
+}
@@ -32,11 +32,15 @@ package net.semanticmetadata.lire.imageanalysis;
 
 import junit.framework.TestCase;
 import net.semanticmetadata.lire.imageanalysis.visualattention.StentifordModel;
+import net.semanticmetadata.lire.utils.ImageUtils;
 
 import javax.imageio.ImageIO;
+import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
 //import net.semanticmetadata.lire.imageanalysis.visualattention.ParallelStentifordModel;
 
@@ -87,4 +91,60 @@ public class AttentionModelTest extends TestCase {
         System.out.println("t = " + t / runs);
     }
 
+    public void testDeterministic() throws IOException {
+        BufferedImage img = ImageIO.read(new File("src/test/resources/images/img01.JPG"));
+        StentifordModel sm = new StentifordModel(3, 100, 40, new ForkJoinPool(1));
+        sm.setSeed(42);
+        sm.extract(img);
+        float[] expected = sm.getSaliencyMap().clone();
+        StentifordModel parallel = new StentifordModel(3, 100, 40, new ForkJoinPool(4));
+        parallel.setSeed(42);
+        parallel.extract(img);
+        assertTrue(Arrays.equals(expected, parallel.getSaliencyMap()));
+        // the map is reused for images of the same size:
+        float[] saliencyMap = parallel.getSaliencyMap();
+        parallel.extract(img);
+        assertTrue(saliencyMap == parallel.getSaliencyMap());
+        assertTrue(Arrays.equals(expected, saliencyMap));
+        parallel.setSeed(43);
+        parallel.extract(img);
+        assertFalse(Arrays.equals(expected, parallel.getSaliencyMap()));
+    }
+
+    /**
+     * A red square on a gray background gets more attention than the background.
+     */
+    public void testSaliencyMap() {
+        BufferedImage img = new BufferedImage(120, 100, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setColor(Color.GRAY);
+        g.fillRect(0, 0, img.getWidth(), img.getHeight());
+        g.setColor(Color.RED);
+        g.fillRect(50, 40, 10, 10);
+        g.dispose();
+        StentifordModel sm = new StentifordModel();
+        sm.extract(img);
+        assertEquals(img.getWidth(), sm.getWidth());
+        assertEquals(img.getHeight(), sm.getHeight());
+        float[] saliencyMap = sm.getSaliencyMap();
+        assertEquals(img.getWidth() * img.getHeight(), saliencyMap.length);
+        assertTrue(saliencyMap[45 * img.getWidth() + 55] > 0.9f);
+        assertTrue(saliencyMap[10 * img.getWidth() + 10] < 0.1f);
+        int[][] attentionModel = sm.getAttentionModel();
+        assertEquals(Math.round(saliencyMap[45 * img.getWidth() + 55] * 100), attentionModel[55][45]);
+    }
+
+    public void testPerformanceLargeImage() throws IOException {
+        BufferedImage img = ImageUtils.scaleImage(ImageIO.read(new File("src/test/resources/images/img01.JPG")), 1024);
+        StentifordModel sm = new StentifordModel(3, 100, 40);
+        sm.extract(img);
+        int runs = 5;
+        long t = System.currentTimeMillis();
+        for (int i = 0; i < runs; i++) {
+            sm.extract(img);
+        }
+        t = System.currentTimeMillis() - t;
+        System.out.println(img.getWidth() + " x " + img.getHeight() + ": t = " + t / runs + " ms");
+    }
+
 }
@@ -0,0 +1,93 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+
+package net.semanticmetadata.lire.imageanalysis;
+
+import junit.framework.TestCase;
+
+import javax.imageio.ImageIO;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Checks the distance functions working on byte[] data against the ones of the feature objects.
+ * <br>Date: 18.10.2026
+ */
+public class ByteArrayDistanceTest extends TestCase {
+    private String[] testFiles = new String[]{"img01.JPG", "img02.JPG", "img03.JPG", "img04.JPG", "img05.JPG", "img06.JPG", "img07.JPG", "img08.JPG"};
+    private String testFilesPath = "src/test/resources/images/";
+    private Class[] featureClasses = new Class[]{CEDD.class, FCTH.class, JCD.class, ColorLayout.class, EdgeHistogram.class, ScalableColor.class};
+
+    public void testDistances() throws Exception {
+        for (Class featureClass : featureClasses) {
+            LireFeature[] features = new LireFeature[testFiles.length];
+            for (int i = 0; i < testFiles.length; i++) {
+                features[i] = extract(featureClass, testFiles[i]);
+            }
+            for (int i = 0; i < features.length; i++) {
+                for (int j = 0; j < features.length; j++) {
+                    byte[] b = features[j].getByteArrayRepresentation();
+                    // put the second feature somewhere in the middle of a larger array.
+                    byte[] data = new byte[b.length + 13];
+                    System.arraycopy(b, 0, data, 7, b.length);
+                    float distance = ((ByteArrayDistance) features[i]).getDistance(data, 7, b.length);
+                    LireFeature f = (LireFeature) featureClass.newInstance();
+                    f.setByteArrayRepresentation(b);
+                    assertEquals(featureClass.getSimpleName(), features[i].getDistance(f), distance);
+                }
+            }
+        }
+    }
+
+    public void testPerformance() throws Exception {
+        CEDD query = (CEDD) extract(CEDD.class, testFiles[0]);
+        byte[] b = extract(CEDD.class, testFiles[1]).getByteArrayRepresentation();
+        CEDD instance = new CEDD();
+        int runs = 1000000;
+        long ms = System.currentTimeMillis();
+        for (int i = 0; i < runs; i++) {
+            instance.setByteArrayRepresentation(b);
+            query.getDistance(instance);
+        }
+        long deserialized = System.currentTimeMillis() - ms;
+        ms = System.currentTimeMillis();
+        for (int i = 0; i < runs; i++) {
+            query.getDistance(b, 0, b.length);
+        }
+        long direct = System.currentTimeMillis() - ms;
+        System.out.println("deserialized: " + deserialized + " ms, byte[]: " + direct + " ms");
+    }
+
+    private LireFeature extract(Class featureClass, String file) throws IOException, IllegalAccessException, InstantiationException {
+        LireFeature feature = (LireFeature) featureClass.newInstance();
+        feature.extract(ImageIO.read(new FileInputStream(testFilesPath + file)));
+        return feature;
+    }
+}
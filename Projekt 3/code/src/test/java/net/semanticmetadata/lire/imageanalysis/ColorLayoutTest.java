@@ -36,6 +36,7 @@ import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.Random;
 
 /**
  * User: Mathias Lux, mathias@juggle.at
@@ -43,6 +44,25 @@ import java.io.IOException;
  * Time: 16:21:45
  */
 public class ColorLayoutTest extends TestCase {
+    // descriptors of the test images extracted before, existing indexes contain these:
+    private String[] descriptors = new String[]{
+            "26 9 25 13 10 8 11 15 19 14 13 17 15 15 12 12 12 13 15 13 18 15 16 17 16 17 16 13 15 15 15 16 19 15 18 16 14 16 15 15 15 16 15 15 15 17 16 15 16 16 15 15 17 16 15 15 16 16 16 14 17 15 17 15z46 13 26 18 14 14 15 13 16 12 15 15 15 14 14 16 14 14 16 14 17 16 15 16 15 15 14 15z24 17 7 14 16 16 15 17 15 18 16 15 16 17 16 15 16 16 15 16 15 15 16 15 15 16 16 15",
+            "24 15 25 17 10 13 17 18 19 16 12 21 16 16 18 14 14 15 14 14 17 15 13 18 15 17 18 14 17 16 16 15 16 15 16 15 16 14 15 12 13 16 14 16 15 16 17 15 16 16 16 16 15 17 14 16 16 15 16 16 16 16 15 15z42 13 26 21 15 16 16 15 17 15 14 18 15 16 16 16 16 15 16 15 15 17 15 15 14 15 15 15z27 18 9 12 16 15 15 16 15 16 17 14 16 15 15 16 15 16 15 16 16 15 16 16 16 15 16 16",
+            "31 13 25 14 17 15 16 17 18 13 11 13 14 15 16 15 15 16 15 15 20 15 16 17 15 15 15 16 15 15 16 16 16 15 16 14 16 14 16 16 16 15 15 16 15 14 15 16 17 14 15 16 16 16 15 16 16 16 15 15 15 16 15 15z49 15 28 19 16 16 16 15 17 11 15 16 15 16 16 16 15 15 16 15 16 17 15 16 15 15 15 16z23 16 6 14 15 15 16 16 15 19 16 15 16 15 15 15 16 16 15 16 15 15 16 15 16 16 16 15",
+            "29 21 25 16 17 15 16 15 20 17 21 17 18 14 16 16 15 14 16 17 15 14 18 14 15 16 15 15 16 15 15 16 15 15 15 15 14 16 15 15 16 15 16 15 16 15 15 16 17 16 16 15 16 15 16 15 15 16 15 16 16 16 16 16z33 18 13 17 15 18 17 16 16 16 17 16 15 16 16 16 16 15 17 16 16 16 16 15 16 15 15 16z33 14 18 14 16 15 15 15 15 15 15 15 16 15 15 16 16 16 15 15 15 15 15 16 15 16 16 15",
+            "31 25 27 18 19 14 14 12 21 14 14 16 16 13 16 15 16 17 13 13 15 16 15 12 17 17 16 15 15 15 16 16 17 16 14 18 16 16 17 15 15 16 15 16 16 14 15 15 14 15 15 15 16 16 16 16 16 15 15 15 16 16 15 15z34 18 17 19 18 14 14 16 16 17 16 16 14 16 14 14 16 16 16 15 15 16 15 15 16 16 16 15z31 14 13 11 13 17 17 15 15 14 15 15 17 15 17 16 15 15 16 16 16 15 16 15 15 15 15 16",
+            "30 11 28 25 13 12 17 16 14 20 19 20 18 15 15 17 15 15 14 17 18 13 17 14 18 16 16 14 15 16 15 17 13 16 17 15 17 17 16 16 14 14 18 14 16 14 15 15 18 16 15 17 18 15 17 15 16 15 16 16 15 16 14 16z31 15 17 17 15 16 15 16 16 17 17 15 15 16 17 16 15 15 16 16 15 16 15 16 16 16 15 16z31 17 12 12 16 15 16 16 16 13 13 16 16 15 15 16 15 16 15 15 14 16 15 16 15 15 15 16",
+            "28 6 25 23 22 19 10 19 10 16 14 15 15 15 18 16 16 14 16 16 16 15 15 18 17 16 15 16 18 13 15 12 17 15 15 16 15 15 14 13 18 16 15 16 15 17 15 15 16 15 17 15 15 15 15 16 15 16 15 14 15 16 16 15z31 16 18 15 13 15 16 17 17 16 16 16 14 15 16 16 15 16 16 15 16 16 16 16 15 15 15 15z33 15 14 15 18 16 15 15 15 15 15 16 16 16 16 15 16 16 15 16 15 15 16 15 16 16 16 16",
+            "23 7 12 23 14 12 16 16 13 17 16 12 16 15 14 17 14 13 14 16 19 17 17 15 15 15 16 15 16 16 14 15 17 14 17 16 16 14 15 15 16 17 16 16 17 16 16 15 15 15 16 14 16 16 16 16 16 15 16 16 16 16 16 16z32 14 17 18 12 17 17 17 14 16 16 14 16 16 15 15 16 16 17 15 16 16 15 15 17 15 15 16z34 16 14 15 17 15 15 15 16 16 15 16 16 15 16 16 15 15 15 16 15 16 16 16 15 15 16 15"
+    };
+    // random images, where coefficients of exactly x.5 are rounded up by the cosine table:
+    private long[] seeds = new long[]{10, 106, 141};
+    private String[] randomDescriptors = new String[]{
+            "30 16 15 16 15 16 15 15 15 15 15 15 16 16 15 16 17 16 17 15 16 15 16 15 16 15 16 16 15 15 15 15 15 16 15 16 15 15 16 15 14 15 15 17 16 15 16 16 15 15 16 15 16 16 16 16 15 16 16 15 16 15 16 14z31 16 15 16 16 15 18 14 17 16 19 16 15 15 15 17 14 15 16 18 16 16 15 14 17 17 14 13z32 15 17 15 15 16 14 17 15 16 15 15 17 12 15 14 14 14 16 14 16 15 15 16 16 13 16 13",
+            "30 17 15 16 15 17 15 15 15 15 15 15 14 15 16 15 17 15 16 15 16 15 14 14 18 16 15 16 15 15 16 16 16 15 16 16 15 14 16 16 15 16 16 16 16 16 16 16 15 15 15 17 15 16 15 16 16 15 15 15 15 15 14 17z31 17 17 17 16 14 15 16 17 16 16 17 15 14 16 15 14 17 13 17 17 16 17 16 14 16 16 14z32 17 15 16 16 15 16 15 15 17 18 16 16 17 17 14 15 16 16 15 15 16 17 15 15 15 15 16",
+            "30 16 15 14 16 15 15 16 17 16 17 14 16 17 16 15 16 15 15 16 15 15 16 16 15 16 14 16 15 16 16 15 16 17 15 15 15 16 15 15 15 15 15 15 16 15 15 16 17 14 15 16 16 15 15 15 16 15 15 15 16 15 15 16z32 16 15 16 16 15 14 15 14 14 14 18 16 12 15 16 16 16 16 14 15 16 17 17 13 16 17 16z33 17 16 15 15 16 18 15 17 17 13 18 14 16 16 16 16 16 16 17 15 14 17 15 16 16 15 15"
+    };
+
     public void testExtraction() throws IOException {
         BufferedImage bi = ImageIO.read(new File(".\\src\\test\\resources\\images\\img01.JPG"));
         ColorLayout cl = new ColorLayout();
@@ -55,4 +75,21 @@ public class ColorLayoutTest extends TestCase {
         System.out.println("Distance: " + cl2.getDistance(cl));
     }
 
+    public void testBaselineDescriptors() throws IOException {
+        for (int i = 0; i < descriptors.length; i++) {
+            ColorLayout cl = new ColorLayout();
+            cl.extract(ImageIO.read(new File("src/test/resources/images/img0" + (i + 1) + ".JPG")));
+            assertEquals(descriptors[i], cl.getStringRepresentation());
+        }
+        for (int i = 0; i < seeds.length; i++) {
+            Random random = new Random(seeds[i]);
+            BufferedImage image = new BufferedImage(32, 32, BufferedImage.TYPE_INT_RGB);
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) image.setRGB(x, y, random.nextInt(0x1000000));
+            }
+            ColorLayout cl = new ColorLayout();
+            cl.extract(image);
+            assertEquals(randomDescriptors[i], cl.getStringRepresentation());
+        }
+    }
 }
@@ -0,0 +1,141 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+package net.semanticmetadata.lire.imageanalysis;
+
+import junit.framework.TestCase;
+import net.semanticmetadata.lire.DocumentBuilder;
+import net.semanticmetadata.lire.impl.GenericFastDocumentBuilder;
+import net.semanticmetadata.lire.utils.SerializationUtils;
+
+import javax.imageio.ImageIO;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Checks the compact feature format of {@link FeatureCodec}.
+ * <br>Date: 18.10.2026
+ */
+public class FeatureCodecTest extends TestCase {
+    private String[] testFiles = new String[]{"img01.JPG", "img02.JPG", "img03.JPG", "img04.JPG", "img05.JPG", "img06.JPG", "img07.JPG", "img08.JPG"};
+    private String testFilesPath = "src/test/resources/images/";
+    private Class[] featureClasses = new Class[]{CEDD.class, FCTH.class, JCD.class, ColorLayout.class, EdgeHistogram.class, ScalableColor.class};
+
+    public void testRoundTrip() throws Exception {
+        for (Class featureClass : featureClasses) {
+            int legacy = 0, compact = 0;
+            for (String file : testFiles) {
+                LireFeature feature = extract(featureClass, file);
+                byte[] b = FeatureCodec.encode(feature);
+                assertTrue(featureClass.getSimpleName(), FeatureCodec.isEncoded(b, 0, b.length));
+                LireFeature decoded = (LireFeature) featureClass.newInstance();
+                decoded.setByteArrayRepresentation(b);
+                LireFeature old = (LireFeature) featureClass.newInstance();
+                old.setByteArrayRepresentation(feature.getByteArrayRepresentation());
+                assertEquals(featureClass.getSimpleName(), 0f, old.getDistance(decoded));
+                assertTrue(featureClass.getSimpleName(), java.util.Arrays.equals(old.getByteArrayRepresentation(), decoded.getByteArrayRepresentation()));
+                legacy += feature.getByteArrayRepresentation().length;
+                compact += b.length;
+            }
+            System.out.println(featureClass.getSimpleName() + ": " + legacy / testFiles.length + " bytes legacy, " + compact / testFiles.length + " bytes compact");
+        }
+    }
+
+    public void testDistances() throws Exception {
+        for (Class featureClass : featureClasses) {
+            LireFeature[] features = new LireFeature[testFiles.length];
+            for (int i = 0; i < testFiles.length; i++) {
+                features[i] = extract(featureClass, testFiles[i]);
+            }
+            for (int i = 0; i < features.length; i++) {
+                for (int j = 0; j < features.length; j++) {
+                    byte[] b = FeatureCodec.encode(features[j]);
+                    byte[] data = new byte[b.length + 13];
+                    System.arraycopy(b, 0, data, 7, b.length);
+                    LireFeature f = (LireFeature) featureClass.newInstance();
+                    f.setByteArrayRepresentation(b);
+                    float distance = features[i].getDistance(f);
+                    assertEquals(featureClass.getSimpleName(), distance, ((ByteArrayDistance) features[i]).getDistance(data, 7, b.length));
+                    // the same as for the legacy format.
+                    f.setByteArrayRepresentation(features[j].getByteArrayRepresentation());
+                    assertEquals(featureClass.getSimpleName(), features[i].getDistance(f), distance);
+                }
+            }
+        }
+    }
+
+    public void testDocumentBuilder() throws Exception {
+        LireFeature feature = extract(CEDD.class, testFiles[0]);
+        // the legacy format is the default, the compact one has to be requested:
+        byte[] b = new GenericFastDocumentBuilder(CEDD.class, DocumentBuilder.FIELD_NAME_CEDD)
+                .createDocument(ImageIO.read(new FileInputStream(testFilesPath + testFiles[0])), "id")
+                .getFieldable(DocumentBuilder.FIELD_NAME_CEDD).getBinaryValue();
+        assertTrue(java.util.Arrays.equals(feature.getByteArrayRepresentation(), b));
+        b = new GenericFastDocumentBuilder(CEDD.class, DocumentBuilder.FIELD_NAME_CEDD, true)
+                .createDocument(ImageIO.read(new FileInputStream(testFilesPath + testFiles[0])), "id")
+                .getFieldable(DocumentBuilder.FIELD_NAME_CEDD).getBinaryValue();
+        assertTrue(java.util.Arrays.equals(FeatureCodec.encode(feature), b));
+    }
+
+    public void testHistogram() {
+        double[] histogram = new double[]{0, 1, 2, 3, 4, 5, 6, 7, 0, 0};
+        double[] decoded = FeatureCodec.decodeHistogram(FeatureCodec.encodeHistogram(histogram), 0);
+        assertTrue(java.util.Arrays.equals(histogram, decoded));
+        histogram = new double[]{0, 0.5, 13.5, 14};
+        decoded = FeatureCodec.decodeHistogram(FeatureCodec.encodeHistogram(histogram), 0);
+        assertTrue(java.util.Arrays.equals(histogram, decoded));
+        assertNull(FeatureCodec.encodeHistogram(new double[]{0, 0.3}));
+        assertNull(FeatureCodec.encodeHistogram(new double[]{0, -1}));
+        assertNull(FeatureCodec.encodeHistogram(new double[]{0, 256}));
+    }
+
+    public void testHalf() {
+        for (int i = 0; i < 65536; i++) {
+            short h = (short) i;
+            float f = SerializationUtils.toFloat(h);
+            if (Float.isNaN(f)) continue;
+            assertEquals(h, SerializationUtils.toHalf(f));
+        }
+        assertEquals(0f, SerializationUtils.toFloat(SerializationUtils.toHalf(0f)));
+        assertEquals(Float.POSITIVE_INFINITY, SerializationUtils.toFloat(SerializationUtils.toHalf(1e6f)));
+        java.util.Random r = new java.util.Random(17);
+        for (int i = 0; i < 100000; i++) {
+            float f = (r.nextFloat() - 0.5f) * 100f;
+            float g = SerializationUtils.toFloat(SerializationUtils.toHalf(f));
+            // relative error is at most half an ulp of the 10 bit mantissa.
+            assertTrue(f + " -> " + g, Math.abs(f - g) <= Math.abs(f) / 2048f + 1e-7f);
+        }
+    }
+
+    private LireFeature extract(Class featureClass, String file) throws IOException, IllegalAccessException, InstantiationException {
+        LireFeature feature = (LireFeature) featureClass.newInstance();
+        feature.extract(ImageIO.read(new FileInputStream(testFilesPath + file)));
+        return feature;
+    }
+}
@@ -33,7 +33,9 @@ package net.semanticmetadata.lire.imageanalysis;
 import junit.framework.TestCase;
 
 import javax.imageio.ImageIO;
+import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.Iterator;
@@ -79,5 +81,44 @@ public class GaborTest extends TestCase {
         }
     }
 
+    /**
+     * The magnitudes of the filter responses are proportional to the gray level, so are the means
+     * and deviations for images of a single gray level.
+     */
+    public void testUniformImage() {
+        double[][] features = new double[2][];
+        for (int i = 0; i < features.length; i++) {
+            BufferedImage image = new BufferedImage(80, 60, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = image.createGraphics();
+            g.setColor(new Color(100 * (i + 1), 100 * (i + 1), 100 * (i + 1)));
+            g.fillRect(0, 0, image.getWidth(), image.getHeight());
+            g.dispose();
+            features[i] = new Gabor().getFeature(image);
+        }
+        for (int i = 0; i < features[0].length; i++) {
+            assertTrue(features[0][i] > 0);
+            assertEquals(2 * features[0][i], features[1][i], 1e-10 * features[1][i]);
+        }
+    }
+
+    public void testPerformance() throws IOException {
+        File[] files = new File("src/test/resources/images/").listFiles();
+        long time = 0;
+        int count = 0;
+        for (File file : files) {
+            if (!file.getName().startsWith("img")) continue;
+            BufferedImage image = ImageIO.read(file);
+            Gabor gabor = new Gabor();
+            long start = System.currentTimeMillis();
+            gabor.extract(image);
+            time += System.currentTimeMillis() - start;
+            count++;
+            Gabor copy = new Gabor();
+            copy.setStringRepresentation(gabor.getStringRepresentation());
+            assertEquals(0f, gabor.getDistance(copy), 0.0001f);
+        }
+        System.out.println("Extracted " + count + " Gabor features in " + time + " ms");
+    }
+
 
-}
\ No newline at end of file
+}
\ No newline at end of file
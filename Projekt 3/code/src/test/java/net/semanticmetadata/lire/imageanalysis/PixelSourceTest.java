@@ -0,0 +1,115 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+package net.semanticmetadata.lire.imageanalysis;
+
+import junit.framework.TestCase;
+import net.semanticmetadata.lire.imageanalysis.utils.PixelSource;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Checks that features extracted from a shared {@link PixelSource} match the per image extraction.
+ * <br>Date: 18.10.2026
+ */
+public class PixelSourceTest extends TestCase {
+    private String[] testFiles = new String[]{"img01.JPG", "img02.JPG", "img03.JPG", "img04.JPG", "img05.JPG", "img06.JPG", "img07.JPG", "img08.JPG"};
+    private String testFilesPath = "src/test/resources/images/";
+    private Class[] featureClasses = new Class[]{CEDD.class, FCTH.class, JCD.class, ColorLayout.class, EdgeHistogram.class, SimpleColorHistogram.class};
+    private int[] imageTypes = new int[]{BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_INT_BGR, BufferedImage.TYPE_BYTE_GRAY};
+
+    public void testPlanes() throws IOException {
+        for (String file : testFiles) {
+            BufferedImage image = ImageIO.read(new FileInputStream(testFilesPath + file));
+            PixelSource source = new PixelSource(image);
+            int[] rgb = source.getRGB();
+            int[] gray = source.getGray();
+            int[][] ycbcr = source.getYCbCr();
+            assertEquals(image.getWidth() * image.getHeight(), rgb.length);
+            for (int y = 0; y < image.getHeight(); y += 7) {
+                for (int x = 0; x < image.getWidth(); x += 7) {
+                    int pixel = image.getRGB(x, y);
+                    int i = y * image.getWidth() + x;
+                    assertEquals(pixel, rgb[i]);
+                    int r = (pixel >> 16) & 0xff, g = (pixel >> 8) & 0xff, b = pixel & 0xff;
+                    assertEquals((int) (0.114 * b + 0.587 * g + 0.299 * r), gray[i]);
+                    assertEquals((int) (219.0 * (0.299 * r + 0.587 * g + 0.114 * b) / 256.0 + 16.5), ycbcr[0][i]);
+                }
+            }
+            // arrays are computed only once
+            assertTrue(rgb == source.getRGB());
+            assertTrue(ycbcr == source.getYCbCr());
+        }
+    }
+
+    public void testSharedSource() throws Exception {
+        for (String file : testFiles) {
+            BufferedImage original = ImageIO.read(new FileInputStream(testFilesPath + file));
+            for (int type : imageTypes) {
+                BufferedImage image = new BufferedImage(original.getWidth(), original.getHeight(), type);
+                image.getGraphics().drawImage(original, 0, 0, null);
+                assertEquals(type != BufferedImage.TYPE_BYTE_GRAY, new PixelSource(image).isRGBRaster());
+                PixelSource source = new PixelSource(image);
+                for (Class featureClass : featureClasses) {
+                    // SimpleColorHistogram supports RGB images only
+                    if (featureClass == SimpleColorHistogram.class && type == BufferedImage.TYPE_BYTE_GRAY) continue;
+                    LireFeature single = (LireFeature) featureClass.newInstance();
+                    single.extract(image);
+                    PixelSourceFeature shared = (PixelSourceFeature) featureClass.newInstance();
+                    shared.extract(source);
+                    assertTrue(featureClass.getSimpleName() + " " + file + " " + type,
+                            Arrays.equals(single.getByteArrayRepresentation(), shared.getByteArrayRepresentation()));
+                }
+            }
+        }
+    }
+
+    public void testPerformance() throws Exception {
+        BufferedImage image = ImageIO.read(new FileInputStream(testFilesPath + testFiles[0]));
+        long separate = 0, shared = 0;
+        for (int run = 0; run < 5; run++) {
+            long ms = System.currentTimeMillis();
+            for (Class featureClass : featureClasses) {
+                ((LireFeature) featureClass.newInstance()).extract(image);
+            }
+            separate += System.currentTimeMillis() - ms;
+            ms = System.currentTimeMillis();
+            PixelSource source = new PixelSource(image);
+            for (Class featureClass : featureClasses) {
+                ((PixelSourceFeature) featureClass.newInstance()).extract(source);
+            }
+            shared += System.currentTimeMillis() - ms;
+        }
+        System.out.println("separate: " + separate / 5 + " ms, shared pixel source: " + shared / 5 + " ms");
+    }
+}
@@ -31,8 +31,12 @@
 package net.semanticmetadata.lire.imageanalysis;
 
 import junit.framework.TestCase;
+import net.semanticmetadata.lire.utils.ImageUtils;
 
 import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.color.ColorSpace;
+import java.awt.image.ColorConvertOp;
 import java.awt.image.BufferedImage;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -77,5 +81,58 @@ public class TamuraTest extends TestCase {
         }
     }
 
+    /**
+     * Compares the averages over the neighborhoods taken from the summed-area table with the sums
+     * over the neighborhoods, pixels outside the image take the value of the nearest one inside.
+     */
+    public void testAverageOverNeighborhoods() throws IOException {
+        BufferedImage image = ImageIO.read(new FileInputStream("src/test/resources/images/img01.JPG"));
+        Tamura tamura = new Tamura();
+        tamura.extract(image);
+        ColorConvertOp op = new ColorConvertOp(image.getColorModel().getColorSpace(),
+                ColorSpace.getInstance(ColorSpace.CS_GRAY),
+                new RenderingHints(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY));
+        BufferedImage gray = ImageUtils.scaleImage(op.filter(image, null), Tamura.MAX_IMG_HEIGHT);
+        int width = gray.getWidth(), height = gray.getHeight();
+        int[] pixels = gray.getRaster().getSamples(0, 0, width, height, 0, new int[width * height]);
+        for (int k = 0; k < 3; k++) {
+            int half = k > 0 ? 1 << (k - 1) : 0;
+            int border = 1 << (2 * k);
+            for (int y = -20; y < height + 20; y += 3) {
+                for (int x = -20; x < width + 20; x++) {
+                    double sum = 0;
+                    for (int j = 0; j < border; j++) {
+                        for (int i = 0; i < border; i++) {
+                            int x0 = Math.min(Math.max(x - half + i, 0), width - 1);
+                            int y0 = Math.min(Math.max(y - half + j, 0), height - 1);
+                            sum += pixels[y0 * width + x0];
+                        }
+                    }
+                    assertEquals(sum / border, tamura.averageOverNeighborhoods(x, y, k), 0.0);
+                }
+            }
+        }
+    }
+
+    public void testImageSize() throws IOException {
+        BufferedImage image = ImageIO.read(new FileInputStream("src/test/resources/images/img01.JPG"));
+        int maxImageHeight = Tamura.MAX_IMG_HEIGHT;
+        try {
+            for (int size = 64; size <= 512; size *= 2) {
+                Tamura.MAX_IMG_HEIGHT = size;
+                Tamura tamura = new Tamura();
+                long time = System.currentTimeMillis();
+                tamura.extract(image);
+                time = System.currentTimeMillis() - time;
+                System.out.println(size + " pixels: " + time + " ms, " + tamura.getStringRepresentation());
+                Tamura copy = new Tamura();
+                copy.setStringRepresentation(tamura.getStringRepresentation());
+                assertEquals(0f, tamura.getDistance(copy), 0.0001f);
+            }
+        } finally {
+            Tamura.MAX_IMG_HEIGHT = maxImageHeight;
+        }
+    }
+
 
-}
\ No newline at end of file
+}
\ No newline at end of file
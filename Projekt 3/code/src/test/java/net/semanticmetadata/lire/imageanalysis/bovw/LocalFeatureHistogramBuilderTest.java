@@ -0,0 +1,163 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+package net.semanticmetadata.lire.imageanalysis.bovw;
+
+import junit.framework.TestCase;
+import net.semanticmetadata.lire.DocumentBuilder;
+import net.semanticmetadata.lire.clustering.Cluster;
+import net.semanticmetadata.lire.impl.SurfDocumentBuilder;
+import net.semanticmetadata.lire.utils.LuceneUtils;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.RAMDirectory;
+
+import javax.imageio.ImageIO;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.Arrays;
+
+/**
+ * Checks the selection of the documents for the vocabulary in {@link LocalFeatureHistogramBuilder}.
+ * <br>Date: 18.10.2026
+ */
+public class LocalFeatureHistogramBuilderTest extends TestCase {
+    private String[] testFiles = new String[]{"img01.JPG", "img02.JPG", "img03.JPG", "img04.JPG", "img05.JPG", "img06.JPG", "img07.JPG", "img08.JPG"};
+    private String testFilesPath = "src/test/resources/images/";
+
+    public void testSelectVocabularyDocs() throws Exception {
+        RAMDirectory directory = new RAMDirectory();
+        IndexWriter iw = LuceneUtils.createIndexWriter(directory, true, LuceneUtils.AnalyzerType.WhitespaceAnalyzer);
+        for (int i = 0; i < 100; i++) {
+            Document d = new Document();
+            d.add(new Field(DocumentBuilder.FIELD_NAME_IDENTIFIER, "doc" + i, Field.Store.YES, Field.Index.NOT_ANALYZED));
+            iw.addDocument(d);
+        }
+        iw.commit();
+        for (int i = 0; i < 100; i += 10) {
+            iw.deleteDocuments(new Term(DocumentBuilder.FIELD_NAME_IDENTIFIER, "doc" + i));
+        }
+        iw.close();
+        IndexReader reader = IndexReader.open(directory);
+        assertEquals(90, reader.numDocs());
+
+        SurfFeatureHistogramBuilder builder = new SurfFeatureHistogramBuilder(reader, 30);
+        int[] counts = new int[reader.maxDoc()];
+        int runs = 3000;
+        for (int run = 0; run < runs; run++) {
+            int[] docs = builder.selectVocabularyDocs();
+            assertEquals(30, docs.length);
+            for (int i = 0; i < docs.length; i++) {
+                assertFalse(reader.isDeleted(docs[i]));
+                if (i > 0) assertTrue(docs[i - 1] < docs[i]);
+                counts[docs[i]]++;
+            }
+        }
+        // each document is selected with a probability of 30 / 90:
+        for (int i = 0; i < counts.length; i++) {
+            if (reader.isDeleted(i)) assertEquals(0, counts[i]);
+            else assertEquals(runs / 3d, counts[i], runs / 3d * 0.15);
+        }
+
+        // the same seed selects the same documents:
+        builder.setSeed(42);
+        int[] docs = builder.selectVocabularyDocs();
+        builder.setSeed(42);
+        assertTrue(Arrays.equals(docs, builder.selectVocabularyDocs()));
+        // all documents are selected if there are not enough:
+        assertEquals(90, new SurfFeatureHistogramBuilder(reader, 1000).selectVocabularyDocs().length);
+        reader.close();
+    }
+
+    public void testReproducibleVocabulary() throws Exception {
+        RAMDirectory directory = new RAMDirectory();
+        IndexWriter iw = LuceneUtils.createIndexWriter(directory, true, LuceneUtils.AnalyzerType.WhitespaceAnalyzer);
+        SurfDocumentBuilder surf = new SurfDocumentBuilder();
+        for (String file : testFiles) {
+            iw.addDocument(surf.createDocument(ImageIO.read(new FileInputStream(testFilesPath + file)), file));
+        }
+        iw.close();
+        IndexReader reader = IndexReader.open(directory);
+        Cluster[][] vocabularies = new Cluster[2][];
+        for (int i = 0; i < vocabularies.length; i++) {
+            SurfFeatureHistogramBuilder builder = new SurfFeatureHistogramBuilder(reader, 4, 32);
+            builder.setClusteringEngine(LocalFeatureHistogramBuilder.ClusteringEngine.FastKMeans);
+            builder.setSeed(7);
+            vocabularies[i] = builder.createVocabulary();
+        }
+        assertEquals(32, vocabularies[0].length);
+        for (int i = 0; i < vocabularies[0].length; i++) {
+            assertTrue(Arrays.equals(vocabularies[0][i].getByteRepresentation(), vocabularies[1][i].getByteRepresentation()));
+        }
+        reader.close();
+    }
+
+    /**
+     * The visual words are stored binary, indexMissing has to find them nevertheless and must not
+     * update the documents having them already.
+     */
+    public void testIndexMissing() throws Exception {
+        RAMDirectory directory = new RAMDirectory();
+        IndexWriter iw = LuceneUtils.createIndexWriter(directory, true, LuceneUtils.AnalyzerType.WhitespaceAnalyzer);
+        SurfDocumentBuilder surf = new SurfDocumentBuilder();
+        for (String file : testFiles) {
+            iw.addDocument(surf.createDocument(ImageIO.read(new FileInputStream(testFilesPath + file)), file));
+        }
+        iw.close();
+        File clusterFile = File.createTempFile("clusters", ".dat");
+        try {
+            IndexReader reader = IndexReader.open(directory);
+            SurfFeatureHistogramBuilder builder = new SurfFeatureHistogramBuilder(reader, 4, 16);
+            builder.clusterFile = clusterFile.getPath();
+            Vocabulary.write(builder.createVocabulary(), 0, builder.clusterFile);
+            assertEquals(testFiles.length, builder.indexMissing());
+            reader.close();
+
+            reader = IndexReader.open(directory);
+            long version = reader.getVersion();
+            for (int i = 0; i < reader.maxDoc(); i++) {
+                assertNotNull(reader.document(i).getBinaryValue(DocumentBuilder.FIELD_NAME_SURF_LOCAL_FEATURE_HISTOGRAM_VISUAL_WORDS));
+            }
+            builder = new SurfFeatureHistogramBuilder(reader, 4, 16);
+            builder.clusterFile = clusterFile.getPath();
+            assertEquals(0, builder.indexMissing());
+            reader.close();
+            reader = IndexReader.open(directory);
+            assertEquals(version, reader.getVersion());
+            assertEquals(testFiles.length, reader.numDocs());
+            reader.close();
+        } finally {
+            clusterFile.delete();
+            new File(clusterFile.getPath() + LocalFeatureHistogramBuilder.TREE_EXTENSION).delete();
+        }
+    }
+}
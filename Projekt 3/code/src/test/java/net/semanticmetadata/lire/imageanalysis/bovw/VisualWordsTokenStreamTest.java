@@ -0,0 +1,141 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+package net.semanticmetadata.lire.imageanalysis.bovw;
+
+import junit.framework.TestCase;
+import net.semanticmetadata.lire.DocumentBuilder;
+import net.semanticmetadata.lire.ImageSearchHits;
+import net.semanticmetadata.lire.impl.VisualWordsImageSearcher;
+import net.semanticmetadata.lire.utils.LuceneUtils;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.RAMDirectory;
+
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Checks that the visual words written by {@link VisualWordsTokenStream} are found the same way as
+ * the whitespace separated visual words used before.
+ * <br>Date: 18.10.2026
+ */
+public class VisualWordsTokenStreamTest extends TestCase {
+    private String field = DocumentBuilder.FIELD_NAME_SURF_LOCAL_FEATURE_HISTOGRAM_VISUAL_WORDS;
+
+    public void testTerms() throws Exception {
+        Random random = new Random(7);
+        for (int run = 0; run < 100; run++) {
+            int[] histogram = createHistogram(random, 1 + random.nextInt(2000));
+            HashMap<String, Integer> expected = countTerms(new WhitespaceAnalyzer(LuceneUtils.LUCENE_VERSION).tokenStream(field, new StringReader(toVisualWordString(histogram))));
+            TokenStream stream = new VisualWordsTokenStream(histogram);
+            assertEquals(expected, countTerms(stream));
+            stream.reset();
+            assertEquals(expected, countTerms(stream));
+        }
+    }
+
+    public void testSearch() throws Exception {
+        Random random = new Random(11);
+        int[][] histograms = new int[200][];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = createHistogram(random, 500);
+        }
+        // the same documents once with whitespace separated visual words and once with the token stream:
+        SurfFeatureHistogramBuilder builder = new SurfFeatureHistogramBuilder(null, 0);
+        RAMDirectory stringDirectory = new RAMDirectory();
+        RAMDirectory streamDirectory = new RAMDirectory();
+        IndexWriter stringWriter = LuceneUtils.createIndexWriter(stringDirectory, true, LuceneUtils.AnalyzerType.WhitespaceAnalyzer);
+        IndexWriter streamWriter = LuceneUtils.createIndexWriter(streamDirectory, true, LuceneUtils.AnalyzerType.WhitespaceAnalyzer);
+        for (int i = 0; i < histograms.length; i++) {
+            Document d = new Document();
+            d.add(new Field(DocumentBuilder.FIELD_NAME_IDENTIFIER, "doc" + i, Field.Store.YES, Field.Index.NOT_ANALYZED));
+            d.add(new Field(field, toVisualWordString(histograms[i]), Field.Store.YES, Field.Index.ANALYZED));
+            stringWriter.addDocument(d);
+            d = new Document();
+            d.add(new Field(DocumentBuilder.FIELD_NAME_IDENTIFIER, "doc" + i, Field.Store.YES, Field.Index.NOT_ANALYZED));
+            builder.setVisualWords(d, histograms[i], 1);
+            streamWriter.addDocument(d);
+        }
+        stringWriter.close();
+        streamWriter.close();
+
+        IndexReader stringReader = IndexReader.open(stringDirectory);
+        IndexReader streamReader = IndexReader.open(streamDirectory);
+        VisualWordsImageSearcher searcher = new VisualWordsImageSearcher(20, field);
+        for (int i = 0; i < 20; i++) {
+            ImageSearchHits expected = searcher.search(stringReader.document(i), stringReader);
+            ImageSearchHits hits = searcher.search(streamReader.document(i), streamReader);
+            assertEquals(expected.length(), hits.length());
+            for (int j = 0; j < hits.length(); j++) {
+                assertEquals(expected.score(j), hits.score(j), 1e-6f);
+            }
+            assertEquals("doc" + i, hits.doc(0).get(DocumentBuilder.FIELD_NAME_IDENTIFIER));
+        }
+        stringReader.close();
+        streamReader.close();
+    }
+
+    private int[] createHistogram(Random random, int size) {
+        int[] histogram = new int[size];
+        for (int i = 0; i < histogram.length; i++) {
+            if (random.nextInt(4) == 0) histogram[i] = 1 + random.nextInt(5);
+        }
+        return histogram;
+    }
+
+    private String toVisualWordString(int[] histogram) {
+        StringBuilder sb = new StringBuilder(1024);
+        for (int i = 0; i < histogram.length; i++) {
+            for (int j = 0; j < histogram[i]; j++) {
+                sb.append('v');
+                sb.append(i);
+                sb.append(' ');
+            }
+        }
+        return sb.toString();
+    }
+
+    private HashMap<String, Integer> countTerms(TokenStream stream) throws Exception {
+        CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+        HashMap<String, Integer> result = new HashMap<String, Integer>();
+        while (stream.incrementToken()) {
+            String t = term.toString();
+            Integer count = result.get(t);
+            result.put(t, count == null ? 1 : count + 1);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+package net.semanticmetadata.lire.imageanalysis.bovw;
+
+import junit.framework.TestCase;
+import net.semanticmetadata.lire.DocumentBuilder;
+import net.semanticmetadata.lire.impl.SurfDocumentBuilder;
+import net.semanticmetadata.lire.utils.LuceneUtils;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.FSDirectory;
+
+import javax.imageio.ImageIO;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Checks incremental indexing of visual words with the {@link VocabularyManager}.
+ * <br>Date: 18.10.2026
+ */
+public class VocabularyManagerTest extends TestCase {
+    private String[] testFiles = new String[]{"img01.JPG", "img02.JPG", "img03.JPG", "img04.JPG", "img05.JPG", "img06.JPG", "img07.JPG", "img08.JPG"};
+    private String testFilesPath = "src/test/resources/images/";
+
+    public void testIncrementalIndexing() throws Exception {
+        File dir = File.createTempFile("vocabulary", "");
+        dir.delete();
+        dir.mkdirs();
+        String index = new File(dir, "index").getPath();
+        String clusterFile = new File(dir, "clusters-surf.dat").getPath();
+        try {
+            // index the first images and create the vocabulary:
+            IndexWriter iw = LuceneUtils.createIndexWriter(index, true);
+            SurfDocumentBuilder surf = new SurfDocumentBuilder();
+            for (int i = 0; i < 6; i++) {
+                iw.addDocument(surf.createDocument(ImageIO.read(new FileInputStream(testFilesPath + testFiles[i])), testFiles[i]));
+            }
+            iw.close();
+            IndexReader reader = IndexReader.open(FSDirectory.open(new File(index)));
+            SurfFeatureHistogramBuilder builder = new SurfFeatureHistogramBuilder(reader, 6, 32);
+            builder.clusterFile = clusterFile;
+            builder.index();
+            reader.close();
+
+            // new documents get their visual words when they are created:
+            VocabularyManager manager = new VocabularyManager(builder);
+            long version = manager.getVocabulary().getVersion();
+            reader = IndexReader.open(FSDirectory.open(new File(index)));
+            Document indexed = findDocument(reader, testFiles[0]);
+            reader.close();
+            SurfDocumentBuilder incremental = new SurfDocumentBuilder(manager);
+            Document d = incremental.createDocument(ImageIO.read(new FileInputStream(testFilesPath + testFiles[0])), testFiles[0]);
+            assertEquals(indexed.get(DocumentBuilder.FIELD_NAME_SURF_LOCAL_FEATURE_HISTOGRAM), d.get(DocumentBuilder.FIELD_NAME_SURF_LOCAL_FEATURE_HISTOGRAM));
+            assertEquals(Long.toString(version), d.get(builder.getVocabularyVersionFieldName()));
+            iw = LuceneUtils.createIndexWriter(index, false);
+            for (int i = 6; i < testFiles.length; i++) {
+                iw.addDocument(incremental.createDocument(ImageIO.read(new FileInputStream(testFilesPath + testFiles[i])), testFiles[i]));
+            }
+            iw.close();
+
+            // all documents are up to date:
+            reader = IndexReader.open(FSDirectory.open(new File(index)));
+            iw = LuceneUtils.createIndexWriter(index, false);
+            assertEquals(0, manager.update(reader, iw));
+            iw.close();
+
+            // the version does not depend on the modification time of the cluster file:
+            new File(clusterFile).setLastModified(System.currentTimeMillis() - 60000);
+            assertEquals(version, Vocabulary.read(clusterFile, 0).getVersion());
+
+            // create a new vocabulary in the background and update the documents:
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            Vocabulary vocabulary = manager.recluster(new SurfFeatureHistogramBuilder(reader, 8, 16), executor).get();
+            executor.shutdown();
+            reader.close();
+            assertTrue(vocabulary == manager.getVocabulary());
+            assertEquals(16, vocabulary.size());
+            assertTrue(version != vocabulary.getVersion());
+            assertEquals(vocabulary.getVersion(), Vocabulary.read(clusterFile, 0).getVersion());
+            reader = IndexReader.open(FSDirectory.open(new File(index)));
+            iw = LuceneUtils.createIndexWriter(index, false);
+            assertEquals(testFiles.length, manager.update(reader, iw));
+            iw.close();
+            reader.close();
+            reader = IndexReader.open(FSDirectory.open(new File(index)));
+            assertEquals(testFiles.length, reader.numDocs());
+            for (int i = 0; i < reader.maxDoc(); i++) {
+                if (reader.isDeleted(i)) continue;
+                assertEquals(Long.toString(vocabulary.getVersion()), reader.document(i).get(builder.getVocabularyVersionFieldName()));
+            }
+            reader.close();
+        } finally {
+            delete(dir);
+        }
+    }
+
+    private Document findDocument(IndexReader reader, String identifier) throws Exception {
+        for (int i = 0; i < reader.maxDoc(); i++) {
+            if (!reader.isDeleted(i) && identifier.equals(reader.document(i).get(DocumentBuilder.FIELD_NAME_IDENTIFIER)))
+                return reader.document(i);
+        }
+        return null;
+    }
+
+    private void delete(File file) {
+        if (file.isDirectory()) {
+            for (File f : file.listFiles()) delete(f);
+        }
+        file.delete();
+    }
+}
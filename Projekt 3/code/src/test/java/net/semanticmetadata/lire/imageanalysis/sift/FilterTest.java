@@ -0,0 +1,92 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+package net.semanticmetadata.lire.imageanalysis.sift;
+
+import junit.framework.TestCase;
+
+import javax.imageio.ImageIO;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Checks the separable convolution against a straightforward one and the incrementally built
+ * gaussian images of a {@link FloatArray2DScaleOctave} against the ones created from the first image.
+ * <br>Date: 18.10.2026
+ */
+public class FilterTest extends TestCase {
+    public void testConvolveSeparable() {
+        Random random = new Random(1);
+        int[][] sizes = new int[][]{{64, 48}, {17, 31}, {5, 3}, {1, 1}, {700, 2}};
+        float[] temp = new float[700 * 48];
+        for (int[] size : sizes) {
+            FloatArray2D input = new FloatArray2D(size[0], size[1]);
+            for (int i = 0; i < input.data.length; i++) input.data[i] = random.nextFloat();
+            float[] h = Filter.createGaussianKernel1D(1.5f, true);
+            float[] v = Filter.createGaussianKernel1D(0.7f, true);
+            FloatArray2D output = Filter.convolveSeparable(input, h, v, new FloatArray2D(size[0], size[1]), temp);
+            for (int y = 0; y < input.height; y++) {
+                for (int x = 0; x < input.width; x++) {
+                    float expected = 0;
+                    for (int yk = 0; yk < v.length; yk++) {
+                        int ys = Filter.flipInRange(y + yk - v.length / 2, input.height);
+                        for (int xk = 0; xk < h.length; xk++) {
+                            int xs = Filter.flipInRange(x + xk - h.length / 2, input.width);
+                            expected += h[xk] * v[yk] * input.get(xs, ys);
+                        }
+                    }
+                    assertEquals(expected, output.get(x, y), 1e-5f);
+                }
+            }
+        }
+    }
+
+    public void testBuildOctave() throws IOException {
+        FloatArray2D image = ImageArrayConverter.ImageToFloatArray2D(ImageIO.read(new File("src/test/resources/images/img01.JPG")));
+        Filter.enhance(image, 1.0f);
+        FloatArray2DScaleOctave octave = new FloatArray2DScaleOctave(image, 3, 1.6f);
+        octave.buildStub();
+        FloatArray2D stub = octave.getL(1);
+        long time = System.currentTimeMillis();
+        octave.build(new float[image.width * image.height]);
+        System.out.println("Built octave of " + image.width + " x " + image.height + " in " + (System.currentTimeMillis() - time) + " ms");
+        // the stub is kept as gaussian image with 2 * INITIAL_SIGMA:
+        assertTrue(stub == octave.getL(3));
+        for (int i = 1; i < octave.SIGMA.length; i++) {
+            float sigma = (float) Math.sqrt(octave.SIGMA[i] * octave.SIGMA[i] - octave.SIGMA[0] * octave.SIGMA[0]);
+            float[] kernel = Filter.createGaussianKernel1D(sigma, true);
+            FloatArray2D expected = Filter.convolveSeparable(image, kernel, kernel);
+            float[] l = octave.getL(i).data;
+            for (int j = 0; j < l.length; j++) {
+                assertEquals(expected.data[j], l[j], 0.005f);
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+package net.semanticmetadata.lire.imageanalysis.sift;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Checks the two nearest neighbours found by the {@link KDTree} against a linear search.
+ * <br>Date: 18.10.2026
+ */
+public class KDTreeTest extends TestCase {
+    public void testExactSearch() {
+        Random random = new Random(1);
+        ArrayList<Feature> features = createFeatures(random, 2000);
+        KDTree tree = new KDTree(features);
+        int[] nearest = new int[2];
+        float[] distances = new float[2];
+        for (int i = 0; i < 200; i++) {
+            float[] query = createFeatures(random, 1).get(0).descriptor;
+            tree.findTwoNearest(query, tree.size(), nearest, distances);
+            int[] expected = linearSearch(features, query);
+            assertEquals(expected[0], nearest[0]);
+            assertEquals(expected[1], nearest[1]);
+            assertEquals(squaredDistance(features.get(expected[0]).descriptor, query), distances[0], 1e-3f);
+        }
+        // duplicates and a single feature:
+        ArrayList<Feature> duplicates = new ArrayList<Feature>();
+        for (int i = 0; i < 20; i++) duplicates.add(features.get(0));
+        new KDTree(duplicates).findTwoNearest(features.get(0).descriptor, 100, nearest, distances);
+        assertEquals(0f, distances[0], 0f);
+        assertEquals(0f, distances[1], 0f);
+        duplicates.clear();
+        duplicates.add(features.get(0));
+        new KDTree(duplicates).findTwoNearest(features.get(1).descriptor, 100, nearest, distances);
+        assertEquals(0, nearest[0]);
+        assertEquals(-1, nearest[1]);
+    }
+
+    public void testApproximateSearch() {
+        Random random = new Random(2);
+        ArrayList<Feature> features = createFeatures(random, 5000);
+        KDTree tree = new KDTree(features);
+        int[] nearest = new int[2];
+        float[] distances = new float[2];
+        int found = 0, queries = 500;
+        long time = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            // a noisy copy of a feature of the tree:
+            float[] query = features.get(random.nextInt(features.size())).descriptor.clone();
+            for (int j = 0; j < query.length; j++) query[j] += random.nextFloat() * 0.05f;
+            tree.findTwoNearest(query, 200, nearest, distances);
+            if (nearest[0] == linearSearch(features, query)[0]) found++;
+        }
+        time = System.nanoTime() - time;
+        System.out.printf("%d of %d nearest neighbours found with 200 checks, %.2f ms per query including the linear search\n", found, queries, time / 1000000d / queries);
+        assertTrue(found > queries * 0.9);
+    }
+
+    private int[] linearSearch(ArrayList<Feature> features, float[] query) {
+        int[] result = new int[]{-1, -1};
+        float first = Float.MAX_VALUE, second = Float.MAX_VALUE;
+        for (int i = 0; i < features.size(); i++) {
+            float d = squaredDistance(features.get(i).descriptor, query);
+            if (d < first) {
+                result[1] = result[0];
+                second = first;
+                result[0] = i;
+                first = d;
+            } else if (d < second) {
+                result[1] = i;
+                second = d;
+            }
+        }
+        return result;
+    }
+
+    private float squaredDistance(float[] a, float[] b) {
+        float sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += (a[i] - b[i]) * (a[i] - b[i]);
+        }
+        return sum;
+    }
+
+    /**
+     * Features with 128 dimensional descriptors clustered around a few centers like real SIFT descriptors.
+     */
+    private ArrayList<Feature> createFeatures(Random random, int count) {
+        ArrayList<Feature> features = new ArrayList<Feature>(count);
+        Random centers = new Random(42);
+        float[][] means = new float[50][128];
+        for (float[] mean : means) {
+            for (int j = 0; j < mean.length; j++) mean[j] = centers.nextFloat();
+        }
+        for (int i = 0; i < count; i++) {
+            float[] mean = means[random.nextInt(means.length)];
+            float[] descriptor = new float[128];
+            for (int j = 0; j < descriptor.length; j++) {
+                descriptor[j] = mean[j] + (float) random.nextGaussian() * 0.1f;
+            }
+            features.add(new Feature(1f, 0f, new float[]{0f, 0f}, descriptor));
+        }
+        return features;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+package net.semanticmetadata.lire.imageanalysis.utils;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+/**
+ * Compares the {@link DCT} to the definition.
+ * <br>Date: 18.10.2026
+ */
+public class DCTTest extends TestCase {
+    public void testForward() {
+        Random random = new Random(1);
+        double[] block = new double[64];
+        for (int n = 0; n < 100; n++) {
+            for (int i = 0; i < 64; i++) block[i] = random.nextInt(256) - 128;
+            double[] expected = definition(block);
+            DCT.forward(block);
+            for (int i = 0; i < 64; i++) {
+                assertEquals(expected[i], block[i], 1e-9);
+            }
+        }
+    }
+
+    public void testInverse() {
+        Random random = new Random(2);
+        double[] block = new double[64];
+        double[] original = new double[64];
+        for (int n = 0; n < 100; n++) {
+            for (int i = 0; i < 64; i++) original[i] = block[i] = random.nextInt(256) - 128;
+            DCT.forward(block);
+            DCT.inverse(block);
+            for (int i = 0; i < 64; i++) {
+                assertEquals(original[i], block[i], 1e-9);
+            }
+        }
+        // a single coefficient gives its basis function:
+        for (int i = 0; i < 64; i++) block[i] = 0;
+        block[8 * 2 + 3] = 1;
+        DCT.inverse(block);
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 8; x++) {
+                double expected = Math.cos((2 * x + 1) * 3 * Math.PI / 16) * Math.cos((2 * y + 1) * 2 * Math.PI / 16) / 4;
+                assertEquals(expected, block[8 * y + x], 1e-9);
+            }
+        }
+    }
+
+    public void testInteger() {
+        Random random = new Random(3);
+        int[] block = new int[64];
+        double[] temp = new double[64];
+        double[] samples = new double[64];
+        for (int n = 0; n < 100; n++) {
+            for (int i = 0; i < 64; i++) samples[i] = block[i] = random.nextInt(256);
+            double[] expected = definition(samples);
+            DCT.forward(block, temp);
+            for (int i = 0; i < 64; i++) {
+                assertEquals(Math.round(expected[i]), block[i], 1);
+            }
+            DCT.inverse(block, temp);
+            for (int i = 0; i < 64; i++) {
+                assertEquals(samples[i], block[i], 2);
+            }
+        }
+    }
+
+    public void testPerformance() {
+        Random random = new Random(4);
+        double[] block = new double[64];
+        for (int i = 0; i < 64; i++) block[i] = random.nextInt(256) - 128;
+        int blocks = 200000;
+        long time = System.nanoTime();
+        for (int n = 0; n < blocks; n++) {
+            DCT.forward(block);
+            DCT.inverse(block);
+        }
+        time = System.nanoTime() - time;
+        System.out.printf("%.1f ns per forward and inverse transform of a block\n", time / (double) blocks);
+    }
+
+    private double[] definition(double[] block) {
+        double[] result = new double[64];
+        for (int v = 0; v < 8; v++) {
+            for (int u = 0; u < 8; u++) {
+                double sum = 0;
+                for (int y = 0; y < 8; y++) {
+                    for (int x = 0; x < 8; x++) {
+                        sum += block[8 * y + x] * Math.cos((2 * x + 1) * u * Math.PI / 16) * Math.cos((2 * y + 1) * v * Math.PI / 16);
+                    }
+                }
+                double cu = u == 0 ? 1 / Math.sqrt(2) : 1;
+                double cv = v == 0 ? 1 / Math.sqrt(2) : 1;
+                result[8 * v + u] = cu * cv * sum / 4;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+package net.semanticmetadata.lire.impl;
+
+import junit.framework.TestCase;
+import net.semanticmetadata.lire.DocumentBuilder;
+import net.semanticmetadata.lire.DocumentBuilderFactory;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Fieldable;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.FileInputStream;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Checks sequential and parallel {@link ChainedDocumentBuilder}s against the single builders.
+ * <br>Date: 18.10.2026
+ */
+public class ChainedDocumentBuilderTest extends TestCase {
+    private String[] testFiles = new String[]{"img01.JPG", "img02.JPG", "img03.JPG", "img04.JPG", "img05.JPG", "img06.JPG", "img07.JPG", "img08.JPG"};
+    private String testFilesPath = "src/test/resources/images/";
+
+    public void testParallelBuilder() throws Exception {
+        DocumentBuilder[] builders = new DocumentBuilder[]{DocumentBuilderFactory.getCEDDDocumentBuilder(),
+                DocumentBuilderFactory.getFCTHDocumentBuilder(), DocumentBuilderFactory.getAutoColorCorrelogramDocumentBuilder(),
+                DocumentBuilderFactory.getGaborDocumentBuilder(), DocumentBuilderFactory.getTamuraDocumentBuilder(),
+                new SurfDocumentBuilder()};
+        ForkJoinPool pool = new ForkJoinPool();
+        ChainedDocumentBuilder sequential = new ChainedDocumentBuilder();
+        ChainedDocumentBuilder parallel = new ChainedDocumentBuilder(pool);
+        for (DocumentBuilder builder : builders) {
+            sequential.addBuilder(builder);
+            parallel.addBuilder(builder);
+        }
+        long sequentialTime = 0, parallelTime = 0;
+        for (String file : testFiles) {
+            BufferedImage image = ImageIO.read(new FileInputStream(testFilesPath + file));
+            long time = System.currentTimeMillis();
+            Document s = sequential.createDocument(image, file);
+            sequentialTime += System.currentTimeMillis() - time;
+            time = System.currentTimeMillis();
+            Document p = parallel.createDocument(image, file);
+            parallelTime += System.currentTimeMillis() - time;
+            // the fields of the single builders, each scaling the image itself.
+            List<Fieldable> expected = new LinkedList<Fieldable>();
+            expected.add(s.getFieldable(DocumentBuilder.FIELD_NAME_IDENTIFIER));
+            for (DocumentBuilder builder : builders) {
+                for (Fieldable f : builder.createDocument(image, null).getFields()) expected.add(f);
+            }
+            assertFields(expected, s.getFields());
+            assertFields(expected, p.getFields());
+        }
+        System.out.println("sequential: " + sequentialTime + " ms, parallel: " + parallelTime + " ms with " + pool.getParallelism() + " threads");
+        pool.shutdown();
+    }
+
+    private void assertFields(List<Fieldable> expected, List<Fieldable> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Fieldable e = expected.get(i), a = actual.get(i);
+            assertEquals(e.name(), a.name());
+            if (e.isBinary()) assertTrue(e.name(), Arrays.equals(e.getBinaryValue(), a.getBinaryValue()));
+            else assertEquals(e.name(), e.stringValue(), a.stringValue());
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+package net.semanticmetadata.lire.impl;
+
+import junit.framework.TestCase;
+import net.semanticmetadata.lire.DocumentBuilder;
+import net.semanticmetadata.lire.ImageSearchHits;
+import net.semanticmetadata.lire.imageanalysis.bovw.SurfFeatureHistogramBuilder;
+import net.semanticmetadata.lire.imageanalysis.bovw.VisualWordsTokenStream;
+import net.semanticmetadata.lire.imageanalysis.bovw.VocabularyManager;
+import net.semanticmetadata.lire.utils.LuceneUtils;
+import net.semanticmetadata.lire.utils.SerializationUtils;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.store.RAMDirectory;
+
+import javax.imageio.ImageIO;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks the {@link InvertedFile} against the postings of Lucene and the early termination of the
+ * {@link InvertedFileImageSearcher} against scoring all documents.
+ * <br>Date: 18.10.2026
+ */
+public class InvertedFileImageSearcherTest extends TestCase {
+    private String[] testFiles = new String[]{"img01.JPG", "img02.JPG", "img03.JPG", "img04.JPG", "img05.JPG", "img06.JPG", "img07.JPG", "img08.JPG"};
+    private String testFilesPath = "src/test/resources/images/";
+    private String field = DocumentBuilder.FIELD_NAME_SURF_LOCAL_FEATURE_HISTOGRAM_VISUAL_WORDS;
+
+    public void testPostings() throws Exception {
+        Random random = new Random(1);
+        IndexReader reader = createIndex(random, 3000, 500);
+        InvertedFile file = InvertedFile.getInvertedFile(reader, field);
+        assertTrue(file == InvertedFile.getInvertedFile(reader, field));
+        TermDocs termDocs = reader.termDocs();
+        for (int word = 0; word < 500; word++) {
+            termDocs.seek(new Term(field, VisualWordsTokenStream.getTerm(word)));
+            InvertedFile.Postings postings = file.getPostings(word);
+            int count = 0;
+            while (termDocs.next()) {
+                assertTrue(postings.next());
+                assertEquals(termDocs.doc(), postings.doc());
+                assertEquals(termDocs.freq(), postings.freq());
+                assertTrue(file.getMaxFreq(word) >= postings.freq());
+                assertTrue(file.getMinLength(word) <= file.getLength(postings.doc()));
+                count++;
+            }
+            assertFalse(postings.next());
+            assertEquals(InvertedFile.NO_MORE_DOCS, postings.doc());
+            assertEquals(count, file.getDocFreq(word));
+            // skipping to random targets:
+            postings = file.getPostings(word);
+            int target = 0;
+            while (target < reader.maxDoc()) {
+                target += random.nextInt(300);
+                termDocs.seek(new Term(field, VisualWordsTokenStream.getTerm(word)));
+                boolean expected = termDocs.skipTo(target);
+                assertEquals(expected, postings.advance(target));
+                if (expected) assertEquals(termDocs.doc(), postings.doc());
+            }
+        }
+        termDocs.close();
+        InvertedFile.purge(reader);
+        assertTrue(file != InvertedFile.getInvertedFile(reader, field));
+        reader.close();
+    }
+
+    public void testEarlyTermination() throws Exception {
+        Random random = new Random(2);
+        IndexReader reader = createIndex(random, 5000, 1000);
+        for (InvertedFileImageSearcher.Weighting weighting : InvertedFileImageSearcher.Weighting.values()) {
+            InvertedFileImageSearcher searcher = new InvertedFileImageSearcher(20, field, weighting);
+            InvertedFileImageSearcher exhaustive = new InvertedFileImageSearcher(20, field, weighting);
+            exhaustive.setEarlyTermination(false);
+            for (int i = 0; i < 50; i++) {
+                Document query = reader.document(random.nextInt(reader.maxDoc()));
+                ImageSearchHits hits = searcher.search(query, reader);
+                ImageSearchHits expected = exhaustive.search(query, reader);
+                assertEquals(20, hits.length());
+                assertEquals(expected.length(), hits.length());
+                for (int j = 0; j < hits.length(); j++) {
+                    assertEquals(expected.doc(j).get(DocumentBuilder.FIELD_NAME_IDENTIFIER), hits.doc(j).get(DocumentBuilder.FIELD_NAME_IDENTIFIER));
+                    assertEquals(expected.score(j), hits.score(j), 1e-5f);
+                }
+                assertEquals(query.get(DocumentBuilder.FIELD_NAME_IDENTIFIER), hits.doc(0).get(DocumentBuilder.FIELD_NAME_IDENTIFIER));
+            }
+        }
+        reader.close();
+    }
+
+    public void testDeletions() throws Exception {
+        Random random = new Random(3);
+        RAMDirectory directory = new RAMDirectory();
+        IndexWriter iw = LuceneUtils.createIndexWriter(directory, true, LuceneUtils.AnalyzerType.WhitespaceAnalyzer);
+        Document query = null;
+        for (int i = 0; i < 1000; i++) {
+            int[] histogram = createHistogram(random, 200);
+            iw.addDocument(createDocument("doc" + i, histogram));
+            // a copy of the first document, which is deleted later:
+            if (i == 0) query = createDocument("copy", histogram);
+        }
+        iw.addDocument(query);
+        iw.close();
+        IndexReader reader = IndexReader.open(directory, false);
+        InvertedFileImageSearcher searcher = new InvertedFileImageSearcher(10, field);
+        Document first = reader.document(0);
+        ImageSearchHits hits = searcher.search(first, reader);
+        assertEquals("doc0", hits.doc(0).get(DocumentBuilder.FIELD_NAME_IDENTIFIER));
+        assertEquals("copy", hits.doc(1).get(DocumentBuilder.FIELD_NAME_IDENTIFIER));
+        assertEquals(hits.score(0), hits.score(1), 0f);
+        reader.deleteDocuments(new Term(DocumentBuilder.FIELD_NAME_IDENTIFIER, "copy"));
+        hits = searcher.search(first, reader);
+        assertEquals("doc0", hits.doc(0).get(DocumentBuilder.FIELD_NAME_IDENTIFIER));
+        for (int i = 0; i < hits.length(); i++) {
+            assertFalse("copy".equals(hits.doc(i).get(DocumentBuilder.FIELD_NAME_IDENTIFIER)));
+        }
+        reader.close();
+    }
+
+    public void testImageSearch() throws Exception {
+        File clusterFile = File.createTempFile("clusters-surf", ".dat");
+        try {
+            RAMDirectory directory = new RAMDirectory();
+            IndexWriter iw = LuceneUtils.createIndexWriter(directory, true, LuceneUtils.AnalyzerType.WhitespaceAnalyzer);
+            SurfDocumentBuilder surf = new SurfDocumentBuilder();
+            for (String file : testFiles) {
+                iw.addDocument(surf.createDocument(ImageIO.read(new FileInputStream(testFilesPath + file)), file));
+            }
+            iw.close();
+            IndexReader reader = IndexReader.open(directory);
+            final String clusters = clusterFile.getPath();
+            SurfFeatureHistogramBuilder builder = new SurfFeatureHistogramBuilder(reader, testFiles.length, 64) {
+                {
+                    clusterFile = clusters;
+                }
+            };
+            builder.index();
+            reader.close();
+
+            reader = IndexReader.open(directory);
+            InvertedFileImageSearcher searcher = new InvertedFileImageSearcher(3, new SurfDocumentBuilder(new VocabularyManager(builder)), field, InvertedFileImageSearcher.Weighting.BM25);
+            for (String file : testFiles) {
+                ImageSearchHits hits = searcher.search(ImageIO.read(new FileInputStream(testFilesPath + file)), reader);
+                assertEquals(file, hits.doc(0).get(DocumentBuilder.FIELD_NAME_IDENTIFIER));
+            }
+            reader.close();
+        } finally {
+            clusterFile.delete();
+            new File(clusterFile.getPath() + ".tree").delete();
+        }
+    }
+
+    public void testPerformance() throws Exception {
+        Random random = new Random(4);
+        IndexReader reader = createIndex(random, 20000, 4000);
+        InvertedFile file = InvertedFile.getInvertedFile(reader, field);
+        System.out.println("Postings: " + file.getPostingsSize() / 1024 + " kB for " + file.getNumDocs() + " documents");
+        Document[] queries = new Document[100];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = reader.document(random.nextInt(reader.maxDoc()));
+        }
+        InvertedFileImageSearcher exhaustive = new InvertedFileImageSearcher(10, field);
+        exhaustive.setEarlyTermination(false);
+        time("Lucene BooleanQuery", new VisualWordsImageSearcher(10, field), queries, reader);
+        time("Inverted file", exhaustive, queries, reader);
+        time("Inverted file, MaxScore", new InvertedFileImageSearcher(10, field), queries, reader);
+        reader.close();
+    }
+
+    private void time(String name, net.semanticmetadata.lire.ImageSearcher searcher, Document[] queries, IndexReader reader) throws Exception {
+        // warm up:
+        for (int i = 0; i < 10; i++) searcher.search(queries[i], reader);
+        long time = System.nanoTime();
+        for (Document query : queries) {
+            searcher.search(query, reader);
+        }
+        time = System.nanoTime() - time;
+        System.out.printf("%s: %.2f ms per query\n", name, time / 1000000d / queries.length);
+    }
+
+    private IndexReader createIndex(Random random, int numDocs, int numWords) throws Exception {
+        RAMDirectory directory = new RAMDirectory();
+        IndexWriter iw = LuceneUtils.createIndexWriter(directory, true, LuceneUtils.AnalyzerType.WhitespaceAnalyzer);
+        for (int i = 0; i < numDocs; i++) {
+            iw.addDocument(createDocument("doc" + i, createHistogram(random, numWords)));
+        }
+        iw.close();
+        return IndexReader.open(directory);
+    }
+
+    private Document createDocument(String identifier, int[] histogram) {
+        Document d = new Document();
+        d.add(new Field(DocumentBuilder.FIELD_NAME_IDENTIFIER, identifier, Field.Store.YES, Field.Index.NOT_ANALYZED));
+        d.add(new Field(field, SerializationUtils.toSparseByteArray(histogram)));
+        d.add(new Field(field, new VisualWordsTokenStream(histogram)));
+        return d;
+    }
+
+    /**
+     * Histogram of 50 to 300 local features with the visual words following a Zipf like distribution.
+     */
+    private int[] createHistogram(Random random, int numWords) {
+        double[] cumulative = new double[numWords];
+        double sum = 0;
+        for (int i = 0; i < numWords; i++) {
+            sum += 1d / Math.pow(i + 1, 0.8);
+            cumulative[i] = sum;
+        }
+        int[] histogram = new int[numWords];
+        int numFeatures = 50 + random.nextInt(250);
+        for (int i = 0; i < numFeatures; i++) {
+            int word = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            if (word < 0) word = -word - 1;
+            histogram[Math.min(word, numWords - 1)]++;
+        }
+        return histogram;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+package net.semanticmetadata.lire.impl;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests the bounded top-k heap used by the linear searchers.
+ * Date: 18.10.2026
+ */
+public class TopHitsCollectorTest extends TestCase {
+    public void testCollect() {
+        Random r = new Random(42);
+        int numDocs = 10000, maxHits = 50;
+        float[] distances = new float[numDocs];
+        TopHitsCollector collector = new TopHitsCollector(maxHits);
+        for (int i = 0; i < numDocs; i++) {
+            // quantized distances to get lots of ties.
+            distances[i] = r.nextInt(1000) / 10f;
+            collector.collect(i, distances[i]);
+        }
+        float[] sorted = distances.clone();
+        Arrays.sort(sorted);
+
+        int[] resultDocs = new int[collector.size()];
+        float[] resultDistances = new float[collector.size()];
+        collector.sort(resultDocs, resultDistances);
+        assertEquals(maxHits, collector.size());
+        assertEquals(sorted[maxHits - 1], collector.getMaxDistance(), 0f);
+        for (int i = 0; i < maxHits; i++) {
+            assertEquals(sorted[i], resultDistances[i], 0f);
+            assertEquals(distances[resultDocs[i]], resultDistances[i], 0f);
+            if (i > 0 && resultDistances[i] == resultDistances[i - 1])
+                assertTrue(resultDocs[i] > resultDocs[i - 1]);
+        }
+    }
+
+    public void testMerge() {
+        TopHitsCollector a = new TopHitsCollector(3);
+        TopHitsCollector b = new TopHitsCollector(3);
+        a.collect(0, 5f);
+        a.collect(1, 1f);
+        b.collect(2, 3f);
+        b.collect(3, 0.5f);
+        b.collect(4, 7f);
+        a.merge(b);
+        int[] docs = new int[3];
+        float[] distances = new float[3];
+        a.sort(docs, distances);
+        assertEquals(3, docs[0]);
+        assertEquals(1, docs[1]);
+        assertEquals(2, docs[2]);
+        assertEquals(3f, a.getMaxDistance(), 0f);
+    }
+}
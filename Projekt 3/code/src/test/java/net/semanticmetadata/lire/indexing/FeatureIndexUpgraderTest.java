@@ -0,0 +1,109 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+package net.semanticmetadata.lire.indexing;
+
+import junit.framework.TestCase;
+import net.semanticmetadata.lire.DocumentBuilder;
+import net.semanticmetadata.lire.ImageSearchHits;
+import net.semanticmetadata.lire.ImageSearcher;
+import net.semanticmetadata.lire.imageanalysis.CEDD;
+import net.semanticmetadata.lire.imageanalysis.FeatureCodec;
+import net.semanticmetadata.lire.imageanalysis.bovw.VisualWordsTokenStream;
+import net.semanticmetadata.lire.impl.GenericFastDocumentBuilder;
+import net.semanticmetadata.lire.impl.InvertedFileImageSearcher;
+import net.semanticmetadata.lire.impl.VisualWordsImageSearcher;
+import net.semanticmetadata.lire.utils.LuceneUtils;
+import net.semanticmetadata.lire.utils.SerializationUtils;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.RAMDirectory;
+
+import javax.imageio.ImageIO;
+import java.io.FileInputStream;
+import java.util.Random;
+
+/**
+ * Upgrades an index with {@link FeatureIndexUpgrader} and searches the new index.
+ * <br>Date: 18.10.2026
+ */
+public class FeatureIndexUpgraderTest extends TestCase {
+    private String[] testFiles = new String[]{"img01.JPG", "img02.JPG", "img03.JPG", "img04.JPG", "img05.JPG", "img06.JPG", "img07.JPG", "img08.JPG"};
+    private String testFilesPath = "src/test/resources/images/";
+    private String field = DocumentBuilder.FIELD_NAME_SURF_LOCAL_FEATURE_HISTOGRAM_VISUAL_WORDS;
+    private int numWords = 50;
+
+    public void testUpgrade() throws Exception {
+        RAMDirectory directory = new RAMDirectory();
+        IndexWriter iw = LuceneUtils.createIndexWriter(directory, true, LuceneUtils.AnalyzerType.WhitespaceAnalyzer);
+        DocumentBuilder builder = new GenericFastDocumentBuilder(CEDD.class, DocumentBuilder.FIELD_NAME_CEDD);
+        Random random = new Random(1);
+        for (String file : testFiles) {
+            Document d = builder.createDocument(ImageIO.read(new FileInputStream(testFilesPath + file)), file);
+            int[] histogram = new int[numWords];
+            for (int i = 0; i < 100; i++) histogram[random.nextInt(numWords)]++;
+            // the visual words as written by the local feature histogram builders:
+            d.add(new Field(field, SerializationUtils.toSparseByteArray(histogram)));
+            d.add(new Field(field, new VisualWordsTokenStream(histogram)));
+            iw.addDocument(d);
+        }
+        iw.close();
+
+        IndexReader reader = IndexReader.open(directory);
+        RAMDirectory upgradedDirectory = new RAMDirectory();
+        IndexWriter writer = LuceneUtils.createIndexWriter(upgradedDirectory, true, LuceneUtils.AnalyzerType.WhitespaceAnalyzer);
+        assertEquals(testFiles.length, new FeatureIndexUpgrader().upgrade(reader, writer));
+        writer.close();
+        IndexReader upgraded = IndexReader.open(upgradedDirectory);
+
+        // the features are compact, the visual words are still indexed:
+        for (int i = 0; i < upgraded.maxDoc(); i++) {
+            byte[] cedd = upgraded.document(i).getBinaryValue(DocumentBuilder.FIELD_NAME_CEDD);
+            assertTrue(FeatureCodec.isEncoded(cedd, 0, cedd.length));
+        }
+        for (int word = 0; word < numWords; word++) {
+            Term term = new Term(field, VisualWordsTokenStream.getTerm(word));
+            assertEquals(reader.docFreq(term), upgraded.docFreq(term));
+        }
+        ImageSearcher[] searchers = new ImageSearcher[]{new VisualWordsImageSearcher(3, field), new InvertedFileImageSearcher(3, field)};
+        for (ImageSearcher searcher : searchers) {
+            for (int i = 0; i < upgraded.maxDoc(); i++) {
+                Document query = upgraded.document(i);
+                ImageSearchHits hits = searcher.search(query, upgraded);
+                assertTrue(hits.length() > 0);
+                assertEquals(query.get(DocumentBuilder.FIELD_NAME_IDENTIFIER), hits.doc(0).get(DocumentBuilder.FIELD_NAME_IDENTIFIER));
+            }
+        }
+        upgraded.close();
+        reader.close();
+    }
+}
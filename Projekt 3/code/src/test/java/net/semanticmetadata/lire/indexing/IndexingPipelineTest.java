@@ -0,0 +1,163 @@
+/*
+ * This file is part of the LIRe project: http://www.semanticmetadata.net/lire
+ * LIRe is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * LIRe is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LIRe; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * We kindly ask you to refer the following paper in any publication mentioning Lire:
+ *
+ * Lux Mathias, Savvas A. Chatzichristofis. Lire: Lucene Image Retrieval –
+ * An Extensible Java CBIR Library. In proceedings of the 16th ACM International
+ * Conference on Multimedia, pp. 1085-1088, Vancouver, Canada, 2008
+ *
+ * http://doi.acm.org/10.1145/1459359.1459577
+ *
+ * Copyright statement:
+ * --------------------
+ * (c) 2002-2011 by Mathias Lux (mathias@juggle.at)
+ *     http://www.semanticmetadata.net/lire
+ */
+package net.semanticmetadata.lire.indexing;
+
+import junit.framework.TestCase;
+import net.semanticmetadata.lire.AbstractDocumentBuilder;
+import net.semanticmetadata.lire.DocumentBuilder;
+import net.semanticmetadata.lire.DocumentBuilderFactory;
+import net.semanticmetadata.lire.impl.ChainedDocumentBuilder;
+import net.semanticmetadata.lire.utils.LuceneUtils;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Fieldable;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.RAMDirectory;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+/**
+ * Checks the documents created by the {@link IndexingPipeline} against the ones of a {@link ChainedDocumentBuilder}.
+ * <br>Date: 18.10.2026
+ */
+public class IndexingPipelineTest extends TestCase {
+    private String testFilesPath = "src/test/resources/images/";
+
+    public void testIndexing() throws IOException {
+        LinkedList<File> files = new LinkedList<File>();
+        for (File file : new File(testFilesPath).listFiles()) {
+            if (file.getName().toLowerCase().endsWith(".jpg")) files.add(file);
+        }
+        File broken = File.createTempFile("broken", ".jpg");
+        FileWriter fw = new FileWriter(broken);
+        fw.write("no image");
+        fw.close();
+        files.add(broken);
+
+        DocumentBuilder[] builders = new DocumentBuilder[]{DocumentBuilderFactory.getCEDDDocumentBuilder(),
+                DocumentBuilderFactory.getFCTHDocumentBuilder(), DocumentBuilderFactory.getColorLayoutBuilder(),
+                DocumentBuilderFactory.getEdgeHistogramBuilder()};
+        RAMDirectory dir = new RAMDirectory();
+        IndexWriter iw = LuceneUtils.createIndexWriter(dir, true, LuceneUtils.AnalyzerType.WhitespaceAnalyzer);
+        IndexingPipeline pipeline = new IndexingPipeline(iw, builders);
+        pipeline.setQueueSize(2);
+        pipeline.setBatchSize(3);
+        final LinkedList<File> indexed = new LinkedList<File>(), failed = new LinkedList<File>();
+        pipeline.addListener(new IndexingPipeline.Listener() {
+            public void indexed(File file, long timeTaken) {
+                indexed.add(file);
+            }
+
+            public void failed(File file, Throwable cause) {
+                failed.add(file);
+            }
+        });
+        long time = System.currentTimeMillis();
+        int count = pipeline.index(files);
+        System.out.println("Pipeline: " + (System.currentTimeMillis() - time) + " ms");
+        for (IndexingPipeline.Stage stage : pipeline.getStages()) System.out.println(stage);
+        iw.close();
+        broken.delete();
+        // some of the test images cannot be read by ImageIO.
+        System.out.println("Failed: " + failed);
+        assertEquals(indexed.size(), count);
+        assertEquals(files.size(), indexed.size() + failed.size());
+        assertTrue(failed.contains(broken));
+
+        // compare to the documents of the sequential builder.
+        ChainedDocumentBuilder chained = new ChainedDocumentBuilder();
+        for (DocumentBuilder builder : builders) chained.addBuilder(builder);
+        IndexReader reader = IndexReader.open(dir, true);
+        HashMap<String, Document> documents = new HashMap<String, Document>();
+        for (int i = 0; i < reader.maxDoc(); i++) {
+            Document d = reader.document(i);
+            documents.put(d.get(DocumentBuilder.FIELD_NAME_IDENTIFIER), d);
+        }
+        time = System.currentTimeMillis();
+        for (File file : indexed) {
+            Document expected = chained.createDocument(new FileInputStream(file), file.getAbsolutePath());
+            Document actual = documents.get(file.getAbsolutePath());
+            assertNotNull(actual);
+            assertEquals(expected.getFields().size(), actual.getFields().size());
+            for (int i = 0; i < expected.getFields().size(); i++) {
+                Fieldable e = expected.getFields().get(i), a = actual.getFields().get(i);
+                assertEquals(e.name(), a.name());
+                if (e.isBinary()) assertTrue(e.name(), Arrays.equals(e.getBinaryValue(), a.getBinaryValue()));
+                else assertEquals(e.stringValue(), a.stringValue());
+            }
+        }
+        System.out.println("ChainedDocumentBuilder: " + (System.currentTimeMillis() - time) + " ms");
+        reader.close();
+    }
+
+    public void testErrors() throws IOException {
+        LinkedList<File> files = new LinkedList<File>();
+        for (File file : new File(testFilesPath).listFiles()) {
+            if (file.getName().toLowerCase().endsWith(".jpg")) files.add(file);
+        }
+        // a builder failing with an Error instead of an Exception:
+        DocumentBuilder broken = new AbstractDocumentBuilder() {
+            public Document createDocument(BufferedImage image, String identifier) {
+                throw new NoClassDefFoundError("missing");
+            }
+        };
+        RAMDirectory dir = new RAMDirectory();
+        IndexWriter iw = LuceneUtils.createIndexWriter(dir, true, LuceneUtils.AnalyzerType.WhitespaceAnalyzer);
+        IndexingPipeline pipeline = new IndexingPipeline(iw, DocumentBuilderFactory.getCEDDDocumentBuilder(), broken);
+        pipeline.setQueueSize(2);
+        final LinkedList<Throwable> causes = new LinkedList<Throwable>();
+        pipeline.addListener(new IndexingPipeline.Listener() {
+            public void indexed(File file, long timeTaken) {
+            }
+
+            public void failed(File file, Throwable cause) {
+                causes.add(cause);
+            }
+        });
+        // the pipeline ends and reports each image instead of waiting for the failed ones:
+        assertEquals(0, pipeline.index(files));
+        iw.close();
+        assertEquals(files.size(), causes.size());
+        // some of the test images cannot be read by ImageIO, all others fail in the builder.
+        int errors = 0;
+        for (Throwable cause : causes) {
+            if (cause instanceof NoClassDefFoundError) errors++;
+            else assertTrue(cause instanceof Exception);
+        }
+        assertTrue(errors > 0);
+    }
+}
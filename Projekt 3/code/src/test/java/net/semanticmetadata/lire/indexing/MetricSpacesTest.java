@@ -32,15 +32,27 @@ package net.semanticmetadata.lire.indexing;
 
 import junit.framework.TestCase;
 import net.semanticmetadata.lire.DocumentBuilder;
+import net.semanticmetadata.lire.DocumentBuilderFactory;
+import net.semanticmetadata.lire.ImageSearchHits;
 import net.semanticmetadata.lire.ImageSearcher;
 import net.semanticmetadata.lire.ImageSearcherFactory;
+import net.semanticmetadata.lire.imageanalysis.CEDD;
+import net.semanticmetadata.lire.impl.GenericFastImageSearcher;
+import net.semanticmetadata.lire.utils.LuceneUtils;
+import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.FSDirectory;
 
 import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
 import java.io.*;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
 
 /**
  * User: mlux
@@ -49,6 +61,7 @@ import java.io.*;
  */
 public class MetricSpacesTest extends TestCase {
     String indexPath = "./test-index-cedd-flickr";
+    private String[] testFiles = new String[]{"img01.JPG", "img02.JPG", "img03.JPG", "img04.JPG", "img05.JPG", "img06.JPG", "img07.JPG", "img08.JPG"};
     // String imagePath = "";
 
     public void testIndexing() throws IOException {
@@ -175,4 +188,176 @@ public class MetricSpacesTest extends TestCase {
 
         }
     }
+
+    /**
+     * Creates and updates an index of parts of the test images and compares the nearest reference
+     * objects to the ones found by searching the index of the reference objects.
+     *
+     * @throws IOException
+     */
+    public void testCreateAndUpdate() throws IOException {
+        File dir = File.createTempFile("metricspaces", "");
+        dir.delete();
+        dir.mkdirs();
+        String index = new File(dir, "index").getPath();
+        int numReferenceObjects = MetricSpacesInvertedListIndexing.numReferenceObjects;
+        int numReferenceObjectsUsed = MetricSpacesInvertedListIndexing.numReferenceObjectsUsed;
+        try {
+            MetricSpacesInvertedListIndexing.numReferenceObjects = 50;
+            MetricSpacesInvertedListIndexing.numReferenceObjectsUsed = 10;
+            BufferedImage[] images = new BufferedImage[testFiles.length];
+            for (int i = 0; i < images.length; i++) {
+                images[i] = ImageIO.read(new FileInputStream("src/test/resources/images/" + testFiles[i]));
+            }
+            DocumentBuilder builder = DocumentBuilderFactory.getCEDDDocumentBuilder();
+            Random random = new Random(1);
+            createIndex(index, images, 200, random);
+
+            MetricSpacesInvertedListIndexing ms = new MetricSpacesInvertedListIndexing(CEDD.class, DocumentBuilder.FIELD_NAME_CEDD);
+            ms.setBatchSize(64);
+            ms.createIndex(index);
+            assertEquals(200, ms.getProgress().getNumDocsProcessed());
+            assertEquals(MetricSpacesInvertedListIndexing.State.Idle, ms.getProgress().getCurrentState());
+            checkOrders(index, 200);
+
+            // new documents without the field:
+            IndexWriter iw = LuceneUtils.createIndexWriter(index, false);
+            for (int i = 200; i < 230; i++) {
+                iw.addDocument(builder.createDocument(createPart(images[i % images.length], random), "doc-" + i));
+            }
+            iw.close();
+            ms.updateIndex(index);
+            assertEquals(230, ms.getProgress().getNumDocsProcessed());
+            checkOrders(index, 230);
+        } finally {
+            MetricSpacesInvertedListIndexing.numReferenceObjects = numReferenceObjects;
+            MetricSpacesInvertedListIndexing.numReferenceObjectsUsed = numReferenceObjectsUsed;
+            delete(dir);
+        }
+    }
+
+    /**
+     * Compares the results of the pruned scoring to the footrule scores of all documents.
+     *
+     * @throws IOException
+     */
+    public void testScoreDocs() throws IOException {
+        File dir = File.createTempFile("metricspaces", "");
+        dir.delete();
+        dir.mkdirs();
+        String index = new File(dir, "index").getPath();
+        int numReferenceObjects = MetricSpacesInvertedListIndexing.numReferenceObjects;
+        int numReferenceObjectsUsed = MetricSpacesInvertedListIndexing.numReferenceObjectsUsed;
+        try {
+            MetricSpacesInvertedListIndexing.numReferenceObjects = 50;
+            MetricSpacesInvertedListIndexing.numReferenceObjectsUsed = 20;
+            BufferedImage[] images = new BufferedImage[testFiles.length];
+            for (int i = 0; i < images.length; i++) {
+                images[i] = ImageIO.read(new FileInputStream("src/test/resources/images/" + testFiles[i]));
+            }
+            Random random = new Random(2);
+            createIndex(index, images, 300, random);
+            MetricSpacesInvertedListIndexing ms = new MetricSpacesInvertedListIndexing(CEDD.class, DocumentBuilder.FIELD_NAME_CEDD);
+            ms.createIndex(index);
+
+            IndexReader reader = IndexReader.open(FSDirectory.open(new File(index)));
+            String[] orders = new String[reader.maxDoc()];
+            for (int i = 0; i < orders.length; i++) {
+                orders[i] = reader.document(i).get("ro-order");
+            }
+            for (int numHits : new int[]{1, 10, 50}) {
+                ms.setNumHits(numHits);
+                for (int i = 0; i < 30; i++) {
+                    Document query = reader.document(i);
+                    TopDocs docs = ms.search(query, index);
+                    // all documents sorted by descending score and ascending document number:
+                    final int[] scores = new int[orders.length];
+                    Integer[] sorted = new Integer[orders.length];
+                    for (int j = 0; j < orders.length; j++) {
+                        scores[j] = footrule(orders[i], orders[j]);
+                        sorted[j] = j;
+                    }
+                    Arrays.sort(sorted, new Comparator<Integer>() {
+                        public int compare(Integer o1, Integer o2) {
+                            if (scores[o1] != scores[o2]) return scores[o2] - scores[o1];
+                            return o1 - o2;
+                        }
+                    });
+                    assertEquals(numHits, docs.scoreDocs.length);
+                    for (int j = 0; j < numHits; j++) {
+                        assertEquals(sorted[j].intValue(), docs.scoreDocs[j].doc);
+                        assertEquals((float) scores[sorted[j]], docs.scoreDocs[j].score);
+                    }
+                }
+            }
+            // by image, the query document is the image itself:
+            ms.setNumHits(5);
+            TopDocs docs = ms.search(createPart(images[0], new Random(2)), index);
+            assertEquals(5, docs.scoreDocs.length);
+            assertEquals(0, docs.scoreDocs[0].doc);
+            reader.close();
+            ms.close();
+        } finally {
+            MetricSpacesInvertedListIndexing.numReferenceObjects = numReferenceObjects;
+            MetricSpacesInvertedListIndexing.numReferenceObjectsUsed = numReferenceObjectsUsed;
+            delete(dir);
+        }
+    }
+
+    /**
+     * The score of the original implementation: n(n-1) minus the footrule distance, where reference
+     * objects missing in the document count with n-1.
+     */
+    private int footrule(String query, String document) {
+        List<String> q = Arrays.asList(query.trim().split(" "));
+        List<String> d = Arrays.asList(document.trim().split(" "));
+        int n = q.size();
+        int distance = 0;
+        for (int i = 0; i < n; i++) {
+            int p = d.indexOf(q.get(i));
+            distance += p < 0 ? n - 1 : Math.abs(p - i);
+        }
+        return n * (n - 1) - distance;
+    }
+
+    private void createIndex(String index, BufferedImage[] images, int numDocs, Random random) throws IOException {
+        DocumentBuilder builder = DocumentBuilderFactory.getCEDDDocumentBuilder();
+        IndexWriter iw = LuceneUtils.createIndexWriter(index, true);
+        for (int i = 0; i < numDocs; i++) {
+            iw.addDocument(builder.createDocument(createPart(images[i % images.length], random), "doc-" + i));
+        }
+        iw.close();
+    }
+
+    private void checkOrders(String index, int numDocs) throws IOException {
+        IndexReader reader = IndexReader.open(FSDirectory.open(new File(index)));
+        IndexReader readerRo = IndexReader.open(FSDirectory.open(new File(index + "-ro")));
+        assertEquals(numDocs, reader.numDocs());
+        ImageSearcher searcher = new GenericFastImageSearcher(MetricSpacesInvertedListIndexing.numReferenceObjectsUsed, CEDD.class, DocumentBuilder.FIELD_NAME_CEDD);
+        for (int i = 0; i < reader.maxDoc(); i++) {
+            Document document = reader.document(i);
+            ImageSearchHits hits = searcher.search(document, readerRo);
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < MetricSpacesInvertedListIndexing.numReferenceObjectsUsed; j++) {
+                sb.append(hits.doc(j).getValues("ro-id")[0]);
+                sb.append(' ');
+            }
+            assertEquals(sb.toString(), document.get("ro-order"));
+        }
+        reader.close();
+        readerRo.close();
+    }
+
+    private BufferedImage createPart(BufferedImage image, Random random) {
+        int width = image.getWidth() / 4 + random.nextInt(image.getWidth() / 2);
+        int height = image.getHeight() / 4 + random.nextInt(image.getHeight() / 2);
+        return image.getSubimage(random.nextInt(image.getWidth() - width), random.nextInt(image.getHeight() - height), width, height);
+    }
+
+    private void delete(File file) {
+        if (file.isDirectory()) {
+            for (File f : file.listFiles()) delete(f);
+        }
+        file.delete();
+    }
 }
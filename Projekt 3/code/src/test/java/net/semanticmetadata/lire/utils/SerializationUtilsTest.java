@@ -34,6 +34,8 @@ import junit.framework.TestCase;
 import net.semanticmetadata.lire.clustering.Cluster;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
 
 /**
  * Date: 28.09.2010
@@ -86,6 +88,24 @@ public class SerializationUtilsTest extends TestCase {
 
     }
 
+    public void testSparseArraySerialization() {
+        Random random = new Random(3);
+        for (int run = 0; run < 1000; run++) {
+            int[] histogram = new int[random.nextInt(3000)];
+            for (int i = 0; i < histogram.length; i++) {
+                if (random.nextInt(3) == 0) histogram[i] = random.nextInt(10) == 0 ? random.nextInt(Integer.MAX_VALUE) : 1 + random.nextInt(20);
+            }
+            int[] sparse = SerializationUtils.toSparseIntArray(SerializationUtils.toSparseByteArray(histogram));
+            int[] decoded = new int[histogram.length];
+            for (int i = 0; i < sparse.length; i += 2) {
+                assertTrue(sparse[i + 1] > 0);
+                if (i > 0) assertTrue(sparse[i - 2] < sparse[i]);
+                decoded[sparse[i]] = sparse[i + 1];
+            }
+            assertTrue(Arrays.equals(histogram, decoded));
+        }
+    }
+
     /**
      * Test serialization of Clusters ...
      */